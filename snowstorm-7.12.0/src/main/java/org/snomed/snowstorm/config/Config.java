@@ -6,6 +6,7 @@ import com.google.common.collect.Sets;
 import io.kaicode.elasticvc.api.BranchService;
 import io.kaicode.elasticvc.api.ComponentService;
 import io.kaicode.elasticvc.api.VersionControlHelper;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.elasticsearch.action.admin.indices.settings.put.UpdateSettingsRequest;
 import org.elasticsearch.client.RequestOptions;
 import org.elasticsearch.common.settings.Settings;
@@ -23,6 +24,7 @@ import org.snomed.snowstorm.core.data.domain.jobs.ExportConfiguration;
 import org.snomed.snowstorm.core.data.domain.jobs.IdentifiersForRegistration;
 import org.snomed.snowstorm.core.data.services.*;
 import org.snomed.snowstorm.core.data.services.classification.BranchClassificationStatusService;
+import org.snomed.snowstorm.core.data.services.identifier.ExistingIdentifierFilter;
 import org.snomed.snowstorm.core.data.services.identifier.IdentifierCacheManager;
 import org.snomed.snowstorm.core.data.services.identifier.IdentifierSource;
 import org.snomed.snowstorm.core.data.services.identifier.LocalRandomIdentifierSource;
@@ -31,9 +33,10 @@ import org.snomed.snowstorm.core.data.services.pojo.DescriptionCriteria;
 import org.snomed.snowstorm.core.data.services.servicehook.CommitServiceHookClient;
 import org.snomed.snowstorm.core.data.services.traceability.TraceabilityLogService;
 import org.snomed.snowstorm.core.pojo.LanguageDialect;
+import org.snomed.snowstorm.core.util.CommitMetrics;
+import org.snomed.snowstorm.core.util.TimerUtil;
 import org.snomed.snowstorm.ecl.SECLObjectFactory;
 import org.snomed.snowstorm.ecl.validation.ECLPreprocessingService;
-import org.snomed.snowstorm.mrcm.MRCMLoader;
 import org.snomed.snowstorm.mrcm.MRCMUpdateService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -55,6 +58,7 @@ import org.springframework.jms.support.converter.MappingJackson2MessageConverter
 import org.springframework.jms.support.converter.MessageConverter;
 import org.springframework.jms.support.converter.MessageType;
 import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import javax.annotation.PostConstruct;
 import java.io.IOException;
@@ -147,34 +151,46 @@ public abstract class Config extends ElasticsearchConfig {
 	@Autowired
 	private CommitServiceHookClient commitServiceHookClient;
 
-	@Autowired
-	private MRCMLoader mrcmLoader;
-
 	@Autowired
 	private ECLPreprocessingService eclPreprocessingService;
 
 	@Autowired
 	private RefsetDescriptorUpdaterService refsetDescriptorUpdaterService;
 
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Autowired
+	private IdentifierSource identifierSource;
+
 	private final Logger logger = LoggerFactory.getLogger(getClass());
 
 	@PostConstruct
 	public void configureCommitListeners() {
 		// Commit listeners will be called in this order
-		branchService.addCommitListener(mrcmLoader);
-		branchService.addCommitListener(conceptDefinitionStatusUpdateService);
-		branchService.addCommitListener(semanticIndexUpdateService);
-		branchService.addCommitListener(mrcmUpdateService);
-		branchService.addCommitListener(branchClassificationStatusService);
-		branchService.addCommitListener(refsetDescriptorUpdaterService);
-		branchService.addCommitListener(traceabilityLogService);
-		branchService.addCommitListener(integrityService);
-		branchService.addCommitListener(multiSearchService);
-		branchService.addCommitListener(eclPreprocessingService);
-		branchService.addCommitListener(commitServiceHookClient);
+		// Each listener is timed, published as actuator metric 'snowstorm.commit.listener'
+		CommitMetrics commitMetrics = new CommitMetrics(meterRegistry);
+		branchService.addCommitListener(commitMetrics.timed("concept-definition-status", conceptDefinitionStatusUpdateService));
+		branchService.addCommitListener(commitMetrics.timed("semantic-index", semanticIndexUpdateService));
+		branchService.addCommitListener(commitMetrics.timed("mrcm-update", mrcmUpdateService));
+		branchService.addCommitListener(commitMetrics.timed("classification-status", branchClassificationStatusService));
+		branchService.addCommitListener(commitMetrics.timed("refset-descriptor", refsetDescriptorUpdaterService));
+		branchService.addCommitListener(commitMetrics.timed("traceability", traceabilityLogService));
+		branchService.addCommitListener(commitMetrics.timed("integrity", integrityService));
+		branchService.addCommitListener(commitMetrics.timed("multi-search", multiSearchService));
+		branchService.addCommitListener(commitMetrics.timed("ecl-preprocessing", eclPreprocessingService));
+		if (identifierSource instanceof LocalRandomIdentifierSource && ((LocalRandomIdentifierSource) identifierSource).getExistingIdentifierFilter() != null) {
+			branchService.addCommitListener(commitMetrics.timed("existing-identifier-filter", ((LocalRandomIdentifierSource) identifierSource).getExistingIdentifierFilter()));
+		}
+		branchService.addCommitListener(commitMetrics.timed("commit-service-hook", commitServiceHookClient));
 		branchService.addCommitListener(BranchMetadataHelper::clearTransientMetadata);
-		branchService.addCommitListener(commit ->
-			logger.info("Completed commit on {} in {} seconds.", commit.getBranch().getPath(), secondsDuration(commit.getTimepoint())));
+		branchService.addCommitListener(commit -> {
+			commitMetrics.recordCommit(commit);
+			logger.info("Completed commit on {} in {} seconds.", commit.getBranch().getPath(), secondsDuration(commit.getTimepoint()));
+		});
+
+		// Named TimerUtil checkpoints are published as actuator metric 'snowstorm.timer'
+		TimerUtil.setMeterRegistry(meterRegistry);
 
 		// Push configured term constraints into static field
 		DescriptionCriteria.configure(searchTermMinimumLength, searchTermMaximumLength);
@@ -189,6 +205,49 @@ public abstract class Config extends ElasticsearchConfig {
 		return Executors.newCachedThreadPool();
 	}
 
+	@Bean
+	public ThreadPoolTaskExecutor conceptJoinExecutor(@Value("${concepts.load.concurrent-joins.threads}") int threads) {
+		return newFixedThreadPoolTaskExecutor("concept-join-", threads);
+	}
+
+	@Bean
+	public ThreadPoolTaskExecutor eclPrefetchExecutor(@Value("${ecl.prefetch.threads}") int threads) {
+		return newFixedThreadPoolTaskExecutor("ecl-prefetch-", threads);
+	}
+
+	@Bean
+	public ThreadPoolTaskExecutor importLookupExecutor(@Value("${import.pipeline.lookup-threads}") int threads) {
+		return newFixedThreadPoolTaskExecutor("import-lookup-", threads);
+	}
+
+	@Bean
+	public ThreadPoolTaskExecutor importIndexExecutor(@Value("${import.pipeline.index-threads}") int threads) {
+		return newFixedThreadPoolTaskExecutor("import-index-", threads);
+	}
+
+	@Bean
+	public ThreadPoolTaskExecutor exportExecutor(@Value("${export.parallel.threads}") int threads) {
+		return newFixedThreadPoolTaskExecutor("export-", threads);
+	}
+
+	@Bean
+	public ThreadPoolTaskExecutor validationJobExecutor() {
+		return newFixedThreadPoolTaskExecutor("validation-job-", 1);
+	}
+
+	@Bean
+	public ThreadPoolTaskExecutor validationBatchExecutor(@Value("${validation.bulk.threads}") int threads) {
+		return newFixedThreadPoolTaskExecutor("validation-batch-", threads);
+	}
+
+	private static ThreadPoolTaskExecutor newFixedThreadPoolTaskExecutor(String threadNamePrefix, int threads) {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(Math.max(1, threads));
+		executor.setMaxPoolSize(Math.max(1, threads));
+		executor.setThreadNamePrefix(threadNamePrefix);
+		return executor;
+	}
+
 	@Bean
 	public BranchService getBranchService(@Autowired ObjectMapper objectMapper) {
 		return new BranchService(objectMapper);
@@ -205,10 +264,16 @@ public abstract class Config extends ElasticsearchConfig {
 			@Value("${cis.username}") String username,
 			@Value("${cis.password}") String password,
 			@Value("${cis.softwareName}") String softwareName,
-			@Value("${cis.timeout}") int timeoutSeconds) {
+			@Value("${cis.timeout}") int timeoutSeconds,
+			@Value("${cis.local.existing-id-filter.enabled}") boolean existingIdFilterEnabled,
+			@Value("${cis.local.existing-id-filter.international-expected-ids}") int internationalExpectedIds,
+			@Value("${cis.local.existing-id-filter.extension-expected-ids}") int extensionExpectedIds,
+			@Value("${cis.local.existing-id-filter.false-positive-rate}") double falsePositiveRate) {
 
 		if (cisApiUrl.equals("local-random") || cisApiUrl.equals("local")) {// local is the legacy name
-			return new LocalRandomIdentifierSource(elasticsearchRestTemplate());
+			ExistingIdentifierFilter existingIdentifierFilter = existingIdFilterEnabled ?
+					new ExistingIdentifierFilter(elasticsearchRestTemplate(), getVersionControlHelper(), internationalExpectedIds, extensionExpectedIds, falsePositiveRate) : null;
+			return new LocalRandomIdentifierSource(elasticsearchRestTemplate(), existingIdentifierFilter);
 		} else {
 			return new SnowstormCISClient(cisApiUrl, username, password, softwareName, timeoutSeconds);
 		}
@@ -6,6 +6,8 @@ import org.springframework.data.annotation.Id;
 import org.springframework.data.elasticsearch.annotations.Document;
 
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.UUID;
 
 @Document(indexName = "branch-marge")
@@ -21,6 +23,8 @@ public class BranchMergeJob {
 	private Date endDate;
 	private String message;
 	private ApiError apiError;
+	private String progress;
+	private Map<String, Long> stageDurations;
 
 	public BranchMergeJob() {
 	}
@@ -88,4 +92,29 @@ public class BranchMergeJob {
 	public ApiError getApiError() {
 		return apiError;
 	}
+
+	public void setProgress(String progress) {
+		this.progress = progress;
+	}
+
+	/**
+	 * @return description of the stage of the merge currently running.
+	 */
+	public String getProgress() {
+		return progress;
+	}
+
+	public void addStageDuration(String stage, long millis) {
+		if (stageDurations == null) {
+			stageDurations = new LinkedHashMap<>();
+		}
+		stageDurations.put(stage, millis);
+	}
+
+	/**
+	 * @return milliseconds taken by each completed stage of the merge, in the order they ran.
+	 */
+	public Map<String, Long> getStageDurations() {
+		return stageDurations;
+	}
 }
@@ -33,6 +33,7 @@ public class Description extends SnomedComponent<Description> implements SnomedC
 		String CONCEPT_ID = "conceptId";
 		String TYPE_ID = "typeId";
 		String LANGUAGE_CODE = "languageCode";
+		String CASE_SIGNIFICANCE_ID = "caseSignificanceId";
 	}
 
 	@JsonView(value = View.Component.class)
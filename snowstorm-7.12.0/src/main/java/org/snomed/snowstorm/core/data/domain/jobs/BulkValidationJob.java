@@ -0,0 +1,141 @@
+package org.snomed.snowstorm.core.data.domain.jobs;
+
+import org.snomed.snowstorm.core.data.domain.JobStatus;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.elasticsearch.annotations.Document;
+import org.springframework.data.elasticsearch.annotations.Field;
+import org.springframework.data.elasticsearch.annotations.FieldType;
+
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ * Snomed-Drools validation of every concept matching an ECL expression on a branch.
+ * The invalid content found is stored using {@link BulkValidationResult} documents.
+ */
+@Document(indexName = "validation-bulk-job")
+public class BulkValidationJob {
+
+	public interface Fields {
+		String START_DATE = "startDate";
+		String END_DATE = "endDate";
+	}
+
+	@Id
+	@Field(type = FieldType.Keyword)
+	private String id;
+
+	@Field(type = FieldType.Keyword)
+	private String branch;
+
+	@Field(type = FieldType.Keyword)
+	private String ecl;
+
+	@Field(type = FieldType.Keyword)
+	private JobStatus status;
+
+	@Field(type = FieldType.Long)
+	private Date startDate;
+
+	@Field(type = FieldType.Long)
+	private Date endDate;
+
+	@Field(type = FieldType.Integer)
+	private int totalConcepts;
+
+	@Field(type = FieldType.Integer)
+	private int validatedConcepts;
+
+	@Field(type = FieldType.Integer)
+	private int invalidContentCount;
+
+	@Field(type = FieldType.Float)
+	private float conceptsPerSecond;
+
+	@Field(type = FieldType.Keyword)
+	private String message;
+
+	public BulkValidationJob() {
+	}
+
+	public BulkValidationJob(String branch, String ecl) {
+		id = UUID.randomUUID().toString();
+		this.branch = branch;
+		this.ecl = ecl;
+		status = JobStatus.SCHEDULED;
+	}
+
+	/**
+	 * Adds a validated batch of concepts to the progress and updates the throughput.
+	 */
+	public void batchValidated(int conceptCount, int invalidContentCount) {
+		validatedConcepts += conceptCount;
+		this.invalidContentCount += invalidContentCount;
+		long millis = new Date().getTime() - startDate.getTime();
+		conceptsPerSecond = millis > 0 ? validatedConcepts * 1000f / millis : 0;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public String getBranch() {
+		return branch;
+	}
+
+	public String getEcl() {
+		return ecl;
+	}
+
+	public JobStatus getStatus() {
+		return status;
+	}
+
+	public void setStatus(JobStatus status) {
+		this.status = status;
+	}
+
+	public Date getStartDate() {
+		return startDate;
+	}
+
+	public void setStartDate(Date startDate) {
+		this.startDate = startDate;
+	}
+
+	public Date getEndDate() {
+		return endDate;
+	}
+
+	public void setEndDate(Date endDate) {
+		this.endDate = endDate;
+	}
+
+	public int getTotalConcepts() {
+		return totalConcepts;
+	}
+
+	public void setTotalConcepts(int totalConcepts) {
+		this.totalConcepts = totalConcepts;
+	}
+
+	public int getValidatedConcepts() {
+		return validatedConcepts;
+	}
+
+	public int getInvalidContentCount() {
+		return invalidContentCount;
+	}
+
+	public float getConceptsPerSecond() {
+		return conceptsPerSecond;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+	public void setMessage(String message) {
+		this.message = message;
+	}
+}
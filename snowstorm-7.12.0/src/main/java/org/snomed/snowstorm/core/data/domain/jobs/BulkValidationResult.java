@@ -0,0 +1,84 @@
+package org.snomed.snowstorm.core.data.domain.jobs;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.elasticsearch.annotations.Document;
+import org.springframework.data.elasticsearch.annotations.Field;
+import org.springframework.data.elasticsearch.annotations.FieldType;
+
+/**
+ * One item of invalid content found by a {@link BulkValidationJob}.
+ */
+@Document(indexName = "validation-bulk-result")
+public class BulkValidationResult {
+
+	public interface Fields {
+		String JOB_ID = "jobId";
+		String CONCEPT_ID = "conceptId";
+	}
+
+	@Id
+	@Field(type = FieldType.Keyword)
+	private String internalId;
+
+	@Field(type = FieldType.Keyword)
+	private String jobId;
+
+	@Field(type = FieldType.Keyword)
+	private String conceptId;
+
+	@Field(type = FieldType.Keyword)
+	private String componentId;
+
+	@Field(type = FieldType.Keyword)
+	private String ruleId;
+
+	@Field(type = FieldType.Keyword)
+	private String severity;
+
+	@Field(type = FieldType.Text, index = false)
+	private String message;
+
+	public BulkValidationResult() {
+	}
+
+	public BulkValidationResult(String jobId, String conceptId, String componentId, String ruleId, String severity, String message) {
+		this.jobId = jobId;
+		this.conceptId = conceptId;
+		this.componentId = componentId;
+		this.ruleId = ruleId;
+		this.severity = severity;
+		this.message = message;
+	}
+
+	public String getInternalId() {
+		return internalId;
+	}
+
+	public void setInternalId(String internalId) {
+		this.internalId = internalId;
+	}
+
+	public String getJobId() {
+		return jobId;
+	}
+
+	public String getConceptId() {
+		return conceptId;
+	}
+
+	public String getComponentId() {
+		return componentId;
+	}
+
+	public String getRuleId() {
+		return ruleId;
+	}
+
+	public String getSeverity() {
+		return severity;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+}
@@ -0,0 +1,12 @@
+package org.snomed.snowstorm.core.data.repositories;
+
+import org.snomed.snowstorm.core.data.domain.jobs.BulkValidationResult;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.elasticsearch.repository.ElasticsearchRepository;
+
+public interface BulkValidationResultRepository extends ElasticsearchRepository<BulkValidationResult, String> {
+
+	Page<BulkValidationResult> findByJobId(String jobId, Pageable pageable);
+
+}
@@ -1,5 +1,6 @@
 package org.snomed.snowstorm.core.data.services;
 
+import ch.qos.logback.classic.Level;
 import com.google.common.collect.Iterables;
 import io.kaicode.elasticvc.api.*;
 import io.kaicode.elasticvc.domain.Branch;
@@ -17,6 +18,7 @@ import org.snomed.snowstorm.core.data.domain.review.MergeReview;
 import org.snomed.snowstorm.core.data.domain.review.ReviewStatus;
 import org.snomed.snowstorm.core.data.repositories.*;
 import org.snomed.snowstorm.core.data.services.pojo.IntegrityIssueReport;
+import org.snomed.snowstorm.core.util.TimerUtil;
 import org.snomed.snowstorm.rest.pojo.MergeRequest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.PageRequest;
@@ -34,6 +36,7 @@ import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.stream.Collectors;
 
+import static io.kaicode.elasticvc.api.ComponentService.CLAUSE_LIMIT;
 import static io.kaicode.elasticvc.api.VersionControlHelper.LARGE_PAGE;
 import static org.elasticsearch.index.query.QueryBuilders.*;
 import static org.snomed.snowstorm.core.data.domain.SnomedComponent.Fields.*;
@@ -94,6 +97,9 @@ public class BranchMergeService {
 	@Autowired
 	private ExecutorService executorService;
 
+	// Merge job being run on this thread, progress is reported on it
+	private final ThreadLocal<BranchMergeJob> currentMergeJob = new ThreadLocal<>();
+
 	private static final String USE_MERGE_REVIEW = "The target branch is diverged, please use the merge review endpoint instead.";
 	private static final Logger logger = LoggerFactory.getLogger(BranchMergeService.class);
 
@@ -136,6 +142,7 @@ public class BranchMergeService {
 		executorService.submit(() -> {
 			// Bring user security context into new thread
 			SecurityContextHolder.setContext(securityContext);
+			currentMergeJob.set(mergeJob);
 			try {
 				if (mergeReview != null) {
 					branchReviewService.applyMergeReview(mergeReview);
@@ -155,6 +162,8 @@ public class BranchMergeService {
 				mergeJob.setMessage(e.getMessage());
 				branchMergeJobRepository.save(mergeJob);
 				logger.error("Failed to merge branch",e);
+			} finally {
+				currentMergeJob.remove();
 			}
 		});
 
@@ -201,10 +210,12 @@ public class BranchMergeService {
 		if (rebase) {
 			// Rebase
 			logger.info("Performing rebase {} -> {}", source, target);
+			MergeProgress progress = new MergeProgress("Rebase " + source + " -> " + target);
 			// This just locks the target branch.
 			// Content will be taken from the latest complete commit on the source branch.
 			try (Commit commit = branchService.openRebaseCommit(targetBranch.getPath(), branchMetadataHelper.getBranchLockMetadata("Rebasing changes from " + source))) {
 				if (manuallyMergedConcepts != null && !manuallyMergedConcepts.isEmpty()) {
+					progress.stage("Save manually merged concepts");
 					Set<String> conceptsToDelete = manuallyMergedConcepts.stream()
 							.filter(Concept::isDeleted).map(Concept::getConceptId).collect(Collectors.toSet());
 					if (!conceptsToDelete.isEmpty()) {
@@ -228,27 +239,35 @@ public class BranchMergeService {
 				BranchCriteria changesOnBranchIncludingOpenCommit = versionControlHelper.getChangesOnBranchIncludingOpenCommit(commit);
 				BranchCriteria branchCriteriaIncludingOpenCommit = versionControlHelper.getBranchCriteriaIncludingOpenCommit(commit);
 				// Merge inferred relationships
+				progress.stage("Remove duplicate relationship versions");
 				removeRebaseDuplicateVersions(Relationship.class, boolQuery().must(termQuery(Relationship.Fields.CHARACTERISTIC_TYPE_ID, Concepts.INFERRED_RELATIONSHIP)),
 						changesOnBranchIncludingOpenCommit, branchCriteriaIncludingOpenCommit, commit);
 				// Merge descriptions (all types to be safe)
+				progress.stage("Remove duplicate description versions");
 				removeRebaseDuplicateVersions(Description.class, boolQuery(), changesOnBranchIncludingOpenCommit, branchCriteriaIncludingOpenCommit, commit);
 				// Merge non-concept reference set members
+				progress.stage("Remove duplicate refset member versions");
 				removeRebaseDuplicateVersions(ReferenceSetMember.class, boolQuery().mustNot(existsQuery(ReferenceSetMember.Fields.CONCEPT_ID)), changesOnBranchIncludingOpenCommit, branchCriteriaIncludingOpenCommit, commit);
 				// Prefer latest edited versioned content
-				removeRebaseDivergedVersions(ReferenceSetMember.class, ReferenceSetMember.Fields.MEMBER_ID, changesOnBranchIncludingOpenCommit, branchCriteriaIncludingOpenCommit, commit);
+				progress.stage("Remove diverged refset member versions");
+				removeRebaseDivergedVersions(ReferenceSetMember.class, ReferenceSetMember.Fields.MEMBER_ID, changesOnBranchIncludingOpenCommit, branchCriteriaIncludingOpenCommit, commit, progress);
 
 				// add integrity metadata in target branch if integrity issue found in source.
 				updateIntegrityMetadata(sourceBranch, commit.getBranch());
+				progress.stage("Complete commit");
 				commit.markSuccessful();
 			}
+			progress.finish();
 		} else {
 			// Promotion
+			MergeProgress progress = new MergeProgress("Promotion " + source + " -> " + target);
 			// Locks both branches until exiting this try block closes the commit
 			try (Commit commit = branchService.openPromotionCommit(targetBranch.getPath(), source,
 					branchMetadataHelper.getBranchLockMetadata("Promoting changes to " + targetBranch.getPath()),
 					branchMetadataHelper.getBranchLockMetadata("Receiving promotion from " + source))) {
 
 				logger.info("Integrity check before promotion of {}", source);
+				progress.stage("Integrity check");
 				IntegrityIssueReport issueReport = integrityService.findChangedComponentsWithBadIntegrityNotFixed(sourceBranch);
 				if (!issueReport.isEmpty()) {
 					logger.error("Aborting promotion of {}. Integrity issues found: {}", source, issueReport);
@@ -257,12 +276,15 @@ public class BranchMergeService {
 				}
 
 				logger.info("Performing promotion {} -> {}", source, target);
+				progress.stage("Promote content");
 				final Map<String, Set<String>> versionsReplaced = sourceBranch.getVersionsReplaced();
 				final Map<Class<? extends DomainEntity>, ElasticsearchRepository> componentTypeRepoMap = domainEntityConfiguration.getAllTypeRepositoryMap();
 				componentTypeRepoMap.entrySet().parallelStream().forEach(entry -> promoteEntities(source, commit, entry.getKey(), entry.getValue(), versionsReplaced));
 
+				progress.stage("Complete commit");
 				commit.markSuccessful();
 			}
+			progress.finish();
 		}
 	}
 
@@ -273,7 +295,8 @@ public class BranchMergeService {
 		}
 	}
 
-	private <T extends SnomedComponent<T>> void removeRebaseDivergedVersions(Class<T> componentClass, String idField, BranchCriteria changesOnBranchIncludingOpenCommit, BranchCriteria branchCriteriaIncludingOpenCommit, Commit commit) {
+	private <T extends SnomedComponent<T>> void removeRebaseDivergedVersions(Class<T> componentClass, String idField, BranchCriteria changesOnBranchIncludingOpenCommit, BranchCriteria branchCriteriaIncludingOpenCommit, Commit commit,
+			MergeProgress progress) {
 		// Find edited versioned content on branch
 		String path = commit.getBranch().getPath();
 		Map<String, T> editedVersionedContent = new HashMap<>(); // K => Id, V => Content
@@ -300,39 +323,45 @@ public class BranchMergeService {
 			});
 		}
 
-		// Find equivalent versioned content on parent
+		// Find equivalent versioned content on parent, one terms query per batch of components with the same parent path
+		Map<String, List<String>> componentIdsByParentPath = new HashMap<>();
+		for (T component : editedVersionedContent.values()) {
+			String componentPath = component.getPath();
+			String componentParentPath = PathUtil.getParentPath(componentPath);
+			if (componentParentPath != null && !componentParentPath.equals(componentPath)) {
+				componentIdsByParentPath.computeIfAbsent(componentParentPath, parentPath -> new ArrayList<>()).add(component.getId());
+			}
+		}
 		Map<String, T> equivalentVersionedContentOnParent = new HashMap<>(); // K => Id, V => Content
-		if (!editedVersionedContent.isEmpty()) {
-			for (Map.Entry<String, T> entrySet : editedVersionedContent.entrySet()) {
-				String componentId = entrySet.getKey();
-				T component = entrySet.getValue();
-				String componentPath = component.getPath();
-				String componentParentPath = PathUtil.getParentPath(componentPath);
-
-				if (componentParentPath != null && !componentParentPath.equals(componentPath)) {
-					NativeSearchQueryBuilder equivalentVersionedContentOnParentQuery = new NativeSearchQueryBuilder();
-					equivalentVersionedContentOnParentQuery
-							.withQuery(
-									boolQuery()
-											.must(existsQuery(RELEASE_HASH))
-											.must(termQuery(PATH, componentParentPath))
-											.must(termQuery(idField, componentId))
-											.mustNot(existsQuery(END))
-							)
-							.withFields(
-									PATH, RELEASED, RELEASED_EFFECTIVE_TIME,
-									ReferenceSetMember.Fields.MEMBER_ID, ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID,
-									ReferenceSetMember.Fields.REFSET_ID
-							)
-							.withPageable(LARGE_PAGE);
-					try (SearchHitsIterator<T> stream = elasticsearchTemplate.searchForStream(equivalentVersionedContentOnParentQuery.build(), componentClass)) {
-						stream.forEachRemaining(hit -> equivalentVersionedContentOnParent.put(hit.getContent().getId(), hit.getContent()));
-					}
+		int componentsChecked = 0;
+		for (Map.Entry<String, List<String>> parentPathComponentIds : componentIdsByParentPath.entrySet()) {
+			String componentParentPath = parentPathComponentIds.getKey();
+			for (List<String> componentIdsBatch : Iterables.partition(parentPathComponentIds.getValue(), CLAUSE_LIMIT)) {
+				NativeSearchQueryBuilder equivalentVersionedContentOnParentQuery = new NativeSearchQueryBuilder();
+				equivalentVersionedContentOnParentQuery
+						.withQuery(
+								boolQuery()
+										.must(existsQuery(RELEASE_HASH))
+										.must(termQuery(PATH, componentParentPath))
+										.mustNot(existsQuery(END))
+						)
+						.withFilter(termsQuery(idField, componentIdsBatch))
+						.withFields(
+								PATH, RELEASED, RELEASED_EFFECTIVE_TIME,
+								ReferenceSetMember.Fields.MEMBER_ID, ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID,
+								ReferenceSetMember.Fields.REFSET_ID
+						)
+						.withPageable(LARGE_PAGE);
+				try (SearchHitsIterator<T> stream = elasticsearchTemplate.searchForStream(equivalentVersionedContentOnParentQuery.build(), componentClass)) {
+					stream.forEachRemaining(hit -> equivalentVersionedContentOnParent.put(hit.getContent().getId(), hit.getContent()));
 				}
+				componentsChecked += componentIdsBatch.size();
+				progress.update(String.format("Remove diverged %s versions, checked %,d of %,d on parent", componentClass.getSimpleName(), componentsChecked, editedVersionedContent.size()));
 			}
 		}
 
 		// End versions on branch if parent has a newer versioned date
+		List<T> divergedVersions = new ArrayList<>();
 		for (Map.Entry<String, T> entrySet : equivalentVersionedContentOnParent.entrySet()) {
 			String componentId = entrySet.getKey();
 			T parent = entrySet.getValue();
@@ -342,13 +371,16 @@ public class BranchMergeService {
 			if (childIsDiverged) {
 				Date timepoint = commit.getTimepoint();
 				child.setEnd(timepoint);
-				ElasticsearchRepository repository = domainEntityConfiguration.getComponentTypeRepositoryMap().get(componentClass);
-				repository.save(child);
+				divergedVersions.add(child);
 
 				logger.info("Component {} on branch {} ({}) has different releasedEffectiveTime from parent branch ({}).", componentId, path, child.getReleasedEffectiveTime(), parent.getReleasedEffectiveTime());
 				logger.info("Ended component {} on {} at timepoint {} to match current commit.", componentId, path, timepoint);
 			}
 		}
+		if (!divergedVersions.isEmpty()) {
+			ElasticsearchRepository repository = domainEntityConfiguration.getComponentTypeRepositoryMap().get(componentClass);
+			repository.saveAll(divergedVersions);
+		}
 	}
 
 	private <T extends SnomedComponent<T>> void removeRebaseDuplicateVersions(Class<T> componentClass, QueryBuilder clause,
@@ -458,6 +490,7 @@ public class BranchMergeService {
 
 		// Hide duplicate components in extension module if extension components have the most recent released effective time
 		// End duplicate components in extension module if international components have the most recent released effective time
+		Set<String> endedIds = new HashSet<>();
 		for (List<String> duplicateIdsBatch : Iterables.partition(duplicateIds, 10_000)) {
 			// International versions
 			List<? extends SnomedComponent> intVersions = elasticsearchTemplate.search(new NativeSearchQueryBuilder()
@@ -469,15 +502,21 @@ public class BranchMergeService {
 					.stream().map(SearchHit::getContent)
 					.collect(Collectors.toList());
 
+			// Extension versions, fetched for the whole batch rather than one query per component
+			Map<String, List<SnomedComponent>> extensionVersionsById = new HashMap<>();
+			try (SearchHitsIterator<? extends SnomedComponent> extensionVersionStream = elasticsearchTemplate.searchForStream(new NativeSearchQueryBuilder()
+					.withQuery(boolQuery().must(entityBranchCriteria)
+							.must(termsQuery(idField, duplicateIdsBatch))
+							.must(termQuery("path", branch)))
+					.withPageable(LARGE_PAGE)
+					.build(), clazz)) {
+				extensionVersionStream.forEachRemaining(hit -> extensionVersionsById.computeIfAbsent(hit.getContent().getId(), id -> new ArrayList<>()).add(hit.getContent()));
+			}
+
+			List<SnomedComponent> endedVersions = new ArrayList<>();
 			for (SnomedComponent intVersion : intVersions) {
 				String duplicateId = intVersion.getId();
-				List<? extends SnomedComponent> extensionVersionList = elasticsearchTemplate.search(new NativeSearchQueryBuilder()
-						.withQuery(boolQuery().must(entityBranchCriteria)
-								.must(termQuery(idField, duplicateId))
-								.must(termQuery("path", branch)))
-						.build(), clazz)
-						.stream().map(SearchHit::getContent)
-						.collect(Collectors.toList());
+				List<SnomedComponent> extensionVersionList = extensionVersionsById.getOrDefault(duplicateId, Collections.emptyList());
 				if (extensionVersionList.size() != 1) {
 					throw new IllegalStateException(String.format("During fix stage expecting 1 extension version but found %s for id %s", extensionVersionList.size(), clazz));
 				}
@@ -486,14 +525,20 @@ public class BranchMergeService {
 				if (endThisVersion && intVersion.isReleasedMoreRecentlyThan(extensionVersion)) {
 					// End duplicate components in extension module
 					extensionVersion.setEnd(commit.getTimepoint());
-					repository.save(extensionVersion);
-					BranchMetadataHelper.getRebaseDuplicatesRemoved(commit).put(extensionVersion.getClass().getSimpleName(), Set.of(extensionVersion.getId()));
+					endedVersions.add(extensionVersion);
+					endedIds.add(extensionVersion.getId());
 					logger.info("Ended {} on {} at timepoint {} to match current commit.", duplicateId, branch, commit.getTimepoint());
 				} else {
 					// Hide parent version
 					commit.addVersionsReplaced(Collections.singleton(intVersion.getInternalId()), clazz);
 				}
 			}
+			if (!endedVersions.isEmpty()) {
+				repository.saveAll(endedVersions);
+			}
+		}
+		if (!endedIds.isEmpty()) {
+			BranchMetadataHelper.getRebaseDuplicatesRemoved(commit).put(clazz.getSimpleName(), endedIds);
 		}
 
 		fixesApplied.put(clazz, duplicateIds);
@@ -598,4 +643,50 @@ public class BranchMergeService {
 		this.branchReviewService = branchReviewService;
 	}
 
+	/**
+	 * Logs the time taken by each stage of a merge. When the merge runs as a job the current stage
+	 * and the time taken by each completed stage are also saved on the job.
+	 */
+	private class MergeProgress {
+
+		private final BranchMergeJob mergeJob;
+		private final TimerUtil timer;
+		private String stage;
+		private long stageStart;
+
+		private MergeProgress(String timerName) {
+			mergeJob = currentMergeJob.get();
+			timer = new TimerUtil(timerName, Level.INFO, 1).publishMetrics("merge");
+		}
+
+		private void stage(String nextStage) {
+			completeStage();
+			stage = nextStage;
+			stageStart = System.currentTimeMillis();
+			update(nextStage);
+		}
+
+		private void update(String progress) {
+			if (mergeJob != null) {
+				mergeJob.setProgress(progress);
+				branchMergeJobRepository.save(mergeJob);
+			}
+		}
+
+		private void finish() {
+			completeStage();
+			stage = null;
+			timer.finish();
+		}
+
+		private void completeStage() {
+			if (stage != null) {
+				timer.checkpoint(stage);
+				if (mergeJob != null) {
+					mergeJob.addStageDuration(stage, System.currentTimeMillis() - stageStart);
+				}
+			}
+		}
+	}
+
 }
@@ -25,6 +25,8 @@ import org.snomed.snowstorm.core.pojo.LanguageDialect;
 import org.snomed.snowstorm.core.util.PageHelper;
 import org.snomed.snowstorm.core.util.TimerUtil;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
@@ -36,6 +38,7 @@ import org.springframework.data.elasticsearch.core.SearchHitsIterator;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
 import org.springframework.data.elasticsearch.core.query.Query;
 import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
@@ -45,6 +48,7 @@ import javax.annotation.Nullable;
 import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
@@ -118,6 +122,13 @@ public class ConceptService extends ComponentService {
 	@Autowired
 	private QueryService queryService;
 
+	@Value("${concepts.load.concurrent-joins.enabled}")
+	private boolean concurrentJoins;
+
+	@Autowired
+	@Qualifier("conceptJoinExecutor")
+	private ThreadPoolTaskExecutor joinExecutor;
+
 	private final Cache<String, AsyncConceptChangeBatch> batchConceptChanges;
 
 	private final Cache<BranchTimepoint, BranchCriteria> branchCriteriaCache = CacheBuilder.newBuilder().expireAfterAccess(Duration.ofDays(1)).build();
@@ -361,7 +372,7 @@ public class ConceptService extends ComponentService {
 			boolean includeDescriptionInactivationInfo,
 			String branchPath) {
 
-		final TimerUtil timer = new TimerUtil("Find concept", Level.DEBUG);
+		final TimerUtil timer = new TimerUtil("Find concept", Level.DEBUG).publishMetrics("find-concept");
 		timer.checkpoint("get branch criteria");
 
 		NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder();
@@ -403,44 +414,24 @@ public class ConceptService extends ComponentService {
 
 		Map<String, ConceptMini> conceptMiniMap = new HashMap<>();
 
-		if (includeRelationships) {
-			// Fetch Relationships
-			joinRelationships(conceptIdMap, conceptMiniMap, languageDialects, branchPath, branchCriteria, timer, false);
-
-			// Fetch Axioms
-			for (List<String> conceptIds : Iterables.partition(conceptIdMap.keySet(), CLAUSE_LIMIT)) {
-				queryBuilder.withQuery(boolQuery()
-						.must(termQuery(ReferenceSetMember.Fields.REFSET_ID, Concepts.OWL_AXIOM_REFERENCE_SET))
-						.must(termsQuery(ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID, conceptIds))
-						.must(branchCriteria.getEntityBranchCriteria(ReferenceSetMember.class)))
-						.withPageable(LARGE_PAGE);
-
-				try (final SearchHitsIterator<ReferenceSetMember> axiomMembers = elasticsearchTemplate.searchForStream(queryBuilder.build(), ReferenceSetMember.class)) {
-					axiomMembers.forEachRemaining(axiomMember -> joinAxiom(axiomMember.getContent(), conceptIdMap, conceptMiniMap, languageDialects));
-				}
-			}
-			timer.checkpoint("get axioms " + getFetchCount(conceptIdMap.size()));
-		}
+		if (concurrentJoins && !conceptIdMap.isEmpty()) {
+			joinComponentsConcurrently(conceptIdMap, conceptMiniMap, languageDialects, branchCriteria, includeRelationships, includeDescriptionInactivationInfo, branchPath, timer);
+		} else {
+			if (includeRelationships) {
+				// Fetch Relationships
+				joinRelationships(conceptIdMap, conceptMiniMap, languageDialects, branchPath, branchCriteria, timer, false);
 
-		// Fetch ConceptMini definition statuses
-		for (List<String> conceptIds : Iterables.partition(conceptMiniMap.keySet(), CLAUSE_LIMIT)) {
-			queryBuilder.withQuery(boolQuery()
-					.must(termsQuery("conceptId", conceptIds))
-					.must(branchCriteria.getEntityBranchCriteria(Concept.class)))
-					.withPageable(LARGE_PAGE);
-			try (final SearchHitsIterator<Concept> conceptsForMini = elasticsearchTemplate.searchForStream(queryBuilder.build(), Concept.class)) {
-				conceptsForMini.forEachRemaining(hit ->
-				{
-					Concept concept = hit.getContent();
-					ConceptMini conceptMini = conceptMiniMap.get(concept.getConceptId());
-					conceptMini.setDefinitionStatusId(concept.getDefinitionStatusId());
-					conceptMini.setModuleId(concept.getModuleId());
-				});
+				// Fetch Axioms
+				streamAxiomMembers(conceptIdMap.keySet(), branchCriteria, axiomMember -> joinAxiom(axiomMember, conceptIdMap, conceptMiniMap, languageDialects));
+				timer.checkpoint("get axioms " + getFetchCount(conceptIdMap.size()));
 			}
-		}
-		timer.checkpoint("get relationship def status " + getFetchCount(conceptMiniMap.size()));
 
-		descriptionService.joinDescriptions(branchCriteria, conceptIdMap, conceptMiniMap, timer, true, includeDescriptionInactivationInfo);
+			// Fetch ConceptMini definition statuses
+			streamConcepts(conceptMiniMap.keySet(), branchCriteria, concept -> joinConceptMiniDefinitionStatus(concept, conceptMiniMap));
+			timer.checkpoint("get relationship def status " + getFetchCount(conceptMiniMap.size()));
+
+			descriptionService.joinDescriptions(branchCriteria, conceptIdMap, conceptMiniMap, timer, true, includeDescriptionInactivationInfo);
+		}
 
 		conceptAttributeSortHelper.sortAttributes(conceptIdMap.values());
 		timer.checkpoint("Sort attributes");
@@ -450,11 +441,102 @@ public class ConceptService extends ComponentService {
 		return concepts;
 	}
 
+	/**
+	 * Fetches the components of the concepts on a bounded thread pool and joins them on this thread.
+	 * Relationships, axioms, descriptions, language refset members and concept inactivation members only depend on the concept ids so are fetched together.
+	 * Definition statuses and descriptions of the relationship type and target ConceptMinis, and description inactivation members, are then fetched together.
+	 * Unlike the sequential joins, inactivation members are only fetched for the descriptions of the loaded concepts, not those of the ConceptMinis.
+	 */
+	private void joinComponentsConcurrently(Map<String, Concept> conceptIdMap, Map<String, ConceptMini> conceptMiniMap, List<LanguageDialect> languageDialects,
+			BranchCriteria branchCriteria, boolean includeRelationships, boolean includeInactivationInfo, String branchPath, TimerUtil timer) {
+
+		Set<String> conceptIds = conceptIdMap.keySet();
+		Future<List<Relationship>> relationshipsFuture = null;
+		Future<List<ReferenceSetMember>> axiomMembersFuture = null;
+		if (includeRelationships) {
+			relationshipsFuture = fetchForJoin(consumer -> streamRelationships(conceptIds, branchCriteria, false, consumer));
+			axiomMembersFuture = fetchForJoin(consumer -> streamAxiomMembers(conceptIds, branchCriteria, consumer));
+		}
+		Future<List<Description>> descriptionsFuture = fetchForJoin(consumer -> descriptionService.streamDescriptions(branchCriteria, conceptIds, consumer));
+		Future<List<ReferenceSetMember>> langRefsetMembersFuture = fetchForJoin(consumer -> descriptionService.streamLangRefsetMembers(branchCriteria, conceptIds, consumer));
+		Future<List<ReferenceSetMember>> conceptInactivationMembersFuture = includeInactivationInfo ?
+				fetchForJoin(consumer -> descriptionService.streamInactivationIndicatorsAndAssociations(branchCriteria, conceptIds, consumer)) : null;
+
+		if (includeRelationships) {
+			List<Relationship> relationships = getJoinResults(relationshipsFuture);
+			relationships.forEach(relationship -> joinRelationship(relationship, conceptIdMap, conceptMiniMap, languageDialects));
+			setConcreteValuesFromMRCM(branchPath, relationships);
+			getJoinResults(axiomMembersFuture).forEach(axiomMember -> joinAxiom(axiomMember, conceptIdMap, conceptMiniMap, languageDialects));
+		}
+		Map<String, Description> descriptionIdMap = new HashMap<>();
+		getJoinResults(descriptionsFuture).forEach(description -> DescriptionService.joinDescription(description, conceptIdMap, conceptMiniMap, descriptionIdMap));
+		timer.checkpoint("get relationships, axioms and descriptions " + getFetchCount(conceptIdMap.size()));
+
+		// ConceptMinis of relationship types and targets are only known once relationships and axioms are joined
+		Set<String> miniOnlyConceptIds = new HashSet<>(conceptMiniMap.keySet());
+		miniOnlyConceptIds.removeAll(conceptIds);
+		Future<List<Concept>> conceptsForMiniFuture = fetchForJoin(consumer -> streamConcepts(conceptMiniMap.keySet(), branchCriteria, consumer));
+		Future<List<Description>> miniDescriptionsFuture = fetchForJoin(consumer -> descriptionService.streamDescriptions(branchCriteria, miniOnlyConceptIds, consumer));
+		Future<List<ReferenceSetMember>> miniLangRefsetMembersFuture = fetchForJoin(consumer -> descriptionService.streamLangRefsetMembers(branchCriteria, miniOnlyConceptIds, consumer));
+		Set<String> descriptionIds = new HashSet<>(descriptionIdMap.keySet());
+		Future<List<ReferenceSetMember>> descriptionInactivationMembersFuture = includeInactivationInfo ?
+				fetchForJoin(consumer -> descriptionService.streamInactivationIndicatorsAndAssociations(branchCriteria, descriptionIds, consumer)) : null;
+
+		getJoinResults(conceptsForMiniFuture).forEach(concept -> joinConceptMiniDefinitionStatus(concept, conceptMiniMap));
+		getJoinResults(miniDescriptionsFuture).forEach(description -> DescriptionService.joinDescription(description, conceptIdMap, conceptMiniMap, descriptionIdMap));
+		getJoinResults(langRefsetMembersFuture).forEach(member -> DescriptionService.joinLangRefsetMember(member, descriptionIdMap));
+		getJoinResults(miniLangRefsetMembersFuture).forEach(member -> DescriptionService.joinLangRefsetMember(member, descriptionIdMap));
+		if (includeInactivationInfo) {
+			getJoinResults(conceptInactivationMembersFuture).forEach(member -> descriptionService.joinInactivationIndicatorOrAssociation(member, conceptIdMap, descriptionIdMap));
+			getJoinResults(descriptionInactivationMembersFuture).forEach(member -> descriptionService.joinInactivationIndicatorOrAssociation(member, conceptIdMap, descriptionIdMap));
+		}
+		timer.checkpoint("get relationship def status, lang refset and inactivation refset " + getFetchCount(conceptMiniMap.size()));
+	}
+
+	private <T> Future<List<T>> fetchForJoin(Consumer<Consumer<T>> fetch) {
+		return joinExecutor.submit(() -> {
+			List<T> results = new ArrayList<>();
+			fetch.accept(results::add);
+			return results;
+		});
+	}
+
+	private <T> List<T> getJoinResults(Future<List<T>> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeServiceException("Interrupted while loading concept components.", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new RuntimeServiceException("Failed to load concept components.", e.getCause());
+		}
+	}
+
 	public void joinRelationships(Map<String, Concept> conceptIdMap, Map<String, ConceptMini> typeAndTargetConceptMiniMap, List<LanguageDialect> languageDialects,
 			String branchPath, BranchCriteria branchCriteria, TimerUtil timer, boolean activeOnly) {
 
+		List<Relationship> relationships = new ArrayList<>();
+		streamRelationships(conceptIdMap.keySet(), branchCriteria, activeOnly, relationship -> {
+			joinRelationship(relationship, conceptIdMap, typeAndTargetConceptMiniMap, languageDialects);
+			relationships.add(relationship);
+		});
+		setConcreteValuesFromMRCM(branchPath, relationships);
+		timer.checkpoint("get relationships " + getFetchCount(conceptIdMap.size()));
+	}
+
+	private void setConcreteValuesFromMRCM(String branchPath, List<Relationship> relationships) {
+		// The MRCM is resolved once for all relationships of the join
+		if (branchPath != null) {
+			relationshipService.setConcreteValueFromMRCM(branchPath, relationships.toArray(new Relationship[0]));
+		}
+	}
+
+	private void streamRelationships(Collection<String> sourceIds, BranchCriteria branchCriteria, boolean activeOnly, Consumer<Relationship> consumer) {
 		NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder();
-		for (List<String> conceptIds : Iterables.partition(conceptIdMap.keySet(), CLAUSE_LIMIT)) {
+		for (List<String> conceptIds : Iterables.partition(sourceIds, CLAUSE_LIMIT)) {
 			final BoolQueryBuilder boolQuery = boolQuery()
 					.must(termsQuery("sourceId", conceptIds))
 					.must(branchCriteria.getEntityBranchCriteria(Relationship.class));
@@ -463,22 +545,53 @@ public class ConceptService extends ComponentService {
 			}
 			queryBuilder.withQuery(boolQuery).withPageable(LARGE_PAGE);
 			try (final SearchHitsIterator<Relationship> relationships = elasticsearchTemplate.searchForStream(queryBuilder.build(), Relationship.class)) {
-				relationships.forEachRemaining(hit -> {
-					//Set concrete value
-					Relationship relationship = hit.getContent();
-					if (branchPath != null) {
-						relationshipService.setConcreteValueFromMRCM(branchPath, relationship);
-					}
-					// Join Relationships
-					conceptIdMap.get(relationship.getSourceId()).addRelationship(relationship);
+				relationships.forEachRemaining(hit -> consumer.accept(hit.getContent()));
+			}
+		}
+	}
 
-					// Add placeholders for relationship type and target details
-					relationship.setType(getConceptMini(typeAndTargetConceptMiniMap, relationship.getTypeId(), languageDialects));
-					relationship.setTarget(getConceptMini(typeAndTargetConceptMiniMap, relationship.getDestinationId(), languageDialects));
-				});
+	private void joinRelationship(Relationship relationship, Map<String, Concept> conceptIdMap, Map<String, ConceptMini> typeAndTargetConceptMiniMap,
+			List<LanguageDialect> languageDialects) {
+		// Join Relationships
+		conceptIdMap.get(relationship.getSourceId()).addRelationship(relationship);
+
+		// Add placeholders for relationship type and target details
+		relationship.setType(getConceptMini(typeAndTargetConceptMiniMap, relationship.getTypeId(), languageDialects));
+		relationship.setTarget(getConceptMini(typeAndTargetConceptMiniMap, relationship.getDestinationId(), languageDialects));
+	}
+
+	private void streamAxiomMembers(Collection<String> conceptIds, BranchCriteria branchCriteria, Consumer<ReferenceSetMember> consumer) {
+		NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder();
+		for (List<String> conceptIdsSegment : Iterables.partition(conceptIds, CLAUSE_LIMIT)) {
+			queryBuilder.withQuery(boolQuery()
+					.must(termQuery(ReferenceSetMember.Fields.REFSET_ID, Concepts.OWL_AXIOM_REFERENCE_SET))
+					.must(termsQuery(ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID, conceptIdsSegment))
+					.must(branchCriteria.getEntityBranchCriteria(ReferenceSetMember.class)))
+					.withPageable(LARGE_PAGE);
+
+			try (final SearchHitsIterator<ReferenceSetMember> axiomMembers = elasticsearchTemplate.searchForStream(queryBuilder.build(), ReferenceSetMember.class)) {
+				axiomMembers.forEachRemaining(hit -> consumer.accept(hit.getContent()));
 			}
 		}
-		timer.checkpoint("get relationships " + getFetchCount(conceptIdMap.size()));
+	}
+
+	private void streamConcepts(Collection<String> conceptIds, BranchCriteria branchCriteria, Consumer<Concept> consumer) {
+		NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder();
+		for (List<String> conceptIdsSegment : Iterables.partition(conceptIds, CLAUSE_LIMIT)) {
+			queryBuilder.withQuery(boolQuery()
+					.must(termsQuery("conceptId", conceptIdsSegment))
+					.must(branchCriteria.getEntityBranchCriteria(Concept.class)))
+					.withPageable(LARGE_PAGE);
+			try (final SearchHitsIterator<Concept> concepts = elasticsearchTemplate.searchForStream(queryBuilder.build(), Concept.class)) {
+				concepts.forEachRemaining(hit -> consumer.accept(hit.getContent()));
+			}
+		}
+	}
+
+	private void joinConceptMiniDefinitionStatus(Concept concept, Map<String, ConceptMini> conceptMiniMap) {
+		ConceptMini conceptMini = conceptMiniMap.get(concept.getConceptId());
+		conceptMini.setDefinitionStatusId(concept.getDefinitionStatusId());
+		conceptMini.setModuleId(concept.getModuleId());
 	}
 
 	/**
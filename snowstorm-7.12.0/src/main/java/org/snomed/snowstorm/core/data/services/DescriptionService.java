@@ -62,6 +62,7 @@ import org.springframework.util.CollectionUtils;
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
@@ -192,7 +193,7 @@ public class DescriptionService extends ComponentService {
 	}
 
 	public PageWithBucketAggregations<Description> findDescriptionsWithAggregations(String path, DescriptionCriteria criteria, PageRequest pageRequest) throws TooCostlyException {
-		TimerUtil timer = new TimerUtil("Search", Level.INFO, 5, new TimerUtil("Search DEBUG", Level.DEBUG));
+		TimerUtil timer = new TimerUtil("Search", Level.INFO, 5, new TimerUtil("Search DEBUG", Level.DEBUG)).publishMetrics("description-search");
 
 		final BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(path);
 		timer.checkpoint("Build branch criteria");
@@ -293,8 +294,6 @@ public class DescriptionService extends ComponentService {
 	void joinDescriptions(BranchCriteria branchCriteria, Map<String, Concept> conceptIdMap, Map<String, ConceptMini> conceptMiniMap,
 			TimerUtil timer, boolean fetchLangRefsetMembers, boolean fetchInactivationInfo) {
 
-		final NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder();
-
 		final Set<String> allConceptIds = new HashSet<>();
 		if (conceptIdMap != null) {
 			allConceptIds.addAll(conceptIdMap.keySet());
@@ -308,35 +307,7 @@ public class DescriptionService extends ComponentService {
 
 		// Fetch Descriptions
 		Map<String, Description> descriptionIdMap = new HashMap<>();
-		for (List<String> conceptIds : Iterables.partition(allConceptIds, CLAUSE_LIMIT)) {
-			queryBuilder.withQuery(boolQuery()
-							.must(branchCriteria.getEntityBranchCriteria(Description.class))
-							.must(termsQuery("conceptId", conceptIds)))
-					.withPageable(LARGE_PAGE);
-			try (final SearchHitsIterator<Description> descriptions = elasticsearchTemplate.searchForStream(queryBuilder.build(), Description.class)) {
-				descriptions.forEachRemaining(hit -> {
-					Description description = hit.getContent();
-					// Join Descriptions to concepts for loading whole concepts use case.
-					final String descriptionConceptId = description.getConceptId();
-					if (conceptIdMap != null) {
-						final Concept concept = conceptIdMap.get(descriptionConceptId);
-						if (concept != null) {
-							concept.addDescription(description);
-						}
-					}
-					// Join Description to ConceptMinis for search result use case.
-					if (conceptMiniMap != null) {
-						final ConceptMini conceptMini = conceptMiniMap.get(descriptionConceptId);
-						if (conceptMini != null && description.isActive()) {
-							conceptMini.addActiveDescription(description);
-						}
-					}
-
-					// Store Descriptions in a map for adding Lang Refset and inactivation members.
-					descriptionIdMap.putIfAbsent(description.getDescriptionId(), description);
-				});
-			}
-		}
+		streamDescriptions(branchCriteria, allConceptIds, description -> joinDescription(description, conceptIdMap, conceptMiniMap, descriptionIdMap));
 		if (timer != null) timer.checkpoint("get descriptions " + getFetchCount(allConceptIds.size()));
 
 		// Fetch Lang Refset Members
@@ -351,6 +322,40 @@ public class DescriptionService extends ComponentService {
 		}
 	}
 
+	void streamDescriptions(BranchCriteria branchCriteria, Collection<String> conceptIds, Consumer<Description> consumer) {
+		final NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder();
+		for (List<String> conceptIdsSegment : Iterables.partition(conceptIds, CLAUSE_LIMIT)) {
+			queryBuilder.withQuery(boolQuery()
+							.must(branchCriteria.getEntityBranchCriteria(Description.class))
+							.must(termsQuery("conceptId", conceptIdsSegment)))
+					.withPageable(LARGE_PAGE);
+			try (final SearchHitsIterator<Description> descriptions = elasticsearchTemplate.searchForStream(queryBuilder.build(), Description.class)) {
+				descriptions.forEachRemaining(hit -> consumer.accept(hit.getContent()));
+			}
+		}
+	}
+
+	static void joinDescription(Description description, Map<String, Concept> conceptIdMap, Map<String, ConceptMini> conceptMiniMap, Map<String, Description> descriptionIdMap) {
+		// Join Descriptions to concepts for loading whole concepts use case.
+		final String descriptionConceptId = description.getConceptId();
+		if (conceptIdMap != null) {
+			final Concept concept = conceptIdMap.get(descriptionConceptId);
+			if (concept != null) {
+				concept.addDescription(description);
+			}
+		}
+		// Join Description to ConceptMinis for search result use case.
+		if (conceptMiniMap != null) {
+			final ConceptMini conceptMini = conceptMiniMap.get(descriptionConceptId);
+			if (conceptMini != null && description.isActive()) {
+				conceptMini.addActiveDescription(description);
+			}
+		}
+
+		// Store Descriptions in a map for adding Lang Refset and inactivation members.
+		descriptionIdMap.putIfAbsent(description.getDescriptionId(), description);
+	}
+
 	public Map<String, Long> countActiveConceptsPerSemanticTag(String branch) {
 
 		Branch branchObject = branchService.findLatest(branch);
@@ -408,6 +413,11 @@ public class DescriptionService extends ComponentService {
 		} else {
 			componentIds = descriptionIdMap.keySet();
 		}
+		streamInactivationIndicatorsAndAssociations(branchCriteria, componentIds, member -> joinInactivationIndicatorOrAssociation(member, conceptIdMap, descriptionIdMap));
+		if (timer != null) timer.checkpoint("get inactivation refset " + getFetchCount(componentIds.size()));
+	}
+
+	void streamInactivationIndicatorsAndAssociations(BranchCriteria branchCriteria, Collection<String> componentIds, Consumer<ReferenceSetMember> consumer) {
 		final NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder();
 		for (List<String> componentIdsSegment : Iterables.partition(componentIds, CLAUSE_LIMIT)) {
 			queryBuilder.withQuery(boolQuery()
@@ -415,68 +425,71 @@ public class DescriptionService extends ComponentService {
 							.must(termsQuery("refsetId", Concepts.inactivationAndAssociationRefsets))
 							.must(termsQuery("referencedComponentId", componentIdsSegment)))
 					.withPageable(LARGE_PAGE);
-			// Join Members
 			try (final SearchHitsIterator<ReferenceSetMember> members = elasticsearchTemplate.searchForStream(queryBuilder.build(), ReferenceSetMember.class)) {
-				members.forEachRemaining(hit -> {
-					ReferenceSetMember member = hit.getContent();
-					String referencedComponentId = member.getReferencedComponentId();
-					switch (member.getRefsetId()) {
-						case Concepts.CONCEPT_INACTIVATION_INDICATOR_REFERENCE_SET:
-							conceptIdMap.get(referencedComponentId).addInactivationIndicatorMember(member);
-							break;
-						case Concepts.DESCRIPTION_INACTIVATION_INDICATOR_REFERENCE_SET:
-							descriptionIdMap.get(referencedComponentId).addInactivationIndicatorMember(member);
-							break;
-						default:
-							if (IdentifierService.isConceptId(referencedComponentId)) {
-								Concept concept = conceptIdMap.get(referencedComponentId);
-								if (concept != null) {
-									concept.addAssociationTargetMember(member);
-								} else {
-									logger.warn("Association ReferenceSetMember {} references concept {} " +
-											"which is not in scope.", member.getId(), referencedComponentId);
-								}
-							} else if (IdentifierService.isDescriptionId(referencedComponentId)) {
-								Description description = descriptionIdMap.get(referencedComponentId);
-								if (description != null) {
-									description.addAssociationTargetMember(member);
-								} else {
-									logger.warn("Association ReferenceSetMember {} references description {} " +
-											"which is not in scope.", member.getId(), referencedComponentId);
-								}
-							} else {
-								logger.error("Association ReferenceSetMember {} references unexpected component type {}", member.getId(), referencedComponentId);
-							}
-							break;
-					}
-				});
+				members.forEachRemaining(hit -> consumer.accept(hit.getContent()));
 			}
 		}
-		if (timer != null) timer.checkpoint("get inactivation refset " + getFetchCount(componentIds.size()));
+	}
+
+	void joinInactivationIndicatorOrAssociation(ReferenceSetMember member, Map<String, Concept> conceptIdMap, Map<String, Description> descriptionIdMap) {
+		String referencedComponentId = member.getReferencedComponentId();
+		switch (member.getRefsetId()) {
+			case Concepts.CONCEPT_INACTIVATION_INDICATOR_REFERENCE_SET:
+				conceptIdMap.get(referencedComponentId).addInactivationIndicatorMember(member);
+				break;
+			case Concepts.DESCRIPTION_INACTIVATION_INDICATOR_REFERENCE_SET:
+				descriptionIdMap.get(referencedComponentId).addInactivationIndicatorMember(member);
+				break;
+			default:
+				if (IdentifierService.isConceptId(referencedComponentId)) {
+					Concept concept = conceptIdMap.get(referencedComponentId);
+					if (concept != null) {
+						concept.addAssociationTargetMember(member);
+					} else {
+						logger.warn("Association ReferenceSetMember {} references concept {} " +
+								"which is not in scope.", member.getId(), referencedComponentId);
+					}
+				} else if (IdentifierService.isDescriptionId(referencedComponentId)) {
+					Description description = descriptionIdMap.get(referencedComponentId);
+					if (description != null) {
+						description.addAssociationTargetMember(member);
+					} else {
+						logger.warn("Association ReferenceSetMember {} references description {} " +
+								"which is not in scope.", member.getId(), referencedComponentId);
+					}
+				} else {
+					logger.error("Association ReferenceSetMember {} references unexpected component type {}", member.getId(), referencedComponentId);
+				}
+				break;
+		}
 	}
 
 	private void joinLangRefsetMembers(BranchCriteria branchCriteria, Set<String> allConceptIds, Map<String, Description> descriptionIdMap) {
+		streamLangRefsetMembers(branchCriteria, allConceptIds, langRefsetMember -> joinLangRefsetMember(langRefsetMember, descriptionIdMap));
+	}
+
+	void streamLangRefsetMembers(BranchCriteria branchCriteria, Collection<String> conceptIds, Consumer<ReferenceSetMember> consumer) {
 		NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder();
-		for (List<String> conceptIds : Iterables.partition(allConceptIds, CLAUSE_LIMIT)) {
+		for (List<String> conceptIdsSegment : Iterables.partition(conceptIds, CLAUSE_LIMIT)) {
 
 			queryBuilder.withQuery(boolQuery()
 							.must(branchCriteria.getEntityBranchCriteria(ReferenceSetMember.class))
 							.must(termsQuery(ACCEPTABILITY_ID_FIELD_PATH, Concepts.PREFERRED, Concepts.ACCEPTABLE))
-							.must(termsQuery("conceptId", conceptIds)))
+							.must(termsQuery("conceptId", conceptIdsSegment)))
 					.withPageable(LARGE_PAGE);
-			// Join Lang Refset Members
 			try (final SearchHitsIterator<ReferenceSetMember> langRefsetMembers = elasticsearchTemplate.searchForStream(queryBuilder.build(), ReferenceSetMember.class)) {
-				langRefsetMembers.forEachRemaining(hit -> {
-					ReferenceSetMember langRefsetMember = hit.getContent();
-					Description description = descriptionIdMap.get(langRefsetMember.getReferencedComponentId());
-					if (description != null) {
-						description.addLanguageRefsetMember(langRefsetMember);
-					}
-				});
+				langRefsetMembers.forEachRemaining(hit -> consumer.accept(hit.getContent()));
 			}
 		}
 	}
 
+	static void joinLangRefsetMember(ReferenceSetMember langRefsetMember, Map<String, Description> descriptionIdMap) {
+		Description description = descriptionIdMap.get(langRefsetMember.getReferencedComponentId());
+		if (description != null) {
+			description.addLanguageRefsetMember(langRefsetMember);
+		}
+	}
+
 	public void joinActiveDescriptions(String path, Map<String, ConceptMini> conceptMiniMap) {
 		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(path);
 		NativeSearchQuery searchQuery = new NativeSearchQueryBuilder()
@@ -642,24 +655,7 @@ public class DescriptionService extends ComponentService {
 	DescriptionMatches findDescriptionAndConceptIds(DescriptionCriteria criteria, Set<Long> conceptIdsCriteria, BranchCriteria branchCriteria, TimerUtil timer) throws TooCostlyException {
 
 		// Build up the description criteria
-		final BoolQueryBuilder descriptionQuery = boolQuery();
-		BoolQueryBuilder descriptionBranchCriteria = branchCriteria.getEntityBranchCriteria(Description.class);
-		descriptionQuery.must(descriptionBranchCriteria);
-		addTermClauses(criteria.getTerm(), criteria.getSearchMode(), criteria.getSearchLanguageCodes(), criteria.getType(), descriptionQuery);
-
-		Boolean active = criteria.getActive();
-		if (active != null) {
-			descriptionQuery.must(termQuery(Description.Fields.ACTIVE, active));
-		}
-
-		Collection<String> modules = criteria.getModules();
-		if (!CollectionUtils.isEmpty(modules)) {
-			descriptionQuery.must(termsQuery(Description.Fields.MODULE_ID, modules));
-		}
-
-		if (!CollectionUtils.isEmpty(conceptIdsCriteria)) {
-			descriptionQuery.must(termsQuery(Description.Fields.CONCEPT_ID, conceptIdsCriteria));
-		}
+		final BoolQueryBuilder descriptionQuery = getDescriptionQuery(criteria, conceptIdsCriteria, branchCriteria);
 
 		// First pass search to collect all description and concept ids.
 		final Map<Long, Long> descriptionToConceptMap = new Long2ObjectLinkedOpenHashMap<>();
@@ -687,71 +683,9 @@ public class DescriptionService extends ComponentService {
 		timer.checkpoint("Collect all description and concept ids");
 
 		// Second pass to apply lang refset filter
-		Set<Long> preferredIn = criteria.getPreferredIn();
-		Set<Long> acceptableIn = criteria.getAcceptableIn();
-		Set<Long> preferredOrAcceptableIn = criteria.getPreferredOrAcceptableIn();
 		Set<Long> conceptIds;
-		if (!CollectionUtils.isEmpty(preferredIn) || !CollectionUtils.isEmpty(acceptableIn)
-				|| !CollectionUtils.isEmpty(preferredOrAcceptableIn) || !CollectionUtils.isEmpty(criteria.getDisjunctionAcceptabilityCriteria())) {
-
-			BoolQueryBuilder queryBuilder = boolQuery()
-					.must(branchCriteria.getEntityBranchCriteria(ReferenceSetMember.class))
-					.must(termQuery(ReferenceSetMember.Fields.ACTIVE, true));
-
-			if (!CollectionUtils.isEmpty(preferredIn)) {
-				queryBuilder
-						.must(termsQuery(REFSET_ID, preferredIn))
-						.must(termQuery(ACCEPTABILITY_ID_FIELD_PATH, Concepts.PREFERRED));
-			}
-			if (!CollectionUtils.isEmpty(acceptableIn)) {
-				queryBuilder
-						.must(termsQuery(REFSET_ID, acceptableIn))
-						.must(termQuery(ACCEPTABILITY_ID_FIELD_PATH, Concepts.ACCEPTABLE));
-			}
-			if (!CollectionUtils.isEmpty(preferredOrAcceptableIn)) {
-				queryBuilder
-						.must(termsQuery(REFSET_ID, preferredOrAcceptableIn))
-						.must(termsQuery(ACCEPTABILITY_ID_FIELD_PATH, Sets.newHashSet(Concepts.PREFERRED, Concepts.ACCEPTABLE)));
-			}
-			// processing DisjunctionAcceptabilityCriteria
-			if (criteria.getDisjunctionAcceptabilityCriteria() != null) {
-				for (DescriptionCriteria.DisjunctionAcceptabilityCriteria disjunctionCriteria : criteria.getDisjunctionAcceptabilityCriteria()) {
-					BoolQueryBuilder shouldClause = boolQuery();
-					if (!CollectionUtils.isEmpty(disjunctionCriteria.getPreferred())) {
-						disjunctionCriteria.getPreferred().forEach(refsetId -> {
-							shouldClause.should(boolQuery()
-									.must(termQuery(REFSET_ID, refsetId))
-									.must(termQuery(ACCEPTABILITY_ID_FIELD_PATH, Concepts.PREFERRED)));
-						});
-					}
-					if (!CollectionUtils.isEmpty(acceptableIn)) {
-						disjunctionCriteria.getPreferred().forEach(refsetId -> {
-							shouldClause.should(boolQuery()
-									.must(termQuery(REFSET_ID, refsetId))
-									.must(termQuery(ACCEPTABILITY_ID_FIELD_PATH, Concepts.ACCEPTABLE)));
-						});
-					}
-					if (!CollectionUtils.isEmpty(preferredOrAcceptableIn)) {
-						shouldClause.should(boolQuery()
-								.must(termsQuery(REFSET_ID, preferredOrAcceptableIn))
-								.must(termsQuery(ACCEPTABILITY_ID_FIELD_PATH, Sets.newHashSet(Concepts.PREFERRED, Concepts.ACCEPTABLE))));
-					}
-					if (!shouldClause.should().isEmpty()) {
-						queryBuilder.must(shouldClause);
-					}
-				}
-			}
-
-			NativeSearchQuery nativeSearchQuery = new NativeSearchQueryBuilder()
-					.withQuery(queryBuilder)
-					.withFilter(termsQuery(ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID, descriptionToConceptMap.keySet()))
-					.withFields(ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID)
-					.withPageable(LARGE_PAGE)
-					.build();
-			Set<Long> filteredDescriptionIds = new LongOpenHashSet();
-			try (SearchHitsIterator<ReferenceSetMember> stream = elasticsearchTemplate.searchForStream(nativeSearchQuery, ReferenceSetMember.class)) {
-				stream.forEachRemaining(hit -> filteredDescriptionIds.add(parseLong(hit.getContent().getReferencedComponentId())));
-			}
+		if (hasAcceptabilityCriteria(criteria)) {
+			Set<Long> filteredDescriptionIds = findDescriptionIdsWithAcceptability(criteria, descriptionToConceptMap.keySet(), branchCriteria);
 
 			// Create new map of descriptions and concepts, keeping the original description order.
 			Map<Long, Long> filteredDescriptionToConceptMap = new Long2ObjectLinkedOpenHashMap<>();
@@ -771,41 +705,13 @@ public class DescriptionService extends ComponentService {
 
 			// Apply concept active filter
 			if (criteria.getConceptActive() != null) {
-				List<Long> filteredConceptIds = new LongArrayList();
-				try (SearchHitsIterator<Concept> stream = elasticsearchTemplate.searchForStream(
-						new NativeSearchQueryBuilder()
-								.withQuery(boolQuery()
-										.must(termQuery(Concept.Fields.ACTIVE, criteria.getConceptActive()))
-										.filter(branchCriteria.getEntityBranchCriteria(Concept.class))
-										.filter(termsQuery(Concept.Fields.CONCEPT_ID, conceptIds))
-								)
-								.withSort(SortBuilders.fieldSort("_doc"))
-								.withFields(Concept.Fields.CONCEPT_ID)
-								.withPageable(LARGE_PAGE)
-								.build(), Concept.class)) {
-					stream.forEachRemaining(hit -> filteredConceptIds.add(hit.getContent().getConceptIdAsLong()));
-				}
-				conceptIds = filterOrderedSet(conceptIds, filteredConceptIds);
+				conceptIds = filterOrderedSet(conceptIds, findConceptIdsWithActiveStatus(criteria.getConceptActive(), conceptIds, branchCriteria));
 				timer.checkpoint("Concept active filtering");
 			}
 
 			// Apply refset filter
 			if (!Strings.isNullOrEmpty(criteria.getConceptRefset())) {
-				List<Long> filteredConceptIds = new LongArrayList();
-				try (SearchHitsIterator<ReferenceSetMember> stream = elasticsearchTemplate.searchForStream(
-						new NativeSearchQueryBuilder()
-								.withQuery(boolQuery()
-										.must(termQuery(REFSET_ID, criteria.getConceptRefset()))
-										.filter(branchCriteria.getEntityBranchCriteria(ReferenceSetMember.class))
-										.filter(termsQuery(ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID, conceptIds))
-								)
-								.withSort(SortBuilders.fieldSort("_doc"))
-								.withFields(ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID)
-								.withPageable(LARGE_PAGE)
-								.build(), ReferenceSetMember.class)) {
-					stream.forEachRemaining(hit -> filteredConceptIds.add(parseLong(hit.getContent().getReferencedComponentId())));
-				}
-				conceptIds = filterOrderedSet(conceptIds, filteredConceptIds);
+				conceptIds = filterOrderedSet(conceptIds, findConceptIdsInRefset(criteria.getConceptRefset(), conceptIds, branchCriteria));
 				timer.checkpoint("Concept refset filtering");
 			}
 		}
@@ -826,6 +732,192 @@ public class DescriptionService extends ComponentService {
 		return new DescriptionMatches(descriptions, conceptIds, descriptionQuery);
 	}
 
+	/**
+	 * Streams the ids of concepts with matching descriptions in the same order as {@link #findDescriptionAndConceptIds}, without collecting the whole
+	 * result set first. Descriptions are fetched and filtered in chunks. Each concept id is passed to the consumer once, as part of a chunk.
+	 * Streaming stops when the consumer returns false or when there are no more matches.
+	 */
+	void streamDescriptionConceptIds(DescriptionCriteria criteria, Set<Long> conceptIdsCriteria, BranchCriteria branchCriteria, int chunkSize,
+			Predicate<List<Long>> chunkConsumer) {
+
+		BoolQueryBuilder descriptionQuery = getDescriptionQuery(criteria, conceptIdsCriteria, branchCriteria);
+		NativeSearchQuery searchQuery = new NativeSearchQueryBuilder()
+				.withQuery(descriptionQuery)
+				.withFields(Description.Fields.DESCRIPTION_ID, Description.Fields.CONCEPT_ID)
+				.withPageable(PageRequest.of(0, chunkSize))
+				.build();
+		addTermSort(searchQuery);
+
+		Set<Long> conceptIdsStreamed = new LongOpenHashSet();
+		Map<Long, Long> descriptionToConceptMap = new Long2ObjectLinkedOpenHashMap<>();
+		try (SearchHitsIterator<Description> stream = elasticsearchTemplate.searchForStream(searchQuery, Description.class)) {
+			while (stream.hasNext()) {
+				Description description = stream.next().getContent();
+				descriptionToConceptMap.put(parseLong(description.getDescriptionId()), parseLong(description.getConceptId()));
+				if (descriptionToConceptMap.size() == chunkSize || !stream.hasNext()) {
+					List<Long> conceptIdChunk = filterDescriptionChunk(criteria, descriptionToConceptMap, conceptIdsStreamed, branchCriteria);
+					descriptionToConceptMap.clear();
+					if (!conceptIdChunk.isEmpty() && !chunkConsumer.test(conceptIdChunk)) {
+						return;
+					}
+				}
+			}
+		}
+	}
+
+	private List<Long> filterDescriptionChunk(DescriptionCriteria criteria, Map<Long, Long> descriptionToConceptMap, Set<Long> conceptIdsStreamed,
+			BranchCriteria branchCriteria) {
+
+		Set<Long> acceptableDescriptionIds = hasAcceptabilityCriteria(criteria) ?
+				findDescriptionIdsWithAcceptability(criteria, descriptionToConceptMap.keySet(), branchCriteria) : null;
+
+		// Unique concept ids keeping the order that the descriptions were found, skipping concepts already streamed
+		List<Long> conceptIds = new LongArrayList();
+		for (Map.Entry<Long, Long> entry : descriptionToConceptMap.entrySet()) {
+			if ((acceptableDescriptionIds == null || acceptableDescriptionIds.contains(entry.getKey())) && conceptIdsStreamed.add(entry.getValue())) {
+				conceptIds.add(entry.getValue());
+			}
+		}
+		if (!conceptIds.isEmpty() && criteria.getConceptActive() != null) {
+			Set<Long> activeFiltered = new LongOpenHashSet(findConceptIdsWithActiveStatus(criteria.getConceptActive(), conceptIds, branchCriteria));
+			conceptIds.removeIf(conceptId -> !activeFiltered.contains(conceptId));
+		}
+		if (!conceptIds.isEmpty() && !Strings.isNullOrEmpty(criteria.getConceptRefset())) {
+			Set<Long> refsetFiltered = new LongOpenHashSet(findConceptIdsInRefset(criteria.getConceptRefset(), conceptIds, branchCriteria));
+			conceptIds.removeIf(conceptId -> !refsetFiltered.contains(conceptId));
+		}
+		return conceptIds;
+	}
+
+	private BoolQueryBuilder getDescriptionQuery(DescriptionCriteria criteria, Set<Long> conceptIdsCriteria, BranchCriteria branchCriteria) {
+		final BoolQueryBuilder descriptionQuery = boolQuery();
+		BoolQueryBuilder descriptionBranchCriteria = branchCriteria.getEntityBranchCriteria(Description.class);
+		descriptionQuery.must(descriptionBranchCriteria);
+		addTermClauses(criteria.getTerm(), criteria.getSearchMode(), criteria.getSearchLanguageCodes(), criteria.getType(), descriptionQuery);
+
+		Boolean active = criteria.getActive();
+		if (active != null) {
+			descriptionQuery.must(termQuery(Description.Fields.ACTIVE, active));
+		}
+
+		Collection<String> modules = criteria.getModules();
+		if (!CollectionUtils.isEmpty(modules)) {
+			descriptionQuery.must(termsQuery(Description.Fields.MODULE_ID, modules));
+		}
+
+		if (!CollectionUtils.isEmpty(conceptIdsCriteria)) {
+			descriptionQuery.must(termsQuery(Description.Fields.CONCEPT_ID, conceptIdsCriteria));
+		}
+		return descriptionQuery;
+	}
+
+	private static boolean hasAcceptabilityCriteria(DescriptionCriteria criteria) {
+		return !CollectionUtils.isEmpty(criteria.getPreferredIn()) || !CollectionUtils.isEmpty(criteria.getAcceptableIn())
+				|| !CollectionUtils.isEmpty(criteria.getPreferredOrAcceptableIn()) || !CollectionUtils.isEmpty(criteria.getDisjunctionAcceptabilityCriteria());
+	}
+
+	private Set<Long> findDescriptionIdsWithAcceptability(DescriptionCriteria criteria, Collection<Long> descriptionIds, BranchCriteria branchCriteria) {
+		Set<Long> preferredIn = criteria.getPreferredIn();
+		Set<Long> acceptableIn = criteria.getAcceptableIn();
+		Set<Long> preferredOrAcceptableIn = criteria.getPreferredOrAcceptableIn();
+
+		BoolQueryBuilder queryBuilder = boolQuery()
+				.must(branchCriteria.getEntityBranchCriteria(ReferenceSetMember.class))
+				.must(termQuery(ReferenceSetMember.Fields.ACTIVE, true));
+
+		if (!CollectionUtils.isEmpty(preferredIn)) {
+			queryBuilder
+					.must(termsQuery(REFSET_ID, preferredIn))
+					.must(termQuery(ACCEPTABILITY_ID_FIELD_PATH, Concepts.PREFERRED));
+		}
+		if (!CollectionUtils.isEmpty(acceptableIn)) {
+			queryBuilder
+					.must(termsQuery(REFSET_ID, acceptableIn))
+					.must(termQuery(ACCEPTABILITY_ID_FIELD_PATH, Concepts.ACCEPTABLE));
+		}
+		if (!CollectionUtils.isEmpty(preferredOrAcceptableIn)) {
+			queryBuilder
+					.must(termsQuery(REFSET_ID, preferredOrAcceptableIn))
+					.must(termsQuery(ACCEPTABILITY_ID_FIELD_PATH, Sets.newHashSet(Concepts.PREFERRED, Concepts.ACCEPTABLE)));
+		}
+		// processing DisjunctionAcceptabilityCriteria
+		if (criteria.getDisjunctionAcceptabilityCriteria() != null) {
+			for (DescriptionCriteria.DisjunctionAcceptabilityCriteria disjunctionCriteria : criteria.getDisjunctionAcceptabilityCriteria()) {
+				BoolQueryBuilder shouldClause = boolQuery();
+				if (!CollectionUtils.isEmpty(disjunctionCriteria.getPreferred())) {
+					disjunctionCriteria.getPreferred().forEach(refsetId -> {
+						shouldClause.should(boolQuery()
+								.must(termQuery(REFSET_ID, refsetId))
+								.must(termQuery(ACCEPTABILITY_ID_FIELD_PATH, Concepts.PREFERRED)));
+					});
+				}
+				if (!CollectionUtils.isEmpty(acceptableIn)) {
+					disjunctionCriteria.getPreferred().forEach(refsetId -> {
+						shouldClause.should(boolQuery()
+								.must(termQuery(REFSET_ID, refsetId))
+								.must(termQuery(ACCEPTABILITY_ID_FIELD_PATH, Concepts.ACCEPTABLE)));
+					});
+				}
+				if (!CollectionUtils.isEmpty(preferredOrAcceptableIn)) {
+					shouldClause.should(boolQuery()
+							.must(termsQuery(REFSET_ID, preferredOrAcceptableIn))
+							.must(termsQuery(ACCEPTABILITY_ID_FIELD_PATH, Sets.newHashSet(Concepts.PREFERRED, Concepts.ACCEPTABLE))));
+				}
+				if (!shouldClause.should().isEmpty()) {
+					queryBuilder.must(shouldClause);
+				}
+			}
+		}
+
+		NativeSearchQuery nativeSearchQuery = new NativeSearchQueryBuilder()
+				.withQuery(queryBuilder)
+				.withFilter(termsQuery(ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID, descriptionIds))
+				.withFields(ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID)
+				.withPageable(LARGE_PAGE)
+				.build();
+		Set<Long> filteredDescriptionIds = new LongOpenHashSet();
+		try (SearchHitsIterator<ReferenceSetMember> stream = elasticsearchTemplate.searchForStream(nativeSearchQuery, ReferenceSetMember.class)) {
+			stream.forEachRemaining(hit -> filteredDescriptionIds.add(parseLong(hit.getContent().getReferencedComponentId())));
+		}
+		return filteredDescriptionIds;
+	}
+
+	private List<Long> findConceptIdsWithActiveStatus(boolean conceptActive, Collection<Long> conceptIds, BranchCriteria branchCriteria) {
+		List<Long> filteredConceptIds = new LongArrayList();
+		try (SearchHitsIterator<Concept> stream = elasticsearchTemplate.searchForStream(
+				new NativeSearchQueryBuilder()
+						.withQuery(boolQuery()
+								.must(termQuery(Concept.Fields.ACTIVE, conceptActive))
+								.filter(branchCriteria.getEntityBranchCriteria(Concept.class))
+								.filter(termsQuery(Concept.Fields.CONCEPT_ID, conceptIds))
+						)
+						.withSort(SortBuilders.fieldSort("_doc"))
+						.withFields(Concept.Fields.CONCEPT_ID)
+						.withPageable(LARGE_PAGE)
+						.build(), Concept.class)) {
+			stream.forEachRemaining(hit -> filteredConceptIds.add(hit.getContent().getConceptIdAsLong()));
+		}
+		return filteredConceptIds;
+	}
+
+	private List<Long> findConceptIdsInRefset(String conceptRefset, Collection<Long> conceptIds, BranchCriteria branchCriteria) {
+		List<Long> filteredConceptIds = new LongArrayList();
+		try (SearchHitsIterator<ReferenceSetMember> stream = elasticsearchTemplate.searchForStream(
+				new NativeSearchQueryBuilder()
+						.withQuery(boolQuery()
+								.must(termQuery(REFSET_ID, conceptRefset))
+								.filter(branchCriteria.getEntityBranchCriteria(ReferenceSetMember.class))
+								.filter(termsQuery(ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID, conceptIds))
+						)
+						.withSort(SortBuilders.fieldSort("_doc"))
+						.withFields(ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID)
+						.withPageable(LARGE_PAGE)
+						.build(), ReferenceSetMember.class)) {
+			stream.forEachRemaining(hit -> filteredConceptIds.add(parseLong(hit.getContent().getReferencedComponentId())));
+		}
+		return filteredConceptIds;
+	}
+
 	private Set<Long> filterOrderedSet(Set<Long> orderedIds, List<Long> idsToKeep) {
 		Set<Long> newSet = new LongLinkedOpenHashSet();
 		for (Long orderedId : orderedIds) {
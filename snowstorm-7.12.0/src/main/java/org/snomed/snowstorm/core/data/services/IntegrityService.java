@@ -100,7 +100,8 @@ public class IntegrityService extends ComponentService implements CommitListener
 					"Please use the full integrity check instead.");
 		}
 
-		TimerUtil timer = new TimerUtil("Changed component integrity check on " + branch.getPath(), Level.INFO, 1);
+		TimerUtil timer = new TimerUtil("Changed component integrity check on " + branch.getPath(), Level.INFO, 1)
+				.publishMetrics("integrity-changed-components");
 
 		final Map<Long, Long> relationshipWithInactiveSource = new Long2LongOpenHashMap();
 		final Map<Long, Long> relationshipWithInactiveType = new Long2LongOpenHashMap();
@@ -299,7 +300,8 @@ public class IntegrityService extends ComponentService implements CommitListener
 			throw new RuntimeServiceException(String.format("Branch %s needs to rebase first before running integrity check", fixBranch.getPath()));
 		}
 
-		TimerUtil timer = new TimerUtil("Changed component integrity check on " + fixBranch.getPath() + " and " + extensionMainBranchPath, Level.INFO, 1);
+		TimerUtil timer = new TimerUtil("Changed component integrity check on " + fixBranch.getPath() + " and " + extensionMainBranchPath, Level.INFO, 1)
+				.publishMetrics("integrity-fix-branch");
 		IntegrityIssueReport integrityIssueReportOnExtensionMain = findChangedComponentsWithBadIntegrityNotFixed(extensionMain);
 		if (integrityIssueReportOnExtensionMain.isEmpty()) {
 			logger.info("No integrity issue found on {}", extensionMainBranchPath);
@@ -457,7 +459,7 @@ public class IntegrityService extends ComponentService implements CommitListener
 		final Map<String, ConceptMini> axiomWithInactiveReferencedConcept = new HashMap<>();
 
 		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(branch);
-		TimerUtil timer = new TimerUtil("Full integrity check on " + branch.getPath());
+		TimerUtil timer = new TimerUtil("Full integrity check on " + branch.getPath()).publishMetrics("integrity-full");
 
 		// Fetch all active concepts
 		Set<Long> activeConcepts = new LongOpenHashSet(conceptService.findAllActiveConcepts(branchCriteria));
@@ -583,7 +585,7 @@ public class IntegrityService extends ComponentService implements CommitListener
 	}
 
 	public ConceptsInForm findExtraConceptsInSemanticIndex(String branchPath) {
-		TimerUtil timer = new TimerUtil("Semantic delete check");
+		TimerUtil timer = new TimerUtil("Semantic delete check").publishMetrics("integrity-semantic-delete");
 		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(branchPath);
 
 		Set<Long> activeConcepts = new LongOpenHashSet(conceptService.findAllActiveConcepts(branchCriteria));
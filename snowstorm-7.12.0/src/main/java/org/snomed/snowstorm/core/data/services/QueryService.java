@@ -4,8 +4,11 @@ import com.google.common.collect.Iterables;
 import io.kaicode.elasticvc.api.BranchCriteria;
 import io.kaicode.elasticvc.api.VersionControlHelper;
 import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import org.elasticsearch.index.query.BoolQueryBuilder;
-import org.elasticsearch.search.sort.SortBuilders;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.bucket.terms.IncludeExclude;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.snomed.snowstorm.core.data.domain.*;
@@ -22,8 +25,11 @@ import org.snomed.snowstorm.ecl.ConceptSelectorHelper;
 import org.snomed.snowstorm.ecl.ECLQueryService;
 import org.snomed.snowstorm.ecl.domain.expressionconstraint.SExpressionConstraint;
 import org.snomed.snowstorm.ecl.domain.expressionconstraint.SSubExpressionConstraint;
+import org.snomed.snowstorm.ecl.hierarchy.HierarchyGraph;
+import org.snomed.snowstorm.ecl.hierarchy.HierarchyGraphService;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
 import org.springframework.data.domain.Page;
@@ -37,8 +43,10 @@ import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.LongPredicate;
 import java.util.stream.Collectors;
 
 import static io.kaicode.elasticvc.api.ComponentService.CLAUSE_LIMIT;
@@ -56,6 +64,8 @@ public class QueryService implements ApplicationContextAware {
 
 	static final PageRequest PAGE_OF_ONE = PageRequest.of(0, 1);
 
+	private static final String DESCENDANT_COUNTS_AGGREGATION = "descendantCounts";
+
 	@Autowired
 	private ElasticsearchRestTemplate elasticsearchTemplate;
 
@@ -68,6 +78,15 @@ public class QueryService implements ApplicationContextAware {
 	@Autowired
 	private DescriptionService descriptionService;
 
+	@Autowired
+	private HierarchyGraphService hierarchyGraphService;
+
+	@Value("${search.lexical-logical.incremental.enabled}")
+	private boolean incrementalLexicalLogicalSearch;
+
+	@Value("${search.lexical-logical.incremental.chunk-size}")
+	private int incrementalLexicalLogicalChunkSize;
+
 	private ConceptService conceptService;
 
 	private final Logger logger = LoggerFactory.getLogger(getClass());
@@ -214,13 +233,17 @@ public class QueryService implements ApplicationContextAware {
 				conceptIdPage = PageHelper.toSearchAfterPage(searchHits, Concept::getConceptIdAsLong, pageRequest);
 			}
 
+		} else if (incrementalLexicalLogicalSearch && conceptQuery.getEcl() != null && conceptQuery.isLowerBoundTotalAllowed()) {
+			// Lexical and ECL, incremental
+			conceptIdPage = doIncrementalLexicalEclSearch(conceptQuery, branchCriteria, pageRequest);
+
 		} else {
 			// Logical and Lexical
 
 			// Perform lexical search first because this probably the smaller set.
 			// We fetch all lexical results then use them to filter the logical matches and for ordering of the final results.
 			logger.info("Lexical search before logical {}", term);
-			TimerUtil timer = new TimerUtil("Lexical and Logical Search");
+			TimerUtil timer = new TimerUtil("Lexical and Logical Search").publishMetrics("lexical-and-logical-search");
 			// Convert Set of String to set of Long
 			Set<Long> conceptIds = Collections.emptySet();
 			if (!CollectionUtils.isEmpty(conceptQuery.getConceptIds())) {
@@ -265,6 +288,72 @@ public class QueryService implements ApplicationContextAware {
 		}
 	}
 
+	/**
+	 * Walks the lexical matches in term order, one chunk at a time, keeping concepts that are in the ECL result set and pass the property filters.
+	 * Stops once the requested page and one more match have been found, so the total is exact only when all lexical matches have been walked.
+	 */
+	private SearchAfterPage<Long> doIncrementalLexicalEclSearch(ConceptQueryBuilder conceptQuery, BranchCriteria branchCriteria, PageRequest pageRequest) {
+		TimerUtil timer = new TimerUtil("Incremental Lexical and ECL Search").publishMetrics("incremental-lexical-ecl-search");
+		Set<Long> conceptIds = Collections.emptySet();
+		if (!CollectionUtils.isEmpty(conceptQuery.getConceptIds())) {
+			conceptIds = conceptQuery.getConceptIds().stream()
+					.map(Long::parseLong)
+					.collect(Collectors.toSet());
+		}
+
+		LongPredicate eclMembership = eclQueryService.selectConceptIdMembership(conceptQuery.getEcl(), branchCriteria, conceptQuery.isStated());
+		timer.checkpoint("ECL result set");
+
+		Object[] searchAfter = pageRequest instanceof SearchAfterPageRequest ? ((SearchAfterPageRequest) pageRequest).getSearchAfter() : null;
+		int pageSize = pageRequest.getPageSize();
+		// Matches needed before the requested page starts, unknown with search after
+		long matchesBeforePage = searchAfter == null ? (long) pageRequest.getPageNumber() * pageSize : -1;
+
+		List<Long> matches = new LongArrayList();
+		AtomicLong lexicalMatches = new AtomicLong();
+		descriptionService.streamDescriptionConceptIds(conceptQuery.getDescriptionCriteria(), conceptIds, branchCriteria, incrementalLexicalLogicalChunkSize, chunk -> {
+			lexicalMatches.addAndGet(chunk.size());
+			List<Long> eclMatches = new LongArrayList();
+			LongPredicate chunkMembership = eclMembership;
+			if (chunkMembership == null) {
+				// Wildcard, keep the concepts of this chunk that are in the semantic index
+				Set<Long> chunkEclMatches = new LongOpenHashSet(doEclSearch(conceptQuery, branchCriteria, chunk));
+				chunkMembership = chunkEclMatches::contains;
+			}
+			for (Long conceptId : chunk) {
+				if (chunkMembership.test(conceptId)) {
+					eclMatches.add(conceptId);
+				}
+			}
+			if (conceptQuery.hasPropertyFilter() && !eclMatches.isEmpty()) {
+				Set<Long> filtered = applyConceptPropertyFilters(eclMatches, conceptQuery, branchCriteria, new LongOpenHashSet());
+				eclMatches.removeIf(conceptId -> !filtered.contains(conceptId));
+			}
+			matches.addAll(eclMatches);
+			return !isPageFilled(matches, searchAfter, matchesBeforePage, pageSize);
+		});
+		timer.checkpoint("lexical and ECL complete");
+		timer.finish();
+
+		logger.info("{} lexical results walked, {} matching ECL", lexicalMatches.get(), matches.size());
+		return PageHelper.fullListToPage(matches, pageRequest, CONCEPT_ID_SEARCH_AFTER_EXTRACTOR);
+	}
+
+	/**
+	 * @return true if the matches fill the requested page with one more match, which shows that there is a next page.
+	 */
+	private static boolean isPageFilled(List<Long> matches, Object[] searchAfter, long matchesBeforePage, int pageSize) {
+		if (searchAfter == null) {
+			return matches.size() > matchesBeforePage + pageSize;
+		}
+		for (int i = 0; i < matches.size(); i++) {
+			if (Arrays.equals(searchAfter, CONCEPT_ID_SEARCH_AFTER_EXTRACTOR.apply(matches.get(i)))) {
+				return matches.size() - (i + 1) > pageSize;
+			}
+		}
+		return false;
+	}
+
 	private BoolQueryBuilder getSearchByConceptIdQuery(ConceptQueryBuilder conceptQuery, BranchCriteria branchCriteria) {
 		BoolQueryBuilder conceptBoolQuery = boolQuery()
 				.must(branchCriteria.getEntityBranchCriteria(Concept.class));
@@ -387,6 +476,10 @@ public class QueryService implements ApplicationContextAware {
 	}
 
 	public Set<Long> findAncestorIdsAsUnion(BranchCriteria branchCriteria, boolean stated, Collection<Long> conceptId) {
+		HierarchyGraph hierarchyGraph = hierarchyGraphService.getGraphIfLoaded(branchCriteria, stated);
+		if (hierarchyGraph != null) {
+			return new LongOpenHashSet(hierarchyGraph.getAncestors(conceptId, true, false));
+		}
 		final NativeSearchQuery searchQuery = new NativeSearchQueryBuilder()
 				.withQuery(boolQuery()
 						.must(branchCriteria.getEntityBranchCriteria(QueryConcept.class))
@@ -405,6 +498,10 @@ public class QueryService implements ApplicationContextAware {
 	}
 
 	public Set<Long> findParentIdsAsUnion(BranchCriteria branchCriteria, boolean stated, Collection<Long> conceptId) {
+		HierarchyGraph hierarchyGraph = hierarchyGraphService.getGraphIfLoaded(branchCriteria, stated);
+		if (hierarchyGraph != null) {
+			return new LongOpenHashSet(hierarchyGraph.getAncestors(conceptId, false, false));
+		}
 		final NativeSearchQuery searchQuery = new NativeSearchQueryBuilder()
 				.withQuery(boolQuery()
 						.must(branchCriteria.getEntityBranchCriteria(QueryConcept.class))
@@ -423,33 +520,38 @@ public class QueryService implements ApplicationContextAware {
 	}
 
 	public Set<Long> findDescendantIdsAsUnion(BranchCriteria branchCriteria, boolean stated, Collection<Long> conceptIds) {
-		final NativeSearchQuery searchQuery = new NativeSearchQueryBuilder()
-				.withQuery(boolQuery()
-						.must(branchCriteria.getEntityBranchCriteria(QueryConcept.class))
-						.must(termsQuery(QueryConcept.Fields.ANCESTORS, conceptIds))
-						.must(termQuery(QueryConcept.Fields.STATED, stated))
-				)
-				.withFields(QueryConcept.Fields.CONCEPT_ID)
-				.withPageable(LARGE_PAGE)
-				.withSort(SortBuilders.fieldSort(QueryConcept.Fields.CONCEPT_ID))// This could be anything
-				.build();
-		SearchHits<QueryConcept> searchHits = elasticsearchTemplate.search(searchQuery, QueryConcept.class);
-		return searchHits.stream().map(SearchHit::getContent).map(QueryConcept::getConceptIdL).collect(Collectors.toSet());
+		HierarchyGraph hierarchyGraph = hierarchyGraphService.getGraphIfLoaded(branchCriteria, stated);
+		if (hierarchyGraph != null) {
+			return new LongOpenHashSet(hierarchyGraph.getDescendants(conceptIds, true, false));
+		}
+		return streamConceptIds(boolQuery()
+				.must(branchCriteria.getEntityBranchCriteria(QueryConcept.class))
+				.must(termsQuery(QueryConcept.Fields.ANCESTORS, conceptIds))
+				.must(termQuery(QueryConcept.Fields.STATED, stated)));
 	}
 
 	public Set<Long> findChildrenIdsAsUnion(BranchCriteria branchCriteria, boolean stated, Collection<Long> conceptIds) {
-		final NativeSearchQuery searchQuery = new NativeSearchQueryBuilder()
-				.withQuery(boolQuery()
-						.must(branchCriteria.getEntityBranchCriteria(QueryConcept.class))
-						.must(termsQuery(QueryConcept.Fields.PARENTS, conceptIds))
-						.must(termQuery(QueryConcept.Fields.STATED, stated))
-				)
+		HierarchyGraph hierarchyGraph = hierarchyGraphService.getGraphIfLoaded(branchCriteria, stated);
+		if (hierarchyGraph != null) {
+			return new LongOpenHashSet(hierarchyGraph.getDescendants(conceptIds, false, false));
+		}
+		return streamConceptIds(boolQuery()
+				.must(branchCriteria.getEntityBranchCriteria(QueryConcept.class))
+				.must(termsQuery(QueryConcept.Fields.PARENTS, conceptIds))
+				.must(termQuery(QueryConcept.Fields.STATED, stated)));
+	}
+
+	private Set<Long> streamConceptIds(BoolQueryBuilder query) {
+		// Stream all results rather than a single large page which would silently truncate big hierarchies
+		Set<Long> conceptIds = new LongOpenHashSet();
+		try (SearchHitsIterator<QueryConcept> stream = elasticsearchTemplate.searchForStream(new NativeSearchQueryBuilder()
+				.withQuery(query)
 				.withFields(QueryConcept.Fields.CONCEPT_ID)
 				.withPageable(LARGE_PAGE)
-				.withSort(SortBuilders.fieldSort(QueryConcept.Fields.CONCEPT_ID))// This could be anything
-				.build();
-		SearchHits<QueryConcept> searchHits = elasticsearchTemplate.search(searchQuery, QueryConcept.class);
-		return searchHits.stream().map(SearchHit::getContent).map(QueryConcept::getConceptIdL).collect(Collectors.toSet());
+				.build(), QueryConcept.class)) {
+			stream.forEachRemaining(hit -> conceptIds.add(hit.getContent().getConceptIdL()));
+		}
+		return conceptIds;
 	}
 
 	/**
@@ -477,6 +579,11 @@ public class QueryService implements ApplicationContextAware {
 		} catch (IllegalStateException e) {
 			throw new ServiceException(String.format("Mutiple documents found with the same conceptId '%s' on branch %s", e.getMessage(), branch), e);
 		}
+		HierarchyGraph hierarchyGraph = hierarchyGraphService.getGraphIfLoaded(branchCriteria, form == Relationship.CharacteristicType.stated);
+		if (hierarchyGraph != null) {
+			conceptMap.forEach((conceptId, mini) -> mini.setLeaf(form, !Boolean.FALSE.equals(hierarchyGraph.isLeaf(conceptId))));
+			return;
+		}
 		Set<Long> conceptIdsToFind = new HashSet<>(conceptMap.keySet());
 		NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder()
 				.withQuery(new BoolQueryBuilder()
@@ -507,11 +614,50 @@ public class QueryService implements ApplicationContextAware {
 			return;
 		}
 
+		Set<Long> conceptIds = concepts.stream().map(concept -> Long.parseLong(concept.getConceptId())).collect(Collectors.toSet());
+		Map<Long, Long> descendantCounts = findDescendantCounts(branchCriteria, form == Relationship.CharacteristicType.stated, conceptIds);
 		for (ConceptMini concept : concepts) {
-			SearchAfterPage<Long> page = searchForIds(createQueryBuilder(form).ecl("<" + concept.getId()), branchCriteria, PAGE_OF_ONE);
-			concept.setDescendantCount(page.getTotalElements());
-			concept.setLeaf(form, page.getTotalElements() == 0);
+			long descendantCount = descendantCounts.getOrDefault(Long.parseLong(concept.getConceptId()), 0L);
+			concept.setDescendantCount(descendantCount);
+			concept.setLeaf(form, descendantCount == 0);
+		}
+	}
+
+	/**
+	 * Count the descendants of each of the given concepts in one pass. Counts are taken from the hierarchy graph if loaded,
+	 * otherwise from a terms aggregation over the ancestors field of the semantic index, one search per batch of concepts.
+	 * @return map of concept id to number of descendants, including concepts with no descendants.
+	 */
+	public Map<Long, Long> findDescendantCounts(BranchCriteria branchCriteria, boolean stated, Collection<Long> conceptIds) {
+		Map<Long, Long> descendantCounts = new HashMap<>();
+		HierarchyGraph hierarchyGraph = hierarchyGraphService.getGraphIfLoaded(branchCriteria, stated);
+		if (hierarchyGraph != null) {
+			for (Long conceptId : conceptIds) {
+				descendantCounts.put(conceptId, (long) hierarchyGraph.countDescendants(conceptId));
+			}
+			return descendantCounts;
+		}
+		for (Long conceptId : conceptIds) {
+			descendantCounts.put(conceptId, 0L);
 		}
+		for (List<Long> batch : Iterables.partition(conceptIds, CLAUSE_LIMIT)) {
+			SearchHits<QueryConcept> searchHits = elasticsearchTemplate.search(new NativeSearchQueryBuilder()
+					.withQuery(boolQuery()
+							.must(branchCriteria.getEntityBranchCriteria(QueryConcept.class))
+							.must(termQuery(QueryConcept.Fields.STATED, stated))
+							.filter(termsQuery(QueryConcept.Fields.ANCESTORS, batch)))
+					.withPageable(PAGE_OF_ONE)
+					// Each semantic index document is counted in the bucket of every requested concept in its ancestors
+					.addAggregation(AggregationBuilders.terms(DESCENDANT_COUNTS_AGGREGATION).field(QueryConcept.Fields.ANCESTORS)
+							.includeExclude(new IncludeExclude(batch.stream().mapToLong(Long::longValue).toArray(), null))
+							.size(batch.size()))
+					.build(), QueryConcept.class);
+			Terms descendantCountTerms = searchHits.getAggregations().get(DESCENDANT_COUNTS_AGGREGATION);
+			for (Terms.Bucket bucket : descendantCountTerms.getBuckets()) {
+				descendantCounts.put(bucket.getKeyAsNumber().longValue(), bucket.getDocCount());
+			}
+		}
+		return descendantCounts;
 	}
 
 	public void joinDescendantCount(Concept concept, Relationship.CharacteristicType form, List<LanguageDialect> languageDialects, BranchTimepoint branchTimepoint) {
@@ -542,6 +688,7 @@ public class QueryService implements ApplicationContextAware {
 		private Integer effectiveTime;
 		private Boolean isNullEffectiveTime;
 		private Boolean isReleased;
+		private boolean lowerBoundTotalAllowed;
 
 		private ConceptQueryBuilder(boolean stated) {
 			this.stated = stated;
@@ -577,6 +724,14 @@ public class QueryService implements ApplicationContextAware {
 			return this;
 		}
 		
+		/**
+		 * Allows the total of a search combining a term and ECL to be a lower bound, so the search can stop once the requested page is filled.
+		 */
+		public ConceptQueryBuilder lowerBoundTotalAllowed(boolean lowerBoundTotalAllowed) {
+			this.lowerBoundTotalAllowed = lowerBoundTotalAllowed;
+			return this;
+		}
+
 		public ConceptQueryBuilder conceptIds(Set<String> conceptIds) {
 			if (conceptIds != null && !conceptIds.isEmpty()) {
 				this.conceptIds = conceptIds;
@@ -670,6 +825,10 @@ public class QueryService implements ApplicationContextAware {
 		public Boolean isReleased() {
 			return isReleased;
 		}
+
+		public boolean isLowerBoundTotalAllowed() {
+			return lowerBoundTotalAllowed;
+		}
 		
 		public void applyConceptClauses(BoolQueryBuilder conceptClauses) {
 			if (activeFilter != null) {
@@ -710,6 +869,7 @@ public class QueryService implements ApplicationContextAware {
 					", effectiveTime=" + effectiveTime +
 					", isNullEffectiveTime=" + isNullEffectiveTime +
 					", isReleased=" + isReleased +
+					", lowerBoundTotalAllowed=" + lowerBoundTotalAllowed +
 					'}';
 		}
 
@@ -728,13 +888,14 @@ public class QueryService implements ApplicationContextAware {
 					Objects.equals(descriptionCriteria, that.descriptionCriteria) &&
 					Objects.equals(effectiveTime, that.effectiveTime) &&
 					Objects.equals(isNullEffectiveTime, that.isNullEffectiveTime) &&
-					Objects.equals(isReleased, that.isReleased);
+					Objects.equals(isReleased, that.isReleased) &&
+					lowerBoundTotalAllowed == that.lowerBoundTotalAllowed;
 		}
 
 		@Override
 		public int hashCode() {
 			return Objects.hash(stated, activeFilter, definitionStatusFilter, module, resultLanguageDialects, ecl,
-					conceptIds, descriptionCriteria, effectiveTime, isNullEffectiveTime, isReleased);
+					conceptIds, descriptionCriteria, effectiveTime, isNullEffectiveTime, isReleased, lowerBoundTotalAllowed);
 		}
 	}
 
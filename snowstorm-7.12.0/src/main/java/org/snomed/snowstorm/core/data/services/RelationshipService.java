@@ -72,6 +72,10 @@ public class RelationshipService extends ComponentService {
 	 * @throws RuntimeServiceException When there is an issue reading MRCM.
 	 */
 	public void setConcreteValueFromMRCM(String branchPath, Relationship... relationships) {
+		if (Arrays.stream(relationships).noneMatch(relationship -> relationship.isConcrete() && relationship.isInferred())) {
+			// Avoid resolving the MRCM of the branch
+			return;
+		}
 		MRCM mrcm;
 		try {
 			mrcm = mrcmLoader.loadActiveMRCMFromCache(branchPath);
@@ -6,7 +6,8 @@ import com.google.common.collect.Sets;
 import io.kaicode.elasticvc.api.*;
 import io.kaicode.elasticvc.domain.Branch;
 import io.kaicode.elasticvc.domain.Commit;
-import io.kaicode.elasticvc.domain.Entity;
+import io.kaicode.elasticvc.domain.DomainEntity;
+import io.micrometer.core.instrument.Tags;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import org.apache.commons.lang3.math.NumberUtils;
@@ -22,7 +23,9 @@ import org.snomed.snowstorm.core.data.services.pojo.SAxiomRepresentation;
 import org.snomed.snowstorm.core.data.services.transitiveclosure.GraphBuilder;
 import org.snomed.snowstorm.core.data.services.transitiveclosure.GraphBuilderException;
 import org.snomed.snowstorm.core.data.services.transitiveclosure.Node;
+import org.snomed.snowstorm.core.util.CommitMetrics;
 import org.snomed.snowstorm.core.util.TimerUtil;
+import org.snomed.snowstorm.ecl.ECLQueryService;
 import org.snomed.snowstorm.mrcm.MRCMLoader;
 import org.snomed.snowstorm.mrcm.model.AttributeRange;
 import org.snomed.snowstorm.mrcm.model.MRCM;
@@ -38,6 +41,7 @@ import org.springframework.data.elasticsearch.core.query.Query;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
@@ -58,6 +62,12 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 	@Value("${commit-hook.semantic-indexing.enabled:true}")
 	private boolean semanticIndexingEnabled;
 
+	@Value("${commit-hook.semantic-indexing.parallel-forms:true}")
+	private boolean parallelForms;
+
+	@Value("${commit-hook.semantic-indexing.max-pending-save-batches:2}")
+	private int maxPendingSaveBatches;
+
 	private static final long IS_A_TYPE = parseLong(Concepts.ISA);
 
 	@Autowired
@@ -81,6 +91,14 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 	@Autowired
 	private MRCMLoader mrcmLoader;
 
+	@Autowired
+	private ECLQueryService eclQueryService;
+
+	@Autowired
+	private ExecutorService taskExecutor;
+
+	private static final String LISTENER_NAME = "semantic-index";
+
 	private final Logger logger = LoggerFactory.getLogger(getClass());
 
 
@@ -99,7 +117,7 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 
 	public Map<String, Integer> rebuildStatedAndInferredSemanticIndex(String branchPath, boolean dryRun) throws ServiceException {
 		try (Commit commit = branchService.openCommit(branchPath, branchMetadataHelper.getBranchLockMetadata("Rebuilding semantic index."))) {
-			final Map<String, Integer> updateCounts = rebuildSemanticIndex(commit, dryRun);
+			final Map<String, Integer> updateCounts = rebuildSemanticIndex(commit, dryRun, CommitMetrics.getTimerTags(commit, null));
 			if (!dryRun && updateCounts.values().stream().anyMatch(updateCount -> updateCount > 0)) {
 				commit.markSuccessful();
 			} else {
@@ -114,7 +132,7 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 
 	private void updateStatedAndInferredSemanticIndex(Commit commit) throws IllegalStateException, ConversionException, GraphBuilderException, ServiceException {
 		if (commit.isRebase()) {
-			rebuildSemanticIndex(commit, false);
+			rebuildSemanticIndex(commit, false, CommitMetrics.getTimerTags(commit, LISTENER_NAME));
 		} else if (commit.getCommitType() != Commit.CommitType.PROMOTION) {
 			// Update query index using changes in the current commit
 
@@ -123,13 +141,27 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 					Sets.union(commit.getEntityVersionsReplaced().getOrDefault(ReferenceSetMember.class.getSimpleName(), Collections.emptySet()),
 							commit.getEntityVersionsReplaced().getOrDefault(Relationship.class.getSimpleName(), Collections.emptySet()));
 
-			updateSemanticIndex(Form.STATED, relationshipAndAxiomDeletionsToProcess, commit, false, false, false);
-			updateSemanticIndex(Form.INFERRED, relationshipAndAxiomDeletionsToProcess, commit, false, false, false);
+			// Checked before the update, which replaces query concept versions itself.
+			// If anything else has already changed the semantic index within this commit the affected concepts are not all known.
+			boolean semanticIndexChangedBeforeUpdate =
+					!commit.getEntityVersionsReplaced().getOrDefault(QueryConcept.class.getSimpleName(), Collections.emptySet()).isEmpty();
+
+			Set<Long> statedAffectedConceptIds = new LongOpenHashSet();
+			Set<Long> inferredAffectedConceptIds = new LongOpenHashSet();
+			updateStatedAndInferredSemanticIndex(relationshipAndAxiomDeletionsToProcess, commit, false, false, false, statedAffectedConceptIds, inferredAffectedConceptIds,
+					CommitMetrics.getTimerTags(commit, LISTENER_NAME));
+
+			// Keep cached ECL results that can not have been changed by this commit, rather than expiring the whole branch.
+			if (!semanticIndexChangedBeforeUpdate) {
+				Date previousHead = versionControlHelper.getBranchCriteriaBeforeOpenCommit(commit).getTimepoint();
+				eclQueryService.getResultsCache().carryForward(commit.getBranch().getPath(), previousHead, commit.getTimepoint(),
+						statedAffectedConceptIds, inferredAffectedConceptIds);
+			}
 		}
 		// If promotion the semantic changes will be promoted with the rest of the content.
 	}
 
-	private Map<String, Integer> rebuildSemanticIndex(Commit commit, boolean dryRun) throws ConversionException, GraphBuilderException, ServiceException {
+	private Map<String, Integer> rebuildSemanticIndex(Commit commit, boolean dryRun, Tags metricTags) throws ConversionException, GraphBuilderException, ServiceException {
 		Branch branch = commit.getBranch();
 
 		Set<String> relationshipAndAxiomDeletionsToProcess = Sets.union(branch.getVersionsReplaced(ReferenceSetMember.class), branch.getVersionsReplaced(Relationship.class));
@@ -141,14 +173,80 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 			}
 			removeQConceptChangesOnBranch(commit);
 		}
+		return updateStatedAndInferredSemanticIndex(relationshipAndAxiomDeletionsToProcess, commit, true, completeRebuild, dryRun, null, null, metricTags);
+	}
+
+	/**
+	 * Updates both forms, concurrently unless parallel forms are disabled. Each form has its own graph builder.
+	 * @return number of updated concepts by form name.
+	 */
+	private Map<String, Integer> updateStatedAndInferredSemanticIndex(Set<String> internalIdsOfDeletedComponents, Commit commit, boolean rebuild,
+			boolean completeRebuild, boolean dryRun, Set<Long> statedAffectedConceptIds, Set<Long> inferredAffectedConceptIds, Tags metricTags)
+			throws ConversionException, GraphBuilderException, ServiceException {
+
+		// Loaded once for both forms, before either form starts saving
+		final Map<String, ConcreteValue.DataType> concreteAttributeDataTypeMap = getConcreteAttributeDataTypeMap(commit);
 		Map<String, Integer> updateCount = new HashMap<>();
-		updateCount.put(Form.STATED.getName(), updateSemanticIndex(Form.STATED, relationshipAndAxiomDeletionsToProcess, commit, true, completeRebuild, dryRun));
-		updateCount.put(Form.INFERRED.getName(), updateSemanticIndex(Form.INFERRED, relationshipAndAxiomDeletionsToProcess, commit, true, completeRebuild, dryRun));
+		if (!parallelForms) {
+			updateCount.put(Form.STATED.getName(), updateSemanticIndex(Form.STATED, internalIdsOfDeletedComponents, commit, rebuild, completeRebuild, dryRun,
+					concreteAttributeDataTypeMap, statedAffectedConceptIds, metricTags));
+			updateCount.put(Form.INFERRED.getName(), updateSemanticIndex(Form.INFERRED, internalIdsOfDeletedComponents, commit, rebuild, completeRebuild, dryRun,
+					concreteAttributeDataTypeMap, inferredAffectedConceptIds, metricTags));
+			return updateCount;
+		}
+
+		Future<Integer> statedUpdate = taskExecutor.submit(() ->
+				updateSemanticIndex(Form.STATED, internalIdsOfDeletedComponents, commit, rebuild, completeRebuild, dryRun,
+						concreteAttributeDataTypeMap, statedAffectedConceptIds, metricTags));
+		int inferredCount;
+		try {
+			inferredCount = updateSemanticIndex(Form.INFERRED, internalIdsOfDeletedComponents, commit, rebuild, completeRebuild, dryRun,
+					concreteAttributeDataTypeMap, inferredAffectedConceptIds, metricTags);
+		} catch (ConversionException | GraphBuilderException | ServiceException | RuntimeException e) {
+			// Let the stated form finish before the commit is rolled back
+			try {
+				statedUpdate.get();
+			} catch (InterruptedException interruptedException) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException executionException) {
+				logger.error("Failed to update stated semantic index.", executionException.getCause());
+			}
+			throw e;
+		}
+		updateCount.put(Form.STATED.getName(), getFormUpdateCount(statedUpdate));
+		updateCount.put(Form.INFERRED.getName(), inferredCount);
 		return updateCount;
 	}
 
+	private int getFormUpdateCount(Future<Integer> formUpdate) throws ConversionException, GraphBuilderException, ServiceException {
+		try {
+			return formUpdate.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ServiceException("Interrupted while updating semantic index.", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof ConversionException) {
+				throw (ConversionException) cause;
+			} else if (cause instanceof GraphBuilderException) {
+				throw (GraphBuilderException) cause;
+			} else if (cause instanceof ServiceException) {
+				throw (ServiceException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new ServiceException("Failed to update semantic index. " + cause.getMessage(), cause);
+		}
+	}
+
+	/**
+	 * @param affectedConceptIds optional collector for the ids of concepts changed in the semantic index, along with their previous and new ancestors.
+	 */
 	private int updateSemanticIndex(Form form, Set<String> internalIdsOfDeletedComponents, Commit commit,
-			boolean rebuild, boolean completeRebuild, boolean dryRun) throws IllegalStateException, ConversionException, GraphBuilderException, ServiceException {
+			boolean rebuild, boolean completeRebuild, boolean dryRun, Map<String, ConcreteValue.DataType> concreteAttributeDataTypeMap,
+			Set<Long> affectedConceptIds, Tags metricTags) throws IllegalStateException, ConversionException, GraphBuilderException, ServiceException {
 
 		if (dryRun && !completeRebuild) {
 			throw new IllegalArgumentException("dryRun flag can only be used when rebuilding the index of the MAIN branch.");
@@ -157,36 +255,40 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 		// Note: Searches within this method use a filter clause for collections of identifiers because these
 		//       can become larger than the maximum permitted query criteria.
 
-		TimerUtil timer = new TimerUtil("TC index " + form.getName(), Level.INFO, 1);
+		TimerUtil timer = new TimerUtil("TC index " + form.getName(), Level.INFO, 1).publishMetrics("semantic-index-" + form.getName(), metricTags);
 		final Branch branch = commit.getBranch();
 		String branchPath = branch.getPath();
 
-		BranchCriteria previousStateCriteria;
-		BranchCriteria changesCriteria;
-		BranchCriteria newStateCriteria;
-		if (rebuild) {
-			if (completeRebuild) {
-				// Not used until the end
-				previousStateCriteria = versionControlHelper.getBranchCriteria(branch);
-				// Force everything
-				newStateCriteria = previousStateCriteria;
-				// Not used in complete rebuild
-				changesCriteria = null;
+		CommitLockedCriteria previousStateCriteria;
+		CommitLockedCriteria changesCriteria;
+		CommitLockedCriteria newStateCriteria;
+		// Criteria including the open commit read versions replaced by saves of the other form
+		synchronized (commit) {
+			if (rebuild) {
+				if (completeRebuild) {
+					// Not used until the end
+					previousStateCriteria = new CommitLockedCriteria(commit, versionControlHelper.getBranchCriteria(branch));
+					// Force everything
+					newStateCriteria = previousStateCriteria;
+					// Not used in complete rebuild
+					changesCriteria = null;
+				} else {
+					// Take existing content from parent branch
+					previousStateCriteria = new CommitLockedCriteria(commit,
+							versionControlHelper.getBranchCriteriaAtTimepoint(PathUtil.getParentPath(branchPath), branch.getBase()));
+					// Standard selection on already committed content. Including open commit to include manually resolved conflicts.
+					newStateCriteria = new CommitLockedCriteria(commit, versionControlHelper.getBranchCriteriaIncludingOpenCommit(commit));
+					// Process all changes on branch
+					changesCriteria = new CommitLockedCriteria(commit, versionControlHelper.getChangesOnBranchCriteria(branch));
+				}
 			} else {
-				// Take existing content from parent branch
-				previousStateCriteria = versionControlHelper.getBranchCriteriaAtTimepoint(PathUtil.getParentPath(branchPath), branch.getBase());
-				// Standard selection on already committed content. Including open commit to include manually resolved conflicts.
-				newStateCriteria = versionControlHelper.getBranchCriteriaIncludingOpenCommit(commit);
-				// Process all changes on branch
-				changesCriteria = versionControlHelper.getChangesOnBranchCriteria(branch);
+				// Take existing content from this branch before the current commit
+				previousStateCriteria = new CommitLockedCriteria(commit, versionControlHelper.getBranchCriteriaBeforeOpenCommit(commit));
+				// Current commit may contain content
+				newStateCriteria = new CommitLockedCriteria(commit, versionControlHelper.getBranchCriteriaIncludingOpenCommit(commit));
+				// Process changes in this commit
+				changesCriteria = new CommitLockedCriteria(commit, versionControlHelper.getBranchCriteriaChangesAndDeletionsWithinOpenCommitOnly(commit));
 			}
-		} else {
-			// Take existing content from this branch before the current commit
-			previousStateCriteria = versionControlHelper.getBranchCriteriaBeforeOpenCommit(commit);
-			// Current commit may contain content
-			newStateCriteria = versionControlHelper.getBranchCriteriaIncludingOpenCommit(commit);
-			// Process changes in this commit
-			changesCriteria = versionControlHelper.getBranchCriteriaChangesAndDeletionsWithinOpenCommitOnly(commit);
 		}
 		timer.checkpoint("get branch criteria");
 
@@ -216,7 +318,6 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 		Set<Long> requiredActiveConcepts = new LongOpenHashSet();
 		Map<Long, AttributeChanges> conceptAttributeChanges = new Long2ObjectOpenHashMap<>();
 
-		final Map<String, ConcreteValue.DataType> concreteAttributeDataTypeMap = getConcreteAttributeDataTypeMap(commit);
 		// Create consumer for relationship changes
 		BiConsumer<SnomedComponent<?>, Relationship> relationshipConsumer = (component, relationship) -> {
 			long conceptId = parseLong(relationship.getSourceId());
@@ -305,7 +406,8 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 				.filter(node -> newGraph || node.isAncestorOrSelfUpdated() || conceptAttributeChanges.containsKey(node.getId()))
 				.forEach(node -> nodesToSave.put(node.getId(), node));
 		Set<Long> nodesNotFound = new LongOpenHashSet(nodesToSave.keySet());
-		Set<QueryConcept> queryConceptsToSave = new HashSet<>();
+		// Concepts are saved as soon as they are calculated
+		QueryConceptSaver queryConceptSaver = new QueryConceptSaver(commit, dryRun, affectedConceptIds);
 
 		// Collect ids of nodes and attribute updates and convert to conceptIdForm
 		Set<Long> conceptIdsToUpdate = new LongOpenHashSet(nodesToSave.keySet());
@@ -325,111 +427,90 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 		if (!completeRebuild) {
 			filter.must(termsQuery(QueryConcept.Fields.CONCEPT_ID, conceptIdsToUpdate));
 		}
-		try (final SearchHitsIterator<QueryConcept> existingQueryConcepts = elasticsearchTemplate.searchForStream(new NativeSearchQueryBuilder()
-				.withQuery(boolQuery()
-						.must(previousStateCriteria.getEntityBranchCriteria(QueryConcept.class))
-						.must(termsQuery(QueryConcept.Fields.STATED, form.isStated()))
-						.filter(filter)
-				)
-				.withPageable(LARGE_PAGE).build(), QueryConcept.class)) {
-			while (existingQueryConcepts.hasNext()) {
-				QueryConcept queryConcept = existingQueryConcepts.next().getContent();
-				Long conceptId = queryConcept.getConceptIdL();
-				Node node = nodesToSave.get(conceptId);
-				boolean save = false;
-				if (completeRebuild) {
-					if (node != null) {
-						QueryConcept newQueryConcept = createQueryConcept(form, branchPath, conceptAttributeChanges, throwExceptionIfTransitiveClosureLoopFound, node.getId(), node);
+		int savedCount;
+		try {
+			try (final SearchHitsIterator<QueryConcept> existingQueryConcepts = elasticsearchTemplate.searchForStream(new NativeSearchQueryBuilder()
+					.withQuery(boolQuery()
+							.must(previousStateCriteria.getEntityBranchCriteria(QueryConcept.class))
+							.must(termsQuery(QueryConcept.Fields.STATED, form.isStated()))
+							.filter(filter)
+					)
+					.withPageable(LARGE_PAGE).build(), QueryConcept.class)) {
+				while (existingQueryConcepts.hasNext()) {
+					QueryConcept queryConcept = existingQueryConcepts.next().getContent();
+					Long conceptId = queryConcept.getConceptIdL();
+					Node node = nodesToSave.get(conceptId);
+					Set<Long> previousAncestors = queryConcept.getAncestors();
+					boolean save = false;
+					if (completeRebuild) {
+						if (node != null) {
+							QueryConcept newQueryConcept = createQueryConcept(form, branchPath, conceptAttributeChanges, throwExceptionIfTransitiveClosureLoopFound, node.getId(), node);
+							if (!queryConcept.fieldsMatch(newQueryConcept)) {
+								queryConcept = newQueryConcept;
+								save = true;
+							}
+						} else {
+							queryConcept.markDeleted();
+							save = true;
+						}
+					} else {
+						QueryConcept newQueryConcept = new QueryConcept(queryConcept);
+						if (node != null) {
+							// TC changes
+							newQueryConcept.setParents(node.getParentIds());
+							newQueryConcept.setAncestors(node.getTransitiveClosure(branchPath, throwExceptionIfTransitiveClosureLoopFound));
+						}
+						if (updatedConceptIds.contains(conceptId)) {
+							applyAttributeChanges(newQueryConcept, conceptId, conceptAttributeChanges);
+						}
 						if (!queryConcept.fieldsMatch(newQueryConcept)) {
 							queryConcept = newQueryConcept;
 							save = true;
 						}
-					} else {
-						queryConcept.markDeleted();
-						save = true;
-					}
-				} else {
-					QueryConcept newQueryConcept = new QueryConcept(queryConcept);
-					if (node != null) {
-						// TC changes
-						newQueryConcept.setParents(node.getParents().stream().map(Node::getId).collect(Collectors.toSet()));
-						newQueryConcept.setAncestors(new HashSet<>(node.getTransitiveClosure(branchPath, throwExceptionIfTransitiveClosureLoopFound)));
-					}
-					if (updatedConceptIds.contains(conceptId)) {
-						applyAttributeChanges(newQueryConcept, conceptId, conceptAttributeChanges);
 					}
-					if (!queryConcept.fieldsMatch(newQueryConcept)) {
-						queryConcept = newQueryConcept;
-						save = true;
+					if (save) {
+						if (affectedConceptIds != null) {
+							affectedConceptIds.addAll(previousAncestors);
+						}
+						queryConceptSaver.save(queryConcept);
 					}
+					nodesNotFound.remove(conceptId);
 				}
-				if (save) {
-					queryConceptsToSave.add(queryConcept);
-				}
-				nodesNotFound.remove(conceptId);
 			}
-		}
 
-		timer.checkpoint("Collect existingDescendants from QueryConcept.");
+			timer.checkpoint("Collect existingDescendants from QueryConcept.");
 
-		// The remaining nodes are new - create new QueryConcepts
-		for (Long nodeId : nodesNotFound) {
-			Node node = nodesToSave.get(nodeId);
-			QueryConcept queryConcept = createQueryConcept(form, branchPath, conceptAttributeChanges, throwExceptionIfTransitiveClosureLoopFound, nodeId, node);
-			if (node.getParents().isEmpty() && !queryConcept.isRoot()) {
-				// Concept is probably inactive, don't add to semantic index.
-				continue;
-			}
-			queryConcept.setCreating(true);
-			queryConceptsToSave.add(queryConcept);
-		}
-
-		// Delete query concepts which have no parents
-		queryConceptsToSave.stream().filter(c -> c.getParents().isEmpty() && !c.isRoot()).forEach(Entity::markDeleted);
-
-		queryConceptsToSave.forEach(QueryConcept::serializeGroupedAttributesMap);
-
-		final long countToCreate = queryConceptsToSave.stream().filter(QueryConcept::isCreating).count();
-		final Optional<QueryConcept> firstToCreate = queryConceptsToSave.stream().filter(QueryConcept::isCreating).findFirst();
-		String createMessage = firstToCreate.isPresent() ? String.format("%s semantic concepts created including %s.", countToCreate, firstToCreate.get()) :
-				"No semantic concepts need creating.";
-
-		final long countToUpdate = queryConceptsToSave.stream().filter(q -> q.isChanged() && !q.isCreating()).count();
-		final Optional<QueryConcept> firstToUpdate = queryConceptsToSave.stream().filter(q -> q.isChanged() && !q.isCreating() && !q.isDeleted()).findFirst();
-		String updateMessage = firstToUpdate.isPresent() ? String.format("%s semantic concepts updated including %s.", countToUpdate, firstToUpdate.get()) :
-				"No semantic concepts need updating.";
-
-		final long countToDelete = queryConceptsToSave.stream().filter(QueryConcept::isDeleted).count();
-		final Optional<QueryConcept> firstToDelete = queryConceptsToSave.stream().filter(QueryConcept::isDeleted).findFirst();
-		String deleteMessage = firstToDelete.isPresent() ? String.format("%s semantic concepts deleted including %s.", countToDelete, firstToDelete.get()) :
-				"No semantic concepts need deleting.";
-
-		logger.info("Semantic index change summary for {} form: {} concepts loaded into the graph. {} {} {}", form.getName(), graphBuilder.getNodes().size(),
-				createMessage, updateMessage, deleteMessage);
-
-		if (!queryConceptsToSave.isEmpty()) {
-
-			if (dryRun) {
-				logger.info("Semantic index rebuild is in dryRun mode so no changes will be persisted!");
-			} else {
-				// Save in batches
-				for (List<QueryConcept> queryConcepts : Iterables.partition(queryConceptsToSave, Config.BATCH_SAVE_SIZE)) {
-					doSaveBatch(queryConcepts, commit);
+			// The remaining nodes are new - create new QueryConcepts
+			for (Long nodeId : nodesNotFound) {
+				Node node = nodesToSave.get(nodeId);
+				QueryConcept queryConcept = createQueryConcept(form, branchPath, conceptAttributeChanges, throwExceptionIfTransitiveClosureLoopFound, nodeId, node);
+				if (!node.hasParents() && !queryConcept.isRoot()) {
+					// Concept is probably inactive, don't add to semantic index.
+					continue;
 				}
+				queryConcept.setCreating(true);
+				queryConceptSaver.save(queryConcept);
 			}
+
+			savedCount = queryConceptSaver.finish();
+		} finally {
+			// A failure while calculating, such as a transitive closure loop, must not leave batches writing to the commit
+			queryConceptSaver.cancel();
 		}
+		logger.info("Semantic index change summary for {} form: {} concepts loaded into the graph. {}", form.getName(), graphBuilder.getNodeCount(),
+				queryConceptSaver.getSummary());
 		timer.checkpoint("Save updated QueryConcepts");
-		logger.debug("{} concepts updated within the {} semantic index.", queryConceptsToSave.size(), form.getName());
+		logger.debug("{} concepts updated within the {} semantic index.", savedCount, form.getName());
 
 		timer.finish();
-		return queryConceptsToSave.size();
+		return savedCount;
 	}
 
 	private QueryConcept createQueryConcept(Form form, String branchPath, Map<Long, AttributeChanges> conceptAttributeChanges,
 			boolean throwExceptionIfTransitiveClosureLoopFound, Long nodeId, Node node) throws GraphBuilderException {
 
-		final Set<Long> transitiveClosure = new HashSet<>(node.getTransitiveClosure(branchPath, throwExceptionIfTransitiveClosureLoopFound));
-		final Set<Long> parentIds = node.getParents().stream().map(Node::getId).collect(Collectors.toSet());
+		final Set<Long> transitiveClosure = node.getTransitiveClosure(branchPath, throwExceptionIfTransitiveClosureLoopFound);
+		final Set<Long> parentIds = node.getParentIds();
 		QueryConcept queryConcept = new QueryConcept(nodeId, parentIds, transitiveClosure, form.isStated());
 		applyAttributeChanges(queryConcept, nodeId, conceptAttributeChanges);
 		return queryConcept;
@@ -473,13 +554,15 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 	}
 
 	private Map<String, ConcreteValue.DataType> getConcreteAttributeDataTypeMap(Commit commit) throws ServiceException {
-		MRCM mrcm = mrcmLoader.loadActiveMRCM(commit.getBranch().getPath(), versionControlHelper.getBranchCriteriaIncludingOpenCommit(commit));
+		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteriaIncludingOpenCommit(commit);
+		// Not cached, later listeners of the commit may still change the MRCM
+		MRCM mrcm = mrcmLoader.loadActiveMRCM(commit.getBranch().getPath(), branchCriteria);
 		return mrcm.getAttributeRanges().stream().filter(r -> r.getDataType() != null)
 				.collect(Collectors.toMap(AttributeRange::getReferencedComponentId, AttributeRange::getDataType, (r1, r2) -> r2));
 	}
 
 	private Set<Long> buildRelevantPartsOfExistingGraph(GraphBuilder graphBuilder, Form form,
-			BranchCriteria changesCriteria, BranchCriteria existingContentCriteria,
+			CommitLockedCriteria changesCriteria, CommitLockedCriteria existingContentCriteria,
 			Set<String> internalIdsOfDeletedComponents, TimerUtil timer) throws ConversionException {
 
 		Set<Long> updateSource = new LongOpenHashSet();
@@ -632,7 +715,7 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 		return updateSource;
 	}
 
-	private void buildGraphFromExistingNodes(Set<Long> nodesToLoad, boolean stated, GraphBuilder graphBuilder, BranchCriteria branchCriteriaForAlreadyCommittedContent,
+	private void buildGraphFromExistingNodes(Set<Long> nodesToLoad, boolean stated, GraphBuilder graphBuilder, CommitLockedCriteria branchCriteriaForAlreadyCommittedContent,
 			Consumer<QueryConcept> alternativeAncestorCollector) {
 
 		NativeSearchQueryBuilder queryConceptQuery = new NativeSearchQueryBuilder()
@@ -723,7 +806,7 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 		doSaveBatchComponents(queryConcepts, commit, "conceptIdForm", queryConceptRepository);
 	}
 
-	private Set<Long> getInactiveOrMissingConceptIds(Set<Long> requiredActiveConcepts, BranchCriteria branchCriteria) {
+	private Set<Long> getInactiveOrMissingConceptIds(Set<Long> requiredActiveConcepts, CommitLockedCriteria branchCriteria) {
 		// We can't select the concepts which are not there!
 		// For speed first we will count the concepts which are there and active
 		// If the count doesn't match we load the ids of the concepts which are there so we can work out those which are not.
@@ -755,6 +838,200 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 		return missingConceptIds;
 	}
 
+	/**
+	 * Receives query concepts as they are calculated and passes them to the save pipeline in batches.
+	 * Counts are kept as concepts arrive so that the concepts of a complete rebuild are never all held in memory.
+	 */
+	private final class QueryConceptSaver {
+
+		private final SavePipeline savePipeline;
+		private final Set<Long> affectedConceptIds;
+		private final Set<Long> savedConceptIds = new LongOpenHashSet();
+		private List<QueryConcept> batch = new ArrayList<>();
+		private long countToCreate;
+		private long countToUpdate;
+		private long countToDelete;
+		private QueryConcept firstToCreate;
+		private QueryConcept firstToUpdate;
+		private QueryConcept firstToDelete;
+
+		private QueryConceptSaver(Commit commit, boolean dryRun, Set<Long> affectedConceptIds) {
+			if (dryRun) {
+				logger.info("Semantic index rebuild is in dryRun mode so no changes will be persisted!");
+				savePipeline = null;
+			} else {
+				savePipeline = new SavePipeline(commit);
+			}
+			this.affectedConceptIds = affectedConceptIds;
+		}
+
+		private void save(QueryConcept queryConcept) throws ServiceException {
+			if (!savedConceptIds.add(queryConcept.getConceptIdL())) {
+				return;
+			}
+
+			// Delete query concepts which have no parents
+			if (queryConcept.getParents().isEmpty() && !queryConcept.isRoot()) {
+				queryConcept.markDeleted();
+			}
+
+			if (queryConcept.isCreating()) {
+				countToCreate++;
+				if (firstToCreate == null) {
+					firstToCreate = queryConcept;
+				}
+			} else if (queryConcept.isChanged()) {
+				countToUpdate++;
+				if (firstToUpdate == null && !queryConcept.isDeleted()) {
+					firstToUpdate = queryConcept;
+				}
+			}
+			if (queryConcept.isDeleted()) {
+				countToDelete++;
+				if (firstToDelete == null) {
+					firstToDelete = queryConcept;
+				}
+			}
+
+			if (affectedConceptIds != null) {
+				affectedConceptIds.add(queryConcept.getConceptIdL());
+				affectedConceptIds.addAll(queryConcept.getAncestors());
+			}
+
+			if (savePipeline != null) {
+				// Each batch is prepared while the previous one is being indexed
+				queryConcept.serializeGroupedAttributesMap();
+				batch.add(queryConcept);
+				if (batch.size() == Config.BATCH_SAVE_SIZE) {
+					savePipeline.save(batch);
+					batch = new ArrayList<>();
+				}
+			}
+		}
+
+		/**
+		 * Saves the last batch and waits for all batches to be indexed.
+		 * @return number of query concepts saved.
+		 */
+		private int finish() throws ServiceException {
+			if (savePipeline != null) {
+				if (!batch.isEmpty()) {
+					savePipeline.save(batch);
+					batch = new ArrayList<>();
+				}
+				savePipeline.awaitCompletion();
+			}
+			return savedConceptIds.size();
+		}
+
+		/**
+		 * Stops saving batches which have not started and waits for the batch being indexed, if any. Does nothing once finished.
+		 */
+		private void cancel() {
+			if (savePipeline != null) {
+				savePipeline.cancel();
+			}
+		}
+
+		private String getSummary() {
+			String createMessage = firstToCreate != null ? String.format("%s semantic concepts created including %s.", countToCreate, firstToCreate) :
+					"No semantic concepts need creating.";
+			String updateMessage = firstToUpdate != null ? String.format("%s semantic concepts updated including %s.", countToUpdate, firstToUpdate) :
+					"No semantic concepts need updating.";
+			String deleteMessage = firstToDelete != null ? String.format("%s semantic concepts deleted including %s.", countToDelete, firstToDelete) :
+					"No semantic concepts need deleting.";
+			return String.join(" ", createMessage, updateMessage, deleteMessage);
+		}
+	}
+
+	/**
+	 * Branch criteria of one form that build entity criteria under the commit lock.
+	 * Entity criteria including the open commit read the versions replaced in the commit, which the save pipeline of the other form
+	 * changes concurrently. The built query holds its own copy of the replaced version ids, so it can be used after the lock is released.
+	 */
+	private static final class CommitLockedCriteria {
+
+		private final Commit commit;
+		private final BranchCriteria branchCriteria;
+
+		private CommitLockedCriteria(Commit commit, BranchCriteria branchCriteria) {
+			this.commit = commit;
+			this.branchCriteria = branchCriteria;
+		}
+
+		private BoolQueryBuilder getEntityBranchCriteria(Class<? extends DomainEntity> entityClass) {
+			synchronized (commit) {
+				return branchCriteria.getEntityBranchCriteria(entityClass);
+			}
+		}
+	}
+
+	/**
+	 * Saves batches of query concepts in order on another thread, with a bounded number of batches pending.
+	 * Saving records replaced versions on the commit so batches from the stated and inferred forms take the commit lock in turn.
+	 */
+	private final class SavePipeline {
+
+		private final Commit commit;
+		private final Semaphore pendingBatches;
+		private CompletableFuture<Void> lastBatch = CompletableFuture.completedFuture(null);
+		private volatile boolean cancelled;
+
+		private SavePipeline(Commit commit) {
+			this.commit = commit;
+			pendingBatches = new Semaphore(Math.max(1, maxPendingSaveBatches));
+		}
+
+		private void save(List<QueryConcept> queryConcepts) throws ServiceException {
+			if (lastBatch.isCompletedExceptionally()) {
+				// Fail fast, later batches will not be saved
+				awaitCompletion();
+			}
+			try {
+				pendingBatches.acquire();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new ServiceException("Interrupted while saving semantic index.", e);
+			}
+			lastBatch = lastBatch.thenRunAsync(() -> {
+				if (cancelled) {
+					return;
+				}
+				synchronized (commit) {
+					doSaveBatch(queryConcepts, commit);
+				}
+			}, taskExecutor);
+			// Runs even if this or an earlier batch failed
+			lastBatch.whenComplete((result, throwable) -> pendingBatches.release());
+		}
+
+		private void cancel() {
+			cancelled = true;
+			try {
+				lastBatch.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				// The failure has already been reported or the calculation failed first
+				logger.debug("Semantic index save failed after calculation was cancelled.", e);
+			}
+		}
+
+		private void awaitCompletion() throws ServiceException {
+			try {
+				lastBatch.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new ServiceException("Interrupted while saving semantic index.", e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				}
+				throw new ServiceException("Failed to save semantic index. " + e.getCause().getMessage(), e.getCause());
+			}
+		}
+	}
+
 	private static final class AttributeChanges {
 
 		private static final Comparator<AttributeChange> comparator = Comparator
@@ -0,0 +1,176 @@
+package org.snomed.snowstorm.core.data.services.identifier;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import io.kaicode.elasticvc.api.BranchCriteria;
+import io.kaicode.elasticvc.api.CommitListener;
+import io.kaicode.elasticvc.api.VersionControlHelper;
+import io.kaicode.elasticvc.domain.Commit;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.snowstorm.core.data.domain.Concept;
+import org.snomed.snowstorm.core.data.domain.Description;
+import org.snomed.snowstorm.core.data.domain.Relationship;
+import org.snomed.snowstorm.core.data.domain.SnomedComponent;
+import org.snomed.snowstorm.core.util.TimerUtil;
+import org.springframework.data.elasticsearch.core.ElasticsearchRestTemplate;
+import org.springframework.data.elasticsearch.core.SearchHitsIterator;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.kaicode.elasticvc.domain.Commit.CommitType.CONTENT;
+import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
+import static org.elasticsearch.index.query.QueryBuilders.matchAllQuery;
+import static org.snomed.snowstorm.core.data.services.ConceptService.LARGE_PAGE;
+
+/**
+ * In-memory Bloom filters of the concept, description and relationship identifiers used on any branch, one filter for each namespace and partition.
+ * The filters are loaded in the background at startup and kept current as a commit listener.
+ * An identifier which the filter does not contain has never been used, an identifier which the filter might contain must still be checked against the store.
+ */
+public class ExistingIdentifierFilter implements CommitListener {
+
+	private final ElasticsearchRestTemplate elasticsearchTemplate;
+	private final VersionControlHelper versionControlHelper;
+	private final int internationalExpectedIds;
+	private final int extensionExpectedIds;
+	private final double falsePositiveRate;
+
+	private final Map<String, BloomFilter<Long>> filters = new ConcurrentHashMap<>();
+	// Only one load runs at a time, invalidating the filter while loading does not allow a second load to start
+	private final AtomicBoolean loading = new AtomicBoolean();
+	// Incremented each time the filter may have missed identifiers, a load only completes if the generation did not change while loading
+	private final AtomicInteger generation = new AtomicInteger();
+	private volatile int loadedGeneration = -1;
+
+	private static final Logger logger = LoggerFactory.getLogger(ExistingIdentifierFilter.class);
+
+	public ExistingIdentifierFilter(ElasticsearchRestTemplate elasticsearchTemplate, VersionControlHelper versionControlHelper,
+			int internationalExpectedIds, int extensionExpectedIds, double falsePositiveRate) {
+
+		this.elasticsearchTemplate = elasticsearchTemplate;
+		this.versionControlHelper = versionControlHelper;
+		this.internationalExpectedIds = internationalExpectedIds;
+		this.extensionExpectedIds = extensionExpectedIds;
+		this.falsePositiveRate = falsePositiveRate;
+	}
+
+	/**
+	 * Starts loading the identifiers of all component versions in a background thread, unless already loading or loaded.
+	 */
+	public void loadInBackground() {
+		if (isLoaded() || !loading.compareAndSet(false, true)) {
+			return;
+		}
+		Thread loader = new Thread(() -> {
+			int loadGeneration = generation.get();
+			try {
+				TimerUtil timer = new TimerUtil("Existing identifier filter load");
+				addAll(matchAllQuery(), Concept.class, Concept.Fields.CONCEPT_ID);
+				timer.checkpoint("Concept identifiers");
+				addAll(matchAllQuery(), Description.class, Description.Fields.DESCRIPTION_ID);
+				timer.checkpoint("Description identifiers");
+				addAll(matchAllQuery(), Relationship.class, Relationship.Fields.RELATIONSHIP_ID);
+				timer.checkpoint("Relationship identifiers");
+				timer.finish();
+				if (generation.get() != loadGeneration) {
+					throw new IllegalStateException("Identifiers of a commit were missed during the load.");
+				}
+				loadedGeneration = loadGeneration;
+				logger.info("Existing identifier filter loaded {}", getStats());
+			} catch (Exception e) {
+				// Identifiers will be checked against the store until a later load succeeds
+				logger.warn("Failed to load existing identifier filter, will retry when identifiers are next reserved.", e);
+			} finally {
+				loading.set(false);
+			}
+		}, "ExistingIdentifierFilterLoader");
+		loader.setDaemon(true);
+		loader.start();
+	}
+
+	@Override
+	public void preCommitCompletion(Commit commit) throws IllegalStateException {
+		// Only content commits create identifiers, rebase and promotion only copy existing components
+		if (commit.getCommitType() != CONTENT) {
+			return;
+		}
+		try {
+			BranchCriteria changesCriteria = versionControlHelper.getBranchCriteriaChangesAndDeletionsWithinOpenCommitOnly(commit);
+			addAll(changesCriteria.getEntityBranchCriteria(Concept.class), Concept.class, Concept.Fields.CONCEPT_ID);
+			addAll(changesCriteria.getEntityBranchCriteria(Description.class), Description.class, Description.Fields.DESCRIPTION_ID);
+			addAll(changesCriteria.getEntityBranchCriteria(Relationship.class), Relationship.class, Relationship.Fields.RELATIONSHIP_ID);
+		} catch (Exception e) {
+			// The filter may now be missing identifiers, stop using it until reloaded rather than failing the commit
+			logger.error("Failed to add identifiers of commit on {} to existing identifier filter, filter will be reloaded.", commit.getBranch().getPath(), e);
+			generation.incrementAndGet();
+		}
+	}
+
+	private <T extends SnomedComponent<?>> void addAll(QueryBuilder query, Class<T> componentClass, String idField) {
+		try (SearchHitsIterator<T> stream = elasticsearchTemplate.searchForStream(new NativeSearchQueryBuilder()
+				.withQuery(boolQuery().must(query))
+				.withFields(idField)
+				.withPageable(LARGE_PAGE)
+				.build(), componentClass)) {
+			stream.forEachRemaining(hit -> add(hit.getContent().getId()));
+		}
+	}
+
+	void add(String sctid) {
+		if (sctid != null) {
+			getFilter(sctid).put(Long.parseLong(sctid));
+		}
+	}
+
+	/**
+	 * @return false if the identifier has definitely not been used, true if it might have been used or the filter is not loaded yet.
+	 */
+	public boolean mightExist(Long sctid) {
+		if (!isLoaded()) {
+			return true;
+		}
+		BloomFilter<Long> filter = filters.get(getFilterKey(sctid.toString()));
+		return filter != null && filter.mightContain(sctid);
+	}
+
+	public boolean isLoaded() {
+		return loadedGeneration == generation.get();
+	}
+
+	void markLoaded() {
+		loadedGeneration = generation.get();
+	}
+
+	private BloomFilter<Long> getFilter(String sctid) {
+		String key = getFilterKey(sctid);
+		return filters.computeIfAbsent(key, k -> BloomFilter.create(Funnels.longFunnel(),
+				key.startsWith("0-") ? internationalExpectedIds : extensionExpectedIds, falsePositiveRate));
+	}
+
+	// Namespace and partition, for example "0-00" or "1000101-10"
+	static String getFilterKey(String sctid) {
+		int length = sctid.length();
+		String partitionId = sctid.substring(length - 3, length - 1);
+		String namespace = partitionId.charAt(0) == '1' && length >= 10 ? Integer.toString(Integer.parseInt(sctid.substring(length - 10, length - 3))) : "0";
+		return namespace + "-" + partitionId;
+	}
+
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("loaded", isLoaded());
+		stats.put("filters", filters.size());
+		long approximateIds = 0;
+		for (BloomFilter<Long> filter : filters.values()) {
+			approximateIds += filter.approximateElementCount();
+		}
+		stats.put("approximateIds", approximateIds);
+		return stats;
+	}
+}
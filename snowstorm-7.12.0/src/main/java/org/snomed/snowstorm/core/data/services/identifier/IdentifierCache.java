@@ -1,16 +1,18 @@
 package org.snomed.snowstorm.core.data.services.identifier;
 
+import java.util.Collection;
 import java.util.Deque;
 import java.util.List;
 import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class IdentifierCache {
 	
 	private final int namespaceId;
 	private final String partitionId;
 	private final int maxCapacity;
-	private boolean topUpInProgress = false;
-	private boolean isLocked = false;
+	private final AtomicBoolean topUpInProgress = new AtomicBoolean();
+	private final AtomicBoolean isLocked = new AtomicBoolean();
 	
 	private Deque<Long> identifiers = new ConcurrentLinkedDeque<>();
 	
@@ -39,27 +41,33 @@ public class IdentifierCache {
 	}
 
 	public boolean isTopUpInProgress() {
-		return topUpInProgress;
+		return topUpInProgress.get();
 	}
 
-	public synchronized void setTopUpInProgress(boolean topUpInProgress) {
-		this.topUpInProgress = topUpInProgress;
+	public void setTopUpInProgress(boolean topUpInProgress) {
+		this.topUpInProgress.set(topUpInProgress);
+	}
+
+	// Returns false if another thread is already topping up this cache
+	boolean startTopUp() {
+		return topUpInProgress.compareAndSet(false, true);
 	}
 
 	public void topUp(List<Long> newIdentifiers) {
 		identifiers.addAll(newIdentifiers);
 	}
 
+	// Identifiers taken but not used are given out again first
+	void release(Collection<Long> unusedIdentifiers) {
+		unusedIdentifiers.forEach(identifiers::addFirst);
+	}
+
 	public boolean lock() {
-		if (isLocked) {
-			return false;
-		} 
-		isLocked = true;
-		return true;
+		return isLocked.compareAndSet(false, true);
 	}
 	
 	public void unlock() {
-		isLocked = false;
+		isLocked.set(false);
 	}
 	
 	@Override
@@ -11,6 +11,9 @@ import org.springframework.beans.factory.annotation.Value;
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 public class IdentifierCacheManager implements Runnable {
 
@@ -30,19 +33,29 @@ public class IdentifierCacheManager implements Runnable {
 	@Autowired
 	private IdentifierSource identifierSource;
 
+	@Autowired
+	private ExecutorService taskExecutor;
+
 	@Value("${cis.cache.concept-prefetch-count}")
 	private int conceptIdPrefetchCount;
 
 	// Separate cache for each namespace/partition combination configured.
-	private Set<IdentifierCache> identifierCaches = Collections.synchronizedSet(new HashSet<>());
+	private Set<IdentifierCache> identifierCaches = ConcurrentHashMap.newKeySet();
 	private Thread cacheDaemon;
 	private boolean stayAlive = true;
 	boolean isSleeping = false;
 
+	// Wakes the daemon before the end of the polling interval when a cache drops below the top up level
+	private final Object topUpSignal = new Object();
+	private boolean topUpRequested = false;
+
 	private static final Logger logger = LoggerFactory.getLogger(IdentifierCacheManager.class);
 
-	public void addCache(int namespaceId, String partitionId, int quantity) {
-		identifierCaches.add(new IdentifierCache(namespaceId, partitionId, quantity));
+	public synchronized void addCache(int namespaceId, String partitionId, int quantity) {
+		//Concurrent requests for the same namespace/partition can all find no cache, only add the first
+		if (getCache(namespaceId, partitionId) == null) {
+			identifierCaches.add(new IdentifierCache(namespaceId, partitionId, quantity));
+		}
 	}
 
 	@PostConstruct
@@ -75,7 +88,12 @@ public class IdentifierCacheManager implements Runnable {
 				try {
 					isSleeping = true;
 					//Don't mind being interrupted while sleeping.
-					Thread.sleep(timeRemaining);
+					synchronized (topUpSignal) {
+						if (!topUpRequested) {
+							topUpSignal.wait(Math.max(1, timeRemaining));
+						}
+						topUpRequested = false;
+					}
 					isSleeping = false;
 				} catch (InterruptedException e) {
 					logger.info("Identifier cache manager sleep interrupted.");
@@ -97,22 +115,41 @@ public class IdentifierCacheManager implements Runnable {
 	void checkTopUpRequired() {
 		try {
 			//Work through each cache and see if number of identifiers is below top up level
+			//Caches are topped up concurrently
+			List<Future<?>> topUps = new ArrayList<>();
 			for (IdentifierCache thisCache : identifierCaches) {
-				if ((double)thisCache.identifiersAvailable() < (double)thisCache.getMaxCapacity() * topUpLevel) {
-					topUp(thisCache, 0);
+				if (isBelowTopUpLevel(thisCache)) {
+					topUps.add(taskExecutor.submit(() -> topUp(thisCache, 0)));
 				}
 			}
+			for (Future<?> topUp : topUps) {
+				topUp.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			logger.info("Identifier cache top-up interrupted.");
 		} catch (Exception e) {
 			logger.error("Exception during identifier cache top-up",e);
 		}
 	}
 
+	private boolean isBelowTopUpLevel(IdentifierCache cache) {
+		return (double)cache.identifiersAvailable() < (double)cache.getMaxCapacity() * topUpLevel;
+	}
+
+	// Asks the daemon to top up without waiting for the rest of the polling interval
+	void requestTopUp() {
+		synchronized (topUpSignal) {
+			topUpRequested = true;
+			topUpSignal.notifyAll();
+		}
+	}
+
 	void topUp(IdentifierCache cache, int extraRequired) {
-		if (cache.isTopUpInProgress()) {
+		if (!cache.startTopUp()) {
 			logger.warn("Top-up already in progress for {}", cache);
 			return;
 		}
-		cache.setTopUpInProgress(true);
 		int quantityRequired = cache.getMaxCapacity() - cache.identifiersAvailable() + extraRequired;
 		try {
 			logger.info("Topping up {} by {}", cache, quantityRequired);
@@ -148,13 +185,22 @@ public class IdentifierCacheManager implements Runnable {
 			}
 
 			//Does it have enough available?
-			if (cache.identifiersAvailable() > quantityRequired) {
-				waitForLock(cache);
-				for (int i=0; i < quantityRequired; i++) {
-					idBlock.addId(componentType, cache.getIdentifier());
+			//Checked while locked so that concurrent requests can not take the same identifiers
+			waitForLock(cache);
+			try {
+				if (cache.identifiersAvailable() > quantityRequired) {
+					for (int i=0; i < quantityRequired; i++) {
+						idBlock.addId(componentType, cache.getIdentifier());
+					}
+					requestSatisfied = true;
 				}
+			} finally {
 				cache.unlock();
-				requestSatisfied = true;
+			}
+
+			//Top up in the background rather than during a later request
+			if (isBelowTopUpLevel(cache)) {
+				requestTopUp();
 			}
 		} else {
 			//If no cache available & not requesting for International (as already prefetched),
@@ -174,6 +220,22 @@ public class IdentifierCacheManager implements Runnable {
 		}
 	}
 	
+	/**
+	 * Returns identifiers reserved for a request which could not be completed to the cache of their namespace and partition.
+	 */
+	void releaseIds(int namespaceId, String partitionId, Collection<Long> sctIds) {
+		if (sctIds.isEmpty()) {
+			return;
+		}
+		IdentifierCache cache = getCache(namespaceId, partitionId);
+		if (cache == null) {
+			logger.warn("No cache for namespace {} partition {}, {} unused identifiers can not be released.", namespaceId, partitionId, sctIds.size());
+			return;
+		}
+		cache.release(sctIds);
+		logger.info("Released {} unused identifiers to {}", sctIds.size(), cache);
+	}
+
 	private int determinePrefetchQuantity(ComponentType componentType) {
 		switch (componentType) {
 			case Concept:
@@ -37,6 +37,10 @@ public class IdentifierReservedBlock {
 		idsReserved.get(componentType).addAll(sctIds);
 	}
 
+	Collection<Long> getIdsReserved(ComponentType componentType) {
+		return idsReserved.get(componentType);
+	}
+
 	Collection<Long> getIdsAssigned(ComponentType componentType) {
 		return idsAssigned.get(componentType);
 	}
@@ -91,17 +91,31 @@ public class IdentifierService {
 	private IdentifierReservedBlock getReservedBlock(int namespace, int conceptIds, int descriptionIds, int relationshipIds) throws ServiceException {
 		String partition_part1 = namespace == 0 ? PARTITION_PART1_INTERNATIONAL : PARTITION_PART1_EXTENSION;
 		IdentifierReservedBlock idBlock = new IdentifierReservedBlock(namespace);
-		//TODO Run these in parallel
+		List<String> partitionsPopulated = new ArrayList<>();
 		try {
-			cacheManager.populateIdBlock(idBlock, conceptIds, namespace, partition_part1 + PARTITION_PART2_CONCEPT);
-			cacheManager.populateIdBlock(idBlock, descriptionIds, namespace, partition_part1 + PARTITION_PART2_DESCRIPTION);
-			cacheManager.populateIdBlock(idBlock, relationshipIds, namespace, partition_part1 + PARTITION_PART2_RELATIONSHIP);
-		} catch (ServiceException e) {
+			populateIdBlock(idBlock, conceptIds, namespace, partition_part1 + PARTITION_PART2_CONCEPT, partitionsPopulated);
+			populateIdBlock(idBlock, descriptionIds, namespace, partition_part1 + PARTITION_PART2_DESCRIPTION, partitionsPopulated);
+			populateIdBlock(idBlock, relationshipIds, namespace, partition_part1 + PARTITION_PART2_RELATIONSHIP, partitionsPopulated);
+		} catch (ServiceException | RuntimeException e) {
+			// The block will not be used, give the identifiers already reserved for the other partitions to later requests
+			for (String partitionId : partitionsPopulated) {
+				cacheManager.releaseIds(namespace, partitionId, idBlock.getIdsReserved(ComponentType.getTypeFromPartition(partitionId)));
+			}
+			if (e instanceof RuntimeException) {
+				throw (RuntimeException) e;
+			}
 			throw new ServiceException ("Unable to obtain SCTIDs", e);
 		}
 		return idBlock;
 	}
 
+	private void populateIdBlock(IdentifierReservedBlock idBlock, int quantityRequired, int namespace, String partitionId, List<String> partitionsPopulated)
+			throws ServiceException {
+
+		cacheManager.populateIdBlock(idBlock, quantityRequired, namespace, partitionId);
+		partitionsPopulated.add(partitionId);
+	}
+
 	public void persistAssignedIdsForRegistration(IdentifierReservedBlock reservedBlock) {
 		for (ComponentType componentType : ComponentType.values()) {
 			Collection<Long> idsAssigned = reservedBlock.getIdsAssigned(componentType);
@@ -8,9 +8,12 @@ import org.springframework.data.domain.PageRequest;
 import org.springframework.data.elasticsearch.core.ElasticsearchRestTemplate;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
 
+import javax.annotation.PostConstruct;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static org.elasticsearch.index.query.QueryBuilders.termsQuery;
@@ -18,6 +21,7 @@ import static org.elasticsearch.index.query.QueryBuilders.termsQuery;
 /**
  * Generates SNOMED Component identifiers locally using random numbers.
  * The store is queried to check that the numbers are unique.
+ * When an {@link ExistingIdentifierFilter} is given only the concept, description and relationship identifiers which the filter might contain are queried.
  */
 public class LocalRandomIdentifierSource implements IdentifierSource {
 
@@ -25,13 +29,27 @@ public class LocalRandomIdentifierSource implements IdentifierSource {
 
 	private final ElasticsearchRestTemplate elasticsearchTemplate;
 
+	private final ExistingIdentifierFilter existingIdentifierFilter;
+
 	private ItemIdProvider itemIdProvider;
 
 	public LocalRandomIdentifierSource(ElasticsearchRestTemplate elasticsearchTemplate) {
+		this(elasticsearchTemplate, null);
+	}
+
+	public LocalRandomIdentifierSource(ElasticsearchRestTemplate elasticsearchTemplate, ExistingIdentifierFilter existingIdentifierFilter) {
 		this.elasticsearchTemplate = elasticsearchTemplate;
+		this.existingIdentifierFilter = existingIdentifierFilter;
 		itemIdProvider = new RandomItemIdProvider();
 	}
 
+	@PostConstruct
+	public void loadExistingIdentifierFilter() {
+		if (existingIdentifierFilter != null) {
+			existingIdentifierFilter.loadInBackground();
+		}
+	}
+
 	@Override
 	public List<Long> reserveIds(int namespaceId, String partitionId, int quantity) {
 		Set<Long> newIdentifiers = new LongLinkedOpenHashSet();
@@ -47,26 +65,27 @@ public class LocalRandomIdentifierSource implements IdentifierSource {
 				newIdentifierList = new LongArrayList(newIdentifiers);
 				// Bulk unique check
 				List<Long> alreadyExistingIdentifiers = new LongArrayList();
-				for (List<Long> newIdentifierBatch : Lists.partition(newIdentifierList, 10_000)) {
+				for (List<Long> newIdentifierBatch : Lists.partition(getIdentifiersToCheck(newIdentifierList, partitionId), 10_000)) {
 					switch (partitionId) {
 						case "00":
 						case "10":
 							// Concept identifier
-							alreadyExistingIdentifiers.addAll(findExistingIdentifiersInAnyBranch(newIdentifierBatch, Concept.class, Concept.Fields.CONCEPT_ID));
+							alreadyExistingIdentifiers.addAll(findExistingIdentifiersInAnyBranch(newIdentifierBatch, Concept.class, Concept.Fields.CONCEPT_ID, Concept::getId));
 							break;
 						case "01":
 						case "11":
 							// Description identifier
-							alreadyExistingIdentifiers.addAll(findExistingIdentifiersInAnyBranch(newIdentifierBatch, Description.class, Description.Fields.DESCRIPTION_ID));
+							alreadyExistingIdentifiers.addAll(findExistingIdentifiersInAnyBranch(newIdentifierBatch, Description.class, Description.Fields.DESCRIPTION_ID, Description::getId));
 							break;
 						case "02":
 						case "12":
 							// Relationship identifier
-							alreadyExistingIdentifiers.addAll(findExistingIdentifiersInAnyBranch(newIdentifierBatch, Relationship.class, Relationship.Fields.RELATIONSHIP_ID));
+							alreadyExistingIdentifiers.addAll(findExistingIdentifiersInAnyBranch(newIdentifierBatch, Relationship.class, Relationship.Fields.RELATIONSHIP_ID, Relationship::getId));
 							break;
 						case "06":
 							// Expression identifier
-							alreadyExistingIdentifiers.addAll(findExistingIdentifiersInAnyBranch(newIdentifierBatch, ReferenceSetMember.class, ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID));
+							alreadyExistingIdentifiers.addAll(findExistingIdentifiersInAnyBranch(newIdentifierBatch, ReferenceSetMember.class,
+									ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID, ReferenceSetMember::getReferencedComponentId));
 							break;
 					}
 				}
@@ -78,13 +97,31 @@ public class LocalRandomIdentifierSource implements IdentifierSource {
 		return newIdentifierList;
 	}
 
+	// Identifiers which the filter does not contain have never been used so only the others need to be checked in the store
+	private List<Long> getIdentifiersToCheck(List<Long> identifiers, String partitionId) {
+		if (existingIdentifierFilter == null || partitionId.equals(POSTCOORDINATED_EXPRESSION_PARTITION_ID)) {
+			return identifiers;
+		}
+		if (!existingIdentifierFilter.isLoaded()) {
+			// Retry if the load at startup failed
+			existingIdentifierFilter.loadInBackground();
+			return identifiers;
+		}
+		return identifiers.stream().filter(existingIdentifierFilter::mightExist).collect(Collectors.toList());
+	}
+
 	// Finds and returns matching existing identifiers
-	private List<Long> findExistingIdentifiersInAnyBranch(List<Long> identifiers, Class<? extends SnomedComponent> snomedComponentClass, String idField) {
+	private <T extends SnomedComponent<?>> List<Long> findExistingIdentifiersInAnyBranch(List<Long> identifiers, Class<T> snomedComponentClass, String idField,
+			Function<T, String> idGetter) {
+
+		if (identifiers.isEmpty()) {
+			return Collections.emptyList();
+		}
 		NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder()
 				.withQuery(termsQuery(idField, identifiers))
 				.withPageable(PageRequest.of(0, identifiers.size()));
 		return elasticsearchTemplate.search(queryBuilder.build(), snomedComponentClass)
-				.stream().map(hit -> Long.parseLong(hit.getContent().getId())).collect(Collectors.toList());
+				.stream().map(hit -> Long.parseLong(idGetter.apply(hit.getContent()))).collect(Collectors.toList());
 	}
 
 	@Override
@@ -92,6 +129,10 @@ public class LocalRandomIdentifierSource implements IdentifierSource {
 		// Not required for this implementation.
 	}
 
+	public ExistingIdentifierFilter getExistingIdentifierFilter() {
+		return existingIdentifierFilter;
+	}
+
 	public ItemIdProvider getItemIdProvider() {
 		return itemIdProvider;
 	}
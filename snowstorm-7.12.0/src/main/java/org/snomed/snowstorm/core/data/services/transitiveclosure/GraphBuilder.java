@@ -1,42 +1,274 @@
 package org.snomed.snowstorm.core.data.services.transitiveclosure;
 
-import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.Map;
 
+/**
+ * Is-a graph held in primitive arrays. Nodes are indexed by int in the order they are created, with a lookup from concept id to index.
+ * Ancestors and the updated flag of every node are calculated together, in topological order, the first time they are requested
+ * and reused until the graph is changed again.
+ */
 public class GraphBuilder {
 
-	private final Map<Long, Node> nodeLookup = new Long2ObjectOpenHashMap<>();
+	private static final int INITIAL_CAPACITY = 1024;
+	private static final int[] NONE = new int[0];
+
+	private final Long2IntOpenHashMap indexLookup = new Long2IntOpenHashMap();
+	private long[] ids = new long[INITIAL_CAPACITY];
+	private int[][] parents = new int[INITIAL_CAPACITY][];
+	private int[] parentCounts = new int[INITIAL_CAPACITY];
+	private Node[] nodes = new Node[INITIAL_CAPACITY];
+	private final BitSet updated = new BitSet();
+	private int nodeCount;
+
+	// Calculated on demand. Ancestors of a node in or below a loop are null because they can not be calculated in topological order.
+	private int[][] ancestors;
+	private BitSet ancestorOrSelfUpdated;
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(GraphBuilder.class);
 
-	public void addParent(Long sourceId, Long destinationId) {
+	public GraphBuilder() {
+		indexLookup.defaultReturnValue(-1);
+	}
+
+	public void addParent(long sourceId, long destinationId) {
 		LOGGER.debug("{} -> {}", sourceId, destinationId);
-		Node createNode = getCreateNode(sourceId);
-		createNode.addParent(getCreateNode(destinationId));
+		int source = getCreateNode(sourceId);
+		int destination = getCreateNode(destinationId);
+		int[] sourceParents = parents[source];
+		int count = parentCounts[source];
+		for (int i = 0; i < count; i++) {
+			if (sourceParents[i] == destination) {
+				return;
+			}
+		}
+		if (count == sourceParents.length) {
+			sourceParents = parents[source] = Arrays.copyOf(sourceParents, Math.max(2, count * 2));
+		}
+		sourceParents[count] = destination;
+		parentCounts[source] = count + 1;
+		graphChanged();
 	}
 
-	private Node getCreateNode(Long id) {
-		Node node = nodeLookup.get(id);
-		if (node == null) {
-			node = new Node(id);
-			nodeLookup.put(node.getId(), node);
+	private int getCreateNode(long id) {
+		int index = indexLookup.get(id);
+		if (index == -1) {
+			index = nodeCount++;
+			if (index == ids.length) {
+				int capacity = ids.length * 2;
+				ids = Arrays.copyOf(ids, capacity);
+				parents = Arrays.copyOf(parents, capacity);
+				parentCounts = Arrays.copyOf(parentCounts, capacity);
+				nodes = Arrays.copyOf(nodes, capacity);
+			}
+			ids[index] = id;
+			parents[index] = NONE;
+			nodes[index] = new Node(this, index, id);
+			indexLookup.put(id, index);
+			graphChanged();
 		}
-		return node;
+		return index;
 	}
 
 	public Collection<Node> getNodes() {
-		return nodeLookup.values();
+		return Arrays.asList(nodes).subList(0, nodeCount);
 	}
 
 	public int getNodeCount() {
-		return nodeLookup.size();
+		return nodeCount;
+	}
+
+	public void clearParentsAndMarkUpdated(long sourceId) {
+		int index = getCreateNode(sourceId);
+		parentCounts[index] = 0;
+		markUpdated(index);
+	}
+
+	void markUpdated(int index) {
+		updated.set(index);
+		graphChanged();
+	}
+
+	long getId(int index) {
+		return ids[index];
+	}
+
+	int getParentCount(int index) {
+		return parentCounts[index];
+	}
+
+	int getParent(int index, int parent) {
+		return parents[index][parent];
+	}
+
+	Node getNode(int index) {
+		return nodes[index];
+	}
+
+	/**
+	 * @return indexes of all ancestors of the node. Includes the node itself if it is in a loop.
+	 */
+	int[] getAncestors(int index) {
+		calculateIfChanged();
+		int[] nodeAncestors = ancestors[index];
+		return nodeAncestors != null ? nodeAncestors : collectAncestors(index);
 	}
 
-	public void clearParentsAndMarkUpdated(Long sourceId) {
-		getCreateNode(sourceId).markUpdated().getParents().clear();
+	boolean isAncestorOrSelfUpdated(int index) {
+		calculateIfChanged();
+		return ancestorOrSelfUpdated.get(index);
+	}
+
+	private void graphChanged() {
+		ancestors = null;
+		ancestorOrSelfUpdated = null;
+	}
+
+	private void calculateIfChanged() {
+		if (ancestors != null) {
+			return;
+		}
+		int[][] newAncestors = new int[nodeCount][];
+		BitSet newAncestorOrSelfUpdated = new BitSet(nodeCount);
+
+		// Parents are always visited before their children so each node can build on the ancestors of its parents
+		int[] marks = new int[nodeCount];
+		int mark = 0;
+		IntArrayList buffer = new IntArrayList();
+		int[] order = getTopologicalOrder();
+		for (int index : order) {
+			int count = parentCounts[index];
+			boolean ancestorUpdated = updated.get(index);
+			if (count == 0) {
+				newAncestors[index] = NONE;
+			} else if (count == 1) {
+				int parent = parents[index][0];
+				int[] parentAncestors = newAncestors[parent];
+				int[] nodeAncestors = new int[parentAncestors.length + 1];
+				nodeAncestors[0] = parent;
+				System.arraycopy(parentAncestors, 0, nodeAncestors, 1, parentAncestors.length);
+				newAncestors[index] = nodeAncestors;
+				ancestorUpdated |= newAncestorOrSelfUpdated.get(parent);
+			} else {
+				mark++;
+				buffer.clear();
+				for (int i = 0; i < count; i++) {
+					int parent = parents[index][i];
+					ancestorUpdated |= newAncestorOrSelfUpdated.get(parent);
+					if (marks[parent] != mark) {
+						marks[parent] = mark;
+						buffer.add(parent);
+					}
+					for (int ancestor : newAncestors[parent]) {
+						if (marks[ancestor] != mark) {
+							marks[ancestor] = mark;
+							buffer.add(ancestor);
+						}
+					}
+				}
+				newAncestors[index] = buffer.toIntArray();
+			}
+			if (ancestorUpdated) {
+				newAncestorOrSelfUpdated.set(index);
+			}
+		}
+		ancestors = newAncestors;
+		ancestorOrSelfUpdated = newAncestorOrSelfUpdated;
+
+		if (order.length < nodeCount) {
+			// Nodes in or below a loop are walked individually
+			for (int index = 0; index < nodeCount; index++) {
+				if (newAncestors[index] == null) {
+					boolean ancestorUpdated = updated.get(index);
+					for (int ancestor : collectAncestors(index)) {
+						ancestorUpdated |= updated.get(ancestor);
+					}
+					if (ancestorUpdated) {
+						newAncestorOrSelfUpdated.set(index);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Kahn's algorithm from the roots down. Nodes in or below a loop are not included.
+	 */
+	private int[] getTopologicalOrder() {
+		// Children of each node in one array, indexed by offset
+		int[] childOffsets = new int[nodeCount + 1];
+		for (int index = 0; index < nodeCount; index++) {
+			for (int i = 0; i < parentCounts[index]; i++) {
+				childOffsets[parents[index][i] + 1]++;
+			}
+		}
+		for (int index = 0; index < nodeCount; index++) {
+			childOffsets[index + 1] += childOffsets[index];
+		}
+		int[] children = new int[childOffsets[nodeCount]];
+		int[] childPositions = Arrays.copyOf(childOffsets, nodeCount);
+		for (int index = 0; index < nodeCount; index++) {
+			for (int i = 0; i < parentCounts[index]; i++) {
+				children[childPositions[parents[index][i]]++] = index;
+			}
+		}
+
+		int[] remainingParents = Arrays.copyOf(parentCounts, nodeCount);
+		int[] order = new int[nodeCount];
+		int size = 0;
+		for (int index = 0; index < nodeCount; index++) {
+			if (remainingParents[index] == 0) {
+				order[size++] = index;
+			}
+		}
+		for (int next = 0; next < size; next++) {
+			int index = order[next];
+			for (int i = childOffsets[index]; i < childOffsets[index + 1]; i++) {
+				int child = children[i];
+				if (--remainingParents[child] == 0) {
+					order[size++] = child;
+				}
+			}
+		}
+		return size == nodeCount ? order : Arrays.copyOf(order, size);
+	}
+
+	/**
+	 * Walks the parents of a node without memoisation. Only used for nodes in or below a loop.
+	 */
+	private int[] collectAncestors(int index) {
+		BitSet visited = new BitSet(nodeCount);
+		IntArrayList collected = new IntArrayList();
+		IntArrayList stack = new IntArrayList();
+		stack.add(index);
+		while (!stack.isEmpty()) {
+			int current = stack.removeInt(stack.size() - 1);
+			for (int i = 0; i < parentCounts[current]; i++) {
+				int parent = parents[current][i];
+				if (!visited.get(parent)) {
+					visited.set(parent);
+					collected.add(parent);
+					int[] parentAncestors = ancestors != null ? ancestors[parent] : null;
+					if (parentAncestors != null) {
+						// Parent is above any loop, take its ancestors as they are
+						for (int ancestor : parentAncestors) {
+							if (!visited.get(ancestor)) {
+								visited.set(ancestor);
+								collected.add(ancestor);
+							}
+						}
+					} else {
+						stack.add(parent);
+					}
+				}
+			}
+		}
+		return collected.toIntArray();
 	}
 }
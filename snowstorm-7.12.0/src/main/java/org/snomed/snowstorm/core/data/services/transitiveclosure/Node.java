@@ -5,28 +5,34 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.PrintStream;
-import java.util.HashSet;
-import java.util.LinkedHashSet;
-import java.util.Set;
+import java.util.*;
 
+/**
+ * View of one node of a {@link GraphBuilder}.
+ */
 public class Node {
 
-	private final Long id;
-	private final Set<Node> parents;
-	private boolean updated;
+	private final GraphBuilder graph;
+	private final int index;
+	private final long id;
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(Node.class);
 
-	Node(Long id) {
+	Node(GraphBuilder graph, int index, long id) {
+		this.graph = graph;
+		this.index = index;
 		this.id = id;
-		parents = new HashSet<>();
 	}
 
 	public Set<Long> getTransitiveClosure(String path, boolean throwExceptionIfLoopFound) throws GraphBuilderException {
-		Set<Long> parentIds = throwExceptionIfLoopFound ? new LinkedHashSet<>() : new LongOpenHashSet();
-		getTransitiveClosure(parentIds);
+		int[] ancestors = graph.getAncestors(index);
+		LongOpenHashSet parentIds = new LongOpenHashSet(ancestors.length);
+		for (int ancestor : ancestors) {
+			parentIds.add(graph.getId(ancestor));
+		}
 		if (parentIds.contains(id)) {
-			String message = String.format("Loop found in transitive closure for concept %s on branch %s. The concept %s is in its own set of ancestors: %s", id, path, id, parentIds);
+			String message = String.format("Loop found in transitive closure for concept %s on branch %s. The concept %s is in its own set of ancestors: %s", id, path, id,
+					getAncestorIdsInWalkOrder());
 			if (throwExceptionIfLoopFound) {
 				dumpTransitiveClosure();
 				throw new GraphBuilderException(message);
@@ -38,34 +44,33 @@ public class Node {
 		return parentIds;
 	}
 
-	private void getTransitiveClosure(Set<Long> parentIds) {
-		for (Node parent : parents) {
-			if (parentIds.add(parent.getId())) {
-				parent.getTransitiveClosure(parentIds);
-			}
-		}
-	}
-
-	public boolean isAncestorOrSelfUpdated() {
-		return isAncestorOrSelfUpdated(new LongOpenHashSet());
+	/**
+	 * Ancestor ids in the order of a depth first walk up the parents, lowest id first, so that a loop can be followed in the list.
+	 * Only used for messages, the ancestors of a node are not held in any order.
+	 */
+	private List<Long> getAncestorIdsInWalkOrder() {
+		List<Long> ancestorIds = new ArrayList<>();
+		walkParents(index, new LongOpenHashSet(), ancestorIds);
+		return ancestorIds;
 	}
 
-	private boolean isAncestorOrSelfUpdated(Set<Long> parentIds) {
-		if (updated) {
-			return true;
+	private void walkParents(int nodeIndex, Set<Long> visited, List<Long> ancestorIds) {
+		List<Integer> parentIndexes = new ArrayList<>();
+		for (int i = 0; i < graph.getParentCount(nodeIndex); i++) {
+			parentIndexes.add(graph.getParent(nodeIndex, i));
 		}
-		for (Node parent : parents) {
-			if (parentIds.add(parent.getId())) {
-				if (parent.isAncestorOrSelfUpdated(parentIds)) {
-					return true;
-				}
+		parentIndexes.sort(Comparator.comparingLong(graph::getId));
+		for (int parentIndex : parentIndexes) {
+			long parentId = graph.getId(parentIndex);
+			if (visited.add(parentId)) {
+				ancestorIds.add(parentId);
+				walkParents(parentIndex, visited, ancestorIds);
 			}
 		}
-		return false;
 	}
 
-	void addParent(Node parent) {
-		parents.add(parent);
+	public boolean isAncestorOrSelfUpdated() {
+		return graph.isAncestorOrSelfUpdated(index);
 	}
 
 	public Long getId() {
@@ -73,12 +78,21 @@ public class Node {
 	}
 
 	public Node markUpdated() {
-		this.updated = true;
+		graph.markUpdated(index);
 		return this;
 	}
 
-	public Set<Node> getParents() {
-		return parents;
+	public Set<Long> getParentIds() {
+		int count = graph.getParentCount(index);
+		LongOpenHashSet parentIds = new LongOpenHashSet(count);
+		for (int i = 0; i < count; i++) {
+			parentIds.add(graph.getId(graph.getParent(index, i)));
+		}
+		return parentIds;
+	}
+
+	public boolean hasParents() {
+		return graph.getParentCount(index) > 0;
 	}
 
 	private void dumpTransitiveClosure() {
@@ -93,7 +107,7 @@ public class Node {
 	private void doDumpTransitiveClosure(Set<Long> covered, String indent, PrintStream printStream) {
 		printStream.print(indent + id);
 		if (covered.contains(id)) {
-			if (!parents.isEmpty()) {
+			if (hasParents()) {
 				printStream.print("(parents already output)");
 			}
 			printStream.println();
@@ -101,8 +115,8 @@ public class Node {
 			covered.add(id);
 			indent = "|" + indent;
 			printStream.println();
-			for (Node parent : parents) {
-				parent.doDumpTransitiveClosure(covered, indent, printStream);
+			for (int i = 0; i < graph.getParentCount(index); i++) {
+				graph.getNode(graph.getParent(index, i)).doDumpTransitiveClosure(covered, indent, printStream);
 			}
 		}
 	}
@@ -114,12 +128,12 @@ public class Node {
 
 		Node node = (Node) o;
 
-		return id.equals(node.id);
+		return id == node.id;
 
 	}
 
 	@Override
 	public int hashCode() {
-		return id.hashCode();
+		return Long.hashCode(id);
 	}
 }
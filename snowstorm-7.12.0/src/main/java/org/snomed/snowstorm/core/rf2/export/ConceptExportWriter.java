@@ -3,35 +3,32 @@ package org.snomed.snowstorm.core.rf2.export;
 import org.snomed.snowstorm.core.data.domain.Concept;
 import org.snomed.snowstorm.core.rf2.RF2Constants;
 
-import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStream;
 
 class ConceptExportWriter extends ExportWriter<Concept> {
 
-	ConceptExportWriter(BufferedWriter bufferedWriter) {
-		super(bufferedWriter);
+	ConceptExportWriter(OutputStream outputStream) {
+		super(outputStream);
 	}
 
 	void writeHeader() throws IOException {
-		bufferedWriter.write(RF2Constants.CONCEPT_HEADER);
+		writeField(RF2Constants.CONCEPT_HEADER);
 		writeNewLine();
 	}
 
-	void flush() {
+	void writeRow(Concept concept) {
 		try {
-			for (Concept concept : componentBuffer) {
-				bufferedWriter.write(concept.getConceptId());
-				bufferedWriter.write(TAB);
-				bufferedWriter.write(concept.getEffectiveTimeI() != null ? concept.getEffectiveTimeI().toString() :  getTransientEffectiveTime());
-				bufferedWriter.write(TAB);
-				bufferedWriter.write(concept.isActive() ? "1" : "0");
-				bufferedWriter.write(TAB);
-				bufferedWriter.write(concept.getModuleId());
-				bufferedWriter.write(TAB);
-				bufferedWriter.write(concept.getDefinitionStatusId());
-				writeNewLine();
-			}
-			componentBuffer.clear();
+			writeField(concept.getConceptId());
+			writeTab();
+			writeEffectiveTime(concept.getEffectiveTimeI());
+			writeTab();
+			writeActive(concept.isActive());
+			writeTab();
+			writeField(concept.getModuleId());
+			writeTab();
+			writeField(concept.getDefinitionStatusId());
+			writeNewLine();
 		} catch (IOException e) {
 			throw new ExportException("Failed to write Concept to RF2 file.", e);
 		}
@@ -3,43 +3,40 @@ package org.snomed.snowstorm.core.rf2.export;
 import org.snomed.snowstorm.core.data.domain.Description;
 import org.snomed.snowstorm.core.rf2.RF2Constants;
 
-import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStream;
 
 class DescriptionExportWriter extends ExportWriter<Description> {
 
-	DescriptionExportWriter(BufferedWriter bufferedWriter) {
-		super(bufferedWriter);
+	DescriptionExportWriter(OutputStream outputStream) {
+		super(outputStream);
 	}
 
 	void writeHeader() throws IOException {
-		bufferedWriter.write(RF2Constants.DESCRIPTION_HEADER);
+		writeField(RF2Constants.DESCRIPTION_HEADER);
 		writeNewLine();
 	}
 
-	void flush() {
+	void writeRow(Description description) {
 		try {
-			for (Description description : componentBuffer) {
-				bufferedWriter.write(description.getDescriptionId());
-				bufferedWriter.write(TAB);
-				bufferedWriter.write(description.getEffectiveTimeI() != null ? description.getEffectiveTimeI().toString() : getTransientEffectiveTime());
-				bufferedWriter.write(TAB);
-				bufferedWriter.write(description.isActive() ? "1" : "0");
-				bufferedWriter.write(TAB);
-				bufferedWriter.write(description.getModuleId());
-				bufferedWriter.write(TAB);
-				bufferedWriter.write(description.getConceptId());
-				bufferedWriter.write(TAB);
-				bufferedWriter.write(description.getLanguageCode());
-				bufferedWriter.write(TAB);
-				bufferedWriter.write(description.getTypeId());
-				bufferedWriter.write(TAB);
-				bufferedWriter.write(description.getTerm());
-				bufferedWriter.write(TAB);
-				bufferedWriter.write(description.getCaseSignificanceId());
-				writeNewLine();
-			}
-			componentBuffer.clear();
+			writeField(description.getDescriptionId());
+			writeTab();
+			writeEffectiveTime(description.getEffectiveTimeI());
+			writeTab();
+			writeActive(description.isActive());
+			writeTab();
+			writeField(description.getModuleId());
+			writeTab();
+			writeField(description.getConceptId());
+			writeTab();
+			writeField(description.getLanguageCode());
+			writeTab();
+			writeField(description.getTypeId());
+			writeTab();
+			writeField(description.getTerm());
+			writeTab();
+			writeField(description.getCaseSignificanceId());
+			writeNewLine();
 		} catch (IOException e) {
 			throw new ExportException("Failed to write Description to RF2 file.", e);
 		}
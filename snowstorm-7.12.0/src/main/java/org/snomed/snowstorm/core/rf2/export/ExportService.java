@@ -5,12 +5,23 @@ import io.kaicode.elasticvc.api.BranchCriteria;
 import io.kaicode.elasticvc.api.BranchService;
 import io.kaicode.elasticvc.api.VersionControlHelper;
 import io.kaicode.elasticvc.domain.Branch;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
 
 import org.apache.tomcat.util.http.fileupload.util.Streams;
 import org.drools.core.util.StringUtils;
+import org.elasticsearch.action.search.ClearScrollRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchScrollRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.slice.SliceBuilder;
+import org.elasticsearch.search.sort.FieldSortBuilder;
 import org.elasticsearch.search.sort.SortBuilders;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,17 +38,29 @@ import org.snomed.snowstorm.core.rf2.RF2Type;
 import org.snomed.snowstorm.core.util.DateUtil;
 import org.snomed.snowstorm.core.util.TimerUtil;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.elasticsearch.core.ElasticsearchRestTemplate;
 import org.springframework.data.elasticsearch.core.SearchHit;
 import org.springframework.data.elasticsearch.core.SearchHitsIterator;
+import org.springframework.data.elasticsearch.core.convert.ElasticsearchConverter;
+import org.springframework.data.elasticsearch.core.document.DocumentAdapters;
+import org.springframework.data.elasticsearch.core.query.FetchSourceFilter;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQuery;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 
 import java.io.*;
 import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
@@ -53,7 +76,7 @@ public class ExportService {
 	private VersionControlHelper versionControlHelper;
 
 	@Autowired
-	private ElasticsearchOperations elasticsearchTemplate;
+	private ElasticsearchRestTemplate elasticsearchTemplate;
 
 	@Autowired
 	private QueryService queryService;
@@ -73,6 +96,21 @@ public class ExportService {
 	@Autowired
 	private CodeSystemService codeSystemService;
 
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Value("${export.parallel.slices}")
+	private int exportSlices;
+
+	@Value("${export.parallel.slice-threshold}")
+	private long exportSliceThreshold;
+
+	@Autowired
+	@Qualifier("exportExecutor")
+	private ThreadPoolTaskExecutor exportExecutor;
+
+	private static final TimeValue EXPORT_SCROLL_KEEP_ALIVE = TimeValue.timeValueMinutes(1);
+
 	private final Set<String> refsetTypesRequiredForClassification = Sets.newHashSet(Concepts.REFSET_MRCM_ATTRIBUTE_DOMAIN, Concepts.OWL_EXPRESSION_TYPE_REFERENCE_SET);
 
 	private final Logger logger = LoggerFactory.getLogger(getClass());
@@ -167,61 +205,56 @@ public class ExportService {
 		Branch branch = branchService.findBranchOrThrow(branchPath, true);
 		final boolean isExtension = (branch.getMetadata() != null && !StringUtils.isEmpty(branch.getMetadata().getString(BranchMetadataKeys.DEPENDENCY_PACKAGE)));
 
+		ExportContext context = new ExportContext(entryDirectoryPrefix, filenameEffectiveDate, exportType, transientEffectiveTime, codeSystemRF2Name);
+		List<ExportEntry> entries = new ArrayList<>();
 		try {
-			branchService.lockBranch(branchPath, branchMetadataHelper.getBranchLockMetadata("Exporting RF2 " + exportType.getName()));
-			File exportFile = File.createTempFile("export-" + new Date().getTime(), ".zip");
-			try (ZipOutputStream zipOutputStream = new ZipOutputStream(new FileOutputStream(exportFile))) {
+			try {
+				branchService.lockBranch(branchPath, branchMetadataHelper.getBranchLockMetadata("Exporting RF2 " + exportType.getName()));
 
 				boolean refsetOnlyExport = refsetIds != null && !refsetIds.isEmpty();
 
 				if (!refsetOnlyExport) {
 					// Write Concepts
-					int conceptLines = exportComponents(Concept.class, entryDirectoryPrefix, "Terminology/", "sct2_Concept_", filenameEffectiveDate, exportType, zipOutputStream,
-							getContentQuery(exportType, moduleIds, startEffectiveTime, selectionBranchCriteria.getEntityBranchCriteria(Concept.class)), transientEffectiveTime, null, codeSystemRF2Name, null);
-					logger.info("{} concept states exported", conceptLines);
+					entries.add(createEntry(Concept.class, context, "Terminology/", "sct2_Concept_",
+							getContentQuery(exportType, moduleIds, startEffectiveTime, selectionBranchCriteria.getEntityBranchCriteria(Concept.class)), null, null,
+							"{} concept states exported"));
 
 					if (!forClassification) {
 						// Write Descriptions
 						BoolQueryBuilder descriptionBranchCriteria = selectionBranchCriteria.getEntityBranchCriteria(Description.class);
 						BoolQueryBuilder descriptionContentQuery = getContentQuery(exportType, moduleIds, startEffectiveTime, descriptionBranchCriteria);
 						descriptionContentQuery.mustNot(termQuery(Description.Fields.TYPE_ID, Concepts.TEXT_DEFINITION));
-						int descriptionLines = exportComponents(Description.class, entryDirectoryPrefix, "Terminology/", "sct2_Description_", filenameEffectiveDate, exportType, zipOutputStream,
-								descriptionContentQuery, transientEffectiveTime, null, codeSystemRF2Name, null);
-						logger.info("{} description states exported", descriptionLines);
+						entries.add(createEntry(Description.class, context, "Terminology/", "sct2_Description_", descriptionContentQuery, null, null,
+								"{} description states exported"));
 
 						// Write Text Definitions
 						BoolQueryBuilder textDefinitionContentQuery = getContentQuery(exportType, moduleIds, startEffectiveTime, descriptionBranchCriteria);
 						textDefinitionContentQuery.must(termQuery(Description.Fields.TYPE_ID, Concepts.TEXT_DEFINITION));
-						int textDefinitionLines = exportComponents(Description.class, entryDirectoryPrefix, "Terminology/", "sct2_TextDefinition_", filenameEffectiveDate, exportType, zipOutputStream,
-								textDefinitionContentQuery, transientEffectiveTime, null, codeSystemRF2Name, null);
-						logger.info("{} text defintion states exported", textDefinitionLines);
+						entries.add(createEntry(Description.class, context, "Terminology/", "sct2_TextDefinition_", textDefinitionContentQuery, null, null,
+								"{} text defintion states exported"));
 					}
 
 					// Write Stated Relationships
 					BoolQueryBuilder relationshipBranchCritera = selectionBranchCriteria.getEntityBranchCriteria(Relationship.class);
 					BoolQueryBuilder relationshipQuery = getContentQuery(exportType, moduleIds, startEffectiveTime, relationshipBranchCritera);
 					relationshipQuery.must(termQuery(Relationship.Fields.CHARACTERISTIC_TYPE_ID, Concepts.STATED_RELATIONSHIP));
-					int statedRelationshipLines = exportComponents(Relationship.class, entryDirectoryPrefix, "Terminology/", "sct2_StatedRelationship_", filenameEffectiveDate, exportType, zipOutputStream,
-							relationshipQuery, transientEffectiveTime, null, codeSystemRF2Name, null);
-					logger.info("{} stated relationship states exported", statedRelationshipLines);
+					entries.add(createEntry(Relationship.class, context, "Terminology/", "sct2_StatedRelationship_", relationshipQuery, null, null,
+							"{} stated relationship states exported"));
 
 					// Write Inferred non-concrete Relationships
 					relationshipQuery = getContentQuery(exportType, moduleIds, startEffectiveTime, relationshipBranchCritera);
 					// Not 'stated' will include inferred and additional
 					relationshipQuery.mustNot(termQuery(Relationship.Fields.CHARACTERISTIC_TYPE_ID, Concepts.STATED_RELATIONSHIP));
 					relationshipQuery.must(existsQuery(Relationship.Fields.DESTINATION_ID));
-					int inferredRelationshipLines = exportComponents(Relationship.class, entryDirectoryPrefix, "Terminology/", "sct2_Relationship_", filenameEffectiveDate, exportType, zipOutputStream,
-							relationshipQuery, transientEffectiveTime, null, codeSystemRF2Name, null);
-					logger.info("{} inferred (non-concrete) and additional relationship states exported", inferredRelationshipLines);
+					entries.add(createEntry(Relationship.class, context, "Terminology/", "sct2_Relationship_", relationshipQuery, null, null,
+							"{} inferred (non-concrete) and additional relationship states exported"));
 
 					// Write Concrete Inferred Relationships
 					relationshipQuery = getContentQuery(exportType, moduleIds, startEffectiveTime, relationshipBranchCritera);
 					relationshipQuery.must(termQuery(Relationship.Fields.CHARACTERISTIC_TYPE_ID, Concepts.INFERRED_RELATIONSHIP));
 					relationshipQuery.must(existsQuery(Relationship.Fields.VALUE));
-					int inferredConcreteRelationshipLines = exportComponents(Relationship.class, entryDirectoryPrefix, "Terminology/", "sct2_RelationshipConcreteValues_", filenameEffectiveDate, exportType,
-							zipOutputStream,
-							relationshipQuery, transientEffectiveTime, null, codeSystemRF2Name, null);
-					logger.info("{} concrete inferred relationship states exported", inferredConcreteRelationshipLines);
+					entries.add(createEntry(Relationship.class, context, "Terminology/", "sct2_RelationshipConcreteValues_", relationshipQuery, null, null,
+							"{} concrete inferred relationship states exported"));
 				}
 
 				// Write Reference Sets
@@ -252,19 +285,15 @@ public class ExportService {
 							String exportDir = referenceSetType.getExportDir();
 							String entryDirectory = !exportDir.startsWith("/") ? "Refset/" + exportDir + "/" : exportDir.substring(1) + "/";
 							String entryFilenamePrefix = (!entryDirectory.startsWith("Terminology/") ? "der2_" : "sct2_") + referenceSetType.getFieldTypes() + "Refset_" + referenceSetType.getName() + (refsetsOfThisType.size() > 1 ? refsetToExport : "");
-							int rowCount = exportComponents(
+							entries.add(createEntry(
 									ReferenceSetMember.class,
-									entryDirectoryPrefix, entryDirectory,
+									context,
+									entryDirectory,
 									entryFilenamePrefix,
-									filenameEffectiveDate,
-									exportType,
-									zipOutputStream,
-									mdrService.generateModuleDependencies(branchPath, transientEffectiveTime, moduleIds, exportType.equals(RF2Type.DELTA), null),
-									transientEffectiveTime,
+									() -> mdrService.generateModuleDependencies(branchPath, transientEffectiveTime, moduleIds, exportType.equals(RF2Type.DELTA), null),
 									referenceSetType.getFieldNameList(),
-									codeSystemRF2Name,
-									exportFilter);
-							logger.info("Exported Reference Set {} {} with {} members", refsetToExport, referenceSetType.getName(), rowCount);
+									exportFilter,
+									"Exported Reference Set " + refsetToExport + " " + referenceSetType.getName() + " with {} members"));
 						} else if (!refsetOnlyExport || refsetIds.contains(refsetToExport.toString())) {
 							BoolQueryBuilder memberQuery = getContentQuery(exportType, moduleIds, startEffectiveTime, memberBranchCriteria);
 							memberQuery.must(QueryBuilders.termQuery(ReferenceSetMember.Fields.REFSET_ID, refsetToExport));
@@ -274,30 +303,33 @@ public class ExportService {
 								String exportDir = referenceSetType.getExportDir();
 								String entryDirectory = !exportDir.startsWith("/") ? "Refset/" + exportDir + "/" : exportDir.substring(1) + "/";
 								String entryFilenamePrefix = (!entryDirectory.startsWith("Terminology/") ? "der2_" : "sct2_") + referenceSetType.getFieldTypes() + "Refset_" + referenceSetType.getName() + (refsetsOfThisType.size() > 1 ? refsetToExport : "");
-								exportComponents(
+								entries.add(createEntry(
 										ReferenceSetMember.class,
-										entryDirectoryPrefix, entryDirectory,
+										context,
+										entryDirectory,
 										entryFilenamePrefix,
-										filenameEffectiveDate,
-										exportType,
-										zipOutputStream,
 										memberQuery,
-										transientEffectiveTime,
+										memberCount,
 										referenceSetType.getFieldNameList(),
-										codeSystemRF2Name,
-										exportFilter);
+										exportFilter,
+										null));
 							}
 						}
 					}
 				}
+
+				// Fetch all files while the branch is locked
+				spoolEntries(entries);
+				logger.info("{} export of {}{} fetched {} files in {} seconds.", exportType, branchPath, exportStr, entries.size(), TimerUtil.secondsSince(startTime));
+			} finally {
+				branchService.unlock(branchPath);
 			}
 
+			File exportFile = writeArchive(entries);
 			logger.info("{} export of {}{} complete in {} seconds.", exportType, branchPath, exportStr, TimerUtil.secondsSince(startTime));
 			return exportFile;
-		} catch (IOException e) {
-			throw new ExportException("Failed to write RF2 zip file.", e);
 		} finally {
-			branchService.unlock(branchPath);
+			entries.forEach(ExportEntry::deleteSpools);
 		}
 	}
 
@@ -326,79 +358,223 @@ public class ExportService {
 		return contentQuery;
 	}
 
-	private <T> int exportComponents(Class<T> componentClass, String entryDirectoryPrefix, String entryDirectory, String entryFilenamePrefix, String filenameEffectiveDate,
-			RF2Type exportType, ZipOutputStream zipOutputStream, BoolQueryBuilder contentQuery, String transientEffectiveTime, List<String> extraFieldNames, String codeSystemRF2Name, ExportFilter<T> exportFilter) {
+	private <T> ExportEntry createEntry(Class<T> componentClass, ExportContext context, String entryDirectory, String entryFilenamePrefix,
+			BoolQueryBuilder contentQuery, List<String> extraFieldNames, ExportFilter<T> exportFilter, String exportedMessage) {
+
+		long count = exportSlices > 1 ? elasticsearchTemplate.count(getNativeSearchQuery(contentQuery), componentClass) : 0;
+		return createEntry(componentClass, context, entryDirectory, entryFilenamePrefix, contentQuery, count, extraFieldNames, exportFilter, exportedMessage);
+	}
 
-		String componentFilePath = entryDirectoryPrefix + entryDirectory + entryFilenamePrefix + format("%s_%s_%s.txt", exportType.getName(), codeSystemRF2Name, filenameEffectiveDate);
-		logger.info("Exporting file {}", componentFilePath);
+	private <T> ExportEntry createEntry(Class<T> componentClass, ExportContext context, String entryDirectory, String entryFilenamePrefix,
+			BoolQueryBuilder contentQuery, long count, List<String> extraFieldNames, ExportFilter<T> exportFilter, String exportedMessage) {
+
+		ExportEntry entry = new ExportEntry(context.getComponentFilePath(entryDirectory, entryFilenamePrefix), componentClass, exportedMessage);
+		logger.info("Exporting file {}", entry.path);
 		logger.info("Export filter is " + (exportFilter==null?"null" : "present"));
-		try {
-			// Open zip entry
-			zipOutputStream.putNextEntry(new ZipEntry(componentFilePath));
+		boolean concrete = entryFilenamePrefix.contains("Concrete");
+		// Only the RF2 columns are fetched
+		String[] sourceFields = getSourceFields(componentClass, extraFieldNames, concrete);
+		if (exportSlices > 1 && count >= exportSliceThreshold) {
+			// Large files are fetched with a sliced scroll, one part per slice. Row order within an RF2 file is not significant.
+			String indexName = elasticsearchTemplate.getIndexCoordinatesFor(componentClass).getIndexName();
+			for (int slice = 0; slice < exportSlices; slice++) {
+				SearchRequest searchRequest = new SearchRequest(indexName).source(new SearchSourceBuilder()
+						.query(contentQuery)
+						.fetchSource(sourceFields, null)
+						.size(LARGE_PAGE.getPageSize())
+						.sort(FieldSortBuilder.DOC_FIELD_NAME)
+						.slice(new SliceBuilder(slice, exportSlices)));
+				boolean header = slice == 0;
+				entry.addPart(outputStream -> writeComponents(componentClass, context, outputStream, header, extraFieldNames, concrete, exportFilter,
+						consumer -> scrollSlice(componentClass, searchRequest, consumer)));
+			}
+		} else {
+			entry.addPart(outputStream -> writeComponents(componentClass, context, outputStream, true, extraFieldNames, concrete, exportFilter,
+					consumer -> {
+						try (SearchHitsIterator<T> componentStream = elasticsearchTemplate.searchForStream(getNativeSearchQuery(contentQuery, sourceFields), componentClass)) {
+							componentStream.forEachRemaining(hit -> consumer.accept(hit.getContent()));
+						}
+					}));
+		}
+		return entry;
+	}
+
+	private <T> ExportEntry createEntry(Class<T> componentClass, ExportContext context, String entryDirectory, String entryFilenamePrefix,
+			Supplier<Set<T>> components, List<String> extraFieldNames, ExportFilter<T> exportFilter, String exportedMessage) {
 
-			// Stream components into zip
-			try (ExportWriter<T> writer = getExportWriter(componentClass, zipOutputStream, extraFieldNames, entryFilenamePrefix.contains("Concrete"));
-					SearchHitsIterator<T> componentStream = elasticsearchTemplate.searchForStream(getNativeSearchQuery(contentQuery), componentClass)) {
-				writer.setTransientEffectiveTime(transientEffectiveTime);
+		ExportEntry entry = new ExportEntry(context.getComponentFilePath(entryDirectory, entryFilenamePrefix), componentClass, exportedMessage);
+		logger.info("Exporting file {}", entry.path);
+		entry.addPart(outputStream -> writeComponents(componentClass, context, outputStream, true, extraFieldNames, entryFilenamePrefix.contains("Concrete"), exportFilter,
+				consumer -> components.get().forEach(consumer)));
+		return entry;
+	}
+
+	private <T> int writeComponents(Class<T> componentClass, ExportContext context, OutputStream outputStream, boolean header, List<String> extraFieldNames,
+			boolean concrete, ExportFilter<T> exportFilter, ComponentSource<T> componentSource) throws IOException {
+
+		try (ExportWriter<T> writer = getExportWriter(componentClass, outputStream, extraFieldNames, concrete)) {
+			writer.setTransientEffectiveTime(context.transientEffectiveTime);
+			if (header) {
 				writer.writeHeader();
-				componentStream.forEachRemaining(hit -> doFilteredWrite(exportFilter, writer, hit.getContent()));
-				return writer.getContentLinesWritten();
-			} finally {
-				// Close zip entry
-				zipOutputStream.closeEntry();
 			}
-		} catch (IOException e) {
-			throw new ExportException("Failed to write export zip entry '" + componentFilePath + "'", e);
+			componentSource.forEach(component -> doFilteredWrite(exportFilter, writer, component));
+			return writer.getContentLinesWritten();
 		}
 	}
 
+	private <T> void scrollSlice(Class<T> componentClass, SearchRequest searchRequest, Consumer<T> consumer) {
+		ElasticsearchConverter converter = elasticsearchTemplate.getElasticsearchConverter();
+		elasticsearchTemplate.execute(client -> {
+			SearchResponse response = client.search(searchRequest.scroll(EXPORT_SCROLL_KEEP_ALIVE), RequestOptions.DEFAULT);
+			String scrollId = response.getScrollId();
+			try {
+				while (response.getHits().getHits().length > 0) {
+					for (org.elasticsearch.search.SearchHit hit : response.getHits().getHits()) {
+						consumer.accept(converter.read(componentClass, DocumentAdapters.from(hit)));
+					}
+					response = client.scroll(new SearchScrollRequest(scrollId).scroll(EXPORT_SCROLL_KEEP_ALIVE), RequestOptions.DEFAULT);
+					scrollId = response.getScrollId();
+				}
+			} finally {
+				if (scrollId != null) {
+					ClearScrollRequest clearScrollRequest = new ClearScrollRequest();
+					clearScrollRequest.addScrollId(scrollId);
+					client.clearScroll(clearScrollRequest, RequestOptions.DEFAULT);
+				}
+			}
+			return null;
+		});
+	}
+
 	private <T> void doFilteredWrite(ExportFilter<T> exportFilter, ExportWriter<T> writer, T item) {
 		if (exportFilter == null || exportFilter.isValid(item)) {
 			writer.write(item);
 		}
 	}
 
-	private <T> int exportComponents(Class<T> componentClass, String entryDirectoryPrefix, String entryDirectory, String entryFilenamePrefix, String filenameEffectiveDate,
-			RF2Type exportType, ZipOutputStream zipOutputStream, Set<T> components, String transientEffectiveTime, List<String> extraFieldNames, String codeSystemRF2Name,
-			ExportFilter<T> exportFilter) {
-
-		String componentFilePath = entryDirectoryPrefix + entryDirectory + entryFilenamePrefix + format("%s_%s_%s.txt", exportType.getName(), codeSystemRF2Name, filenameEffectiveDate);
-		logger.info("Exporting file {}", componentFilePath);
+	/**
+	 * Writes every part of every entry into its own spool file, in parallel on the export thread pool.
+	 * Returns or throws only once no part is still writing, so spools can be deleted and the branch unlocked after.
+	 */
+	private void spoolEntries(List<ExportEntry> entries) {
+		AtomicBoolean failed = new AtomicBoolean();
+		List<CompletableFuture<Void>> futures = new ArrayList<>();
+		for (ExportEntry entry : entries) {
+			for (EntryPart part : entry.parts) {
+				futures.add(CompletableFuture.runAsync(() -> {
+					if (failed.get()) {
+						// Skip parts not started before another part failed
+						return;
+					}
+					try {
+						part.spool();
+					} catch (IOException e) {
+						failed.set(true);
+						throw new ExportException("Failed to write export zip entry '" + entry.path + "'", e);
+					} catch (RuntimeException e) {
+						failed.set(true);
+						throw e;
+					}
+				}, exportExecutor));
+			}
+		}
+		// Completes when every part has completed, also when one of them failed
+		CompletableFuture<Void> allParts = CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
 		try {
-			// Open zip entry
-			zipOutputStream.putNextEntry(new ZipEntry(componentFilePath));
+			allParts.get();
+		} catch (InterruptedException e) {
+			failed.set(true);
+			allParts.handle((result, throwable) -> null).join();
+			Thread.currentThread().interrupt();
+			throw new ExportException("Interrupted while writing RF2 files.", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof ExportException) {
+				throw (ExportException) e.getCause();
+			}
+			throw new ExportException("Failed to write RF2 files.", e.getCause());
+		}
+		for (ExportEntry entry : entries) {
+			if (entry.exportedMessage != null) {
+				logger.info(entry.exportedMessage, entry.getContentLinesWritten());
+			}
+			recordMetrics(entry);
+		}
+	}
 
-			// Stream components into zip
-			try (ExportWriter<T> writer = getExportWriter(componentClass, zipOutputStream, extraFieldNames, entryFilenamePrefix.contains("Concrete"))) {
-				writer.setTransientEffectiveTime(transientEffectiveTime);
-				writer.writeHeader();
-				components.forEach(c -> doFilteredWrite(exportFilter, writer, c));
-				return writer.getContentLinesWritten();
-			} finally {
-				// Close zip entry
-				zipOutputStream.closeEntry();
+	private void recordMetrics(ExportEntry entry) {
+		int rows = entry.getContentLinesWritten();
+		long bytes = entry.getBytesWritten();
+		long nanos = entry.getNanos();
+		double seconds = Math.max(nanos, 1) / 1_000_000_000d;
+		logger.info("Wrote {} rows, {} bytes in {} seconds, {} rows/s, {} bytes/s - {}", rows, bytes, format("%.3f", seconds),
+				Math.round(rows / seconds), Math.round(bytes / seconds), entry.path);
+
+		Tags tags = Tags.of("component", entry.componentClass.getSimpleName());
+		meterRegistry.counter("export.rows", tags).increment(rows);
+		meterRegistry.counter("export.bytes", tags).increment(bytes);
+		meterRegistry.timer("export.file", tags).record(nanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Copies the spool files into a new zip file, one entry per file in the order they were created.
+	 */
+	private File writeArchive(List<ExportEntry> entries) {
+		File exportFile = null;
+		try {
+			exportFile = File.createTempFile("export-" + new Date().getTime(), ".zip");
+			try (ZipOutputStream zipOutputStream = new ZipOutputStream(new FileOutputStream(exportFile))) {
+				for (ExportEntry entry : entries) {
+					zipOutputStream.putNextEntry(new ZipEntry(entry.path));
+					for (EntryPart part : entry.parts) {
+						Files.copy(part.getSpool().toPath(), zipOutputStream);
+					}
+					zipOutputStream.closeEntry();
+				}
 			}
+			return exportFile;
 		} catch (IOException e) {
-			throw new ExportException("Failed to write export zip entry '" + componentFilePath + "'", e);
+			if (exportFile != null) {
+				exportFile.delete();
+			}
+			throw new ExportException("Failed to write RF2 zip file.", e);
 		}
 	}
 
 	private <T> ExportWriter<T> getExportWriter(Class<T> componentClass, OutputStream outputStream, List<String> extraFieldNames, boolean concrete) {
 		if (componentClass.equals(Concept.class)) {
-			return (ExportWriter<T>) new ConceptExportWriter(getBufferedWriter(outputStream));
+			return (ExportWriter<T>) new ConceptExportWriter(outputStream);
 		}
 		if (componentClass.equals(Description.class)) {
-			return (ExportWriter<T>) new DescriptionExportWriter(getBufferedWriter(outputStream));
+			return (ExportWriter<T>) new DescriptionExportWriter(outputStream);
 		}
 		if (componentClass.equals(Relationship.class)) {
-			return (ExportWriter<T>) (concrete ? new ConcreteRelationshipExportWriter(getBufferedWriter(outputStream)) : new RelationshipExportWriter(getBufferedWriter(outputStream)));
+			return (ExportWriter<T>) (concrete ? new ConcreteRelationshipExportWriter(outputStream) : new RelationshipExportWriter(outputStream));
 		}
 		if (componentClass.equals(ReferenceSetMember.class)) {
-			return (ExportWriter<T>) new ReferenceSetMemberExportWriter(getBufferedWriter(outputStream), extraFieldNames);
+			return (ExportWriter<T>) new ReferenceSetMemberExportWriter(outputStream, extraFieldNames);
 		}
 		throw new UnsupportedOperationException("Not able to export component of type " + componentClass.getCanonicalName());
 	}
 
+	private String[] getSourceFields(Class<?> componentClass, List<String> extraFieldNames, boolean concrete) {
+		List<String> fields = new ArrayList<>(List.of(SnomedComponent.Fields.EFFECTIVE_TIME, SnomedComponent.Fields.ACTIVE, SnomedComponent.Fields.MODULE_ID));
+		if (componentClass.equals(Concept.class)) {
+			fields.addAll(List.of(Concept.Fields.CONCEPT_ID, Concept.Fields.DEFINITION_STATUS_ID));
+		} else if (componentClass.equals(Description.class)) {
+			fields.addAll(List.of(Description.Fields.DESCRIPTION_ID, Description.Fields.CONCEPT_ID, Description.Fields.LANGUAGE_CODE, Description.Fields.TYPE_ID,
+					Description.Fields.TERM, Description.Fields.CASE_SIGNIFICANCE_ID));
+		} else if (componentClass.equals(Relationship.class)) {
+			fields.addAll(List.of(Relationship.Fields.RELATIONSHIP_ID, Relationship.Fields.SOURCE_ID, concrete ? Relationship.Fields.VALUE : Relationship.Fields.DESTINATION_ID,
+					Relationship.Fields.RELATIONSHIP_GROUP, Relationship.Fields.TYPE_ID, Relationship.Fields.CHARACTERISTIC_TYPE_ID, Relationship.Fields.MODIFIER_ID));
+		} else if (componentClass.equals(ReferenceSetMember.class)) {
+			fields.addAll(List.of(ReferenceSetMember.Fields.MEMBER_ID, ReferenceSetMember.Fields.REFSET_ID, ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID));
+			if (extraFieldNames != null) {
+				extraFieldNames.forEach(extraFieldName -> fields.add(ReferenceSetMember.Fields.ADDITIONAL_FIELDS_PREFIX + extraFieldName));
+			}
+		}
+		return fields.toArray(new String[0]);
+	}
+
 	private List<ReferenceSetType> getReferenceSetTypes(QueryBuilder branchCriteria) {
 		BoolQueryBuilder contentQuery = getContentQuery(RF2Type.SNAPSHOT, null, null, branchCriteria);
 		return elasticsearchTemplate.search(new NativeSearchQueryBuilder()
@@ -416,8 +592,126 @@ public class ExportService {
 				.build();
 	}
 
-	private BufferedWriter getBufferedWriter(OutputStream outputStream) {
-		return new BufferedWriter(new OutputStreamWriter(outputStream));
+	private NativeSearchQuery getNativeSearchQuery(BoolQueryBuilder contentQuery, String[] sourceFields) {
+		return new NativeSearchQueryBuilder()
+				.withQuery(contentQuery)
+				.withSourceFilter(new FetchSourceFilter(sourceFields, null))
+				.withPageable(LARGE_PAGE)
+				.build();
+	}
+
+	private interface ComponentSource<T> {
+		void forEach(Consumer<T> consumer) throws IOException;
+	}
+
+	private static final class ExportContext {
+
+		private final String entryDirectoryPrefix;
+		private final String filenameEffectiveDate;
+		private final RF2Type exportType;
+		private final String transientEffectiveTime;
+		private final String codeSystemRF2Name;
+
+		private ExportContext(String entryDirectoryPrefix, String filenameEffectiveDate, RF2Type exportType, String transientEffectiveTime, String codeSystemRF2Name) {
+			this.entryDirectoryPrefix = entryDirectoryPrefix;
+			this.filenameEffectiveDate = filenameEffectiveDate;
+			this.exportType = exportType;
+			this.transientEffectiveTime = transientEffectiveTime;
+			this.codeSystemRF2Name = codeSystemRF2Name;
+		}
+
+		private String getComponentFilePath(String entryDirectory, String entryFilenamePrefix) {
+			return entryDirectoryPrefix + entryDirectory + entryFilenamePrefix + format("%s_%s_%s.txt", exportType.getName(), codeSystemRF2Name, filenameEffectiveDate);
+		}
+	}
+
+	/**
+	 * One file of the archive. Rows are written by one or more parts, the first part writes the header.
+	 */
+	private static final class ExportEntry {
+
+		private final String path;
+		private final Class<?> componentClass;
+		private final String exportedMessage;
+		private final List<EntryPart> parts = new ArrayList<>();
+
+		private ExportEntry(String path, Class<?> componentClass, String exportedMessage) {
+			this.path = path;
+			this.componentClass = componentClass;
+			this.exportedMessage = exportedMessage;
+		}
+
+		private void addPart(PartWriter partWriter) {
+			parts.add(new EntryPart(partWriter));
+		}
+
+		private int getContentLinesWritten() {
+			return parts.stream().mapToInt(EntryPart::getContentLinesWritten).sum();
+		}
+
+		private long getBytesWritten() {
+			return parts.stream().mapToLong(EntryPart::getBytesWritten).sum();
+		}
+
+		/**
+		 * @return time taken by the slowest part, parts are written in parallel.
+		 */
+		private long getNanos() {
+			return parts.stream().mapToLong(EntryPart::getNanos).max().orElse(0);
+		}
+
+		private void deleteSpools() {
+			parts.forEach(EntryPart::deleteSpool);
+		}
+	}
+
+	private interface PartWriter {
+		int write(OutputStream outputStream) throws IOException;
+	}
+
+	private static final class EntryPart {
+
+		private final PartWriter partWriter;
+		private volatile File spool;
+		private int contentLinesWritten;
+		private long bytesWritten;
+		private long nanos;
+
+		private EntryPart(PartWriter partWriter) {
+			this.partWriter = partWriter;
+		}
+
+		private void spool() throws IOException {
+			long start = System.nanoTime();
+			spool = File.createTempFile("export-entry-", ".txt");
+			try (OutputStream outputStream = new FileOutputStream(spool)) {
+				contentLinesWritten = partWriter.write(outputStream);
+			}
+			bytesWritten = spool.length();
+			nanos = System.nanoTime() - start;
+		}
+
+		private File getSpool() {
+			return spool;
+		}
+
+		private int getContentLinesWritten() {
+			return contentLinesWritten;
+		}
+
+		private long getBytesWritten() {
+			return bytesWritten;
+		}
+
+		private long getNanos() {
+			return nanos;
+		}
+
+		private void deleteSpool() {
+			if (spool != null) {
+				spool.delete();
+			}
+		}
 	}
 
 }
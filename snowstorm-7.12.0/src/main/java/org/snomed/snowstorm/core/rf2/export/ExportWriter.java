@@ -1,45 +1,132 @@
 package org.snomed.snowstorm.core.rf2.export;
 
-import java.io.BufferedWriter;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.OutputStream;
 
+/**
+ * Writes RF2 rows as UTF-8 bytes into a reusable buffer, which is copied to the output stream when full.
+ * Fields are encoded one char at a time so no intermediate strings or byte arrays are created per row.
+ */
 public abstract class ExportWriter<T> implements AutoCloseable {
 
-	private static final int FLUSH_SIZE = 1000;
-	static final String TAB = "\t";
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final byte TAB = '\t';
+	private static final byte[] NEW_LINE = {'\r', '\n'};
 
-	final BufferedWriter bufferedWriter;
-	final List<T> componentBuffer;
+	private final OutputStream outputStream;
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	private int position;
 	private int contentLinesWritten;
 	private String transientEffectiveTime = "";
 
-	ExportWriter(BufferedWriter bufferedWriter) {
-		this.bufferedWriter = bufferedWriter;
-		componentBuffer = new ArrayList<>();
+	ExportWriter(OutputStream outputStream) {
+		this.outputStream = outputStream;
 	}
 
 	abstract void writeHeader() throws IOException;
 
+	abstract void writeRow(T component);
+
 	void write(T component) {
-		componentBuffer.add(component);
+		writeRow(component);
 		contentLinesWritten++;
-		if (componentBuffer.size() == FLUSH_SIZE) {
-			flush();
-		}
 	}
 
 	public void writeNewLine() throws IOException {
-		bufferedWriter.write("\r\n");
+		ensureCapacity(NEW_LINE.length);
+		buffer[position++] = NEW_LINE[0];
+		buffer[position++] = NEW_LINE[1];
+	}
+
+	void writeTab() throws IOException {
+		ensureCapacity(1);
+		buffer[position++] = TAB;
+	}
+
+	void writeField(String value) throws IOException {
+		if (value == null) {
+			return;
+		}
+		int length = value.length();
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if (c < 0x80) {
+				ensureCapacity(1);
+				buffer[position++] = (byte) c;
+			} else if (c < 0x800) {
+				ensureCapacity(2);
+				buffer[position++] = (byte) (0xC0 | (c >> 6));
+				buffer[position++] = (byte) (0x80 | (c & 0x3F));
+			} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, value.charAt(++i));
+				ensureCapacity(4);
+				buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+				buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+				buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+				buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+			} else if (Character.isSurrogate(c)) {
+				// Unpaired surrogate, same replacement as the JDK UTF-8 encoder
+				ensureCapacity(1);
+				buffer[position++] = '?';
+			} else {
+				ensureCapacity(3);
+				buffer[position++] = (byte) (0xE0 | (c >> 12));
+				buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				buffer[position++] = (byte) (0x80 | (c & 0x3F));
+			}
+		}
+	}
+
+	void writeInt(int value) throws IOException {
+		if (value < 0) {
+			writeField(Integer.toString(value));
+			return;
+		}
+		// Digits are written backwards into place
+		int digits = 1;
+		for (int remaining = value / 10; remaining > 0; remaining /= 10) {
+			digits++;
+		}
+		ensureCapacity(digits);
+		int end = position + digits;
+		for (int i = end - 1; i >= position; i--) {
+			buffer[i] = (byte) ('0' + value % 10);
+			value /= 10;
+		}
+		position = end;
+	}
+
+	void writeActive(boolean active) throws IOException {
+		ensureCapacity(1);
+		buffer[position++] = (byte) (active ? '1' : '0');
 	}
 
-	abstract void flush();
+	void writeEffectiveTime(Integer effectiveTime) throws IOException {
+		if (effectiveTime != null) {
+			writeInt(effectiveTime);
+		} else {
+			writeField(transientEffectiveTime);
+		}
+	}
+
+	private void ensureCapacity(int bytes) throws IOException {
+		if (position + bytes > buffer.length) {
+			flushBuffer();
+		}
+	}
+
+	private void flushBuffer() throws IOException {
+		outputStream.write(buffer, 0, position);
+		position = 0;
+	}
 
+	/**
+	 * Writes any buffered bytes to the output stream. The output stream is not closed.
+	 */
 	@Override
 	public void close() throws IOException {
-		flush();
-		bufferedWriter.flush();
+		flushBuffer();
+		outputStream.flush();
 	}
 
 	public int getContentLinesWritten() {
@@ -4,57 +4,51 @@ import org.elasticsearch.common.Strings;
 import org.snomed.snowstorm.core.data.domain.ReferenceSetMember;
 import org.snomed.snowstorm.core.rf2.RF2Constants;
 
-import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 
 class ReferenceSetMemberExportWriter extends ExportWriter<ReferenceSetMember> {
 
 	private final List<String> extraFieldNames;
 
-	ReferenceSetMemberExportWriter(BufferedWriter bufferedWriter, List<String> extraFieldNames) {
-		super(bufferedWriter);
+	ReferenceSetMemberExportWriter(OutputStream outputStream, List<String> extraFieldNames) {
+		super(outputStream);
 		this.extraFieldNames = extraFieldNames;
 	}
 
 	@Override
 	void writeHeader() throws IOException {
-		String extraFields = Strings.collectionToDelimitedString(extraFieldNames, TAB);
-		bufferedWriter.write(RF2Constants.SIMPLE_REFSET_HEADER);
+		String extraFields = Strings.collectionToDelimitedString(extraFieldNames, "\t");
+		writeField(RF2Constants.SIMPLE_REFSET_HEADER);
 		if (!extraFields.isEmpty()) {
-			bufferedWriter.write(TAB);
-			bufferedWriter.write(extraFields);
+			writeTab();
+			writeField(extraFields);
 		}
 		writeNewLine();
 	}
 
 	@Override
-	void flush() {
+	void writeRow(ReferenceSetMember member) {
 		try {
-			for (ReferenceSetMember member : componentBuffer) {
-				bufferedWriter.write(member.getMemberId());
-				bufferedWriter.write(TAB);
-				bufferedWriter.write(member.getEffectiveTimeI() != null ? member.getEffectiveTimeI().toString() : getTransientEffectiveTime());
-				bufferedWriter.write(TAB);
-				bufferedWriter.write(member.isActive() ? "1" : "0");
-				bufferedWriter.write(TAB);
-				bufferedWriter.write(member.getModuleId());
-				bufferedWriter.write(TAB);
-				bufferedWriter.write(member.getRefsetId());
-				bufferedWriter.write(TAB);
-				bufferedWriter.write(member.getReferencedComponentId());
-
-				for (String extraField : extraFieldNames) {
-					bufferedWriter.write(TAB);
-					String value = member.getAdditionalField(extraField);
-					if (value == null) {
-						value = "";
-					}
-					bufferedWriter.write(value);
-				}
-				writeNewLine();
+			writeField(member.getMemberId());
+			writeTab();
+			writeEffectiveTime(member.getEffectiveTimeI());
+			writeTab();
+			writeActive(member.isActive());
+			writeTab();
+			writeField(member.getModuleId());
+			writeTab();
+			writeField(member.getRefsetId());
+			writeTab();
+			writeField(member.getReferencedComponentId());
+
+			for (String extraField : extraFieldNames) {
+				writeTab();
+				// Missing values are written as blank fields
+				writeField(member.getAdditionalField(extraField));
 			}
-			componentBuffer.clear();
+			writeNewLine();
 		} catch (IOException e) {
 			throw new ExportException("Failed to write ReferenceSetMember to RF2 file.", e);
 		}
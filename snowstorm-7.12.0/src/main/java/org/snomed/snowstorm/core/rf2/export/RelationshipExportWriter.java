@@ -3,47 +3,44 @@ package org.snomed.snowstorm.core.rf2.export;
 import org.snomed.snowstorm.core.data.domain.Relationship;
 import org.snomed.snowstorm.core.rf2.RF2Constants;
 
-import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStream;
 
 class RelationshipExportWriter extends ExportWriter<Relationship> {
 
-	RelationshipExportWriter(BufferedWriter bufferedWriter) {
-		super(bufferedWriter);
+	RelationshipExportWriter(OutputStream outputStream) {
+		super(outputStream);
 	}
 
 	@Override
 	void writeHeader() throws IOException {
-		bufferedWriter.write(RF2Constants.RELATIONSHIP_HEADER);
+		writeField(RF2Constants.RELATIONSHIP_HEADER);
 		writeNewLine();
 	}
 
 	@Override
-	void flush() {
+	void writeRow(Relationship relationship) {
 		try {
-			for (Relationship relationship : componentBuffer) {
-				bufferedWriter.write(relationship.getRelationshipId());
-				bufferedWriter.write(TAB);
-				bufferedWriter.write(relationship.getEffectiveTimeI() != null ? relationship.getEffectiveTimeI().toString() : getTransientEffectiveTime());
-				bufferedWriter.write(TAB);
-				bufferedWriter.write(relationship.isActive() ? "1" : "0");
-				bufferedWriter.write(TAB);
-				bufferedWriter.write(relationship.getModuleId());
-				bufferedWriter.write(TAB);
-				bufferedWriter.write(relationship.getSourceId());
-				bufferedWriter.write(TAB);
-				bufferedWriter.write(relationship.getDestinationId());
-				bufferedWriter.write(TAB);
-				bufferedWriter.write(relationship.getRelationshipGroup() + "");
-				bufferedWriter.write(TAB);
-				bufferedWriter.write(relationship.getTypeId());
-				bufferedWriter.write(TAB);
-				bufferedWriter.write(relationship.getCharacteristicTypeId());
-				bufferedWriter.write(TAB);
-				bufferedWriter.write(relationship.getModifierId());
-				writeNewLine();
-			}
-			componentBuffer.clear();
+			writeField(relationship.getRelationshipId());
+			writeTab();
+			writeEffectiveTime(relationship.getEffectiveTimeI());
+			writeTab();
+			writeActive(relationship.isActive());
+			writeTab();
+			writeField(relationship.getModuleId());
+			writeTab();
+			writeField(relationship.getSourceId());
+			writeTab();
+			writeField(relationship.getDestinationId());
+			writeTab();
+			writeInt(relationship.getRelationshipGroup());
+			writeTab();
+			writeField(relationship.getTypeId());
+			writeTab();
+			writeField(relationship.getCharacteristicTypeId());
+			writeTab();
+			writeField(relationship.getModifierId());
+			writeNewLine();
 		} catch (IOException e) {
 			throw new ExportException("Failed to write Relationship to RF2 file.", e);
 		}
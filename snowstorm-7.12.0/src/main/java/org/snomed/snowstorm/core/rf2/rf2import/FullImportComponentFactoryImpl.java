@@ -15,8 +15,9 @@ public class FullImportComponentFactoryImpl extends ImportComponentFactoryImpl i
 	private final String stopImportAfterEffectiveTime;
 
 	FullImportComponentFactoryImpl(ConceptUpdateHelper conceptUpdateHelper, ReferenceSetMemberService memberService, BranchService branchService,
-			BranchMetadataHelper branchMetadataHelper, CodeSystemService codeSystemService, String path, String stopImportAfterEffectiveTime) {
-		super(conceptUpdateHelper, memberService, branchService, branchMetadataHelper, path, null, false, false);
+			BranchMetadataHelper branchMetadataHelper, ImportPipeline importPipeline, ImportJob job, CodeSystemService codeSystemService, String path,
+			String stopImportAfterEffectiveTime) {
+		super(conceptUpdateHelper, memberService, branchService, branchMetadataHelper, importPipeline, job, path, null, false, false);
 		this.branchMetadataHelper = branchMetadataHelper;
 		this.basePath = path;
 		this.stopImportAfterEffectiveTime = stopImportAfterEffectiveTime;
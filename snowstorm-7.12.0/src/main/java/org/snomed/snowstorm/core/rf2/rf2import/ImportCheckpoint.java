@@ -0,0 +1,132 @@
+package org.snomed.snowstorm.core.rf2.rf2import;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.snomed.snowstorm.core.data.services.RuntimeServiceException;
+import org.snomed.snowstorm.core.rf2.RF2Type;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Progress of an RF2 import that is committed in chunks. Rows are counted per stream, the rows of one component type that come from one file.
+ * Snomed-boot reads each file on a single thread in file order, so the count of a stream is the row offset reached in that file.
+ * When the same archive is imported again the rows counted at the last checkpoint are skipped because they are already committed.
+ */
+class ImportCheckpoint {
+
+	private static final ObjectMapper objectMapper = new ObjectMapper();
+	private static final Pattern RF2_FILE_PREFIX = Pattern.compile("x?(sct|der)2");
+
+	private final String archiveFingerprint;
+	private final RF2Type importType;
+	private final long interval;
+	private final Map<String, Long> committedRows;
+	private final Map<String, AtomicLong> rows = new ConcurrentHashMap<>();
+	private final AtomicLong rowsSinceCheckpoint = new AtomicLong();
+	private int checkpointCount;
+
+	ImportCheckpoint(String archiveFingerprint, RF2Type importType, long interval) {
+		this(archiveFingerprint, importType, interval, new HashMap<>(), 0);
+	}
+
+	private ImportCheckpoint(String archiveFingerprint, RF2Type importType, long interval, Map<String, Long> committedRows, int checkpointCount) {
+		this.archiveFingerprint = archiveFingerprint;
+		this.importType = importType;
+		this.interval = Math.max(1, interval);
+		this.committedRows = committedRows;
+		this.checkpointCount = checkpointCount;
+	}
+
+	/**
+	 * @return new progress that skips the rows committed by this checkpoint.
+	 */
+	ImportCheckpoint resume(long interval) {
+		return new ImportCheckpoint(archiveFingerprint, importType, interval, getRows(), checkpointCount);
+	}
+
+	/**
+	 * Counts the next row of the stream.
+	 * @return true if the row was committed before the import was interrupted.
+	 */
+	boolean nextRowCommitted(String stream) {
+		long row = rows.computeIfAbsent(stream, key -> new AtomicLong()).incrementAndGet();
+		Long committed = committedRows.get(stream);
+		if (committed != null && row <= committed) {
+			return true;
+		}
+		rowsSinceCheckpoint.incrementAndGet();
+		return false;
+	}
+
+	boolean isCheckpointDue() {
+		return rowsSinceCheckpoint.get() >= interval;
+	}
+
+	void checkpointed() {
+		rowsSinceCheckpoint.set(0);
+		checkpointCount++;
+	}
+
+	boolean isFor(String archiveFingerprint, RF2Type importType) {
+		return this.archiveFingerprint != null && this.archiveFingerprint.equals(archiveFingerprint) && this.importType == importType;
+	}
+
+	Map<String, Long> getRows() {
+		// Rows committed before a resume still count until the stream has been read past them again
+		Map<String, Long> rowCounts = new TreeMap<>(committedRows);
+		rows.forEach((stream, count) -> rowCounts.merge(stream, count.get(), Math::max));
+		return rowCounts;
+	}
+
+	long getCommittedRowCount() {
+		return committedRows.values().stream().mapToLong(Long::longValue).sum();
+	}
+
+	int getCheckpointCount() {
+		return checkpointCount;
+	}
+
+	String serialise() {
+		Map<String, Object> values = new HashMap<>();
+		values.put("archive", archiveFingerprint);
+		values.put("type", importType);
+		values.put("checkpoints", checkpointCount);
+		values.put("rows", getRows());
+		try {
+			return objectMapper.writeValueAsString(values);
+		} catch (JsonProcessingException e) {
+			throw new RuntimeServiceException("Failed to serialise import checkpoint.", e);
+		}
+	}
+
+	static ImportCheckpoint deserialise(String value) throws JsonProcessingException {
+		CheckpointValues values = objectMapper.readValue(value, CheckpointValues.class);
+		return new ImportCheckpoint(values.archive, values.type, 1, values.rows != null ? values.rows : new HashMap<>(), values.checkpoints);
+	}
+
+	/**
+	 * Rows are counted per component type, language or reference set rather than per file,
+	 * so an archive can only be resumed if it has no more than one file of each type.
+	 * @return type of the RF2 file, for example "sct2_Description_Snapshot-en", or null if the file is not an RF2 file.
+	 */
+	static String getFileType(String fileName) {
+		String name = fileName.substring(fileName.lastIndexOf('/') + 1);
+		String[] parts = name.split("_");
+		if (!name.endsWith(".txt") || parts.length < 5 || !RF2_FILE_PREFIX.matcher(parts[0]).matches()) {
+			return null;
+		}
+		return parts[0] + "_" + parts[1] + "_" + parts[2];
+	}
+
+	private static final class CheckpointValues {
+		public String archive;
+		public RF2Type type;
+		public int checkpoints;
+		public Map<String, Long> rows;
+	}
+}
@@ -19,13 +19,21 @@ import org.springframework.data.elasticsearch.core.SearchHitsIterator;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static io.kaicode.elasticvc.api.ComponentService.LARGE_PAGE;
 import static java.lang.Long.parseLong;
+import static org.snomed.snowstorm.core.data.services.BranchMetadataHelper.INTERNAL_METADATA_KEY;
 import static org.elasticsearch.index.query.QueryBuilders.*;
 
 public class ImportComponentFactoryImpl extends ImpotentComponentFactory {
@@ -35,9 +43,15 @@ public class ImportComponentFactoryImpl extends ImpotentComponentFactory {
 	private final BranchService branchService;
 	private final BranchMetadataHelper branchMetadataHelper;
 	private final VersionControlHelper versionControlHelper;
+	private final ImportPipeline importPipeline;
+	private final ImportStageStatistics parseStatistics;
+	private final ImportStageStatistics lookupStatistics;
+	private final ImportStageStatistics indexStatistics;
 	private final String path;
 	private Commit commit;
 	private BranchCriteria branchCriteriaBeforeOpenCommit;
+	private long parseStartNanos;
+	private final AtomicLong componentsParsed = new AtomicLong();
 
 	private final PersistBuffer<Concept> conceptPersistBuffer;
 	private final PersistBuffer<Description> descriptionPersistBuffer;
@@ -46,19 +60,27 @@ public class ImportComponentFactoryImpl extends ImpotentComponentFactory {
 	private final List<PersistBuffer<?>> persistBuffers;
 	private final List<PersistBuffer<?>> coreComponentPersistBuffers;
 	private final MaxEffectiveTimeCollector maxEffectiveTimeCollector;
-	private final Map<String, AtomicLong> componentTypeSkippedMap = new HashMap<>();
+	private final Map<String, AtomicLong> componentTypeSkippedMap = new ConcurrentHashMap<>();
+	private ImportCheckpoint checkpoint;
+	// Rows are saved under the read lock, the write lock is held while a checkpoint is committed
+	private final ReadWriteLock checkpointLock = new ReentrantReadWriteLock();
 
 	private static final Logger logger = LoggerFactory.getLogger(ImportComponentFactoryImpl.class);
 
 	// A small number of stated relationships also appear in the inferred file. These should not be persisted when importing a snapshot.
 	Set<Long> statedRelationshipsToSkip = Sets.newHashSet(3187444026L, 3192499027L, 3574321020L);
-	boolean coreComponentsFlushed;
+	volatile boolean coreComponentsFlushed;
 
 	ImportComponentFactoryImpl(ConceptUpdateHelper conceptUpdateHelper, ReferenceSetMemberService memberService, BranchService branchService,
-			BranchMetadataHelper branchMetadataHelper, String path, Integer patchReleaseVersion, boolean copyReleaseFields, boolean clearEffectiveTimes) {
+			BranchMetadataHelper branchMetadataHelper, ImportPipeline importPipeline, ImportJob job, String path, Integer patchReleaseVersion,
+			boolean copyReleaseFields, boolean clearEffectiveTimes) {
 
 		this.branchService = branchService;
 		this.branchMetadataHelper = branchMetadataHelper;
+		this.importPipeline = importPipeline;
+		parseStatistics = job.getStageStatistics(ImportJob.ImportStage.PARSE);
+		lookupStatistics = job.getStageStatistics(ImportJob.ImportStage.LOOKUP);
+		indexStatistics = job.getStageStatistics(ImportJob.ImportStage.INDEX);
 		this.path = path;
 		persistBuffers = new ArrayList<>();
 		maxEffectiveTimeCollector = new MaxEffectiveTimeCollector();
@@ -68,52 +90,67 @@ public class ImportComponentFactoryImpl extends ImpotentComponentFactory {
 
 		conceptPersistBuffer = new PersistBuffer<>() {
 			@Override
-			public void persistCollection(Collection<Concept> entities) {
+			void lookup(Collection<Concept> entities) {
 				processEntities(entities, patchReleaseVersion, elasticsearchTemplate, Concept.class, copyReleaseFields, clearEffectiveTimes);
-				if (!entities.isEmpty()) {
-					conceptUpdateHelper.doSaveBatchConcepts(entities, commit);
-				}
+			}
+
+			@Override
+			void index(Collection<Concept> entities, Commit commit) {
+				conceptUpdateHelper.doSaveBatchConcepts(entities, commit);
 			}
 		};
 		coreComponentPersistBuffers.add(conceptPersistBuffer);
 
 		descriptionPersistBuffer = new PersistBuffer<>() {
 			@Override
-			public void persistCollection(Collection<Description> entities) {
+			void lookup(Collection<Description> entities) {
 				processEntities(entities, patchReleaseVersion, elasticsearchTemplate, Description.class, copyReleaseFields, clearEffectiveTimes);
-				if (!entities.isEmpty()) {
-					conceptUpdateHelper.doSaveBatchDescriptions(entities, commit);
-				}
+			}
+
+			@Override
+			void index(Collection<Description> entities, Commit commit) {
+				conceptUpdateHelper.doSaveBatchDescriptions(entities, commit);
 			}
 		};
 		coreComponentPersistBuffers.add(descriptionPersistBuffer);
 
 		relationshipPersistBuffer = new PersistBuffer<>() {
 			@Override
-			public void persistCollection(Collection<Relationship> entities) {
+			void lookup(Collection<Relationship> entities) {
 				processEntities(entities, patchReleaseVersion, elasticsearchTemplate, Relationship.class, copyReleaseFields, clearEffectiveTimes);
-				if (!entities.isEmpty()) {
-					conceptUpdateHelper.doSaveBatchRelationships(entities, commit);
-				}
+			}
+
+			@Override
+			void index(Collection<Relationship> entities, Commit commit) {
+				conceptUpdateHelper.doSaveBatchRelationships(entities, commit);
 			}
 		};
 		coreComponentPersistBuffers.add(relationshipPersistBuffer);
 
 		memberPersistBuffer = new PersistBuffer<>() {
 			@Override
-			public void persistCollection(Collection<ReferenceSetMember> entities) {
-				if (!coreComponentsFlushed) { // Avoid having to sync to check this
-					synchronized (this) {
-						if (!coreComponentsFlushed) {
-							coreComponentPersistBuffers.forEach(PersistBuffer::flush);
-							coreComponentsFlushed = true;
-						}
-					}
+			void beforeBatch() {
+				// Called without the lock of this buffer held, flushing takes the lock of each core component buffer
+				if (!coreComponentsFlushed) {
+					coreComponentPersistBuffers.forEach(PersistBuffer::flush);
+					coreComponentsFlushed = true;
 				}
+			}
+
+			@Override
+			void lookup(Collection<ReferenceSetMember> entities) {
 				processEntities(entities, patchReleaseVersion, elasticsearchTemplate, ReferenceSetMember.class, copyReleaseFields, clearEffectiveTimes);
-				if (!entities.isEmpty()) {
-					memberService.doSaveBatchMembers(entities, commit);
-				}
+			}
+
+			@Override
+			boolean recordsDeletions(Collection<ReferenceSetMember> entities) {
+				// Inactive unreleased members are deleted when saved
+				return entities.stream().anyMatch(member -> !member.isActive() && !member.isReleased());
+			}
+
+			@Override
+			void index(Collection<ReferenceSetMember> entities, Commit commit) {
+				memberService.doSaveBatchMembers(entities, commit);
 			}
 		};
 	}
@@ -193,12 +230,33 @@ public class ImportComponentFactoryImpl extends ImpotentComponentFactory {
 
 	@Override
 	public void loadingComponentsStarting() {
+		openImportCommit();
+	}
+
+	private void openImportCommit() {
 		setCommit(branchService.openCommit(path, branchMetadataHelper.getBranchLockMetadata("Loading components from RF2 import.")));
 	}
 
+	/**
+	 * Commit progress in chunks. Each chunk is committed once the given number of rows have been saved since the last checkpoint,
+	 * the row counts of the checkpoint are stored in the branch metadata within the same commit.
+	 */
+	void setCheckpoint(ImportCheckpoint checkpoint) {
+		this.checkpoint = checkpoint;
+	}
+
 	protected void setCommit(Commit commit) {
+		// Batches of each component type are indexed concurrently, saving adds to the versions replaced of the commit
+		Map<String, Set<String>> versionsReplaced = commit.getEntityVersionsReplaced();
+		for (Class<?> componentClass : List.of(Concept.class, Description.class, Relationship.class, ReferenceSetMember.class)) {
+			Set<String> concurrentSet = ConcurrentHashMap.newKeySet();
+			concurrentSet.addAll(versionsReplaced.getOrDefault(componentClass.getSimpleName(), Collections.emptySet()));
+			versionsReplaced.put(componentClass.getSimpleName(), concurrentSet);
+		}
 		this.commit = commit;
 		branchCriteriaBeforeOpenCommit = versionControlHelper.getBranchCriteriaBeforeOpenCommit(commit);
+		parseStartNanos = System.nanoTime();
+		componentsParsed.set(0);
 	}
 
 	@Override
@@ -207,90 +265,171 @@ public class ImportComponentFactoryImpl extends ImpotentComponentFactory {
 	}
 
 	void completeImportCommit() {
+		// Parsing has finished, persistence of the last batches may still be running
+		parseStatistics.record(componentsParsed.get(), System.nanoTime() - parseStartNanos);
+		RuntimeException persistFailure = null;
+		for (PersistBuffer<?> persistBuffer : persistBuffers) {
+			try {
+				persistBuffer.flush();
+			} catch (RuntimeException e) {
+				// Keep flushing so that nothing is still being written when the commit is rolled back
+				if (persistFailure == null) {
+					persistFailure = e;
+				}
+			}
+		}
+		if (persistFailure != null) {
+			throw persistFailure;
+		}
 		if (!componentTypeSkippedMap.isEmpty()) {
 			for (String type : componentTypeSkippedMap.keySet()) {
 				logger.info("{} components of type {} were not imported from RF2 because a newer version was found.", componentTypeSkippedMap.get(type).get(), type);
 			}
 		}
-		persistBuffers.forEach(PersistBuffer::flush);
+		if (checkpoint != null) {
+			commit.getBranch().getMetadata().getMapOrCreate(INTERNAL_METADATA_KEY).put(ImportService.IMPORT_CHECKPOINT_KEY, checkpoint.serialise());
+		}
 		commit.markSuccessful();
 		commit.close();
 		commit = null;
 	}
 
+	private void saveRow(String stream, String effectiveTime, Runnable save) {
+		if (checkpoint == null) {
+			save.run();
+			return;
+		}
+		checkpointLock.readLock().lock();
+		try {
+			if (checkpoint.nextRowCommitted(stream)) {
+				// Already imported before the import was interrupted
+				Integer effectiveTimeI = getEffectiveTimeI(effectiveTime);
+				if (effectiveTimeI != null) {
+					maxEffectiveTimeCollector.add(effectiveTimeI);
+				}
+				return;
+			}
+			save.run();
+		} finally {
+			checkpointLock.readLock().unlock();
+		}
+		if (checkpoint.isCheckpointDue()) {
+			commitCheckpoint();
+		}
+	}
+
+	private void commitCheckpoint() {
+		checkpointLock.writeLock().lock();
+		try {
+			// Another thread may have committed the checkpoint while this one was waiting
+			if (!checkpoint.isCheckpointDue()) {
+				return;
+			}
+			checkpoint.checkpointed();
+			completeImportCommit();
+			logger.info("Committed RF2 import checkpoint {} on {}, rows read {}", checkpoint.getCheckpointCount(), path, checkpoint.getRows());
+			openImportCommit();
+			coreComponentsFlushed = false;
+		} finally {
+			checkpointLock.writeLock().unlock();
+		}
+	}
+
 	@Override
 	public void newConceptState(String conceptId, String effectiveTime, String active, String moduleId, String definitionStatusId) {
-		Integer effectiveTimeI = getEffectiveTimeI(effectiveTime);
-		final Concept concept = new Concept(conceptId, effectiveTimeI, isActive(active), moduleId, definitionStatusId);
-		if (effectiveTimeI != null) {
-			concept.release(effectiveTimeI);
-		}
-		conceptPersistBuffer.save(concept);
+		saveRow("concept", effectiveTime, () -> {
+			Integer effectiveTimeI = getEffectiveTimeI(effectiveTime);
+			final Concept concept = new Concept(conceptId, effectiveTimeI, isActive(active), moduleId, definitionStatusId);
+			if (effectiveTimeI != null) {
+				concept.release(effectiveTimeI);
+			}
+			conceptPersistBuffer.save(concept);
+		});
 	}
 
 	@Override
 	public void newRelationshipState(String id, String effectiveTime, String active, String moduleId, String sourceId, String destinationId,
 			String relationshipGroup, String typeId, String characteristicTypeId, String modifierId) {
 
-		Integer effectiveTimeI = getEffectiveTimeI(effectiveTime);
-		final Relationship relationship = new Relationship(id, effectiveTimeI, isActive(active), moduleId, sourceId,
-				destinationId, Integer.parseInt(relationshipGroup), typeId, characteristicTypeId, modifierId);
-		if (effectiveTimeI != null) {
-			relationship.release(effectiveTimeI);
-		}
+		// Stated relationships are read from their own file
+		String stream = Concepts.STATED_RELATIONSHIP.equals(characteristicTypeId) ? "statedRelationship" : "relationship";
+		saveRow(stream, effectiveTime, () -> {
+			Integer effectiveTimeI = getEffectiveTimeI(effectiveTime);
+			final Relationship relationship = new Relationship(id, effectiveTimeI, isActive(active), moduleId, sourceId,
+					destinationId, Integer.parseInt(relationshipGroup), typeId, characteristicTypeId, modifierId);
+			if (effectiveTimeI != null) {
+				relationship.release(effectiveTimeI);
+			}
 
-		if (statedRelationshipsToSkip != null
-				&& relationship.getCharacteristicTypeId().equals(Concepts.STATED_RELATIONSHIP)
-				&& statedRelationshipsToSkip.contains(parseLong(relationship.getId()))) {
-			// Do not persist relationship
-			return;
-		}
+			if (statedRelationshipsToSkip != null
+					&& relationship.getCharacteristicTypeId().equals(Concepts.STATED_RELATIONSHIP)
+					&& statedRelationshipsToSkip.contains(parseLong(relationship.getId()))) {
+				// Do not persist relationship
+				return;
+			}
 
-		relationshipPersistBuffer.save(relationship);
+			relationshipPersistBuffer.save(relationship);
+		});
 	}
 
 	@Override
 	public void newConcreteRelationshipState(String id, String effectiveTime, String active, String moduleId, String sourceId, String value,
 											 String relationshipGroup, String typeId, String characteristicTypeId, String modifierId) {
-		Integer effectiveTimeI = getEffectiveTimeI(effectiveTime);
-		final Relationship relationship = new Relationship(id, effectiveTimeI, isActive(active), moduleId, sourceId,
-				value, Integer.parseInt(relationshipGroup), typeId, characteristicTypeId, modifierId);
-		if (effectiveTimeI != null) {
-			relationship.release(effectiveTimeI);
-		}
+		saveRow("concreteRelationship", effectiveTime, () -> {
+			Integer effectiveTimeI = getEffectiveTimeI(effectiveTime);
+			final Relationship relationship = new Relationship(id, effectiveTimeI, isActive(active), moduleId, sourceId,
+					value, Integer.parseInt(relationshipGroup), typeId, characteristicTypeId, modifierId);
+			if (effectiveTimeI != null) {
+				relationship.release(effectiveTimeI);
+			}
 
-		relationshipPersistBuffer.save(relationship);
+			relationshipPersistBuffer.save(relationship);
+		});
 	}
 
 	@Override
 	public void newDescriptionState(String id, String effectiveTime, String active, String moduleId, String conceptId, String languageCode,
 			String typeId, String term, String caseSignificanceId) {
 
-		Integer effectiveTimeI = getEffectiveTimeI(effectiveTime);
-		final Description description = new Description(id, effectiveTimeI, isActive(active), moduleId, conceptId, languageCode, typeId, term, caseSignificanceId);
-		if (effectiveTimeI != null) {
-			description.release(effectiveTimeI);
-		}
-		descriptionPersistBuffer.save(description);
+		// Text definitions are read from their own file, as is each language
+		String stream = (Concepts.TEXT_DEFINITION.equals(typeId) ? "textDefinition-" : "description-") + languageCode;
+		saveRow(stream, effectiveTime, () -> {
+			Integer effectiveTimeI = getEffectiveTimeI(effectiveTime);
+			final Description description = new Description(id, effectiveTimeI, isActive(active), moduleId, conceptId, languageCode, typeId, term, caseSignificanceId);
+			if (effectiveTimeI != null) {
+				description.release(effectiveTimeI);
+			}
+			descriptionPersistBuffer.save(description);
+		});
 	}
 
 	@Override
 	public void newReferenceSetMemberState(String[] fieldNames, String id, String effectiveTime, String active, String moduleId, String refsetId,
 			String referencedComponentId, String... otherValues) {
 
-		Integer effectiveTimeI = getEffectiveTimeI(effectiveTime);
-		ReferenceSetMember member = new ReferenceSetMember(id, effectiveTimeI, isActive(active), moduleId, refsetId, referencedComponentId);
-		for (int i = RF2Constants.MEMBER_ADDITIONAL_FIELD_OFFSET; i < fieldNames.length; i++) {
-			if (i - RF2Constants.MEMBER_ADDITIONAL_FIELD_OFFSET < otherValues.length) {
-				member.setAdditionalField(fieldNames[i], otherValues[i - RF2Constants.MEMBER_ADDITIONAL_FIELD_OFFSET]);
-			} else {
-				member.setAdditionalField(fieldNames[i], "");
+		// Members of a reference set are read from a single file
+		saveRow("member-" + refsetId, effectiveTime, () -> {
+			Integer effectiveTimeI = getEffectiveTimeI(effectiveTime);
+			ReferenceSetMember member = new ReferenceSetMember(id, effectiveTimeI, isActive(active), moduleId, refsetId, referencedComponentId);
+			for (int i = RF2Constants.MEMBER_ADDITIONAL_FIELD_OFFSET; i < fieldNames.length; i++) {
+				if (i - RF2Constants.MEMBER_ADDITIONAL_FIELD_OFFSET < otherValues.length) {
+					member.setAdditionalField(fieldNames[i], otherValues[i - RF2Constants.MEMBER_ADDITIONAL_FIELD_OFFSET]);
+				} else {
+					member.setAdditionalField(fieldNames[i], "");
+				}
 			}
-		}
-		if (effectiveTimeI != null) {
-			member.release(effectiveTimeI);
-		}
-		memberPersistBuffer.save(member);
+			if (effectiveTimeI != null) {
+				member.release(effectiveTimeI);
+			}
+			memberPersistBuffer.save(member);
+		});
+	}
+
+	/**
+	 * Waits for batches already submitted to the import pipeline, without throwing any persistence failure.
+	 */
+	void awaitPersistence() {
+		persistBuffers.forEach(PersistBuffer::awaitBatches);
 	}
 
 	private Integer getEffectiveTimeI(String effectiveTime) {
@@ -313,27 +452,127 @@ public class ImportComponentFactoryImpl extends ImpotentComponentFactory {
 		return commit;
 	}
 
+	/**
+	 * Collects parsed components into batches. Each full batch goes through the lookup and then the index stage of the import pipeline
+	 * while parsing continues. Buffers of different component types run in parallel, as do batches of the same type up to the pipeline limit.
+	 */
 	private abstract class PersistBuffer<E extends Entity> {
 
 		private List<E> entities = new ArrayList<>();
+		private final Semaphore batchesInFlight = new Semaphore(importPipeline.getMaxBatchesInFlight(), true);
+		private final AtomicReference<Throwable> failure = new AtomicReference<>();
 
 		PersistBuffer() {
 			persistBuffers.add(this);
 		}
 
-		synchronized void save(E entity) {
-			entities.add(entity);
-			if (entities.size() >= FLUSH_INTERVAL) {
-				flush();
+		void save(E entity) {
+			List<E> batch;
+			synchronized (this) {
+				entities.add(entity);
+				componentsParsed.incrementAndGet();
+				if (entities.size() < FLUSH_INTERVAL) {
+					return;
+				}
+				batch = takeEntities();
+			}
+			// Submitted without the lock of this buffer, submitting may flush other buffers
+			submitBatch(batch);
+		}
+
+		/**
+		 * Submits any remaining components and waits for all batches of this buffer to be persisted.
+		 */
+		void flush() {
+			List<E> batch;
+			synchronized (this) {
+				batch = takeEntities();
+			}
+			try {
+				if (!batch.isEmpty()) {
+					submitBatch(batch);
+				}
+			} finally {
+				// Drain even when an earlier batch failed, the commit must not complete or roll back while batches are writing to it
+				awaitBatches();
+			}
+			throwIfFailed();
+		}
+
+		void awaitBatches() {
+			int permits = importPipeline.getMaxBatchesInFlight();
+			batchesInFlight.acquireUninterruptibly(permits);
+			batchesInFlight.release(permits);
+		}
+
+		private List<E> takeEntities() {
+			List<E> batch = entities;
+			entities = new ArrayList<>();
+			return batch;
+		}
+
+		private void submitBatch(List<E> batch) {
+			beforeBatch();
+			throwIfFailed();
+			// The batch belongs to the commit open now, a checkpoint flushes all buffers before replacing it
+			Commit batchCommit = commit;
+			// Blocks parsing when the pipeline is full
+			batchesInFlight.acquireUninterruptibly();
+			CompletableFuture.runAsync(() -> {
+						long start = System.nanoTime();
+						int size = batch.size();
+						lookup(batch);
+						lookupStatistics.record(size, System.nanoTime() - start);
+					}, importPipeline.getLookupExecutor())
+					.thenRunAsync(() -> {
+						if (!batch.isEmpty()) {
+							long start = System.nanoTime();
+							if (recordsDeletions(batch)) {
+								// Deleted versions are recorded in a single set of the commit, shared by all component types
+								synchronized (batchCommit) {
+									index(batch, batchCommit);
+								}
+							} else {
+								// The versions replaced of each component type are a concurrent set, see setCommit
+								index(batch, batchCommit);
+							}
+							indexStatistics.record(batch.size(), System.nanoTime() - start);
+						}
+					}, importPipeline.getIndexExecutor())
+					.whenComplete((result, throwable) -> {
+						if (throwable != null) {
+							failure.compareAndSet(null, throwable instanceof CompletionException ? throwable.getCause() : throwable);
+						}
+						batchesInFlight.release();
+					});
+		}
+
+		private void throwIfFailed() {
+			Throwable throwable = failure.get();
+			if (throwable != null) {
+				if (throwable instanceof RuntimeException) {
+					throw (RuntimeException) throwable;
+				}
+				throw new IllegalStateException("Failed to persist RF2 components. " + throwable.getMessage(), throwable);
 			}
 		}
 
-		synchronized void flush() {
-			persistCollection(entities);
-			entities.clear();
+		void beforeBatch() {
 		}
 
-		abstract void persistCollection(Collection<E> entities);
+		/**
+		 * @return true if saving the batch deletes any version, rather than only replacing versions.
+		 */
+		boolean recordsDeletions(Collection<E> entities) {
+			return false;
+		}
+
+		/**
+		 * Removes components which should not be imported and prepares the rest for saving.
+		 */
+		abstract void lookup(Collection<E> entities);
+
+		abstract void index(Collection<E> entities, Commit commit);
 
 	}
 
@@ -3,6 +3,8 @@ package org.snomed.snowstorm.core.rf2.rf2import;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import org.snomed.snowstorm.core.rf2.RF2Type;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 
 public class ImportJob {
@@ -12,6 +14,10 @@ public class ImportJob {
 	public ImportJob(RF2ImportConfiguration importConfiguration) {
 		this.importConfiguration = importConfiguration;
 		status = ImportStatus.WAITING_FOR_FILE;
+		stageStatistics = new LinkedHashMap<>();
+		for (ImportStage stage : ImportStage.values()) {
+			stageStatistics.put(stage.getName(), new ImportStageStatistics());
+		}
 	}
 
 	public enum ImportStatus {
@@ -22,6 +28,20 @@ public class ImportJob {
 
 	private String errorMessage;
 
+	private String archiveFingerprint;
+
+	private Integer resumedFromCheckpoint;
+
+	private final Map<String, ImportStageStatistics> stageStatistics;
+
+	public enum ImportStage {
+		PARSE, LOOKUP, INDEX;
+
+		public String getName() {
+			return name().toLowerCase();
+		}
+	}
+
 	public void setStatus(ImportStatus status) {
 		this.status = status;
 	}
@@ -54,6 +74,27 @@ public class ImportJob {
 		return importConfiguration.isInternalRelease();
 	}
 
+	public boolean isCheckpoints() {
+		return importConfiguration.isCheckpoints();
+	}
+
+	@JsonIgnore
+	public String getArchiveFingerprint() {
+		return archiveFingerprint;
+	}
+
+	void setArchiveFingerprint(String archiveFingerprint) {
+		this.archiveFingerprint = archiveFingerprint;
+	}
+
+	public Integer getResumedFromCheckpoint() {
+		return resumedFromCheckpoint;
+	}
+
+	void setResumedFromCheckpoint(Integer resumedFromCheckpoint) {
+		this.resumedFromCheckpoint = resumedFromCheckpoint;
+	}
+
 	@JsonIgnore
 	public boolean isClearEffectiveTimes() {
 		return importConfiguration.isClearEffectiveTimes();
@@ -66,4 +107,12 @@ public class ImportJob {
 	public String getErrorMessage() {
 		return errorMessage;
 	}
+
+	public Map<String, ImportStageStatistics> getStageStatistics() {
+		return stageStatistics;
+	}
+
+	ImportStageStatistics getStageStatistics(ImportStage stage) {
+		return stageStatistics.get(stage.getName());
+	}
 }
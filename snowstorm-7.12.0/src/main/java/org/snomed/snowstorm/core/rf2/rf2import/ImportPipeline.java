@@ -0,0 +1,35 @@
+package org.snomed.snowstorm.core.rf2.rf2import;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Executors for the stages of RF2 import that run after parsing, shared by all imports.
+ * The lookup stage removes components already present with the same or a later effective time, the index stage saves the batch.
+ */
+class ImportPipeline {
+
+	private final Executor lookupExecutor;
+	private final Executor indexExecutor;
+	private final int maxBatchesInFlight;
+
+	ImportPipeline(Executor lookupExecutor, Executor indexExecutor, int maxBatchesInFlight) {
+		this.lookupExecutor = lookupExecutor;
+		this.indexExecutor = indexExecutor;
+		this.maxBatchesInFlight = Math.max(1, maxBatchesInFlight);
+	}
+
+	Executor getLookupExecutor() {
+		return lookupExecutor;
+	}
+
+	Executor getIndexExecutor() {
+		return indexExecutor;
+	}
+
+	/**
+	 * @return maximum number of batches of one component type that may be waiting for or running in the lookup and index stages.
+	 */
+	int getMaxBatchesInFlight() {
+		return maxBatchesInFlight;
+	}
+}
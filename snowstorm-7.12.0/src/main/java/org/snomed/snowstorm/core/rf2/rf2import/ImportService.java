@@ -1,5 +1,6 @@
 package org.snomed.snowstorm.core.rf2.rf2import;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import io.kaicode.elasticvc.api.BranchService;
 import io.kaicode.elasticvc.domain.Branch;
 import io.kaicode.elasticvc.domain.Commit;
@@ -13,18 +14,27 @@ import org.snomed.snowstorm.core.data.domain.CodeSystem;
 import org.snomed.snowstorm.core.data.services.*;
 import org.snomed.snowstorm.core.rf2.RF2Type;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 import org.springframework.web.bind.annotation.PathVariable;
 
+import javax.annotation.PostConstruct;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.concurrent.ExecutorService;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 import static org.snomed.snowstorm.core.data.services.BranchMetadataHelper.*;
 import static org.snomed.snowstorm.core.rf2.RF2Type.FULL;
@@ -36,6 +46,8 @@ public class ImportService {
 
 	public static final String BATCH_CHANGE_KEY = "batch-change";
 
+	public static final String IMPORT_CHECKPOINT_KEY = "importCheckpoint";
+
 	private final Map<String, ImportJob> importJobMap;
 
 	private static final LoadingProfile DEFAULT_LOADING_PROFILE = LoadingProfile.complete;
@@ -58,12 +70,33 @@ public class ImportService {
 	@Autowired
 	private CodeSystemService codeSystemService;
 
+	@Autowired
+	@Qualifier("importLookupExecutor")
+	private ThreadPoolTaskExecutor importLookupExecutor;
+
+	@Autowired
+	@Qualifier("importIndexExecutor")
+	private ThreadPoolTaskExecutor importIndexExecutor;
+
+	@Value("${import.pipeline.max-batches-in-flight}")
+	private int maxBatchesInFlight;
+
+	@Value("${import.checkpoint.interval}")
+	private long checkpointInterval;
+
+	private ImportPipeline importPipeline;
+
 	private final Logger logger = LoggerFactory.getLogger(getClass());
 
 	public ImportService() {
 		importJobMap = new HashMap<>();
 	}
 
+	@PostConstruct
+	public void init() {
+		importPipeline = new ImportPipeline(importLookupExecutor, importIndexExecutor, maxBatchesInFlight);
+	}
+
 	public String createJob(RF2Type importType, String branchPath, boolean createCodeSystemVersion, boolean clearEffectiveTimes) {
 		return createJob(new RF2ImportConfiguration(importType, branchPath)
 				.setCreateCodeSystemVersion(createCodeSystemVersion)
@@ -100,6 +133,7 @@ public class ImportService {
 		String branchPath = job.getBranchPath();
 		Integer patchReleaseVersion = job.getPatchReleaseVersion();
 		setImportMetadata(importType, branchPath, job.isCreateCodeSystemVersion());
+		boolean completed = false;
 		try {
 			Date start = new Date();
 			logger.info("Starting RF2 {}{} import on branch {}. ID {}", importType, patchReleaseVersion != null ? " RELEASE PATCH on effectiveTime " + patchReleaseVersion : "", branchPath, importId);
@@ -116,6 +150,7 @@ public class ImportService {
 			}
 
 			job.setStatus(ImportJob.ImportStatus.COMPLETED);
+			completed = true;
 			long seconds = (new Date().getTime() - start.getTime()) / 1_000;
 			logger.info("Completed RF2 {} import on branch {} in {} seconds. ID {}", importType, branchPath, seconds, importId);
 		} catch (Exception e) {
@@ -123,7 +158,7 @@ public class ImportService {
 			job.setStatus(ImportJob.ImportStatus.FAILED);
 			throw e;
 		} finally {
-			clearImportMetadata(branchPath);
+			clearImportMetadata(branchPath, completed);
 		}
 	}
 
@@ -157,7 +192,7 @@ public class ImportService {
 			case SNAPSHOT:
 				return snapshotImport(releaseFileStream, job, branchPath, patchReleaseVersion, releaseImporter, loadingProfile);
 			case FULL:
-				return fullImport(releaseFileStream, branchPath, releaseImporter, loadingProfile);
+				return fullImport(releaseFileStream, job, branchPath, releaseImporter, loadingProfile);
 			default:
 				throw new IllegalStateException("Unexpected import type: " + importType);
 		}
@@ -182,18 +217,79 @@ public class ImportService {
 		branchService.updateMetadata(branchPath, metadata);
 	}
 
-	private void clearImportMetadata(String branchPath) {
+	private void clearImportMetadata(String branchPath, boolean completed) {
 		Metadata metadata = branchService.findLatest(branchPath).getMetadata();
 		final Map<String, String> internalMetadataMap = metadata.getMapOrCreate(INTERNAL_METADATA_KEY);
 		internalMetadataMap.remove(IMPORT_TYPE_KEY);
 		internalMetadataMap.remove(IMPORTING_CODE_SYSTEM_VERSION);
+		if (completed) {
+			// The checkpoint of a failed import is kept so the import can be resumed
+			internalMetadataMap.remove(IMPORT_CHECKPOINT_KEY);
+		}
 		branchService.updateMetadata(branchPath, metadata);
 	}
 
-	private Integer fullImport(final InputStream releaseFileStream, final String branchPath, final ReleaseImporter releaseImporter,
+	private ImportCheckpoint getImportCheckpoint(ImportJob job, String branchPath) {
+		if (!job.isCheckpoints() || job.getType() == FULL) {
+			return null;
+		}
+		String fingerprint = job.getArchiveFingerprint();
+		String existingValue = branchService.findLatest(branchPath).getMetadata().getMapOrCreate(INTERNAL_METADATA_KEY).get(IMPORT_CHECKPOINT_KEY);
+		if (fingerprint != null && existingValue != null) {
+			try {
+				ImportCheckpoint existing = ImportCheckpoint.deserialise(existingValue);
+				if (existing.isFor(fingerprint, job.getType())) {
+					ImportCheckpoint resumed = existing.resume(checkpointInterval);
+					logger.info("Resuming RF2 {} import on branch {} from checkpoint {}, skipping {} rows already committed.",
+							job.getType(), branchPath, existing.getCheckpointCount(), resumed.getCommittedRowCount());
+					job.setResumedFromCheckpoint(existing.getCheckpointCount());
+					return resumed;
+				}
+			} catch (JsonProcessingException e) {
+				logger.warn("Ignoring unreadable import checkpoint on branch {}.", branchPath, e);
+			}
+		}
+		return new ImportCheckpoint(fingerprint, job.getType(), checkpointInterval);
+	}
+
+	// Checkpoint row counts of two files of the same type would overwrite each other
+	static Set<String> getFileTypesWithMultipleFiles(File archive) throws IOException {
+		Map<String, Integer> fileTypeCounts = new HashMap<>();
+		try (ZipFile zipFile = new ZipFile(archive)) {
+			Enumeration<? extends ZipEntry> entries = zipFile.entries();
+			while (entries.hasMoreElements()) {
+				ZipEntry entry = entries.nextElement();
+				String fileType = ImportCheckpoint.getFileType(entry.getName());
+				if (!entry.isDirectory() && fileType != null) {
+					fileTypeCounts.merge(fileType, 1, Integer::sum);
+				}
+			}
+		}
+		return fileTypeCounts.entrySet().stream().filter(entry -> entry.getValue() > 1).map(Map.Entry::getKey).collect(Collectors.toCollection(TreeSet::new));
+	}
+
+	private static String getArchiveFingerprint(File archive) throws IOException {
+		try (InputStream inputStream = new FileInputStream(archive)) {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			byte[] buffer = new byte[64 * 1024];
+			int read;
+			while ((read = inputStream.read(buffer)) != -1) {
+				digest.update(buffer, 0, read);
+			}
+			StringBuilder fingerprint = new StringBuilder();
+			for (byte b : digest.digest()) {
+				fingerprint.append(String.format("%02x", b));
+			}
+			return fingerprint.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 not available.", e);
+		}
+	}
+
+	private Integer fullImport(final InputStream releaseFileStream, final ImportJob job, final String branchPath, final ReleaseImporter releaseImporter,
 			final LoadingProfile loadingProfile) throws ReleaseImportException {
 
-		final FullImportComponentFactoryImpl importComponentFactory = getFullImportComponentFactory(branchPath);
+		final FullImportComponentFactoryImpl importComponentFactory = getFullImportComponentFactory(job, branchPath);
 		try {
 			releaseImporter.loadFullReleaseFiles(releaseFileStream, loadingProfile, importComponentFactory);
 			return null;
@@ -208,7 +304,7 @@ public class ImportService {
 
 		// If we are not creating a new version copy the release fields from the existing components
 		final ImportComponentFactoryImpl importComponentFactory =
-				getImportComponentFactory(branchPath, patchReleaseVersion, !job.isCreateCodeSystemVersion(), job.isClearEffectiveTimes());
+				getImportComponentFactory(job, branchPath, patchReleaseVersion, !job.isCreateCodeSystemVersion(), job.isClearEffectiveTimes());
 		try {
 			releaseImporter.loadSnapshotReleaseFiles(releaseFileStream, loadingProfile, importComponentFactory);
 			return importComponentFactory.getMaxEffectiveTime();
@@ -223,7 +319,7 @@ public class ImportService {
 
 		// If we are not creating a new version copy the release fields from the existing components
 		final ImportComponentFactoryImpl importComponentFactory =
-				getImportComponentFactory(branchPath, patchReleaseVersion, !job.isCreateCodeSystemVersion(), job.isClearEffectiveTimes());
+				getImportComponentFactory(job, branchPath, patchReleaseVersion, !job.isCreateCodeSystemVersion(), job.isClearEffectiveTimes());
 		try {
 			releaseImporter.loadDeltaReleaseFiles(releaseFileStream, loadingProfile, importComponentFactory);
 			return importComponentFactory.getMaxEffectiveTime();
@@ -234,6 +330,8 @@ public class ImportService {
 	}
 
 	private void rollbackIncompleteCommit(ImportComponentFactoryImpl importComponentFactory) {
+		// Batches still in the import pipeline must not be written after the rollback
+		importComponentFactory.awaitPersistence();
 		final Commit commit = importComponentFactory.getCommit();
 		if (commit != null) {
 			logger.info("Triggering rollback of failed import commit on {} at {}", commit.getBranch().getPath(), commit.getTimepoint().getTime());
@@ -242,14 +340,17 @@ public class ImportService {
 		}
 	}
 
-	private ImportComponentFactoryImpl getImportComponentFactory(String branchPath, Integer patchReleaseVersion, boolean copyReleaseFields, boolean clearEffectiveTimes) {
-		return new ImportComponentFactoryImpl(conceptUpdateHelper, memberService, branchService, branchMetadataHelper,
-				branchPath, patchReleaseVersion, copyReleaseFields, clearEffectiveTimes);
+	private ImportComponentFactoryImpl getImportComponentFactory(ImportJob job, String branchPath, Integer patchReleaseVersion, boolean copyReleaseFields,
+			boolean clearEffectiveTimes) {
+		ImportComponentFactoryImpl importComponentFactory = new ImportComponentFactoryImpl(conceptUpdateHelper, memberService, branchService, branchMetadataHelper,
+				importPipeline, job, branchPath, patchReleaseVersion, copyReleaseFields, clearEffectiveTimes);
+		importComponentFactory.setCheckpoint(getImportCheckpoint(job, branchPath));
+		return importComponentFactory;
 	}
 
-	private FullImportComponentFactoryImpl getFullImportComponentFactory(String branchPath) {
-		return new FullImportComponentFactoryImpl(conceptUpdateHelper, memberService, branchService, branchMetadataHelper, codeSystemService,
-				branchPath, null);
+	private FullImportComponentFactoryImpl getFullImportComponentFactory(ImportJob job, String branchPath) {
+		return new FullImportComponentFactoryImpl(conceptUpdateHelper, memberService, branchService, branchMetadataHelper, importPipeline, job,
+				codeSystemService, branchPath, null);
 	}
 
 	@PreAuthorize("hasPermission('AUTHOR', #branchPath)")
@@ -257,6 +358,21 @@ public class ImportService {
 		final SecurityContext securityContext = SecurityContextHolder.getContext();
 		executorService.submit(() -> {
 			SecurityContextHolder.setContext(securityContext);
+			ImportJob job = getJob(importId);
+			try {
+				if (job.isCheckpoints()) {
+					Set<String> fileTypesWithMultipleFiles = getFileTypesWithMultipleFiles(tempFile);
+					if (fileTypesWithMultipleFiles.isEmpty()) {
+						// Checkpoints are only resumed when the same archive is imported again
+						job.setArchiveFingerprint(getArchiveFingerprint(tempFile));
+					} else {
+						logger.warn("Import file {} has more than one file of type {}, the import will be committed in chunks but can not be resumed.",
+								tempFile.getAbsolutePath(), fileTypesWithMultipleFiles);
+					}
+				}
+			} catch (IOException e) {
+				logger.warn("Failed to calculate fingerprint of import file {}, the import can not be resumed.", tempFile.getAbsolutePath(), e);
+			}
 			try (FileInputStream releaseFileStream = new FileInputStream(tempFile)) {
 				importArchive(importId, releaseFileStream);
 			} catch (ReleaseImportException e) {
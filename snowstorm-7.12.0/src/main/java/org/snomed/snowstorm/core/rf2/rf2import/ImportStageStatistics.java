@@ -0,0 +1,37 @@
+package org.snomed.snowstorm.core.rf2.rf2import;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput of one stage of an RF2 import. Time is the sum of time spent in the stage by all threads.
+ */
+public class ImportStageStatistics {
+
+	private final AtomicLong components = new AtomicLong();
+	private final AtomicLong batches = new AtomicLong();
+	private final AtomicLong nanos = new AtomicLong();
+
+	void record(long componentCount, long durationNanos) {
+		components.addAndGet(componentCount);
+		batches.incrementAndGet();
+		nanos.addAndGet(durationNanos);
+	}
+
+	public long getComponents() {
+		return components.get();
+	}
+
+	public long getBatches() {
+		return batches.get();
+	}
+
+	public float getSeconds() {
+		return nanos.get() / (float) TimeUnit.SECONDS.toNanos(1);
+	}
+
+	public long getComponentsPerSecond() {
+		long duration = nanos.get();
+		return duration > 0 ? components.get() * TimeUnit.SECONDS.toNanos(1) / duration : 0;
+	}
+}
@@ -15,6 +15,9 @@ public final class RF2ImportConfiguration {
 	private Set<String> moduleIds;
 	private Integer patchReleaseVersion;
 
+	// Commit the import in chunks so that an interrupted import of the same archive can be resumed.
+	private boolean checkpoints;
+
 	// Used to remove the effectiveTime from imported RF2 rows - for daily build.
 	private Boolean clearEffectiveTimes;
 
@@ -85,4 +88,13 @@ public final class RF2ImportConfiguration {
 		this.patchReleaseVersion = patchReleaseVersion;
 		return this;
 	}
+
+	public boolean isCheckpoints() {
+		return checkpoints;
+	}
+
+	public RF2ImportConfiguration setCheckpoints(boolean checkpoints) {
+		this.checkpoints = checkpoints;
+		return this;
+	}
 }
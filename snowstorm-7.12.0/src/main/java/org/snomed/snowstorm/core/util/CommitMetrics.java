@@ -0,0 +1,91 @@
+package org.snomed.snowstorm.core.util;
+
+import io.kaicode.elasticvc.api.CommitListener;
+import io.kaicode.elasticvc.domain.Commit;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes the duration of commits and of each commit listener as Micrometer timers.
+ * Timers are tagged with the commit type and the depth of the branch, MAIN has depth 1. Listener timers are also tagged with the listener name and outcome.
+ * {@link TimerUtil} timers can be given the same tags using {@link #getTimerTags(Commit, String)}.
+ */
+public class CommitMetrics {
+
+	public static final String COMMIT_METRIC_NAME = "snowstorm.commit";
+	public static final String LISTENER_METRIC_NAME = "snowstorm.commit.listener";
+
+	// Commit tags of timers not running for a commit
+	public static final Tags NO_COMMIT_TAGS = Tags.of("commit.type", "none", "branch.depth", "none", "listener", "none");
+
+	private final MeterRegistry meterRegistry;
+
+	public CommitMetrics(MeterRegistry meterRegistry) {
+		this.meterRegistry = meterRegistry;
+	}
+
+	public TimedCommitListener timed(String listenerName, CommitListener listener) {
+		return new TimedCommitListener(listenerName, listener);
+	}
+
+	/**
+	 * Records the time since the commit was opened.
+	 */
+	public void recordCommit(Commit commit) {
+		meterRegistry.timer(COMMIT_METRIC_NAME, getCommitTags(commit)).record(new Date().getTime() - commit.getTimepoint().getTime(), TimeUnit.MILLISECONDS);
+	}
+
+	static Tags getCommitTags(Commit commit) {
+		return Tags.of("commit.type", commit.getCommitType().name(), "branch.depth", String.valueOf(getBranchDepth(commit.getBranch().getPath())));
+	}
+
+	/**
+	 * @param listenerName name of the commit listener the timer runs in, or null if it runs outside of a listener.
+	 * @return tags for a {@link TimerUtil} timer running for this commit, with the same keys as {@link #NO_COMMIT_TAGS}.
+	 */
+	public static Tags getTimerTags(Commit commit, String listenerName) {
+		return getCommitTags(commit).and("listener", listenerName != null ? listenerName : "none");
+	}
+
+	public class TimedCommitListener implements CommitListener {
+
+		private final String listenerName;
+		private final CommitListener listener;
+
+		private TimedCommitListener(String listenerName, CommitListener listener) {
+			this.listenerName = listenerName;
+			this.listener = listener;
+		}
+
+		@Override
+		public void preCommitCompletion(Commit commit) throws IllegalStateException {
+			Tags tags = getTimerTags(commit, listenerName);
+			String outcome = "failure";
+			long start = System.nanoTime();
+			try {
+				listener.preCommitCompletion(commit);
+				outcome = "success";
+			} finally {
+				meterRegistry.timer(LISTENER_METRIC_NAME, tags.and("outcome", outcome)).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+			}
+		}
+
+		public CommitListener getListener() {
+			return listener;
+		}
+	}
+
+	static int getBranchDepth(String path) {
+		int depth = 1;
+		for (int i = 0; i < path.length(); i++) {
+			if (path.charAt(i) == '/') {
+				depth++;
+			}
+		}
+		return depth;
+	}
+
+}
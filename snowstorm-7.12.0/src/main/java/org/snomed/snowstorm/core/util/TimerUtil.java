@@ -1,15 +1,22 @@
 package org.snomed.snowstorm.core.util;
 
 import ch.qos.logback.classic.Level;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Date;
 import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
 public class TimerUtil {
 
+	public static final String METRIC_NAME = "snowstorm.timer";
+
+	private static MeterRegistry meterRegistry;
+
 	private final String timerName;
 	private final long start;
 	private long lastCheck;
@@ -17,6 +24,8 @@ public class TimerUtil {
 	private final Level loggingLevel;
 	private final float durationLoggingThreshold;
 	private final TimerUtil childTimer;
+	private String metricTimerName;
+	private Tags metricTags;
 
 	public TimerUtil(String timerName) {
 		this(timerName, Level.INFO);
@@ -49,6 +58,31 @@ public class TimerUtil {
 		this.childTimer = childTimer;
 	}
 
+	/**
+	 * Publish the duration of each checkpoint, and the total, as a Micrometer timer tagged with this name and the checkpoint name.
+	 * The timer name is used rather than the logged name so that it can be kept free of ids and branch paths.
+	 * Numbers and anything after a colon are removed from checkpoint names for the same reason.
+	 * The commit tags are all "none", see {@link #publishMetrics(String, Tags)}.
+	 */
+	public TimerUtil publishMetrics(String metricTimerName) {
+		return publishMetrics(metricTimerName, CommitMetrics.NO_COMMIT_TAGS);
+	}
+
+	/**
+	 * Publish metrics as above, tagged with the commit this timer runs for.
+	 * Every timer of the same name must have the same tag keys so the commit tags must come from
+	 * {@link CommitMetrics#getTimerTags(io.kaicode.elasticvc.domain.Commit, String)} or be {@link CommitMetrics#NO_COMMIT_TAGS}.
+	 */
+	public TimerUtil publishMetrics(String metricTimerName, Tags commitTags) {
+		this.metricTimerName = metricTimerName;
+		metricTags = Tags.of("timer", metricTimerName).and(commitTags);
+		return this;
+	}
+
+	public static void setMeterRegistry(MeterRegistry meterRegistry) {
+		TimerUtil.meterRegistry = meterRegistry;
+	}
+
 	public static String secondsSince(Date startTime) {
 		return String.format("%,d", (new Date().getTime() - startTime.getTime()) / 1_000);
 	}
@@ -60,9 +94,14 @@ public class TimerUtil {
 	public void checkpoint(Supplier nameSupplier) {
 		final long now = new Date().getTime();
 		float secondsTaken = getDuration(lastCheck, now);
+		String name = null;
+		if (metricTimerName != null) {
+			name = String.valueOf(nameSupplier.get());
+			recordMetric(getMetricCheckpointName(name), now - lastCheck);
+		}
 		lastCheck = now;
 		if (secondsTaken >= durationLoggingThreshold) {
-			log("Timer {}: {} took {} seconds", timerName, nameSupplier.get(), secondsTaken);
+			log("Timer {}: {} took {} seconds", timerName, name != null ? name : nameSupplier.get(), secondsTaken);
 		}
 		if (childTimer != null) {
 			childTimer.checkpoint(nameSupplier);
@@ -72,6 +111,9 @@ public class TimerUtil {
 	public void finish() {
 		final long now = new Date().getTime();
 		float secondsTaken = getDuration(start, now);
+		if (metricTimerName != null) {
+			recordMetric("total", now - start);
+		}
 		if (secondsTaken >= durationLoggingThreshold) {
 			log("Timer {}: total took {} seconds", timerName, secondsTaken);
 		}
@@ -85,6 +127,21 @@ public class TimerUtil {
 		return millisTaken / 1000f;
 	}
 
+	private void recordMetric(String checkpointName, long millis) {
+		if (meterRegistry != null) {
+			meterRegistry.timer(METRIC_NAME, metricTags.and("checkpoint", checkpointName)).record(millis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	static String getMetricCheckpointName(String name) {
+		int colon = name.indexOf(':');
+		if (colon != -1) {
+			name = name.substring(0, colon);
+		}
+		String metricName = name.replaceAll("[0-9][0-9,]*", "").replaceAll("\\s+", " ").trim();
+		return metricName.isEmpty() ? "unnamed" : metricName;
+	}
+
 	private void log(String s, Object... o) {
 		switch (loggingLevel.toString()) {
 			case "TRACE":
@@ -1,24 +1,31 @@
 package org.snomed.snowstorm.ecl;
 
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.elasticsearch.core.SearchAfterPageRequest;
 
-import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Objects;
+import java.util.Set;
 
+/**
+ * View of the shared {@link ECLResultsCache} for a single branch version.
+ */
 public class BranchVersionECLCache {
 
-	private final Date head;
+	private final String path;
 
-	private final Map<ECLCacheEntry, Page<Long>> eclToConceptsCache;
+	private final Date head;
 
-	private final Map<Calendar, AtomicLong> dayHits = new ConcurrentHashMap<>();
+	private final ECLResultsCache resultsCache;
 
-	protected BranchVersionECLCache(Date branchHeadTimestamp) {
+	protected BranchVersionECLCache(String path, Date branchHeadTimestamp, ECLResultsCache resultsCache) {
+		this.path = path;
 		head = branchHeadTimestamp;
-		eclToConceptsCache = new ConcurrentHashMap<>();
+		this.resultsCache = resultsCache;
 	}
 
 	public Date getHead() {
@@ -30,74 +37,85 @@ public class BranchVersionECLCache {
 		return !head.equals(timepoint);
 	}
 
-	public Page<Long> get(String ecl, boolean stated, PageRequest pageRequest) {
-		ECLCacheEntry key = new ECLCacheEntry(ecl, stated, pageRequest);
-		Page<Long> longs = eclToConceptsCache.get(key);
-		return longs;
+	public CachedPage get(String ecl, boolean stated, PageRequest pageRequest) {
+		return resultsCache.get(new ECLCacheEntry(path, head, ecl, stated, pageRequest));
 	}
 
-	public void put(String ecl, boolean stated, PageRequest pageRequest, Page<Long> page) {
-		eclToConceptsCache.put(new ECLCacheEntry(ecl, stated, pageRequest), page);
+	/**
+	 * @param semanticIndexDependencies concept ids referenced by the expression if the results depend only on the semantic index, otherwise null.
+	 * See {@link ECLResultsCache#getSemanticIndexDependencies(String, Set)}.
+	 */
+	public CachedPage put(String ecl, boolean stated, PageRequest pageRequest, Page<Long> page, Set<Long> semanticIndexDependencies) {
+		CachedPage cachedPage = new CachedPage(CompactConceptIdList.of(page.getContent()), page.getPageable(), page.getTotalElements(), semanticIndexDependencies);
+		resultsCache.put(new ECLCacheEntry(path, head, ecl, stated, pageRequest), cachedPage);
+		return cachedPage;
 	}
 
-	static String normaliseEclString(String ecl) {
+	public static String normaliseEclString(String ecl) {
 		return ecl.toLowerCase().replaceAll("\\|[^|]*\\|", "").replace("  ", " ").replace(" and ", ", ").trim();
 	}
 
-	public void recordHit() {
-		final Calendar today = getToday();
-		AtomicLong hitCount = dayHits.get(today);
-		if (hitCount == null) {
-			synchronized (dayHits) {
-				hitCount = new AtomicLong();
-				dayHits.put(today, hitCount);
-				if (dayHits.size() > 30) {
-					final Calendar daysAgo30 = getPastDate(30);
-					dayHits.keySet().stream().filter(calendar -> calendar.before(daysAgo30)).forEach(dayHits::remove);
-				}
-			}
+	/**
+	 * Page of ECL results with the concept ids held in compact form.
+	 */
+	public static final class CachedPage {
+
+		private final CompactConceptIdList ids;
+		private final Pageable pageable;
+		private final long totalElements;
+		private final Set<Long> semanticIndexDependencies;
+
+		CachedPage(CompactConceptIdList ids, Pageable pageable, long totalElements, Set<Long> semanticIndexDependencies) {
+			this.ids = ids;
+			this.pageable = pageable;
+			this.totalElements = totalElements;
+			this.semanticIndexDependencies = semanticIndexDependencies;
 		}
-		hitCount.incrementAndGet();
-	}
 
-	public Map<String, Long> getStats() {
-		Map<String, Long> stats = new HashMap<>();
-		stats.put("size", (long) eclToConceptsCache.size());
-		stats.put("hits-today", dayHits.getOrDefault(getToday(), new AtomicLong()).longValue());
-		addStat(stats, 7);
-		addStat(stats, 30);
-		return stats;
-	}
+		public Page<Long> toPage() {
+			return new PageImpl<>(ids.toList(), pageable, totalElements);
+		}
 
-	private void addStat(Map<String, Long> stats, int daysInPast) {
-		final Calendar daysAgo = getPastDate(daysInPast);
-		stats.put(String.format("hits-last%sdays", daysInPast),
-				dayHits.entrySet().stream().filter(entry -> !entry.getKey().before(daysAgo)).mapToLong(entry -> entry.getValue().get()).sum());
-	}
+		public CompactConceptIdList getIds() {
+			return ids;
+		}
 
-	private Calendar getPastDate(int daysInPast) {
-		final Calendar oneMonthAgo = getToday();
-		oneMonthAgo.add(Calendar.DATE, -daysInPast);
-		return oneMonthAgo;
-	}
+		public long getTotalElements() {
+			return totalElements;
+		}
 
-	private Calendar getToday() {
-		final Calendar today = Calendar.getInstance();
-		today.clear(Calendar.MILLISECOND);
-		today.clear(Calendar.SECOND);
-		today.clear(Calendar.MINUTE);
-		today.clear(Calendar.HOUR_OF_DAY);
-		return today;
+		Set<Long> getSemanticIndexDependencies() {
+			return semanticIndexDependencies;
+		}
+
+		/**
+		 * @return true if the results depend only on the semantic index and none of the concepts in the expression are affected.
+		 */
+		boolean isUnaffectedBy(Set<Long> affectedConceptIds) {
+			if (semanticIndexDependencies == null) {
+				return false;
+			}
+			for (Long conceptId : semanticIndexDependencies) {
+				if (affectedConceptIds.contains(conceptId)) {
+					return false;
+				}
+			}
+			return true;
+		}
 	}
 
-	private static final class ECLCacheEntry {
+	static final class ECLCacheEntry {
 
+		private final String path;
+		private final Date head;
 		private final String ecl;
 		private final boolean stated;
 		private final PageRequest pageRequest;
 		private final Object[] searchAfter;
 
-		public ECLCacheEntry(String ecl, boolean stated, PageRequest pageRequest) {
+		public ECLCacheEntry(String path, Date head, String ecl, boolean stated, PageRequest pageRequest) {
+			this.path = path;
+			this.head = head;
 			this.ecl = ecl != null ? normaliseEclString(ecl) : "";
 			this.stated = stated;
 			this.pageRequest = pageRequest;
@@ -109,17 +127,37 @@ public class BranchVersionECLCache {
 			}
 		}
 
+		String getPath() {
+			return path;
+		}
+
+		Date getHead() {
+			return head;
+		}
+
+		boolean isStated() {
+			return stated;
+		}
+
+		ECLCacheEntry withHead(Date newHead) {
+			return new ECLCacheEntry(path, newHead, ecl, stated, pageRequest);
+		}
+
+		String getEcl() {
+			return ecl;
+		}
+
 		@Override
 		public boolean equals(Object o) {
 			if (this == o) return true;
 			if (o == null || getClass() != o.getClass()) return false;
 			ECLCacheEntry that = (ECLCacheEntry) o;
-			return stated == that.stated && ecl.equals(that.ecl) && Objects.equals(pageRequest, that.pageRequest) && Arrays.equals(searchAfter, that.searchAfter);
+			return stated == that.stated && path.equals(that.path) && head.equals(that.head) && ecl.equals(that.ecl) && Objects.equals(pageRequest, that.pageRequest) && Arrays.equals(searchAfter, that.searchAfter);
 		}
 
 		@Override
 		public int hashCode() {
-			int result = Objects.hash(ecl, stated, pageRequest);
+			int result = Objects.hash(path, head, ecl, stated, pageRequest);
 			result = 31 * result + Arrays.hashCode(searchAfter);
 			return result;
 		}
@@ -0,0 +1,244 @@
+package org.snomed.snowstorm.ecl;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongCollection;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.function.LongConsumer;
+import java.util.function.LongPredicate;
+
+/**
+ * Immutable, ordered list of concept ids held in a compact primitive form for caching ECL results.
+ * Ids are stored as zig-zag variable length deltas from the previous id. ECL results are usually sorted so the deltas are small,
+ * typically three to five bytes per id rather than the ~30 bytes taken by a boxed Long in a list.
+ * A block index allows random access without decoding the whole list.
+ */
+public final class CompactConceptIdList {
+
+	private static final int BLOCK_SIZE = 128;
+
+	public static final CompactConceptIdList EMPTY = new CompactConceptIdList(new byte[0], 0, new int[0], new long[0], true, true);
+
+	private final byte[] data;
+	private final int size;
+
+	// Byte offset and the value preceding the first item of each block
+	private final int[] blockOffsets;
+	private final long[] blockPreviousValues;
+
+	private final boolean ascending;
+	private final boolean descending;
+
+	private CompactConceptIdList(byte[] data, int size, int[] blockOffsets, long[] blockPreviousValues, boolean ascending, boolean descending) {
+		this.data = data;
+		this.size = size;
+		this.blockOffsets = blockOffsets;
+		this.blockPreviousValues = blockPreviousValues;
+		this.ascending = ascending;
+		this.descending = descending;
+	}
+
+	public static CompactConceptIdList of(Collection<Long> ids) {
+		if (ids.isEmpty()) {
+			return EMPTY;
+		}
+		Encoder encoder = new Encoder(ids.size());
+		if (ids instanceof LongCollection) {
+			LongIterator iterator = ((LongCollection) ids).iterator();
+			while (iterator.hasNext()) {
+				encoder.add(iterator.nextLong());
+			}
+		} else {
+			for (Long id : ids) {
+				encoder.add(id);
+			}
+		}
+		return encoder.build();
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public long get(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+		}
+		Decoder decoder = new Decoder(index / BLOCK_SIZE);
+		long value = 0;
+		for (int i = (index / BLOCK_SIZE) * BLOCK_SIZE; i <= index; i++) {
+			value = decoder.next();
+		}
+		return value;
+	}
+
+	/**
+	 * @return index of the first occurrence of the id or -1 if not present.
+	 */
+	public int indexOf(long id) {
+		int block = 0;
+		if (ascending || descending) {
+			// Binary search on the first value of each block
+			int low = 0;
+			int high = blockOffsets.length - 1;
+			while (low < high) {
+				int mid = (low + high + 1) >>> 1;
+				long firstValue = new Decoder(mid).next();
+				if (firstValue == id || (ascending ? firstValue < id : firstValue > id)) {
+					low = mid;
+				} else {
+					high = mid - 1;
+				}
+			}
+			// Equal values may span the block boundary
+			block = Math.max(0, low - 1);
+		}
+		Decoder decoder = new Decoder(block);
+		for (int i = block * BLOCK_SIZE; i < size; i++) {
+			long value = decoder.next();
+			if (value == id) {
+				return i;
+			}
+			if ((ascending && value > id) || (descending && !ascending && value < id)) {
+				return -1;
+			}
+		}
+		return -1;
+	}
+
+	public boolean contains(long id) {
+		return indexOf(id) != -1;
+	}
+
+	public void forEach(LongConsumer consumer) {
+		Decoder decoder = new Decoder(0);
+		for (int i = 0; i < size; i++) {
+			consumer.accept(decoder.next());
+		}
+	}
+
+	public LongArrayList toList() {
+		return subList(0, size);
+	}
+
+	/**
+	 * @return a new list of the ids from fromIndex, inclusive, to toIndex, exclusive.
+	 */
+	public LongArrayList subList(int fromIndex, int toIndex) {
+		toIndex = Math.min(toIndex, size);
+		if (fromIndex >= toIndex) {
+			return new LongArrayList();
+		}
+		LongArrayList list = new LongArrayList(toIndex - fromIndex);
+		int block = fromIndex / BLOCK_SIZE;
+		Decoder decoder = new Decoder(block);
+		for (int i = block * BLOCK_SIZE; i < toIndex; i++) {
+			long value = decoder.next();
+			if (i >= fromIndex) {
+				list.add(value);
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * @return a new list of the ids that match the filter, in the original order.
+	 */
+	public LongArrayList filter(LongPredicate filter) {
+		LongArrayList list = new LongArrayList();
+		forEach(id -> {
+			if (filter.test(id)) {
+				list.add(id);
+			}
+		});
+		return list;
+	}
+
+	public long getEstimatedBytes() {
+		return 64L + data.length + (blockOffsets.length * 12L);
+	}
+
+	private final class Decoder {
+
+		private int position;
+		private long previous;
+
+		private Decoder(int block) {
+			if (block < blockOffsets.length) {
+				position = blockOffsets[block];
+				previous = blockPreviousValues[block];
+			}
+		}
+
+		private long next() {
+			long zigZag = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = data[position++];
+				zigZag |= (long) (b & 0x7F) << shift;
+				shift += 7;
+			} while ((b & 0x80) != 0);
+			long delta = (zigZag >>> 1) ^ -(zigZag & 1);
+			previous += delta;
+			return previous;
+		}
+	}
+
+	private static final class Encoder {
+
+		private byte[] data;
+		private int position;
+		private int size;
+		private final int[] blockOffsets;
+		private final long[] blockPreviousValues;
+		private long previous;
+		private boolean ascending = true;
+		private boolean descending = true;
+
+		private Encoder(int expectedSize) {
+			data = new byte[Math.max(16, expectedSize * 4)];
+			int blocks = (expectedSize + BLOCK_SIZE - 1) / BLOCK_SIZE;
+			blockOffsets = new int[blocks];
+			blockPreviousValues = new long[blocks];
+		}
+
+		private void add(long value) {
+			if (size % BLOCK_SIZE == 0) {
+				int block = size / BLOCK_SIZE;
+				blockOffsets[block] = position;
+				blockPreviousValues[block] = previous;
+			}
+			if (size > 0) {
+				ascending &= value >= previous;
+				descending &= value <= previous;
+			}
+			long delta = value - previous;
+			long zigZag = (delta << 1) ^ (delta >> 63);
+			ensureCapacity(position + 10);
+			while ((zigZag & ~0x7FL) != 0) {
+				data[position++] = (byte) ((zigZag & 0x7F) | 0x80);
+				zigZag >>>= 7;
+			}
+			data[position++] = (byte) zigZag;
+			previous = value;
+			size++;
+		}
+
+		private void ensureCapacity(int capacity) {
+			if (capacity > data.length) {
+				data = Arrays.copyOf(data, Math.max(capacity, data.length * 2));
+			}
+		}
+
+		private CompactConceptIdList build() {
+			return new CompactConceptIdList(Arrays.copyOf(data, position), size, blockOffsets, blockPreviousValues, ascending, descending);
+		}
+	}
+}
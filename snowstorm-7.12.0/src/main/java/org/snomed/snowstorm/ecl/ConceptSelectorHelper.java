@@ -4,6 +4,7 @@ import com.google.common.collect.Sets;
 import io.kaicode.elasticvc.api.BranchCriteria;
 import it.unimi.dsi.fastutil.longs.LongArrayList;
 import it.unimi.dsi.fastutil.longs.LongComparators;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import org.apache.commons.lang3.NotImplementedException;
 import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.index.query.QueryBuilder;
@@ -13,6 +14,7 @@ import org.elasticsearch.search.sort.SortOrder;
 import org.snomed.snowstorm.core.data.domain.Concept;
 import org.snomed.snowstorm.core.data.domain.QueryConcept;
 import org.snomed.snowstorm.core.util.PageHelper;
+import org.snomed.snowstorm.core.util.SearchAfterPageImpl;
 import org.snomed.snowstorm.ecl.domain.RefinementBuilder;
 import org.snomed.snowstorm.ecl.domain.RefinementBuilderImpl;
 import org.snomed.snowstorm.ecl.domain.expressionconstraint.SExpressionConstraint;
@@ -24,6 +26,7 @@ import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilde
 
 import java.util.*;
 import java.util.function.Function;
+import java.util.function.LongPredicate;
 
 import static io.kaicode.elasticvc.api.ComponentService.LARGE_PAGE;
 import static java.util.stream.Collectors.toList;
@@ -42,8 +45,8 @@ public class ConceptSelectorHelper {
 	}
 
 	public static Page<Long> select(SExpressionConstraint sExpressionConstraint, RefinementBuilder refinementBuilder) {
-		return select(sExpressionConstraint, refinementBuilder.getBranchCriteria(), refinementBuilder.isStated(),
-				null, null, refinementBuilder.getEclContentService(), false);
+		// Selecting all ids of a nested expression, operand or attribute value, the results are cached in case the same sub-expression is used again
+		return refinementBuilder.getEclContentService().selectAllWithCaching(sExpressionConstraint, refinementBuilder.getBranchCriteria(), refinementBuilder.isStated());
 	}
 
 	public static Page<Long> select(SExpressionConstraint sExpressionConstraint, BranchCriteria branchCriteria, boolean stated,
@@ -58,9 +61,17 @@ public class ConceptSelectorHelper {
 		sExpressionConstraint.addCriteria(refinementBuilder, prefetchResult::set, triedCache);
 
 		if (prefetchResult.isSet()) {
-			return getPage(pageRequest, prefetchResult.getIds());
+			List<Long> ids = prefetchResult.getIds();
+			if (conceptIdFilter != null) {
+				Set<Long> filter = new LongOpenHashSet(conceptIdFilter);
+				ids = ids.stream().filter(filter::contains).collect(toList());
+			}
+			return getPage(pageRequest, ids);
 		} else {
-			return fetchIds(query, conceptIdFilter, refinementBuilder, pageRequest);
+			// Only needed when fetching all ids, to decide whether to fetch in slices
+			Long estimatedSize = pageRequest == null || refinementBuilder.getInclusionFilter() != null ?
+					eclContentService.estimateSize(sExpressionConstraint, branchCriteria, stated) : null;
+			return fetchIds(query, conceptIdFilter, refinementBuilder, pageRequest, estimatedSize);
 		}
 	}
 
@@ -71,7 +82,7 @@ public class ConceptSelectorHelper {
 	}
 
 	public static Page<Long> fetchWildcardIds(BoolQueryBuilder query, Collection<Long> filterByConceptIds,
-			PageRequest pageRequest, ECLContentService conceptSelector) {
+			PageRequest pageRequest, ECLContentService conceptSelector, Long estimatedSize) {
 
 		NativeSearchQueryBuilder searchQueryBuilder = new NativeSearchQueryBuilder()
 				.withQuery(query)
@@ -100,6 +111,10 @@ public class ConceptSelectorHelper {
 			return new PageImpl<>(ids, pageRequest, queryConcepts.getTotalElements());
 		} else {
 			// Fetch all IDs
+			List<Long> slicedIds = conceptSelector.fetchAllIdsInSlices(query, filterByConceptIds, null, new String[]{QueryConcept.Fields.CONCEPT_ID}, estimatedSize);
+			if (slicedIds != null) {
+				return getPage(pageRequest, slicedIds);
+			}
 			searchQueryBuilder.withPageable(LARGE_PAGE);
 			List<Long> addIds = new LongArrayList();
 			try (SearchHitsIterator<QueryConcept> stream = conceptSelector.streamQueryResults(searchQueryBuilder.build())) {
@@ -115,7 +130,8 @@ public class ConceptSelectorHelper {
 		}
 	}
 
-	public static Page<Long> fetchIds(BoolQueryBuilder query, Collection<Long> filterByConceptIds, RefinementBuilder refinementBuilder, PageRequest pageRequest) {
+	public static Page<Long> fetchIds(BoolQueryBuilder query, Collection<Long> filterByConceptIds, RefinementBuilder refinementBuilder, PageRequest pageRequest,
+			Long estimatedSize) {
 
 		Function<QueryConcept, Boolean> inclusionFilter = refinementBuilder.getInclusionFilter();
 		ECLContentService eclContentService = refinementBuilder.getEclContentService();
@@ -147,6 +163,10 @@ public class ConceptSelectorHelper {
 			return new PageImpl<>(ids, pageRequest, queryConcepts.getTotalElements());
 		} else {
 			// Fetch all IDs
+			List<Long> slicedIds = eclContentService.fetchAllIdsInSlices(query, filterByConceptIds, inclusionFilter, getRequiredFields(inclusionFilter), estimatedSize);
+			if (slicedIds != null) {
+				return getPage(pageRequest, slicedIds);
+			}
 			searchQueryBuilder.withPageable(LARGE_PAGE);
 			List<Long> addIds = new LongArrayList();
 			try (SearchHitsIterator<QueryConcept> stream = eclContentService.streamQueryResults(searchQueryBuilder.build())) {
@@ -173,6 +193,39 @@ public class ConceptSelectorHelper {
 		}
 	}
 
+	/**
+	 * Page through compact ids, optionally filtered, without boxing the whole list.
+	 */
+	public static Page<Long> getPage(PageRequest pageRequest, CompactConceptIdList ids, LongPredicate filter) {
+		if (filter != null) {
+			ids = CompactConceptIdList.of(ids.filter(filter));
+		}
+		if (pageRequest == null) {
+			return getPage(null, ids.toList());
+		}
+		int total = ids.size();
+		int offset;
+		if (pageRequest instanceof SearchAfterPageRequest) {
+			offset = getSearchAfterOffset(ids, ((SearchAfterPageRequest) pageRequest).getSearchAfter());
+		} else {
+			offset = (int) Math.min(pageRequest.getOffset(), total);
+		}
+		List<Long> content = ids.subList(offset, (int) Math.min((long) offset + pageRequest.getPageSize(), total));
+		Long lastItem = content.isEmpty() ? null : content.get(content.size() - 1);
+		return new SearchAfterPageImpl<>(content, pageRequest, total, CONCEPT_ID_SEARCH_AFTER_EXTRACTOR.apply(lastItem));
+	}
+
+	private static int getSearchAfterOffset(CompactConceptIdList ids, Object[] searchAfter) {
+		// Same behaviour as PageHelper, page starts after the matching id or is empty if there is no match
+		if (searchAfter != null && searchAfter.length == 1 && searchAfter[0] instanceof Number) {
+			int index = ids.indexOf(((Number) searchAfter[0]).longValue());
+			if (index != -1) {
+				return index + 1;
+			}
+		}
+		return ids.size();
+	}
+
 	public static FieldSortBuilder getDefaultSortForQueryConcept() {
 		return SortBuilders.fieldSort(QueryConcept.Fields.CONCEPT_ID).order(SortOrder.DESC);
 	}
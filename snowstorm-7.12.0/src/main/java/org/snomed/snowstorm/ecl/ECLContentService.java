@@ -3,10 +3,21 @@ package org.snomed.snowstorm.ecl;
 import io.kaicode.elasticvc.api.BranchCriteria;
 import it.unimi.dsi.fastutil.longs.LongArrayList;
 import it.unimi.dsi.fastutil.longs.LongArraySet;
+import it.unimi.dsi.fastutil.longs.LongArrays;
 import it.unimi.dsi.fastutil.longs.LongComparators;
 import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import org.elasticsearch.action.search.ClearScrollRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchScrollRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.index.query.TermsQueryBuilder;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.slice.SliceBuilder;
+import org.elasticsearch.search.sort.FieldSortBuilder;
 import org.snomed.langauges.ecl.domain.ConceptReference;
 import org.snomed.langauges.ecl.domain.expressionconstraint.SubExpressionConstraint;
 import org.snomed.langauges.ecl.domain.filter.*;
@@ -15,13 +26,18 @@ import org.snomed.snowstorm.core.data.services.DescriptionService;
 import org.snomed.snowstorm.core.data.services.QueryService;
 import org.snomed.snowstorm.core.data.services.ReferenceSetMemberService;
 import org.snomed.snowstorm.core.data.services.RelationshipService;
+import org.snomed.snowstorm.core.data.services.RuntimeServiceException;
 import org.snomed.snowstorm.core.util.PageHelper;
 import org.snomed.snowstorm.core.util.SearchAfterPage;
 import org.snomed.snowstorm.core.util.SearchAfterPageImpl;
 import org.snomed.snowstorm.ecl.domain.RefinementBuilder;
 import org.snomed.snowstorm.ecl.domain.expressionconstraint.SExpressionConstraint;
 import org.snomed.snowstorm.ecl.domain.expressionconstraint.SSubExpressionConstraint;
+import org.snomed.snowstorm.ecl.hierarchy.HierarchyGraph;
+import org.snomed.snowstorm.ecl.hierarchy.HierarchyGraphService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
@@ -29,12 +45,18 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.data.elasticsearch.core.ElasticsearchRestTemplate;
 import org.springframework.data.elasticsearch.core.SearchHits;
 import org.springframework.data.elasticsearch.core.SearchHitsIterator;
+import org.springframework.data.elasticsearch.core.convert.ElasticsearchConverter;
+import org.springframework.data.elasticsearch.core.document.DocumentAdapters;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQuery;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static io.kaicode.elasticvc.api.ComponentService.LARGE_PAGE;
@@ -69,8 +91,33 @@ public class ECLContentService {
 	@Lazy
 	private ECLQueryService eclQueryService;
 
+	@Autowired
+	private HierarchyGraphService hierarchyGraphService;
+
+	@Autowired
+	@Lazy
+	private ECLQueryPlanner eclQueryPlanner;
+
+	@Value("${ecl.prefetch.slices}")
+	private int prefetchSlices;
+
+	@Value("${ecl.prefetch.slice-threshold}")
+	private long prefetchSliceThreshold;
+
+	@Value("${ecl.planner.enabled}")
+	private boolean plannerEnabled;
+
+	@Value("${ecl.planner.filter-pushdown-threshold}")
+	private int filterPushdownThreshold;
+
+	@Autowired
+	@Qualifier("eclPrefetchExecutor")
+	private ThreadPoolTaskExecutor prefetchExecutor;
+
 	private SExpressionConstraint historyMaxECL;
 
+	private static final TimeValue PREFETCH_SCROLL_KEEP_ALIVE = TimeValue.timeValueMinutes(1);
+
 	private static final List<Long> HISTORY_PROFILE_MIN = Collections.singletonList(parseLong(Concepts.REFSET_SAME_AS_ASSOCIATION));
 	private static final List<Long> HISTORY_PROFILE_MOD = List.of(
 			parseLong(Concepts.REFSET_SAME_AS_ASSOCIATION),
@@ -83,8 +130,24 @@ public class ECLContentService {
 		historyMaxECL = (SExpressionConstraint) eclQueryService.createQuery("< 900000000000522004 |Historical association reference set|");
 	}
 
-	public List<Long> fetchAllIdsWithCaching(SSubExpressionConstraint sSubExpressionConstraint, BranchCriteria branchCriteria, boolean stated) {
-		return eclQueryService.doSelectConceptIds(sSubExpressionConstraint, branchCriteria, stated, null, null).getContent();
+	public List<Long> fetchAllIdsWithCaching(SExpressionConstraint expressionConstraint, BranchCriteria branchCriteria, boolean stated) {
+		return selectAllWithCaching(expressionConstraint, branchCriteria, stated).getContent();
+	}
+
+	public Page<Long> selectAllWithCaching(SExpressionConstraint expressionConstraint, BranchCriteria branchCriteria, boolean stated) {
+		return eclQueryService.doSelectConceptIds(expressionConstraint, branchCriteria, stated, null, null);
+	}
+
+	/**
+	 * Select all ids of the expression that are also in the filter. The filter is applied to cached results in memory if possible,
+	 * otherwise pushed down to Elasticsearch if small enough, see {@link #isFilterPushdown(Collection)}.
+	 */
+	public Page<Long> selectWithFilter(SExpressionConstraint expressionConstraint, BranchCriteria branchCriteria, boolean stated, Collection<Long> conceptIdFilter) {
+		return eclQueryService.doSelectConceptIds(expressionConstraint, branchCriteria, stated, conceptIdFilter, null);
+	}
+
+	public boolean isFilterPushdown(Collection<Long> conceptIdFilter) {
+		return plannerEnabled && conceptIdFilter.size() <= filterPushdownThreshold;
 	}
 
 	public Page<QueryConcept> queryForPage(NativeSearchQuery searchQuery) {
@@ -98,6 +161,103 @@ public class ECLContentService {
 		return elasticsearchTemplate.searchForStream(searchQuery, QueryConcept.class);
 	}
 
+	/**
+	 * Fetch the ids of all matching semantic index concepts using sliced scrolls, consumed in parallel.
+	 * Each slice applies the inclusion filter to its own hits so filtering overlaps with fetching the other slices.
+	 * @param estimatedSize upper bound of the number of matches from the hierarchy graph or cached results, if known.
+	 * Only when there is no estimate and no concept id filter is the size counted in Elasticsearch.
+	 * @return matching concept ids in descending order, or null if parallel fetching is disabled or the result set is too small to be worth splitting.
+	 */
+	public LongArrayList fetchAllIdsInSlices(BoolQueryBuilder query, Collection<Long> filterByConceptIds, Function<QueryConcept, Boolean> inclusionFilter,
+			String[] fields, Long estimatedSize) {
+
+		if (prefetchSlices < 2) {
+			return null;
+		}
+		if (filterByConceptIds != null && filterByConceptIds.size() < prefetchSliceThreshold) {
+			// No more matches than the filter
+			return null;
+		}
+		BoolQueryBuilder sliceQuery = boolQuery().must(query);
+		if (filterByConceptIds != null) {
+			sliceQuery.filter(termsQuery(QueryConcept.Fields.CONCEPT_ID, filterByConceptIds));
+		}
+		long size = estimatedSize != null ? estimatedSize :
+				elasticsearchTemplate.count(new NativeSearchQueryBuilder().withQuery(sliceQuery).build(), QueryConcept.class);
+		if (size < prefetchSliceThreshold) {
+			return null;
+		}
+
+		String indexName = elasticsearchTemplate.getIndexCoordinatesFor(QueryConcept.class).getIndexName();
+		List<Future<long[]>> slices = new ArrayList<>();
+		for (int slice = 0; slice < prefetchSlices; slice++) {
+			SearchSourceBuilder source = new SearchSourceBuilder()
+					.query(sliceQuery)
+					.fetchSource(fields, null)
+					.size(LARGE_PAGE.getPageSize())
+					.sort(FieldSortBuilder.DOC_FIELD_NAME)
+					.slice(new SliceBuilder(slice, prefetchSlices));
+			slices.add(prefetchExecutor.submit(() -> fetchSlice(new SearchRequest(indexName).source(source), inclusionFilter)));
+		}
+
+		// Merge primitive arrays from each slice
+		long[][] sliceIds = new long[slices.size()][];
+		int total = 0;
+		try {
+			for (int i = 0; i < slices.size(); i++) {
+				sliceIds[i] = slices.get(i).get();
+				total += sliceIds[i].length;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			slices.forEach(future -> future.cancel(true));
+			throw new RuntimeServiceException("Interrupted while fetching ECL results.", e);
+		} catch (ExecutionException e) {
+			slices.forEach(future -> future.cancel(true));
+			throw new RuntimeServiceException("Failed to fetch ECL results.", e.getCause());
+		}
+		long[] ids = new long[total];
+		int position = 0;
+		for (long[] slice : sliceIds) {
+			System.arraycopy(slice, 0, ids, position, slice.length);
+			position += slice.length;
+		}
+		LongArrays.parallelQuickSort(ids, LongComparators.OPPOSITE_COMPARATOR);
+		return LongArrayList.wrap(ids);
+	}
+
+	private long[] fetchSlice(SearchRequest searchRequest, Function<QueryConcept, Boolean> inclusionFilter) {
+		ElasticsearchConverter converter = elasticsearchTemplate.getElasticsearchConverter();
+		return elasticsearchTemplate.execute(client -> {
+			LongArrayList ids = new LongArrayList();
+			SearchResponse response = client.search(searchRequest.scroll(PREFETCH_SCROLL_KEEP_ALIVE), RequestOptions.DEFAULT);
+			String scrollId = response.getScrollId();
+			try {
+				while (response.getHits().getHits().length > 0) {
+					for (SearchHit hit : response.getHits().getHits()) {
+						if (inclusionFilter == null) {
+							ids.add(parseLong(hit.getSourceAsMap().get(QueryConcept.Fields.CONCEPT_ID).toString()));
+						} else {
+							QueryConcept queryConcept = converter.read(QueryConcept.class, DocumentAdapters.from(hit));
+							if (inclusionFilter.apply(queryConcept)) {
+								ids.add(queryConcept.getConceptIdL().longValue());
+							}
+						}
+					}
+					response = client.scroll(new SearchScrollRequest(scrollId).scroll(PREFETCH_SCROLL_KEEP_ALIVE), RequestOptions.DEFAULT);
+					scrollId = response.getScrollId();
+				}
+			} finally {
+				if (scrollId != null) {
+					ClearScrollRequest clearScrollRequest = new ClearScrollRequest();
+					clearScrollRequest.addScrollId(scrollId);
+					client.clearScroll(clearScrollRequest, RequestOptions.DEFAULT);
+				}
+			}
+			return ids.toLongArray();
+		});
+	}
+
 	public SearchAfterPage<ReferenceSetMember> findReferenceSetMembers(Collection<Long> refsets, List<MemberFilterConstraint> memberFilterConstraints,
 			List<String> memberFieldsToReturn, Collection<Long> conceptIdFilter, boolean stated, BranchCriteria branchCriteria, PageRequest pageRequest,
 			ECLContentService eclContentService) {
@@ -215,6 +375,17 @@ public class ECLContentService {
 		}
 	}
 
+	public HierarchyGraph getHierarchyGraphIfLoaded(BranchCriteria branchCriteria, boolean stated) {
+		return hierarchyGraphService.getGraphIfLoaded(branchCriteria, stated);
+	}
+
+	/**
+	 * @return upper bound of the number of concepts selected by the expression, from cached result sizes or the hierarchy graph, or null if not known.
+	 */
+	public Long estimateSize(SExpressionConstraint expressionConstraint, BranchCriteria branchCriteria, boolean stated) {
+		return eclQueryPlanner.estimate(expressionConstraint, branchCriteria, stated);
+	}
+
 	public Set<Long> findAncestorIdsAsUnion(BranchCriteria branchCriteria, boolean stated, Collection<Long> conceptIds) {
 		return queryService.findAncestorIdsAsUnion(branchCriteria, stated, conceptIds);
 	}
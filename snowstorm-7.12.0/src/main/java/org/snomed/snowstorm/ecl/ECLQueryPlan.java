@@ -0,0 +1,103 @@
+package org.snomed.snowstorm.ecl;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Explanation of how an ECL query is executed, produced by {@link ECLQueryPlanner#explain}.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ECLQueryPlan {
+
+	private final String ecl;
+	private final String plannedEcl;
+	private final boolean plannerEnabled;
+	private final List<String> rewrites;
+	private final Step plan;
+
+	public ECLQueryPlan(String ecl, String plannedEcl, boolean plannerEnabled, List<String> rewrites, Step plan) {
+		this.ecl = ecl;
+		this.plannedEcl = plannedEcl;
+		this.plannerEnabled = plannerEnabled;
+		this.rewrites = rewrites;
+		this.plan = plan;
+	}
+
+	public String getEcl() {
+		return ecl;
+	}
+
+	public String getPlannedEcl() {
+		return plannedEcl;
+	}
+
+	public boolean isPlannerEnabled() {
+		return plannerEnabled;
+	}
+
+	public List<String> getRewrites() {
+		return rewrites;
+	}
+
+	public Step getPlan() {
+		return plan;
+	}
+
+	/**
+	 * One part of the planned expression. Operands are listed in execution order.
+	 */
+	@JsonInclude(JsonInclude.Include.NON_NULL)
+	public static final class Step {
+
+		private final String type;
+		private final String ecl;
+		private final Long estimatedSize;
+		private Long actualSize;
+		private Long durationMillis;
+		private final List<Step> operands = new ArrayList<>();
+
+		public Step(String type, String ecl, Long estimatedSize) {
+			this.type = type;
+			this.ecl = ecl;
+			this.estimatedSize = estimatedSize;
+		}
+
+		public String getType() {
+			return type;
+		}
+
+		public String getEcl() {
+			return ecl;
+		}
+
+		/**
+		 * @return estimated number of concepts selected, null if no estimate was possible.
+		 */
+		public Long getEstimatedSize() {
+			return estimatedSize;
+		}
+
+		public Long getActualSize() {
+			return actualSize;
+		}
+
+		void setActualSize(Long actualSize) {
+			this.actualSize = actualSize;
+		}
+
+		public Long getDurationMillis() {
+			return durationMillis;
+		}
+
+		void setDurationMillis(Long durationMillis) {
+			this.durationMillis = durationMillis;
+		}
+
+		@JsonInclude(JsonInclude.Include.NON_EMPTY)
+		public List<Step> getOperands() {
+			return operands;
+		}
+	}
+}
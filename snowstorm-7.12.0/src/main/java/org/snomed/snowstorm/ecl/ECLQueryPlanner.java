@@ -0,0 +1,224 @@
+package org.snomed.snowstorm.ecl;
+
+import io.kaicode.elasticvc.api.BranchCriteria;
+import org.snomed.langauges.ecl.domain.expressionconstraint.SubExpressionConstraint;
+import org.snomed.snowstorm.ecl.domain.expressionconstraint.*;
+import org.snomed.snowstorm.ecl.hierarchy.HierarchyGraph;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.domain.Page;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * Plans the execution of an ECL query, between parsing and selection.
+ * First applies algebraic rewrites that give the same results with less fetching. Then estimates the number of concepts selected by
+ * each operand of a conjunction, using cached result sizes or the hierarchy graph, and orders the operands so that the most selective runs first.
+ * Planning never queries Elasticsearch, operands which can not be estimated from memory keep their written order. The ids selected by the first operands are passed to the following operands as a concept id filter.
+ */
+@Service
+public class ECLQueryPlanner {
+
+	@Value("${ecl.planner.enabled}")
+	private boolean enabled;
+
+	@Autowired
+	private ECLContentService eclContentService;
+
+	@Autowired
+	@Lazy
+	private ECLQueryService eclQueryService;
+
+	public SExpressionConstraint plan(SExpressionConstraint expressionConstraint, BranchCriteria branchCriteria, boolean stated) {
+		if (!enabled) {
+			return expressionConstraint;
+		}
+		PlanContext context = new PlanContext(branchCriteria, stated);
+		rewrite(expressionConstraint, context.rewrites);
+		orderConjunctions(expressionConstraint, context);
+		return expressionConstraint;
+	}
+
+	public ECLQueryPlan explain(SExpressionConstraint expressionConstraint, BranchCriteria branchCriteria, boolean stated) {
+		String ecl = expressionConstraint.toEclString();
+		PlanContext context = new PlanContext(branchCriteria, stated);
+		if (enabled) {
+			rewrite(expressionConstraint, context.rewrites);
+			orderConjunctions(expressionConstraint, context);
+		}
+		ECLQueryPlan.Step plan = explainStep(expressionConstraint, context);
+		return new ECLQueryPlan(ecl, expressionConstraint.toEclString(), enabled, context.rewrites, plan);
+	}
+
+	/**
+	 * Apply rewrites in place, innermost expressions first.
+	 * @param rewrites description of each rewrite applied is added to this list.
+	 */
+	static void rewrite(SExpressionConstraint expressionConstraint, List<String> rewrites) {
+		if (expressionConstraint instanceof SSubExpressionConstraint) {
+			SSubExpressionConstraint subExpressionConstraint = (SSubExpressionConstraint) expressionConstraint;
+			if (subExpressionConstraint.getNestedExpressionConstraint() != null) {
+				rewrite((SExpressionConstraint) subExpressionConstraint.getNestedExpressionConstraint(), rewrites);
+				String before = subExpressionConstraint.toEclString();
+				if (subExpressionConstraint.collapseNestedHierarchyOperator()) {
+					rewrites.add(String.format("Collapsed nested constraint \"%s\" to \"%s\"", before, subExpressionConstraint.toEclString()));
+				}
+			}
+		} else if (expressionConstraint instanceof SCompoundExpressionConstraint) {
+			SCompoundExpressionConstraint compoundExpressionConstraint = (SCompoundExpressionConstraint) expressionConstraint;
+			for (SubExpressionConstraint operand : compoundExpressionConstraint.getOperands()) {
+				rewrite((SExpressionConstraint) operand, rewrites);
+			}
+			String before = compoundExpressionConstraint.toEclString();
+			if (compoundExpressionConstraint.distributeConjunctionOverDisjunction()) {
+				rewrites.add(String.format("Distributed conjunction \"%s\" over disjunction to \"%s\"", before, compoundExpressionConstraint.toEclString()));
+			}
+		}
+	}
+
+	private void orderConjunctions(SExpressionConstraint expressionConstraint, PlanContext context) {
+		if (expressionConstraint instanceof SSubExpressionConstraint) {
+			SSubExpressionConstraint subExpressionConstraint = (SSubExpressionConstraint) expressionConstraint;
+			if (subExpressionConstraint.getNestedExpressionConstraint() != null) {
+				orderConjunctions((SExpressionConstraint) subExpressionConstraint.getNestedExpressionConstraint(), context);
+			}
+		} else if (expressionConstraint instanceof SCompoundExpressionConstraint) {
+			SCompoundExpressionConstraint compoundExpressionConstraint = (SCompoundExpressionConstraint) expressionConstraint;
+			for (SubExpressionConstraint operand : compoundExpressionConstraint.getOperands()) {
+				orderConjunctions((SExpressionConstraint) operand, context);
+			}
+			// Sort is stable, operands without an estimate keep their order after those with one
+			compoundExpressionConstraint.orderConjunction(Comparator.comparing(operand -> estimate((SExpressionConstraint) operand, context),
+					Comparator.nullsLast(Comparator.<Long>naturalOrder())));
+		}
+	}
+
+	/**
+	 * @return estimated number of concepts selected by the expression, or null if it can not be estimated from memory.
+	 */
+	public Long estimate(SExpressionConstraint expressionConstraint, BranchCriteria branchCriteria, boolean stated) {
+		return estimate(expressionConstraint, new PlanContext(branchCriteria, stated));
+	}
+
+	/**
+	 * @return estimated number of concepts selected by the expression, or null if there is no cheap way to estimate.
+	 */
+	private Long estimate(SExpressionConstraint expressionConstraint, PlanContext context) {
+		String ecl = expressionConstraint.toCanonicalEclString();
+		if (context.estimates.containsKey(ecl)) {
+			return context.estimates.get(ecl);
+		}
+		Long estimate = eclQueryService.getCachedTotal(ecl, context.branchCriteria, context.stated);
+		if (estimate == null) {
+			estimate = doEstimate(expressionConstraint, context);
+		}
+		context.estimates.put(ecl, estimate);
+		return estimate;
+	}
+
+	private Long doEstimate(SExpressionConstraint expressionConstraint, PlanContext context) {
+		if (expressionConstraint instanceof SSubExpressionConstraint) {
+			SSubExpressionConstraint subExpressionConstraint = (SSubExpressionConstraint) expressionConstraint;
+			if (subExpressionConstraint.isSingleConcept()) {
+				return 1L;
+			} else if (subExpressionConstraint.isHierarchyOfSingleConcept()) {
+				return countHierarchy(subExpressionConstraint, context);
+			} else if (subExpressionConstraint.isUnconstrained()) {
+				HierarchyGraph hierarchyGraph = eclContentService.getHierarchyGraphIfLoaded(context.branchCriteria, context.stated);
+				return hierarchyGraph != null ? (long) hierarchyGraph.size() : null;
+			} else if (subExpressionConstraint.getOperator() == null && subExpressionConstraint.getNestedExpressionConstraint() != null
+					&& !subExpressionConstraint.isAnyFiltersOrSupplements()) {
+				return estimate((SExpressionConstraint) subExpressionConstraint.getNestedExpressionConstraint(), context);
+			}
+		} else if (expressionConstraint instanceof SCompoundExpressionConstraint) {
+			SCompoundExpressionConstraint compoundExpressionConstraint = (SCompoundExpressionConstraint) expressionConstraint;
+			List<SubExpressionConstraint> operands = compoundExpressionConstraint.getOperands();
+			if (compoundExpressionConstraint.getConjunctionExpressionConstraints() != null) {
+				// No larger than the smallest operand
+				Long smallest = null;
+				for (SubExpressionConstraint operand : operands) {
+					Long estimate = estimate((SExpressionConstraint) operand, context);
+					if (estimate != null && (smallest == null || estimate < smallest)) {
+						smallest = estimate;
+					}
+				}
+				return smallest;
+			} else if (compoundExpressionConstraint.getDisjunctionExpressionConstraints() != null) {
+				// No larger than the sum of the operands
+				long sum = 0;
+				for (SubExpressionConstraint operand : operands) {
+					Long estimate = estimate((SExpressionConstraint) operand, context);
+					if (estimate == null) {
+						return null;
+					}
+					sum += estimate;
+				}
+				return sum;
+			} else {
+				// No larger than the first operand
+				return estimate((SExpressionConstraint) operands.get(0), context);
+			}
+		}
+		return null;
+	}
+
+	private Long countHierarchy(SSubExpressionConstraint subExpressionConstraint, PlanContext context) {
+		HierarchyGraph hierarchyGraph = eclContentService.getHierarchyGraphIfLoaded(context.branchCriteria, context.stated);
+		if (hierarchyGraph == null) {
+			return null;
+		}
+		// Answered from the in-memory hierarchy
+		return subExpressionConstraint.select(context.branchCriteria, context.stated, null, null, eclContentService, false)
+				.map(Page::getTotalElements)
+				.orElse(null);
+	}
+
+	private ECLQueryPlan.Step explainStep(SExpressionConstraint expressionConstraint, PlanContext context) {
+		ECLQueryPlan.Step step = new ECLQueryPlan.Step(getStepType(expressionConstraint), expressionConstraint.toEclString(), estimate(expressionConstraint, context));
+		if (!(expressionConstraint instanceof SSubExpressionConstraint && ((SSubExpressionConstraint) expressionConstraint).isUnconstrained())) {
+			// Wildcard is not run, it would fetch every concept
+			long start = System.currentTimeMillis();
+			step.setActualSize(eclContentService.selectAllWithCaching(expressionConstraint, context.branchCriteria, context.stated).getTotalElements());
+			step.setDurationMillis(System.currentTimeMillis() - start);
+		}
+		if (expressionConstraint instanceof SCompoundExpressionConstraint) {
+			for (SubExpressionConstraint operand : ((SCompoundExpressionConstraint) expressionConstraint).getOperands()) {
+				step.getOperands().add(explainStep((SExpressionConstraint) operand, context));
+			}
+		} else if (expressionConstraint instanceof SSubExpressionConstraint
+				&& ((SSubExpressionConstraint) expressionConstraint).getNestedExpressionConstraint() != null) {
+			step.getOperands().add(explainStep((SExpressionConstraint) ((SSubExpressionConstraint) expressionConstraint).getNestedExpressionConstraint(), context));
+		}
+		return step;
+	}
+
+	private static String getStepType(SExpressionConstraint expressionConstraint) {
+		if (expressionConstraint instanceof SCompoundExpressionConstraint) {
+			SCompoundExpressionConstraint compoundExpressionConstraint = (SCompoundExpressionConstraint) expressionConstraint;
+			if (compoundExpressionConstraint.getConjunctionExpressionConstraints() != null) {
+				return "conjunction";
+			}
+			return compoundExpressionConstraint.getDisjunctionExpressionConstraints() != null ? "disjunction" : "exclusion";
+		} else if (expressionConstraint instanceof SRefinedExpressionConstraint) {
+			return "refined";
+		} else if (expressionConstraint instanceof SDottedExpressionConstraint) {
+			return "dotted";
+		}
+		return "sub-expression";
+	}
+
+	private static final class PlanContext {
+
+		private final BranchCriteria branchCriteria;
+		private final boolean stated;
+		private final Map<String, Long> estimates = new HashMap<>();
+		private final List<String> rewrites = new ArrayList<>();
+
+		private PlanContext(BranchCriteria branchCriteria, boolean stated) {
+			this.branchCriteria = branchCriteria;
+			this.stated = stated;
+		}
+	}
+}
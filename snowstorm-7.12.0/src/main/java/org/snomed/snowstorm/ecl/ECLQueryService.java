@@ -2,6 +2,7 @@ package org.snomed.snowstorm.ecl;
 
 import ch.qos.logback.classic.Level;
 import io.kaicode.elasticvc.api.BranchCriteria;
+import io.micrometer.core.instrument.MeterRegistry;
 import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.slf4j.Logger;
@@ -17,19 +18,24 @@ import org.snomed.snowstorm.core.util.SearchAfterPage;
 import org.snomed.snowstorm.core.util.TimerUtil;
 import org.snomed.snowstorm.ecl.domain.expressionconstraint.SExpressionConstraint;
 import org.snomed.snowstorm.ecl.domain.expressionconstraint.SSubExpressionConstraint;
+import org.snomed.snowstorm.ecl.hierarchy.HierarchyGraph;
 import org.snomed.snowstorm.ecl.validation.ECLPreprocessingService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.elasticsearch.core.SearchAfterPageRequest;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.function.LongPredicate;
-import java.util.stream.Collectors;
 
 import static java.lang.Long.parseLong;
 
@@ -48,18 +54,29 @@ public class ECLQueryService {
 	@Autowired
 	private ECLContentService eclContentService;
 
+	@Autowired
+	private ECLQueryPlanner eclQueryPlanner;
+
 	@Value("${timer.ecl.duration-threshold}")
 	private int eclDurationLoggingThreshold;
 
 	@Value("${cache.ecl.enabled}")
 	private boolean eclCacheEnabled;
 
-	private final ECLResultsCache resultsCache;
+	@Value("${cache.ecl.max-heap-mb}")
+	private long eclCacheMaxHeapMb;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	private ECLResultsCache resultsCache;
 
 	private final Logger logger = LoggerFactory.getLogger(getClass());
 
-	public ECLQueryService() {
-		resultsCache = new ECLResultsCache();
+	@PostConstruct
+	public void init() {
+		resultsCache = new ECLResultsCache(eclCacheMaxHeapMb * 1024 * 1024);
+		resultsCache.bindMetrics(meterRegistry);
 	}
 
 	public Page<Long> selectConceptIds(String ecl, BranchCriteria branchCriteria, boolean stated, PageRequest pageRequest) throws ECLException {
@@ -78,6 +95,44 @@ public class ECLQueryService {
 	public Page<Long> selectConceptIds(String ecl, BranchCriteria branchCriteria, boolean stated, Collection<Long> conceptIdFilter,
 			PageRequest pageRequest, boolean skipEclPreprocessing) throws ECLException {
 
+		SExpressionConstraint expressionConstraint = createPlannedQuery(ecl, branchCriteria, stated, skipEclPreprocessing);
+		return doSelectConceptIds(expressionConstraint, branchCriteria, stated, conceptIdFilter, pageRequest);
+	}
+
+	/**
+	 * Membership test against the full result set of the expression, for callers that check candidate concepts a few at a time.
+	 * The full result set is taken from the results cache, or selected and cached, so the same expression on the same branch version is only run once.
+	 * The wildcard matches every concept in the semantic index, it is answered from the hierarchy graph if loaded rather than fetching every concept id.
+	 * @return membership test, or null for the wildcard when the hierarchy graph is not loaded. The caller should then check candidates
+	 * with {@link #selectConceptIds(String, BranchCriteria, boolean, Collection)}.
+	 */
+	public LongPredicate selectConceptIdMembership(String ecl, BranchCriteria branchCriteria, boolean stated) throws ECLException {
+		SExpressionConstraint expressionConstraint = createPlannedQuery(ecl, branchCriteria, stated, false);
+		if (expressionConstraint instanceof SSubExpressionConstraint && ((SSubExpressionConstraint) expressionConstraint).isUnconstrained()) {
+			HierarchyGraph hierarchyGraph = eclContentService.getHierarchyGraphIfLoaded(branchCriteria, stated);
+			return hierarchyGraph != null ? hierarchyGraph::contains : null;
+		}
+		if (eclCacheEnabled) {
+			String canonicalEcl = expressionConstraint.toCanonicalEclString();
+			BranchVersionECLCache branchVersionCache = resultsCache.getOrCreateBranchVersionCache(branchCriteria.getBranchPath(), branchCriteria.getTimepoint());
+			BranchVersionECLCache.CachedPage cachedPage = branchVersionCache.get(canonicalEcl, stated, null);
+			if (cachedPage == null) {
+				Page<Long> allIds = doSelectConceptIds(expressionConstraint, branchCriteria, stated, null, null);
+				cachedPage = branchVersionCache.get(canonicalEcl, stated, null);
+				if (cachedPage == null) {
+					// Result set was not cached
+					LongOpenHashSet ids = new LongOpenHashSet(allIds.getContent());
+					return ids::contains;
+				}
+			}
+			CompactConceptIdList ids = cachedPage.getIds();
+			return ids::contains;
+		}
+		LongOpenHashSet ids = new LongOpenHashSet(doSelectConceptIds(expressionConstraint, branchCriteria, stated, null, null).getContent());
+		return ids::contains;
+	}
+
+	private SExpressionConstraint createPlannedQuery(String ecl, BranchCriteria branchCriteria, boolean stated, boolean skipEclPreprocessing) {
 		SExpressionConstraint expressionConstraint = (SExpressionConstraint) eclQueryBuilder.createQuery(ecl);
 
 		if (isMemberFieldsSearch(expressionConstraint)) {
@@ -86,7 +141,19 @@ public class ECLQueryService {
 		if (!skipEclPreprocessing) {
 			expressionConstraint = eclPreprocessingService.replaceIncorrectConcreteAttributeValue(expressionConstraint, branchCriteria.getBranchPath());
 		}
-		return doSelectConceptIds(expressionConstraint, branchCriteria, stated, conceptIdFilter, pageRequest);
+		return eclQueryPlanner.plan(expressionConstraint, branchCriteria, stated);
+	}
+
+	/**
+	 * Plan the ECL query and run each part of the plan to compare estimated and actual sizes.
+	 */
+	public ECLQueryPlan explain(String ecl, BranchCriteria branchCriteria, boolean stated) throws ECLException {
+		SExpressionConstraint expressionConstraint = (SExpressionConstraint) eclQueryBuilder.createQuery(ecl);
+		if (isMemberFieldsSearch(expressionConstraint)) {
+			throw new RuntimeServiceException("ECL requesting specific refset member fields, can not return concept ids.");
+		}
+		expressionConstraint = eclPreprocessingService.replaceIncorrectConcreteAttributeValue(expressionConstraint, branchCriteria.getBranchPath());
+		return eclQueryPlanner.explain(expressionConstraint, branchCriteria, stated);
 	}
 
 	public static boolean isMemberFieldsSearch(SExpressionConstraint expressionConstraint) {
@@ -129,62 +196,76 @@ public class ECLQueryService {
 	public Page<Long> doSelectConceptIds(SExpressionConstraint expressionConstraint, BranchCriteria branchCriteria, boolean stated, Collection<Long> conceptIdFilter,
 			PageRequest pageRequest) {
 
-		// - Optimisation idea -
-		// Changing something like "(id) AND (<<id OR >>id)"  to  "(id AND <<id) OR (id AND >>id)" will run in a fraction of the time because there will be no large fetches
-
 		TimerUtil eclSlowQueryTimer = getEclSlowQueryTimer();
-		String ecl = expressionConstraint.toEclString();
+		String ecl = expressionConstraint.toCanonicalEclString();
 		String path = branchCriteria.getBranchPath();
 
 		logger.info("ECL on path {}, \"{}\"", path, expressionConstraint.toEclString());
 
 		Optional<Page<Long>> pageOptional;
-		if (eclCacheEnabled) {
-			BranchVersionECLCache branchVersionCache = resultsCache.getOrCreateBranchVersionCache(path, branchCriteria.getTimepoint());
-
-			PageRequest queryPageRequest = pageRequest;
+		BranchVersionECLCache branchVersionCache = eclCacheEnabled ? resultsCache.getOrCreateBranchVersionCache(path, branchCriteria.getTimepoint()) : null;
+		if (branchVersionCache != null && conceptIdFilter != null && eclContentService.isFilterPushdown(conceptIdFilter)
+				&& branchVersionCache.get(ecl, stated, null) == null) {
+			// Small filter and no cached full set, cheaper to push the filter down to Elasticsearch than to fetch and cache the full set
+			branchVersionCache = null;
+		}
+		if (branchVersionCache != null) {
+			// By default fetch all, without conceptIdFilter or paging. Apply filter and paging afterwards, in memory.
+			// The full set of ids is cached once and can be reused by any page, filter or other query using the same sub-expression.
+			PageRequest queryPageRequest = null;
+			BranchVersionECLCache.CachedPage cachedPage = null;
 			LongPredicate filter = null;
 			if (conceptIdFilter != null) {
-				// Fetch all, without conceptIdFilter or paging. Apply filter and paging afterwards.
-				// This may be expensive, but it's the only way to allow the cache to help with this sort of query.
-				queryPageRequest = null;
 				final LongOpenHashSet fastSet = new LongOpenHashSet(conceptIdFilter);
 				filter = fastSet::contains;
+			} else if (pageRequest != null) {
+				boolean conceptIdOrder = isConceptIdOrder(pageRequest);
+				if (conceptIdOrder) {
+					cachedPage = branchVersionCache.get(ecl, stated, null);
+				}
+				if (cachedPage == null && (!conceptIdOrder || isFirstPage(pageRequest))) {
+					// Just fetch the requested page. If the client pages further the full set will be fetched.
+					queryPageRequest = pageRequest;
+				}
 			}
 
-			Page<Long> cachedPage = branchVersionCache.get(ecl, stated, queryPageRequest);
+			Page<Long> selectedPage = null;
+			if (cachedPage == null) {
+				cachedPage = branchVersionCache.get(ecl, stated, queryPageRequest);
+			}
 			if (cachedPage != null) {
 				final int pageNumber = pageRequest != null ? pageRequest.getPageNumber() : 0;
 				final int pageSize = pageRequest != null ? pageRequest.getPageSize() : -1;
 				logger.info("ECL cache hit {}@{} \"{}\" {}:{}", path, branchCriteria.getTimepoint().getTime(), ecl, pageNumber, pageSize);
-				branchVersionCache.recordHit();
-
-				pageOptional = Optional.of(cachedPage);
 			} else {
 				// Select 1
-				// When is pageRequest null?
 				pageOptional = expressionConstraint.select(branchCriteria, stated, null, queryPageRequest, eclContentService, true);
 				if (pageOptional.isPresent()) {
 					// Cache results
-					final Page<Long> page = pageOptional.get();
-					branchVersionCache.put(ecl, stated, queryPageRequest, page);
+					selectedPage = pageOptional.get();
+					Set<Long> semanticIndexDependencies = ECLResultsCache.getSemanticIndexDependencies(BranchVersionECLCache.normaliseEclString(ecl),
+							expressionConstraint.getConceptIds());
+					cachedPage = branchVersionCache.put(ecl, stated, queryPageRequest, selectedPage, semanticIndexDependencies);
 					eclSlowQueryTimer.checkpoint(String.format("ecl:'%s', with %s results in this page, now cached for this branch/commit/page.", ecl,
-							pageOptional.get().getNumberOfElements()));
+							selectedPage.getNumberOfElements()));
 				}
 			}
 
-			if (pageOptional.isPresent()) {
-				// Filter results
-				if (filter != null) {
-					final List<Long> filteredList = pageOptional.get().get().filter(filter::test).collect(Collectors.toList());
-					pageOptional = Optional.of(ConceptSelectorHelper.getPage(pageRequest, filteredList));
-				}
+			if (cachedPage == null) {
+				pageOptional = Optional.empty();
+			} else if (queryPageRequest != null || (pageRequest == null && filter == null)) {
+				// Cached entry is the page requested
+				pageOptional = Optional.of(selectedPage != null ? selectedPage : cachedPage.toPage());
+			} else {
+				// Filter and page the compact results directly
+				pageOptional = Optional.of(ConceptSelectorHelper.getPage(pageRequest, cachedPage.getIds(), filter));
 			}
 		} else {
 			// Select 2
 			pageOptional = expressionConstraint.select(branchCriteria, stated, conceptIdFilter, pageRequest, eclContentService, true);
 			if (pageOptional.isPresent()) {
-				eclSlowQueryTimer.checkpoint(String.format("ecl:'%s', with %s results in this page, cache not enabled.", ecl, pageOptional.get().getNumberOfElements()));
+				eclSlowQueryTimer.checkpoint(String.format("ecl:'%s', with %s results in this page, %s.", ecl, pageOptional.get().getNumberOfElements(),
+						eclCacheEnabled ? "concept id filter pushed down, not cached" : "cache not enabled"));
 			}
 		}
 
@@ -196,10 +277,29 @@ public class ECLQueryService {
 		return pageOptional.get();
 	}
 
+	private static boolean isConceptIdOrder(PageRequest pageRequest) {
+		// Full result sets are held in descending concept id order, the same as the default sort for paged queries
+		Sort sort = pageRequest.getSort();
+		if (sort.isUnsorted()) {
+			return true;
+		}
+		Sort.Order order = sort.getOrderFor(QueryConcept.Fields.CONCEPT_ID);
+		return order != null && order.isDescending() && sort.stream().count() == 1;
+	}
+
+	private static boolean isFirstPage(PageRequest pageRequest) {
+		if (pageRequest instanceof SearchAfterPageRequest) {
+			return ((SearchAfterPageRequest) pageRequest).getSearchAfter() == null;
+		}
+		return pageRequest.getPageNumber() == 0;
+	}
+
 	private Page<Long> getWildcardPage(BranchCriteria branchCriteria, boolean stated, Collection<Long> conceptIdFilter, PageRequest pageRequest) {
 		// Wildcard expression. Grab a page of concepts with no criteria.
 		BoolQueryBuilder query = ConceptSelectorHelper.getBranchAndStatedQuery(branchCriteria.getEntityBranchCriteria(QueryConcept.class), stated);
-		return ConceptSelectorHelper.fetchWildcardIds(query, conceptIdFilter, pageRequest, eclContentService);
+		HierarchyGraph hierarchyGraph = eclContentService.getHierarchyGraphIfLoaded(branchCriteria, stated);
+		Long estimatedSize = hierarchyGraph != null ? (long) hierarchyGraph.size() : null;
+		return ConceptSelectorHelper.fetchWildcardIds(query, conceptIdFilter, pageRequest, eclContentService, estimatedSize);
 	}
 
 	private TimerUtil getEclSlowQueryTimer() {
@@ -210,6 +310,18 @@ public class ECLQueryService {
 		return eclQueryBuilder.createQuery(ecl);
 	}
 
+	/**
+	 * @return the total number of results of the expression if the full result set is cached for this branch version, otherwise null.
+	 */
+	Long getCachedTotal(String canonicalEcl, BranchCriteria branchCriteria, boolean stated) {
+		if (!eclCacheEnabled) {
+			return null;
+		}
+		BranchVersionECLCache.CachedPage cachedPage = resultsCache.getOrCreateBranchVersionCache(branchCriteria.getBranchPath(), branchCriteria.getTimepoint())
+				.get(canonicalEcl, stated, null);
+		return cachedPage != null ? cachedPage.getTotalElements() : null;
+	}
+
 	public ECLResultsCache getResultsCache() {
 		return resultsCache;
 	}
@@ -1,45 +1,201 @@
 package org.snomed.snowstorm.ecl;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import org.apache.commons.lang3.math.NumberUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * ECL results cache shared by all branches.
+ * The total heap used is bounded by an estimated weight for each entry, entries are evicted using Caffeine's W-TinyLFU policy
+ * (a combination of recency and frequency) regardless of which branch they belong to.
+ */
 public class ECLResultsCache {
 
-	private final Map<String, BranchVersionECLCache> cacheMap;
+	public static final String METRICS_CACHE_NAME = "ecl-results";
+
+	private static final int BYTES_PER_ENTRY = 256;
+
+	private final Cache<BranchVersionECLCache.ECLCacheEntry, BranchVersionECLCache.CachedPage> cache;
+
+	private final Map<String, BranchVersionECLCache> branchVersionCaches;
+
+	// Keys of the cached entries of each branch, so that the entries of one branch can be found without scanning the whole cache
+	private final Map<String, Set<BranchVersionECLCache.ECLCacheEntry>> keysByPath = new ConcurrentHashMap<>();
+
+	private final long maxWeightBytes;
 
 	private final Logger logger = LoggerFactory.getLogger(getClass());
 
-	public ECLResultsCache() {
-		cacheMap = new ConcurrentHashMap<>();
+	public ECLResultsCache(long maxWeightBytes) {
+		this.maxWeightBytes = maxWeightBytes;
+		cache = Caffeine.newBuilder()
+				.maximumWeight(maxWeightBytes)
+				.weigher(ECLResultsCache::estimateWeight)
+				.recordStats()
+				// Run on the calling thread so the branch index is updated with the cache
+				.executor(Runnable::run)
+				.removalListener(this::onRemoval)
+				.build();
+		branchVersionCaches = new ConcurrentHashMap<>();
+	}
+
+	BranchVersionECLCache.CachedPage get(BranchVersionECLCache.ECLCacheEntry key) {
+		return cache.getIfPresent(key);
+	}
+
+	void put(BranchVersionECLCache.ECLCacheEntry key, BranchVersionECLCache.CachedPage cachedPage) {
+		keysByPath.computeIfAbsent(key.getPath(), path -> ConcurrentHashMap.newKeySet()).add(key);
+		cache.put(key, cachedPage);
+	}
+
+	private void onRemoval(BranchVersionECLCache.ECLCacheEntry key, BranchVersionECLCache.CachedPage cachedPage, RemovalCause cause) {
+		if (key == null || cause == RemovalCause.REPLACED || cache.asMap().containsKey(key)) {
+			return;
+		}
+		Set<BranchVersionECLCache.ECLCacheEntry> keys = keysByPath.get(key.getPath());
+		if (keys != null) {
+			keys.remove(key);
+		}
+	}
+
+	private List<BranchVersionECLCache.ECLCacheEntry> getKeys(String path) {
+		Set<BranchVersionECLCache.ECLCacheEntry> keys = keysByPath.get(path);
+		return keys != null ? new ArrayList<>(keys) : Collections.emptyList();
 	}
 
 	public BranchVersionECLCache getOrCreateBranchVersionCache(String path, Date timepoint) {
-		BranchVersionECLCache branchVersionCache = cacheMap.get(path);
+		BranchVersionECLCache branchVersionCache = branchVersionCaches.get(path);
 		if (branchVersionCache == null || branchVersionCache.isExpired(timepoint)) {
 
 			if (branchVersionCache != null) {
 				logger.info("ECL cache expired {}@{}", path, timepoint.getTime());
+				// Free the space used by the previous version of this branch rather than waiting for eviction
+				for (BranchVersionECLCache.ECLCacheEntry key : getKeys(path)) {
+					if (!key.getHead().equals(timepoint)) {
+						cache.invalidate(key);
+					}
+				}
 			}
 
-			branchVersionCache = new BranchVersionECLCache(timepoint);
-
-			// Replacing the existing item will allow the old cache entry to be garbage collected
-			cacheMap.put(path, branchVersionCache);
+			branchVersionCache = new BranchVersionECLCache(path, timepoint, this);
+			branchVersionCaches.put(path, branchVersionCache);
 		}
 		return branchVersionCache;
 	}
 
-	public Map<String, BranchVersionECLCache> getCacheMap() {
-		return new HashMap<>(cacheMap);
+	/**
+	 * Copy entries from the previous head of a branch to the new head when they can not have been changed by the commit.
+	 * Only results that depend on nothing but the semantic index are carried forward, and only if none of the concepts in the expression
+	 * were affected for that form. Other entries expire with the previous head of the branch as normal.
+	 * @param statedAffectedConceptIds concepts changed in the stated semantic index by the commit, with their previous and new ancestors.
+	 * @param inferredAffectedConceptIds concepts changed in the inferred semantic index by the commit, with their previous and new ancestors.
+	 */
+	public void carryForward(String path, Date previousHead, Date newHead, Set<Long> statedAffectedConceptIds, Set<Long> inferredAffectedConceptIds) {
+		int carried = 0;
+		int expired = 0;
+		for (BranchVersionECLCache.ECLCacheEntry key : getKeys(path)) {
+			if (key.getHead().equals(previousHead)) {
+				BranchVersionECLCache.CachedPage cachedPage = cache.getIfPresent(key);
+				if (cachedPage == null) {
+					continue;
+				}
+				if (cachedPage.isUnaffectedBy(key.isStated() ? statedAffectedConceptIds : inferredAffectedConceptIds)) {
+					put(key.withHead(newHead), cachedPage);
+					carried++;
+				} else {
+					expired++;
+				}
+			}
+		}
+		if (carried > 0) {
+			logger.info("ECL cache carried forward {} entries to {}@{}, {} entries expire.", carried, path, newHead.getTime(), expired);
+		}
+	}
+
+	/**
+	 * Results depend only on the semantic index when the expression has no wildcard, member of, filter, history supplement or concrete value.
+	 * @return the concept ids referenced by the expression or null if the results depend on more than the semantic index.
+	 */
+	public static Set<Long> getSemanticIndexDependencies(String normalisedEcl, Set<String> conceptIds) {
+		if (normalisedEcl.contains("*") || normalisedEcl.contains("^") || normalisedEcl.contains("{{") || normalisedEcl.contains("#")) {
+			return null;
+		}
+		Set<Long> dependencies = new LongOpenHashSet();
+		for (String conceptId : conceptIds) {
+			if (!NumberUtils.isDigits(conceptId)) {
+				return null;
+			}
+			dependencies.add(Long.parseLong(conceptId));
+		}
+		return dependencies;
+	}
+
+	static int estimateWeight(BranchVersionECLCache.ECLCacheEntry key, BranchVersionECLCache.CachedPage page) {
+		long weight = BYTES_PER_ENTRY + (key.getEcl().length() * 2L) + page.getIds().getEstimatedBytes();
+		if (page.getSemanticIndexDependencies() != null) {
+			weight += page.getSemanticIndexDependencies().size() * 16L;
+		}
+		return (int) Math.min(weight, Integer.MAX_VALUE);
+	}
+
+	public void bindMetrics(MeterRegistry meterRegistry) {
+		CaffeineCacheMetrics.monitor(meterRegistry, cache, METRICS_CACHE_NAME);
+		Gauge.builder("cache.ecl.weight", this, ECLResultsCache::getWeightBytes)
+				.description("Estimated heap used by cached ECL results")
+				.baseUnit("bytes")
+				.register(meterRegistry);
+		Gauge.builder("cache.ecl.max.weight", this, ECLResultsCache::getMaxWeightBytes)
+				.description("Configured heap budget for cached ECL results")
+				.baseUnit("bytes")
+				.register(meterRegistry);
+	}
+
+	public long getWeightBytes() {
+		return cache.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0L)).orElse(0L);
+	}
+
+	public long getMaxWeightBytes() {
+		return maxWeightBytes;
+	}
+
+	public Map<String, Map<String, Long>> getStats() {
+		Map<String, Long> totals = new LinkedHashMap<>();
+		CacheStats cacheStats = cache.stats();
+		totals.put("size", cache.estimatedSize());
+		totals.put("weight-bytes", getWeightBytes());
+		totals.put("max-weight-bytes", maxWeightBytes);
+		totals.put("hits", cacheStats.hitCount());
+		totals.put("misses", cacheStats.missCount());
+		totals.put("evictions", cacheStats.evictionCount());
+
+		Map<String, Map<String, Long>> branchStats = new TreeMap<>();
+		for (Map.Entry<BranchVersionECLCache.ECLCacheEntry, BranchVersionECLCache.CachedPage> entry : cache.asMap().entrySet()) {
+			Map<String, Long> stats = branchStats.computeIfAbsent(entry.getKey().getPath(), path -> new LinkedHashMap<>());
+			stats.merge("size", 1L, Long::sum);
+			stats.merge("weight-bytes", (long) estimateWeight(entry.getKey(), entry.getValue()), Long::sum);
+		}
+
+		Map<String, Map<String, Long>> allStats = new LinkedHashMap<>();
+		allStats.put("all-branches", totals);
+		allStats.putAll(branchStats);
+		return allStats;
 	}
 
 	public void clearCache() {
-		cacheMap.clear();
+		cache.invalidateAll();
+		branchVersionCaches.clear();
+		keysByPath.clear();
 		logger.info("ECL cache cleared.");
 	}
 }
@@ -1,5 +1,6 @@
 package org.snomed.snowstorm.ecl.domain.expressionconstraint;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import io.kaicode.elasticvc.api.BranchCriteria;
 import it.unimi.dsi.fastutil.longs.LongArrayList;
 import it.unimi.dsi.fastutil.longs.LongLinkedOpenHashSet;
@@ -7,6 +8,7 @@ import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.snomed.langauges.ecl.domain.expressionconstraint.CompoundExpressionConstraint;
 import org.snomed.langauges.ecl.domain.expressionconstraint.SubExpressionConstraint;
+import org.snomed.snowstorm.ecl.BranchVersionECLCache;
 import org.snomed.snowstorm.ecl.ConceptSelectorHelper;
 import org.snomed.snowstorm.ecl.ECLContentService;
 import org.snomed.snowstorm.ecl.deserializer.ECLModelDeserializer;
@@ -15,14 +17,16 @@ import org.snomed.snowstorm.ecl.domain.SubRefinementBuilder;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 import static com.google.common.collect.Sets.newHashSet;
-import static com.google.common.collect.Sets.union;
 import static java.util.stream.Collectors.toSet;
 import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
 
@@ -68,15 +72,21 @@ public class SCompoundExpressionConstraint extends CompoundExpressionConstraint
 
 		if (conjunctionExpressionConstraints != null) {
 			if (anyWithFiltersOrSupplements(conjunctionExpressionConstraints)) {
-				// Prefetch all
+				// Prefetch all, intersecting as we go.
+				// Operands are ordered by the query planner with the most selective first. The ids selected so far are passed to each
+				// following operand as a filter, which is pushed down to Elasticsearch when small enough.
+				ECLContentService eclContentService = refinementBuilder.getEclContentService();
 				Set<Long> result = null;
 				for (SubExpressionConstraint conjunctionExpressionConstraint : conjunctionExpressionConstraints) {
-					List<Long> ids = ConceptSelectorHelper.select((SSubExpressionConstraint) conjunctionExpressionConstraint, refinementBuilder).getContent();
-					Set<Long> resultSet = new LongLinkedOpenHashSet(ids);
+					SSubExpressionConstraint operand = (SSubExpressionConstraint) conjunctionExpressionConstraint;
 					if (result == null) {
-						result = resultSet;
+						result = new LongLinkedOpenHashSet(ConceptSelectorHelper.select(operand, refinementBuilder).getContent());
 					} else {
-						result = union(result, resultSet);
+						result.retainAll(new LongOpenHashSet(eclContentService.selectWithFilter(operand, refinementBuilder.getBranchCriteria(),
+								refinementBuilder.isStated(), result).getContent()));
+					}
+					if (result.isEmpty()) {
+						break;
 					}
 				}
 				filteredOrSupplementedContentCallback.accept(result != null ? sortedList(result) : null);
@@ -127,6 +137,71 @@ public class SCompoundExpressionConstraint extends CompoundExpressionConstraint
 		}
 	}
 
+	/**
+	 * @return the operands of this conjunction, disjunction or exclusion, in order.
+	 */
+	@JsonIgnore
+	public List<SubExpressionConstraint> getOperands() {
+		if (conjunctionExpressionConstraints != null) {
+			return conjunctionExpressionConstraints;
+		} else if (disjunctionExpressionConstraints != null) {
+			return disjunctionExpressionConstraints;
+		}
+		return List.of(exclusionExpressionConstraints.getFirst(), exclusionExpressionConstraints.getSecond());
+	}
+
+	/**
+	 * Reorder the operands of a conjunction, this has no effect on the results. Has no effect on other types of compound constraint.
+	 */
+	public void orderConjunction(Comparator<SubExpressionConstraint> comparator) {
+		if (conjunctionExpressionConstraints != null) {
+			List<SubExpressionConstraint> ordered = new ArrayList<>(conjunctionExpressionConstraints);
+			ordered.sort(comparator);
+			conjunctionExpressionConstraints = ordered;
+		}
+	}
+
+	/**
+	 * Distributes a conjunction of single concepts and one nested disjunction over the disjunction,
+	 * for example "123 AND (<< 456 OR >> 456)" becomes "(123 AND << 456) OR (123 AND >> 456)".
+	 * Each new conjunction is constrained by the single concepts so there is no large fetch of the nested disjunction.
+	 * @return true if this constraint was changed.
+	 */
+	public boolean distributeConjunctionOverDisjunction() {
+		if (conjunctionExpressionConstraints == null) {
+			return false;
+		}
+		SCompoundExpressionConstraint disjunction = null;
+		List<SubExpressionConstraint> singleConcepts = new ArrayList<>();
+		for (SubExpressionConstraint operand : conjunctionExpressionConstraints) {
+			SSubExpressionConstraint subExpressionConstraint = (SSubExpressionConstraint) operand;
+			if (subExpressionConstraint.isSingleConcept()) {
+				singleConcepts.add(subExpressionConstraint);
+			} else if (disjunction == null && subExpressionConstraint.getOperator() == null && !subExpressionConstraint.isAnyFiltersOrSupplements()
+					&& subExpressionConstraint.getNestedExpressionConstraint() instanceof SCompoundExpressionConstraint
+					&& ((SCompoundExpressionConstraint) subExpressionConstraint.getNestedExpressionConstraint()).disjunctionExpressionConstraints != null) {
+				disjunction = (SCompoundExpressionConstraint) subExpressionConstraint.getNestedExpressionConstraint();
+			} else {
+				return false;
+			}
+		}
+		if (disjunction == null || singleConcepts.isEmpty()) {
+			return false;
+		}
+		List<SubExpressionConstraint> distributed = new ArrayList<>();
+		for (SubExpressionConstraint disjunctionOperand : disjunction.disjunctionExpressionConstraints) {
+			SCompoundExpressionConstraint conjunction = new SCompoundExpressionConstraint();
+			conjunction.conjunctionExpressionConstraints = new ArrayList<>(singleConcepts);
+			conjunction.conjunctionExpressionConstraints.add(disjunctionOperand);
+			SSubExpressionConstraint nested = new SSubExpressionConstraint(null);
+			nested.setNestedExpressionConstraint(conjunction);
+			distributed.add(nested);
+		}
+		conjunctionExpressionConstraints = null;
+		disjunctionExpressionConstraints = distributed;
+		return true;
+	}
+
 	private LongArrayList sortedList(Set<Long> result) {
 		LongArrayList longs = new LongArrayList(result);
 		longs.sort(null);
@@ -142,6 +217,28 @@ public class SCompoundExpressionConstraint extends CompoundExpressionConstraint
 		return toString(new StringBuffer()).toString();
 	}
 
+	@Override
+	public String toCanonicalEclString() {
+		// Conjunction and disjunction operands are sorted so that the same operands in any order share a cache entry
+		if (conjunctionExpressionConstraints != null) {
+			return canonicalOperands(conjunctionExpressionConstraints, ", ");
+		} else if (disjunctionExpressionConstraints != null) {
+			return canonicalOperands(disjunctionExpressionConstraints, " or ");
+		}
+		return toEclString();
+	}
+
+	private String canonicalOperands(List<SubExpressionConstraint> operands, String separator) {
+		return operands.stream()
+				.map(operand -> {
+					StringBuffer buffer = new StringBuffer();
+					ECLModelDeserializer.expressionConstraintToString(operand, buffer);
+					return BranchVersionECLCache.normaliseEclString(buffer.toString());
+				})
+				.sorted()
+				.collect(Collectors.joining(separator));
+	}
+
 	public StringBuffer toString(StringBuffer buffer) {
 		boolean first = true;
 		if (conjunctionExpressionConstraints != null) {
@@ -18,4 +18,11 @@ public interface SExpressionConstraint extends SRefinement {
 	Optional<Page<Long>> select(RefinementBuilder refinementBuilder);
 
 	String toEclString();
+
+	/**
+	 * ECL string used to recognise equivalent constraints in the results cache.
+	 */
+	default String toCanonicalEclString() {
+		return toEclString();
+	}
 }
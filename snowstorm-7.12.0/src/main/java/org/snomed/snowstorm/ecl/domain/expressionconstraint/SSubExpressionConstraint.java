@@ -4,6 +4,7 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import io.kaicode.elasticvc.api.BranchCriteria;
 import it.unimi.dsi.fastutil.longs.LongArrayList;
 import it.unimi.dsi.fastutil.longs.LongLinkedOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.snomed.langauges.ecl.domain.ConceptReference;
@@ -19,6 +20,7 @@ import org.snomed.snowstorm.ecl.deserializer.ECLModelDeserializer;
 import org.snomed.snowstorm.ecl.domain.RefinementBuilder;
 import org.snomed.snowstorm.ecl.domain.SubRefinementBuilder;
 import org.snomed.snowstorm.ecl.domain.filter.*;
+import org.snomed.snowstorm.ecl.hierarchy.HierarchyGraph;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 
@@ -33,6 +35,9 @@ import static org.snomed.snowstorm.core.util.CollectionUtils.orEmpty;
 
 public class SSubExpressionConstraint extends SubExpressionConstraint implements SExpressionConstraint {
 
+	private static final Set<Operator> HIERARCHY_OPERATORS = EnumSet.of(Operator.childof, Operator.childorselfof, Operator.descendantof, Operator.descendantorselfof,
+			Operator.parentof, Operator.parentorselfof, Operator.ancestorof, Operator.ancestororselfof);
+
 	@SuppressWarnings("unused")
 	// For JSON
 	private SSubExpressionConstraint() {
@@ -50,9 +55,43 @@ public class SSubExpressionConstraint extends SubExpressionConstraint implements
 		if (isUnconstrained()) {
 			return Optional.empty();
 		}
+		if (isHierarchyOfSingleConcept()) {
+			HierarchyGraph hierarchyGraph = eclContentService.getHierarchyGraphIfLoaded(branchCriteria, stated);
+			if (hierarchyGraph != null) {
+				// Answer from the in-memory hierarchy, no Elasticsearch query required
+				List<Long> conceptIds = selectFromHierarchyGraph(hierarchyGraph, parseLong(conceptId));
+				if (conceptIdFilter != null) {
+					Set<Long> filter = new LongOpenHashSet(conceptIdFilter);
+					conceptIds = conceptIds.stream().filter(filter::contains).collect(Collectors.toList());
+				}
+				return Optional.of(ConceptSelectorHelper.getPage(pageRequest, conceptIds));
+			}
+		}
 		return Optional.of(ConceptSelectorHelper.select(this, branchCriteria, stated, conceptIdFilter, pageRequest, eclContentService, triedCache));
 	}
 
+	private List<Long> selectFromHierarchyGraph(HierarchyGraph hierarchyGraph, Long focusConceptId) {
+		Set<Long> focus = Collections.singleton(focusConceptId);
+		switch (operator) {
+			case childof:
+				return hierarchyGraph.getDescendants(focus, false, false);
+			case childorselfof:
+				return hierarchyGraph.getDescendants(focus, false, true);
+			case descendantof:
+				return hierarchyGraph.getDescendants(focus, true, false);
+			case descendantorselfof:
+				return hierarchyGraph.getDescendants(focus, true, true);
+			case parentof:
+				return hierarchyGraph.getAncestors(focus, false, false);
+			case parentorselfof:
+				return hierarchyGraph.getAncestors(focus, false, true);
+			case ancestorof:
+				return hierarchyGraph.getAncestors(focus, true, false);
+			default:
+				return hierarchyGraph.getAncestors(focus, true, true);
+		}
+	}
+
 	@JsonIgnore
 	public boolean isUnconstrained() {
 		return wildcard
@@ -148,6 +187,68 @@ public class SSubExpressionConstraint extends SubExpressionConstraint implements
 		super.setNestedExpressionConstraint(nestedExpressionConstraint);
 	}
 
+	/**
+	 * Collapses a nested constraint on a single concept into this constraint where the result is the same,
+	 * for example "<< (<< 123)" becomes "<< 123" and "< (<< 123)" becomes "< 123".
+	 * @return true if this constraint was changed.
+	 */
+	public boolean collapseNestedHierarchyOperator() {
+		if (!(nestedExpressionConstraint instanceof SSubExpressionConstraint) || isAnyFiltersOrSupplements()
+				|| getMemberFieldsToReturn() != null || isReturnAllMemberFields()) {
+			return false;
+		}
+		SSubExpressionConstraint nested = (SSubExpressionConstraint) nestedExpressionConstraint;
+		if (nested.conceptId == null || nested.nestedExpressionConstraint != null || nested.isAnyFiltersOrSupplements()
+				|| nested.getMemberFieldsToReturn() != null || nested.isReturnAllMemberFields()) {
+			return false;
+		}
+		Operator collapsedOperator;
+		if (operator == null) {
+			collapsedOperator = nested.operator;
+		} else if (nested.operator == null) {
+			collapsedOperator = operator;
+		} else {
+			collapsedOperator = collapseHierarchyOperators(operator, nested.operator);
+			if (collapsedOperator == null) {
+				return false;
+			}
+		}
+		operator = collapsedOperator;
+		conceptId = nested.conceptId;
+		term = nested.term;
+		nestedExpressionConstraint = null;
+		return true;
+	}
+
+	private static Operator collapseHierarchyOperators(Operator outer, Operator inner) {
+		// "< (< 123)" is not the same as "< 123", it excludes the children of 123
+		if (isDescendantOperator(outer) && isDescendantOperator(inner) && (outer == Operator.descendantorselfof || inner == Operator.descendantorselfof)) {
+			return outer == Operator.descendantorselfof ? inner : outer;
+		}
+		if (isAncestorOperator(outer) && isAncestorOperator(inner) && (outer == Operator.ancestororselfof || inner == Operator.ancestororselfof)) {
+			return outer == Operator.ancestororselfof ? inner : outer;
+		}
+		return null;
+	}
+
+	private static boolean isDescendantOperator(Operator operator) {
+		return operator == Operator.descendantof || operator == Operator.descendantorselfof;
+	}
+
+	private static boolean isAncestorOperator(Operator operator) {
+		return operator == Operator.ancestorof || operator == Operator.ancestororselfof;
+	}
+
+	@JsonIgnore
+	public boolean isSingleConcept() {
+		return conceptId != null && operator == null && !isAnyFiltersOrSupplements();
+	}
+
+	@JsonIgnore
+	public boolean isHierarchyOfSingleConcept() {
+		return conceptId != null && HIERARCHY_OPERATORS.contains(operator) && !isAnyFiltersOrSupplements();
+	}
+
 	private SSubExpressionConstraint cloneWithoutFiltersOrSupplements() {
 		SSubExpressionConstraint clone = new SSubExpressionConstraint(operator);
 		clone.setConceptId(conceptId);
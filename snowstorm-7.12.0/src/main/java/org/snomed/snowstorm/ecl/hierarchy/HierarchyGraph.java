@@ -0,0 +1,291 @@
+package org.snomed.snowstorm.ecl.hierarchy;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Date;
+
+/**
+ * Immutable is-a hierarchy of one branch version and form, held in primitive arrays.
+ * Concepts are numbered by their position in the sorted array of concept ids. Parents and children of each concept are held in
+ * compressed sparse row layout: the edges of concept i are at offsets[i] (inclusive) to offsets[i + 1] (exclusive) of the edge array.
+ * Traversals mark concepts in a BitSet so results come out in concept id order without sorting.
+ */
+public final class HierarchyGraph {
+
+	// "SHG1", snapshot format version 1
+	private static final int SNAPSHOT_MAGIC = 0x53484731;
+	private static final int SNAPSHOT_HEADER_BYTES = 21;
+
+	private final String path;
+	private final Date timepoint;
+	private final boolean stated;
+
+	private final long[] conceptIds;
+	private final int[] parentOffsets;
+	private final int[] parents;
+	private final int[] childOffsets;
+	private final int[] children;
+
+	private HierarchyGraph(String path, Date timepoint, boolean stated, long[] conceptIds, int[] parentOffsets, int[] parents, int[] childOffsets, int[] children) {
+		this.path = path;
+		this.timepoint = timepoint;
+		this.stated = stated;
+		this.conceptIds = conceptIds;
+		this.parentOffsets = parentOffsets;
+		this.parents = parents;
+		this.childOffsets = childOffsets;
+		this.children = children;
+	}
+
+	public boolean contains(long conceptId) {
+		return indexOf(conceptId) >= 0;
+	}
+
+	/**
+	 * @return true if the concept has no children, null if the concept is not in the graph.
+	 */
+	public Boolean isLeaf(long conceptId) {
+		int index = indexOf(conceptId);
+		if (index < 0) {
+			return null;
+		}
+		return childOffsets[index] == childOffsets[index + 1];
+	}
+
+	/**
+	 * @return concept ids, in descending order, of the children (transitive = false) or descendants (transitive = true) of the given concepts.
+	 */
+	public LongArrayList getDescendants(Collection<Long> conceptIds, boolean transitive, boolean includeSelf) {
+		return toDescendingIds(traverse(childOffsets, children, conceptIds, transitive, includeSelf));
+	}
+
+	/**
+	 * @return concept ids, in descending order, of the parents (transitive = false) or ancestors (transitive = true) of the given concepts.
+	 */
+	public LongArrayList getAncestors(Collection<Long> conceptIds, boolean transitive, boolean includeSelf) {
+		return toDescendingIds(traverse(parentOffsets, parents, conceptIds, transitive, includeSelf));
+	}
+
+	public int countDescendants(long conceptId) {
+		return traverse(childOffsets, children, LongArrayList.wrap(new long[]{conceptId}), true, false).cardinality();
+	}
+
+	private BitSet traverse(int[] offsets, int[] edges, Collection<Long> startConceptIds, boolean transitive, boolean includeSelf) {
+		BitSet visited = new BitSet(conceptIds.length);
+		IntArrayList stack = new IntArrayList();
+		for (Long conceptId : startConceptIds) {
+			int index = indexOf(conceptId);
+			if (index >= 0) {
+				if (includeSelf) {
+					visited.set(index);
+				}
+				stack.add(index);
+			}
+		}
+		while (!stack.isEmpty()) {
+			int index = stack.popInt();
+			for (int i = offsets[index]; i < offsets[index + 1]; i++) {
+				int next = edges[i];
+				if (!visited.get(next)) {
+					visited.set(next);
+					if (transitive) {
+						stack.add(next);
+					}
+				}
+			}
+		}
+		return visited;
+	}
+
+	private LongArrayList toDescendingIds(BitSet bitSet) {
+		LongArrayList ids = new LongArrayList(bitSet.cardinality());
+		for (int index = bitSet.previousSetBit(conceptIds.length - 1); index >= 0; index = bitSet.previousSetBit(index - 1)) {
+			ids.add(conceptIds[index]);
+		}
+		return ids;
+	}
+
+	private int indexOf(long conceptId) {
+		int index = Arrays.binarySearch(conceptIds, conceptId);
+		return index >= 0 ? index : -1;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public Date getTimepoint() {
+		return timepoint;
+	}
+
+	public boolean isStated() {
+		return stated;
+	}
+
+	public int size() {
+		return conceptIds.length;
+	}
+
+	public long getEstimatedBytes() {
+		return conceptIds.length * 8L + (parentOffsets.length + parents.length + childOffsets.length + children.length) * 4L;
+	}
+
+	/**
+	 * Write a binary snapshot of the graph through a memory mapped file.
+	 * The snapshot is written to a uniquely named temporary file in the same directory first and moved into place,
+	 * so a partial snapshot is never read and instances sharing the directory do not write to the same temporary file.
+	 */
+	public void writeSnapshot(Path file) throws IOException {
+		long size = getSnapshotBytes(conceptIds.length, parents.length);
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("Hierarchy graph too large for a snapshot, " + size + " bytes.");
+		}
+		Path directory = file.toAbsolutePath().getParent();
+		Path tempFile = Files.createTempFile(directory, file.getFileName() + ".", ".tmp");
+		try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			buffer.putInt(SNAPSHOT_MAGIC)
+					.put((byte) (stated ? 1 : 0))
+					.putLong(timepoint.getTime())
+					.putInt(conceptIds.length)
+					.putInt(parents.length);
+			buffer.asLongBuffer().put(conceptIds);
+			buffer.position(buffer.position() + conceptIds.length * Long.BYTES);
+			putInts(buffer, parentOffsets);
+			putInts(buffer, parents);
+			putInts(buffer, childOffsets);
+			putInts(buffer, children);
+			buffer.force();
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(tempFile);
+			throw e;
+		}
+		Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Read a graph from a snapshot written by {@link #writeSnapshot(Path)}. The file is memory mapped and copied into the graph arrays in bulk.
+	 * @throws IOException if the snapshot is not of the expected form and branch version, for example a file renamed or copied from another directory.
+	 */
+	public static HierarchyGraph readSnapshot(Path file, String path, boolean expectedStated, Date expectedTimepoint) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (channel.size() < SNAPSHOT_HEADER_BYTES || buffer.getInt() != SNAPSHOT_MAGIC) {
+				throw new IOException("Not a hierarchy graph snapshot " + file);
+			}
+			boolean stated = buffer.get() == 1;
+			Date timepoint = new Date(buffer.getLong());
+			if (stated != expectedStated || !timepoint.equals(expectedTimepoint)) {
+				throw new IOException(String.format("Hierarchy graph snapshot %s is of the %s form at %s, expected the %s form at %s.", file,
+						stated ? "stated" : "inferred", timepoint.getTime(), expectedStated ? "stated" : "inferred", expectedTimepoint.getTime()));
+			}
+			int conceptCount = buffer.getInt();
+			int edgeCount = buffer.getInt();
+			if (channel.size() != getSnapshotBytes(conceptCount, edgeCount)) {
+				throw new IOException("Incomplete hierarchy graph snapshot " + file);
+			}
+			long[] conceptIds = new long[conceptCount];
+			buffer.asLongBuffer().get(conceptIds);
+			buffer.position(buffer.position() + conceptCount * Long.BYTES);
+			int[] parentOffsets = getInts(buffer, conceptCount + 1);
+			int[] parents = getInts(buffer, edgeCount);
+			int[] childOffsets = getInts(buffer, conceptCount + 1);
+			int[] children = getInts(buffer, edgeCount);
+			return new HierarchyGraph(path, timepoint, stated, conceptIds, parentOffsets, parents, childOffsets, children);
+		}
+	}
+
+	private static long getSnapshotBytes(int conceptCount, int edgeCount) {
+		return SNAPSHOT_HEADER_BYTES + conceptCount * (long) Long.BYTES + ((conceptCount + 1) * 2L + edgeCount * 2L) * Integer.BYTES;
+	}
+
+	private static void putInts(ByteBuffer buffer, int[] values) {
+		buffer.asIntBuffer().put(values);
+		buffer.position(buffer.position() + values.length * Integer.BYTES);
+	}
+
+	private static int[] getInts(ByteBuffer buffer, int length) {
+		int[] values = new int[length];
+		buffer.asIntBuffer().get(values);
+		buffer.position(buffer.position() + length * Integer.BYTES);
+		return values;
+	}
+
+	public static final class Builder {
+
+		private final LongArrayList conceptIds = new LongArrayList();
+		private final IntArrayList parentCounts = new IntArrayList();
+		private final LongArrayList parentIds = new LongArrayList();
+
+		public Builder addConcept(long conceptId, Collection<Long> parents) {
+			conceptIds.add(conceptId);
+			parentCounts.add(parents.size());
+			for (Long parent : parents) {
+				parentIds.add(parent.longValue());
+			}
+			return this;
+		}
+
+		public HierarchyGraph build(String path, Date timepoint, boolean stated) {
+			long[] sortedIds = conceptIds.toLongArray();
+			Arrays.sort(sortedIds);
+			int unique = 0;
+			for (int i = 0; i < sortedIds.length; i++) {
+				if (i == 0 || sortedIds[i] != sortedIds[i - 1]) {
+					sortedIds[unique++] = sortedIds[i];
+				}
+			}
+			sortedIds = Arrays.copyOf(sortedIds, unique);
+
+			// Resolve parent ids to indexes, dropping any parent that is not in the graph
+			int[] sources = new int[parentIds.size()];
+			int[] targets = new int[parentIds.size()];
+			int edgeCount = 0;
+			int parentPosition = 0;
+			for (int i = 0; i < conceptIds.size(); i++) {
+				int source = Arrays.binarySearch(sortedIds, conceptIds.getLong(i));
+				int count = parentCounts.getInt(i);
+				for (int p = 0; p < count; p++) {
+					int target = Arrays.binarySearch(sortedIds, parentIds.getLong(parentPosition++));
+					if (target >= 0) {
+						sources[edgeCount] = source;
+						targets[edgeCount] = target;
+						edgeCount++;
+					}
+				}
+			}
+
+			int[] parentOffsets = new int[sortedIds.length + 1];
+			int[] childOffsets = new int[sortedIds.length + 1];
+			for (int e = 0; e < edgeCount; e++) {
+				parentOffsets[sources[e] + 1]++;
+				childOffsets[targets[e] + 1]++;
+			}
+			for (int i = 0; i < sortedIds.length; i++) {
+				parentOffsets[i + 1] += parentOffsets[i];
+				childOffsets[i + 1] += childOffsets[i];
+			}
+			int[] parents = new int[edgeCount];
+			int[] children = new int[edgeCount];
+			int[] parentCursor = Arrays.copyOf(parentOffsets, sortedIds.length);
+			int[] childCursor = Arrays.copyOf(childOffsets, sortedIds.length);
+			for (int e = 0; e < edgeCount; e++) {
+				parents[parentCursor[sources[e]]++] = targets[e];
+				children[childCursor[targets[e]]++] = sources[e];
+			}
+			return new HierarchyGraph(path, timepoint, stated, sortedIds, parentOffsets, parents, childOffsets, children);
+		}
+	}
+}
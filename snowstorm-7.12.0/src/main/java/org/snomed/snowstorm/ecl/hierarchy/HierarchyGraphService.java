@@ -0,0 +1,248 @@
+package org.snomed.snowstorm.ecl.hierarchy;
+
+import ch.qos.logback.classic.Level;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.base.Strings;
+import io.kaicode.elasticvc.api.BranchCriteria;
+import io.kaicode.elasticvc.api.VersionControlHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.snowstorm.core.data.domain.QueryConcept;
+import org.snomed.snowstorm.core.util.TimerUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.SearchHitsIterator;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static io.kaicode.elasticvc.api.ComponentService.LARGE_PAGE;
+import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
+import static org.elasticsearch.index.query.QueryBuilders.termQuery;
+
+/**
+ * Holds in-memory hierarchy graphs of the latest version of recently used branches, one for each form.
+ * Graphs are loaded from the semantic index in the background. Until the graph of the requested branch version is ready
+ * callers fall back to Elasticsearch queries.
+ * If a snapshot directory is configured each graph is also written to a file keyed by branch path, form and head timestamp,
+ * so after a restart, or on another instance sharing the directory, the graph can be mapped from disk instead of streamed from Elasticsearch.
+ */
+@Service
+public class HierarchyGraphService {
+
+	private static final String SNAPSHOT_FILE_EXTENSION = ".graph";
+
+	@Value("${ecl.hierarchy-graph.enabled}")
+	private boolean enabled;
+
+	@Value("${ecl.hierarchy-graph.max-graphs}")
+	private int maxGraphs;
+
+	@Value("${ecl.hierarchy-graph.snapshot-directory}")
+	private String snapshotDirectoryPath;
+
+	@Autowired
+	private ElasticsearchOperations elasticsearchTemplate;
+
+	@Autowired
+	private VersionControlHelper versionControlHelper;
+
+	@Autowired
+	private ExecutorService executorService;
+
+	private Cache<GraphKey, HierarchyGraph> graphs;
+
+	private Path snapshotDirectory;
+
+	private final Set<GraphKey> graphsLoading = ConcurrentHashMap.newKeySet();
+
+	// Latest timepoint of each graph key found to be an open commit, queries at that timepoint do not trigger another load
+	private final Map<GraphKey, Date> openCommitTimepoints = new ConcurrentHashMap<>();
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	@PostConstruct
+	public void init() {
+		graphs = Caffeine.newBuilder().maximumSize(maxGraphs).build();
+		if (enabled && !Strings.isNullOrEmpty(snapshotDirectoryPath)) {
+			snapshotDirectory = Path.of(snapshotDirectoryPath);
+			try {
+				Files.createDirectories(snapshotDirectory);
+			} catch (IOException e) {
+				logger.error("Failed to create hierarchy graph snapshot directory {}, snapshots are disabled.", snapshotDirectory, e);
+				snapshotDirectory = null;
+			}
+		}
+	}
+
+	/**
+	 * @return the hierarchy graph for the branch version and form, or null if it is not loaded yet.
+	 * If the graph is not loaded, or is older than the latest version of the branch, the latest version will be loaded in the background.
+	 * Criteria within an open commit never have a graph, the branch head is only looked up once for each open commit timepoint.
+	 */
+	public HierarchyGraph getGraphIfLoaded(BranchCriteria branchCriteria, boolean stated) {
+		if (!enabled) {
+			return null;
+		}
+		GraphKey key = new GraphKey(branchCriteria.getBranchPath(), stated);
+		HierarchyGraph graph = graphs.getIfPresent(key);
+		Date timepoint = branchCriteria.getTimepoint();
+		if (graph != null && graph.getTimepoint().equals(timepoint)) {
+			return graph;
+		}
+		if ((graph == null || graph.getTimepoint().before(timepoint)) && !timepoint.equals(openCommitTimepoints.get(key))) {
+			loadInBackground(key, timepoint);
+		}
+		return null;
+	}
+
+	private void loadInBackground(GraphKey key, Date requestedTimepoint) {
+		if (!graphsLoading.add(key)) {
+			return;
+		}
+		executorService.submit(() -> {
+			try {
+				// Always load the latest committed version of the branch, never an open commit
+				BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(key.path);
+				Date head = branchCriteria.getTimepoint();
+				if (head.before(requestedTimepoint)) {
+					openCommitTimepoints.put(key, requestedTimepoint);
+				}
+				HierarchyGraph current = graphs.getIfPresent(key);
+				if (current != null && !current.getTimepoint().before(head)) {
+					// Already the latest version
+					return;
+				}
+				HierarchyGraph graph = readSnapshot(key, head);
+				if (graph == null) {
+					graph = loadGraph(branchCriteria, key.stated);
+					writeSnapshot(key, graph);
+				}
+				graphs.put(key, graph);
+			} catch (Exception e) {
+				logger.error("Failed to load {} hierarchy graph of {}", key.stated ? "stated" : "inferred", key.path, e);
+			} finally {
+				graphsLoading.remove(key);
+			}
+		});
+	}
+
+	HierarchyGraph loadGraph(BranchCriteria branchCriteria, boolean stated) {
+		TimerUtil timer = new TimerUtil("Hierarchy graph " + branchCriteria.getBranchPath(), Level.INFO, 1);
+		HierarchyGraph.Builder builder = new HierarchyGraph.Builder();
+		try (SearchHitsIterator<QueryConcept> stream = elasticsearchTemplate.searchForStream(new NativeSearchQueryBuilder()
+				.withQuery(boolQuery()
+						.must(branchCriteria.getEntityBranchCriteria(QueryConcept.class))
+						.must(termQuery(QueryConcept.Fields.STATED, stated)))
+				.withFields(QueryConcept.Fields.CONCEPT_ID, QueryConcept.Fields.PARENTS)
+				.withPageable(LARGE_PAGE)
+				.build(), QueryConcept.class)) {
+			stream.forEachRemaining(hit -> builder.addConcept(hit.getContent().getConceptIdL(), hit.getContent().getParents()));
+		}
+		HierarchyGraph graph = builder.build(branchCriteria.getBranchPath(), branchCriteria.getTimepoint(), stated);
+		timer.finish();
+		logger.info("Loaded {} hierarchy graph of {}@{} with {} concepts, ~{}MB.", stated ? "stated" : "inferred", graph.getPath(),
+				graph.getTimepoint().getTime(), graph.size(), graph.getEstimatedBytes() / (1024 * 1024));
+		return graph;
+	}
+
+	private HierarchyGraph readSnapshot(GraphKey key, Date timepoint) {
+		if (snapshotDirectory == null) {
+			return null;
+		}
+		Path file = snapshotDirectory.resolve(key.getSnapshotFilePrefix() + timepoint.getTime() + SNAPSHOT_FILE_EXTENSION);
+		if (!Files.isRegularFile(file)) {
+			return null;
+		}
+		try {
+			HierarchyGraph graph = HierarchyGraph.readSnapshot(file, key.path, key.stated, timepoint);
+			logger.info("Mapped {} hierarchy graph of {}@{} from snapshot with {} concepts.", key.stated ? "stated" : "inferred", key.path, timepoint.getTime(), graph.size());
+			return graph;
+		} catch (IOException e) {
+			logger.warn("Failed to read hierarchy graph snapshot {}, loading from Elasticsearch instead.", file, e);
+			return null;
+		}
+	}
+
+	private void writeSnapshot(GraphKey key, HierarchyGraph graph) {
+		if (snapshotDirectory == null) {
+			return;
+		}
+		String fileName = key.getSnapshotFilePrefix() + graph.getTimepoint().getTime() + SNAPSHOT_FILE_EXTENSION;
+		try {
+			graph.writeSnapshot(snapshotDirectory.resolve(fileName));
+			// Remove snapshots of previous versions of the branch
+			try (Stream<Path> files = Files.list(snapshotDirectory)) {
+				for (Path file : files.collect(Collectors.toList())) {
+					String name = file.getFileName().toString();
+					if (key.isSnapshotFileName(name) && !name.equals(fileName)) {
+						Files.deleteIfExists(file);
+					}
+				}
+			}
+		} catch (IOException e) {
+			logger.warn("Failed to write hierarchy graph snapshot {}.", fileName, e);
+		}
+	}
+
+	public void clearCache() {
+		graphs.invalidateAll();
+	}
+
+	private static final class GraphKey {
+
+		private final String path;
+		private final boolean stated;
+
+		private GraphKey(String path, boolean stated) {
+			this.path = path;
+			this.stated = stated;
+		}
+
+		private String getSnapshotFilePrefix() {
+			return URLEncoder.encode(path, StandardCharsets.UTF_8) + "_" + (stated ? "stated" : "inferred") + "_";
+		}
+
+		/**
+		 * Matches the prefix, a timestamp and the extension exactly. The prefix alone also matches snapshots of other branches,
+		 * for example the prefix of MAIN/A stated is also the start of the name of MAIN/A_stated inferred.
+		 */
+		private boolean isSnapshotFileName(String name) {
+			String prefix = getSnapshotFilePrefix();
+			if (!name.startsWith(prefix) || !name.endsWith(SNAPSHOT_FILE_EXTENSION)) {
+				return false;
+			}
+			String timestamp = name.substring(prefix.length(), name.length() - SNAPSHOT_FILE_EXTENSION.length());
+			return !timestamp.isEmpty() && timestamp.chars().allMatch(Character::isDigit);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (o == null || getClass() != o.getClass()) return false;
+			GraphKey graphKey = (GraphKey) o;
+			return stated == graphKey.stated && path.equals(graphKey.path);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(path, stated);
+		}
+	}
+}
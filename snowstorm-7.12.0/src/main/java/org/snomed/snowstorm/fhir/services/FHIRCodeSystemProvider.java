@@ -11,6 +11,8 @@ import ca.uhn.fhir.rest.param.QuantityParam;
 import ca.uhn.fhir.rest.param.StringParam;
 import ca.uhn.fhir.rest.param.TokenParam;
 import ca.uhn.fhir.rest.server.IResourceProvider;
+import io.kaicode.elasticvc.api.BranchCriteria;
+import io.kaicode.elasticvc.api.VersionControlHelper;
 
 import org.hl7.fhir.r4.model.*;
 import org.hl7.fhir.r4.model.OperationOutcome.IssueType;
@@ -36,7 +38,6 @@ import javax.servlet.http.HttpServletResponse;
 import java.util.*;
 import java.util.stream.Collectors;
 
-import static io.kaicode.elasticvc.api.ComponentService.LARGE_PAGE;
 import static org.snomed.snowstorm.config.Config.DEFAULT_LANGUAGE_DIALECTS;
 
 @Component
@@ -59,6 +60,9 @@ public class FHIRCodeSystemProvider implements IResourceProvider, FHIRConstants
 
 	@Autowired
 	private MultiSearchService multiSearchService;
+
+	@Autowired
+	private VersionControlHelper versionControlHelper;
 	
 	private List<LanguageDialect> defaultLanguages;
 	
@@ -243,9 +247,12 @@ public class FHIRCodeSystemProvider implements IResourceProvider, FHIRConstants
 				throw new NotFoundException("Concept " + conceptId + " was not found on branch " + branchPath);
 			}
 		}
-		Page<Long> childIds = queryService.searchForIds(queryService.createQueryBuilder(false).ecl("<!" + conceptId), branchPath.toString(), LARGE_PAGE);
+		// Children are found in one hierarchy lookup, served from memory when the hierarchy graph is loaded
+		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(branchPath.toString());
+		List<Long> childIds = new ArrayList<>(queryService.findChildrenIdsAsUnion(branchCriteria, false, Collections.singleton(Long.parseLong(conceptId))));
+		Collections.sort(childIds);
 		Set<FhirSctProperty> properties = FhirSctProperty.parse(propertiesType);
-		return pMapper.mapToFHIR(system, fullConcept, childIds.getContent(), properties, designations);
+		return pMapper.mapToFHIR(system, fullConcept, childIds, properties, designations);
 	}
 
 	@Operation(name="$validate-code", idempotent=true)
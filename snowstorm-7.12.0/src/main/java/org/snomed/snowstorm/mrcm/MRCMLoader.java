@@ -1,9 +1,12 @@
 package org.snomed.snowstorm.mrcm;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import io.kaicode.elasticvc.api.BranchCriteria;
-import io.kaicode.elasticvc.api.CommitListener;
+import io.kaicode.elasticvc.api.BranchService;
 import io.kaicode.elasticvc.api.VersionControlHelper;
-import io.kaicode.elasticvc.domain.Commit;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.snomed.langauges.ecl.ECLException;
@@ -15,28 +18,45 @@ import org.snomed.snowstorm.core.data.domain.Concepts;
 import org.snomed.snowstorm.core.data.domain.ConcreteValue;
 import org.snomed.snowstorm.core.data.domain.ReferenceSetMember;
 import org.snomed.snowstorm.core.data.services.ReferenceSetMemberService;
+import org.snomed.snowstorm.core.data.services.RuntimeServiceException;
 import org.snomed.snowstorm.core.data.services.ServiceException;
 import org.snomed.snowstorm.core.data.services.pojo.MemberSearchRequest;
 import org.snomed.snowstorm.core.util.TimerUtil;
 import org.snomed.snowstorm.mrcm.model.*;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Lazy;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.SearchHitsIterator;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
 import org.springframework.stereotype.Service;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import javax.annotation.PostConstruct;
+import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import static io.kaicode.elasticvc.api.ComponentService.LARGE_PAGE;
+import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
+import static org.elasticsearch.index.query.QueryBuilders.termsQuery;
 
 @Service
-public class MRCMLoader implements CommitListener {
+public class MRCMLoader {
     private static final Logger LOGGER = LoggerFactory.getLogger(MRCMLoader.class);
 
-    private final Map<String, MRCM> cache = new HashMap<>();
+    public static final String METRICS_CACHE_NAME = "mrcm";
+
+    private static final Set<String> MRCM_REFSETS = Set.of(Concepts.REFSET_MRCM_DOMAIN_INTERNATIONAL,
+            Concepts.REFSET_MRCM_ATTRIBUTE_DOMAIN_INTERNATIONAL, Concepts.REFSET_MRCM_ATTRIBUTE_RANGE_INTERNATIONAL);
+
+    // MRCM of each branch keyed by the version of the MRCM reference set members visible on the branch
+    private Cache<MRCMVersion, MRCM> cache;
+
+    // MRCM version of the head of each recently used branch
+    private Cache<String, HeadMRCMVersion> headVersions;
+
+    @Value("${cache.mrcm.max-entries}")
+    private int cacheMaxEntries;
 
     @Autowired
     private ECLQueryBuilder eclQueryBuilder;
@@ -48,13 +68,30 @@ public class MRCMLoader implements CommitListener {
     @Autowired
     private VersionControlHelper versionControlHelper;
 
-    @Override
-    public void preCommitCompletion(final Commit commit) throws IllegalStateException {
-        this.cache.remove(commit.getBranch().getPath());
+    @Autowired
+    private BranchService branchService;
+
+    @Autowired
+    private ElasticsearchOperations elasticsearchOperations;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @PostConstruct
+    public void initCache() {
+        cache = Caffeine.newBuilder()
+                .maximumSize(cacheMaxEntries)
+                .recordStats()
+                .build();
+        headVersions = Caffeine.newBuilder()
+                .maximumSize(cacheMaxEntries)
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, METRICS_CACHE_NAME);
     }
 
     /**
      * Retrieve the latest MRCM for the given branch.
+     * The MRCM is loaded from the store every time so the returned objects can be modified by the caller.
      *
      * @param branchPath     The branch to read MRCM data from.
      * @param branchCriteria The branch criteria to use for querying the target branch.
@@ -63,7 +100,7 @@ public class MRCMLoader implements CommitListener {
      */
     // TODO: Make this work for MRCM extensions. Ask Guillermo how he is extending the MRCM in Extensions TermMed are maintaining.
     public MRCM loadActiveMRCM(String branchPath, BranchCriteria branchCriteria) throws ServiceException {
-        final TimerUtil timer = new TimerUtil("MRCM");
+        final TimerUtil timer = new TimerUtil("MRCM").publishMetrics("mrcm-load");
         final List<Domain> domains = getDomains(branchPath, branchCriteria, timer);
         final List<AttributeDomain> attributeDomains = getAttributeDomains(branchPath, branchCriteria, timer);
         final List<AttributeRange> attributeRanges = getAttributeRanges(branchPath, branchCriteria, timer);
@@ -73,31 +110,97 @@ public class MRCMLoader implements CommitListener {
 
     /**
      * Retrieve the latest MRCM for the given branch. If the MRCM has been read
-     * for the given branch, then the data is read from an internal cache. The cache will
-     * subsequently be cleared whenever the MRCM is updated.
+     * for the given branch, then the data is read from an internal cache. The cache is
+     * keyed by the version of the MRCM reference set members on the branch so changes to other content do not cause a reload.
+     * The returned MRCM is shared and must not be modified.
      *
      * @param branchPath The branch to read MRCM data from.
      * @return The MRCM for the given branch.
      * @throws ServiceException When there is an issue reading MRCM.
      */
     public MRCM loadActiveMRCMFromCache(String branchPath) throws ServiceException {
-        LOGGER.debug("Checking cache for MRCM.");
-        final MRCM cachedMRCM = cache.get(branchPath);
-        if (cachedMRCM != null) {
-            LOGGER.debug("MRCM present in cache.");
-            return cachedMRCM;
+        final BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(branchPath);
+        return loadActiveMRCMFromCache(branchPath, branchCriteria, branchCriteria.getTimepoint());
+    }
+
+    /**
+     * Retrieve the MRCM for the given branch criteria from the internal cache or load it.
+     * Concurrent requests for the same version wait for a single load.
+     * Criteria including an open commit are never cached, content of the commit may still change before it completes,
+     * for example the MRCM update listener rewrites the rules and templates of members created in the commit without changing their start.
+     * The returned MRCM is shared and must not be modified.
+     *
+     * @param branchPath     The branch to read MRCM data from.
+     * @param branchCriteria The branch criteria to use for querying the target branch.
+     * @return The MRCM for the given branch.
+     * @throws ServiceException When there is an issue reading MRCM.
+     */
+    public MRCM loadActiveMRCMFromCache(String branchPath, BranchCriteria branchCriteria) throws ServiceException {
+        return loadActiveMRCMFromCache(branchPath, branchCriteria, branchService.findBranchOrThrow(branchPath).getHead());
+    }
+
+    private MRCM loadActiveMRCMFromCache(String branchPath, BranchCriteria branchCriteria, Date head) throws ServiceException {
+        final Date timepoint = branchCriteria.getTimepoint();
+        if (timepoint.after(head)) {
+            return loadActiveMRCM(branchPath, branchCriteria);
+        }
+        final MRCMVersion version;
+        if (timepoint.equals(head)) {
+            // Committed content does not change so the MRCM version is only looked up once for each head of the branch
+            HeadMRCMVersion headVersion = headVersions.getIfPresent(branchPath);
+            if (headVersion == null || !headVersion.head.equals(head)) {
+                headVersion = new HeadMRCMVersion(head, getMRCMVersion(branchPath, branchCriteria));
+                headVersions.put(branchPath, headVersion);
+            }
+            version = headVersion.version;
+        } else {
+            version = getMRCMVersion(branchPath, branchCriteria);
         }
-        LOGGER.debug("MRCM not present in cache; loading MRCM.");
+        return loadActiveMRCMFromCache(version, branchCriteria);
+    }
 
-        final BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(branchPath);
-        final TimerUtil timer = new TimerUtil("MRCM");
-        final List<Domain> domains = getDomains(branchPath, branchCriteria, timer);
-        final List<AttributeDomain> attributeDomains = getAttributeDomains(branchPath, branchCriteria, timer);
-        final List<AttributeRange> attributeRanges = getAttributeRanges(branchPath, branchCriteria, timer);
-        final MRCM mrcm = new MRCM(domains, attributeDomains, attributeRanges);
+    private MRCM loadActiveMRCMFromCache(MRCMVersion version, BranchCriteria branchCriteria) throws ServiceException {
+        try {
+            return cache.get(version, key -> {
+                LOGGER.debug("MRCM not present in cache; loading MRCM for {}.", version.branchPath);
+                try {
+                    return loadActiveMRCM(version.branchPath, branchCriteria);
+                } catch (ServiceException e) {
+                    throw new RuntimeServiceException(e.getMessage(), e);
+                }
+            });
+        } catch (RuntimeServiceException e) {
+            if (e.getCause() instanceof ServiceException) {
+                throw (ServiceException) e.getCause();
+            }
+            throw e;
+        }
+    }
 
-        cache.putIfAbsent(branchPath, mrcm);
-        return mrcm;
+    /**
+     * The number of MRCM reference set members visible on the branch with the latest and total start time of those versions.
+     * Any change to the members visible, on the branch itself or through a rebase, changes at least one of these values.
+     * Start times are summed as longs, a sum aggregation would lose precision in the double it returns.
+     */
+    private MRCMVersion getMRCMVersion(String branchPath, BranchCriteria branchCriteria) {
+        long memberCount = 0;
+        long latestStart = 0;
+        long totalStart = 0;
+        try (SearchHitsIterator<ReferenceSetMember> stream = elasticsearchOperations.searchForStream(new NativeSearchQueryBuilder()
+                .withQuery(boolQuery()
+                        .must(branchCriteria.getEntityBranchCriteria(ReferenceSetMember.class))
+                        .must(termsQuery(ReferenceSetMember.Fields.REFSET_ID, MRCM_REFSETS)))
+                .withFields("start")
+                .withPageable(LARGE_PAGE)
+                .build(), ReferenceSetMember.class)) {
+            while (stream.hasNext()) {
+                long start = stream.next().getContent().getStart().getTime();
+                memberCount++;
+                latestStart = Math.max(latestStart, start);
+                totalStart += start;
+            }
+        }
+        return new MRCMVersion(branchPath, memberCount, latestStart, totalStart);
     }
 
     private List<Domain> getDomains(final String branchPath,
@@ -237,4 +340,44 @@ public class MRCMLoader implements CommitListener {
         return null;
     }
 
+    private static final class HeadMRCMVersion {
+
+        private final Date head;
+        private final MRCMVersion version;
+
+        private HeadMRCMVersion(Date head, MRCMVersion version) {
+            this.head = head;
+            this.version = version;
+        }
+    }
+
+    static final class MRCMVersion {
+
+        private final String branchPath;
+        private final long memberCount;
+        private final long latestStart;
+        private final long totalStart;
+
+        MRCMVersion(String branchPath, long memberCount, long latestStart, long totalStart) {
+            this.branchPath = branchPath;
+            this.memberCount = memberCount;
+            this.latestStart = latestStart;
+            this.totalStart = totalStart;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            MRCMVersion that = (MRCMVersion) o;
+            return memberCount == that.memberCount && latestStart == that.latestStart
+                    && totalStart == that.totalStart && branchPath.equals(that.branchPath);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(branchPath, memberCount, latestStart, totalStart);
+        }
+    }
+
 }
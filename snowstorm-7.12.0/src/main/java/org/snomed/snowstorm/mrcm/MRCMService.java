@@ -5,7 +5,6 @@ import io.kaicode.elasticvc.api.BranchCriteria;
 import io.kaicode.elasticvc.api.VersionControlHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.snomed.langauges.ecl.domain.refinement.Operator;
 import org.snomed.snowstorm.core.data.domain.ConceptMini;
 import org.snomed.snowstorm.core.data.domain.Concepts;
 import org.snomed.snowstorm.core.data.domain.QueryConcept;
@@ -66,7 +65,7 @@ public class MRCMService {
 			String branchPath, List<LanguageDialect> languageDialects) throws ServiceException {
 
 		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(branchPath);
-		final MRCM branchMRCM = mrcmLoader.loadActiveMRCM(branchPath, branchCriteria);
+		final MRCM branchMRCM = mrcmLoader.loadActiveMRCMFromCache(branchPath, branchCriteria);
 
 		final List<AttributeDomain> attributeDomains = doRetrieveDomainAttributes(contentType, proximalPrimitiveModeling, parentIds, branchCriteria, branchMRCM);
 		Set<String> attributeIds = attributeDomains.stream().map(AttributeDomain::getReferencedComponentId).collect(Collectors.toSet());
@@ -89,7 +88,7 @@ public class MRCMService {
 			String branchPath, BranchCriteria branchCriteria) throws ServiceException {
 
 		// Load MRCM using active records applicable to this branch
-		final MRCM branchMRCM = mrcmLoader.loadActiveMRCM(branchPath, branchCriteria);
+		final MRCM branchMRCM = mrcmLoader.loadActiveMRCMFromCache(branchPath, branchCriteria);
 		final List<AttributeDomain> attributeDomains = doRetrieveDomainAttributes(contentType, proximalPrimitiveModeling, parentIds, branchCriteria, branchMRCM);
 
 		Set<String> attributeIds = attributeDomains.stream().map(AttributeDomain::getReferencedComponentId).collect(Collectors.toSet());
@@ -122,23 +121,13 @@ public class MRCMService {
 			allAncestors.addAll(parentIds);
 
 			// Find matching domains
-			Set<Domain> matchedDomains = branchMRCM.getDomains().stream().filter(domain -> {
-				Constraint constraint = proximalPrimitiveModeling ? domain.getProximalPrimitiveConstraint() : domain.getDomainConstraint();
-				Long domainConceptId = parseLong(constraint.getConceptId());
-				Operator operator = constraint.getOperator();
-				if ((operator == null || operator == Operator.descendantorselfof)
-						&& parentIds.contains(domainConceptId)) {
-					return true;
-				}
-				return (operator == Operator.descendantof || operator == Operator.descendantorselfof)
-						&& allAncestors.contains(domainConceptId);
-			}).collect(Collectors.toSet());
-			Set<String> domainReferenceComponents = matchedDomains.stream().map(Domain::getReferencedComponentId).collect(Collectors.toSet());
+			Set<Domain> matchedDomains = branchMRCM.getMatchingDomains(parentIds, allAncestors, proximalPrimitiveModeling);
 
 			// Find applicable attributes
-			attributeDomains.addAll(branchMRCM.getAttributeDomains().stream()
-					.filter(attributeDomain -> attributeDomain.getContentType().ruleAppliesToContentType(contentType)
-							&& domainReferenceComponents.contains(attributeDomain.getDomainId())).collect(Collectors.toList()));
+			for (Domain matchedDomain : matchedDomains) {
+				attributeDomains.addAll(branchMRCM.getAttributeDomainsOfDomain(matchedDomain.getReferencedComponentId()).stream()
+						.filter(attributeDomain -> attributeDomain.getContentType().ruleAppliesToContentType(contentType)).collect(Collectors.toList()));
+			}
 		}
 
 		return attributeDomains;
@@ -155,15 +144,14 @@ public class MRCMService {
 
 	private void addAttributeRangesToExtraConceptMiniFields(final ConceptMini attributeConceptMini, final ContentType contentType, final MRCM branchMRCM) {
 		attributeConceptMini.addExtraField("attributeRange",
-				branchMRCM.getAttributeRanges().stream()
-						.filter(attributeRange -> attributeRange.getReferencedComponentId().equals(attributeConceptMini.getConceptId()))
+				branchMRCM.getAttributeRanges(attributeConceptMini.getConceptId()).stream()
 						.filter(attributeRange -> contentType.ruleAppliesToContentType(attributeRange.getContentType()))
 						.collect(Collectors.toList()));
 	}
 
 	public Collection<ConceptMini> retrieveAttributeValues(ContentType contentType, String attributeId, String termPrefix, String branchPath, List<LanguageDialect> languageDialects) throws ServiceException {
 		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(branchPath);
-		MRCM branchMRCM = mrcmLoader.loadActiveMRCM(branchPath, branchCriteria);
+		MRCM branchMRCM = mrcmLoader.loadActiveMRCMFromCache(branchPath, branchCriteria);
 		return retrieveAttributeValues(contentType, attributeId, termPrefix, branchPath, languageDialects, branchMRCM);
 	}
 
@@ -1,13 +1,13 @@
 package org.snomed.snowstorm.mrcm.model;
 
+import org.snomed.langauges.ecl.domain.refinement.Operator;
 import org.snomed.snowstorm.core.data.domain.Concepts;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
 import java.util.stream.Collectors;
 
+import static java.lang.Long.parseLong;
+
 public class MRCM {
 
 	// Hardcoded Is a (attribute)
@@ -20,10 +20,28 @@ public class MRCM {
 	private final List<AttributeDomain> attributeDomains;
 	private final List<AttributeRange> attributeRanges;
 
+	// Lookups compiled once when the MRCM is loaded, the MRCM is cached and shared between requests
+	private final Map<String, List<AttributeDomain>> attributeDomainsByDomainId;
+	private final Map<String, List<AttributeRange>> attributeRangesByAttributeId;
+	private final List<DomainMatcher> domainMatchers;
+	private final List<DomainMatcher> proximalPrimitiveDomainMatchers;
+
 	public MRCM(List<Domain> domains, List<AttributeDomain> attributeDomains, List<AttributeRange> attributeRanges) {
 		this.domains = domains;
 		this.attributeDomains = attributeDomains;
 		this.attributeRanges = attributeRanges;
+		attributeDomainsByDomainId = attributeDomains.stream().collect(Collectors.groupingBy(AttributeDomain::getDomainId));
+		attributeRangesByAttributeId = attributeRanges.stream().collect(Collectors.groupingBy(AttributeRange::getReferencedComponentId));
+		domainMatchers = new ArrayList<>();
+		proximalPrimitiveDomainMatchers = new ArrayList<>();
+		for (Domain domain : domains) {
+			if (hasFocusConcept(domain.getDomainConstraint())) {
+				domainMatchers.add(new DomainMatcher(domain, domain.getDomainConstraint()));
+			}
+			if (hasFocusConcept(domain.getProximalPrimitiveConstraint())) {
+				proximalPrimitiveDomainMatchers.add(new DomainMatcher(domain, domain.getProximalPrimitiveConstraint()));
+			}
+		}
 	}
 
 	public List<Domain> getDomains() {
@@ -51,11 +69,58 @@ public class MRCM {
 		if (Concepts.ISA.equals(attributeId)) {
 			attributeRanges = Collections.singleton(IS_A_ATTRIBUTE_RANGE);
 		} else {
-			attributeRanges = getAttributeRanges().stream()
+			attributeRanges = getAttributeRanges(attributeId).stream()
 					.filter(attributeRange -> attributeRange.getContentType().ruleAppliesToContentType(contentType)
-							&& attributeRange.getRuleStrength() == RuleStrength.MANDATORY
-							&& attributeRange.getReferencedComponentId().equals(attributeId)).collect(Collectors.toSet());
+							&& attributeRange.getRuleStrength() == RuleStrength.MANDATORY).collect(Collectors.toSet());
 		}
 		return attributeRanges;
 	}
+
+	public List<AttributeDomain> getAttributeDomainsOfDomain(String domainId) {
+		return attributeDomainsByDomainId.getOrDefault(domainId, Collections.emptyList());
+	}
+
+	public List<AttributeRange> getAttributeRanges(String attributeId) {
+		return attributeRangesByAttributeId.getOrDefault(attributeId, Collections.emptyList());
+	}
+
+	/**
+	 * Domains that apply to a concept, matched using the focus concept of the domain constraint.
+	 * @param parentIds the parents of the concept.
+	 * @param ancestorIds the ancestors of the concept, including the parents.
+	 * @param proximalPrimitiveModeling match using the proximal primitive constraint of each domain rather than the domain constraint.
+	 */
+	public Set<Domain> getMatchingDomains(Set<Long> parentIds, Set<Long> ancestorIds, boolean proximalPrimitiveModeling) {
+		Set<Domain> matchedDomains = new HashSet<>();
+		for (DomainMatcher domainMatcher : proximalPrimitiveModeling ? proximalPrimitiveDomainMatchers : domainMatchers) {
+			if (domainMatcher.matches(parentIds, ancestorIds)) {
+				matchedDomains.add(domainMatcher.domain);
+			}
+		}
+		return matchedDomains;
+	}
+
+	private static boolean hasFocusConcept(Constraint constraint) {
+		return constraint != null && constraint.getConceptId() != null && !constraint.getConceptId().isEmpty() && constraint.getConceptId().chars().allMatch(Character::isDigit);
+	}
+
+	private static final class DomainMatcher {
+
+		private final Domain domain;
+		private final Long conceptId;
+		private final Operator operator;
+
+		private DomainMatcher(Domain domain, Constraint constraint) {
+			this.domain = domain;
+			conceptId = parseLong(constraint.getConceptId());
+			operator = constraint.getOperator();
+		}
+
+		private boolean matches(Set<Long> parentIds, Set<Long> ancestorIds) {
+			if ((operator == null || operator == Operator.descendantorselfof) && parentIds.contains(conceptId)) {
+				return true;
+			}
+			return (operator == Operator.descendantof || operator == Operator.descendantorselfof) && ancestorIds.contains(conceptId);
+		}
+	}
 }
@@ -22,6 +22,8 @@ import org.snomed.snowstorm.core.util.PageHelper;
 import org.snomed.snowstorm.core.util.SearchAfterPage;
 import org.snomed.snowstorm.core.util.SearchAfterPageImpl;
 import org.snomed.snowstorm.core.util.TimerUtil;
+import org.snomed.snowstorm.ecl.ECLQueryPlan;
+import org.snomed.snowstorm.ecl.ECLQueryService;
 import org.snomed.snowstorm.ecl.validation.ECLValidator;
 import org.snomed.snowstorm.rest.converter.SearchAfterHelper;
 import org.snomed.snowstorm.rest.pojo.*;
@@ -92,6 +94,9 @@ public class ConceptController {
 	@Autowired
 	private CodeSystemService codeSystemService;
 
+	@Autowired
+	private ECLQueryService eclQueryService;
+
 	@Value("${snowstorm.rest-api.allowUnlimitedConceptPagination:false}")
 	private boolean allowUnlimitedConceptPagination;
 
@@ -135,6 +140,10 @@ public class ConceptController {
 			@RequestParam(required = false) String statedEcl,
 			@RequestParam(required = false) Set<String> conceptIds,
 			@RequestParam(required = false) boolean returnIdOnly,
+
+			@Parameter(description = "When combining a term with ECL, stop searching once the requested page is filled. " +
+					"Faster for typeahead but the total is then only a lower bound, exact only on the last page.")
+			@RequestParam(required = false) boolean lowerBoundTotalAllowed,
 			
 			@RequestParam(required = false, defaultValue = "0") int offset,
 			@RequestParam(required = false, defaultValue = "50") int limit,
@@ -178,7 +187,8 @@ public class ConceptController {
 				.isNullEffectiveTime(isNullEffectiveTime)
 				.isReleased(isPublished)
 				.resultLanguageDialects(languageDialects)
-				.conceptIds(conceptIds);
+				.conceptIds(conceptIds)
+				.lowerBoundTotalAllowed(lowerBoundTotalAllowed);
 
 		queryBuilder.getDescriptionCriteria().preferredOrAcceptableValues(preferredOrAcceptableIn, preferredIn, acceptableIn);
 
@@ -361,6 +371,19 @@ public class ConceptController {
 		return search(branch, searchRequest, acceptLanguageHeader);
 	}
 
+	@Operation(summary = "Explain how an ECL query is executed.",
+			description = "Shows the rewrites applied by the query planner and the order in which each part of the expression runs, " +
+					"with the estimated and actual number of concepts selected by each part. " +
+					"Each part of the expression is run to find the actual number so this can be slow for broad expressions.")
+	@GetMapping(value = "/{branch}/concepts/ecl-plan")
+	public ECLQueryPlan explainECL(@PathVariable String branch,
+			@RequestParam String ecl,
+			@RequestParam(required = false, defaultValue = "false") boolean stated) {
+
+		branch = BranchPathUriUtil.decodePath(branch);
+		return eclQueryService.explain(ecl, versionControlHelper.getBranchCriteria(branch), stated);
+	}
+
 	@GetMapping(value = "/{branch}/concepts/{conceptId}/inbound-relationships")
 	@JsonView(value = View.Component.class)
 	public InboundRelationshipsResult findConceptInboundRelationships(@PathVariable String branch, @PathVariable String conceptId) {
@@ -549,6 +572,18 @@ public class ConceptController {
 		return parents;
 	}
 
+	@Operation(summary = "Count the descendants of a set of concepts.",
+			description = "Descendant counts for all the given concepts are found in one pass, rather than one query per concept.")
+	@GetMapping(value = "/browser/{branch}/concepts/descendant-counts")
+	public Map<Long, Long> findDescendantCounts(@PathVariable String branch,
+			@RequestParam Set<Long> conceptIds,
+			@RequestParam(defaultValue = "inferred") Relationship.CharacteristicType form) {
+
+		branch = BranchPathUriUtil.decodePath(branch);
+		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(branch);
+		return queryService.findDescendantCounts(branchCriteria, form == Relationship.CharacteristicType.stated, conceptIds);
+	}
+
 	@GetMapping(value = "/browser/{branch}/concepts/{conceptId}/ancestors")
 	@JsonView(value = View.Component.class)
 	public Collection<?> findConceptAncestors(@PathVariable String branch,
@@ -7,10 +7,14 @@ import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.ihtsdo.drools.response.InvalidContent;
 import org.snomed.snowstorm.core.data.domain.Concept;
+import org.snomed.snowstorm.core.data.domain.jobs.BulkValidationJob;
+import org.snomed.snowstorm.core.data.domain.jobs.BulkValidationResult;
 import org.snomed.snowstorm.core.data.services.ContentReportService;
 import org.snomed.snowstorm.core.data.services.ServiceException;
+import org.snomed.snowstorm.rest.pojo.ItemsPage;
 import org.snomed.snowstorm.validation.DroolsValidationService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
@@ -47,6 +51,34 @@ public class ConceptValidationController {
 		return validationService.validateConcepts(branchPath, concepts);
 	}
 
+	@PostMapping(value = "/browser/{branch}/validate/bulk")
+	@Operation(summary = "Start a bulk validation job.",
+			description = "Validation of all concepts matching the ECL using the Snomed-Drools project. " +
+					"Concepts are validated in batches in the background, the job location is returned. " +
+					"Poll the job to follow progress until the status is 'COMPLETED' or 'FAILED'.")
+	public ResponseEntity<Void> validateBulk(@Parameter(description = "The branch path") @PathVariable(value="branch") @NotNull String branchPath,
+			@Parameter(description = "ECL selecting the concepts to validate") @RequestParam String ecl) throws ServiceException {
+
+		branchPath = BranchPathUriUtil.decodePath(branchPath);
+		BulkValidationJob job = validationService.validateBulkAsync(branchPath, ecl);
+		return ControllerHelper.getCreatedResponse(job.getId());
+	}
+
+	@GetMapping(value = "/browser/{branch}/validate/bulk/{jobId}")
+	@Operation(description = "Retrieve the status and progress of a bulk validation job.")
+	public BulkValidationJob getBulkValidationJob(@PathVariable(value="branch") String branchPath, @PathVariable String jobId) {
+		return validationService.getBulkValidationJobOrThrow(BranchPathUriUtil.decodePath(branchPath), jobId);
+	}
+
+	@GetMapping(value = "/browser/{branch}/validate/bulk/{jobId}/results")
+	@Operation(description = "Retrieve the invalid content found by a bulk validation job, ordered by concept id.")
+	public ItemsPage<BulkValidationResult> getBulkValidationResults(@PathVariable(value="branch") String branchPath, @PathVariable String jobId,
+			@RequestParam(required = false, defaultValue = "0") int offset,
+			@RequestParam(required = false, defaultValue = "1000") int limit) {
+
+		return new ItemsPage<>(validationService.findBulkValidationResults(BranchPathUriUtil.decodePath(branchPath), jobId, ControllerHelper.getPageRequest(offset, limit)));
+	}
+
 	@PostMapping(value = "/validation-maintenance/reload-validation-rules")
 	@Operation(description = "Reload SNOMED Drools assertions and test resources.")
 	@PreAuthorize("hasPermission('ADMIN', 'global')")
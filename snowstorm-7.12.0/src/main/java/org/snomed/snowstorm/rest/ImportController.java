@@ -54,6 +54,7 @@ public class ImportController {
 		RF2ImportConfiguration importConfiguration = new RF2ImportConfiguration(importRequest.getType(), importRequest.getBranchPath());
 		importConfiguration.setCreateCodeSystemVersion(importRequest.getCreateCodeSystemVersion());
 		importConfiguration.setInternalRelease(importRequest.isInternalRelease());
+		importConfiguration.setCheckpoints(importRequest.isCheckpoints());
 		if (importRequest.getFilterModuleIds() != null && !importRequest.getFilterModuleIds().isEmpty()) {
 			importConfiguration.setModuleIds(Set.copyOf(importRequest.getFilterModuleIds()));
 		}
@@ -85,6 +86,7 @@ public class ImportController {
 		RF2ImportConfiguration importConfiguration = new RF2ImportConfiguration(importRequest.getType(), importRequest.getBranchPath());
 		importConfiguration.setCreateCodeSystemVersion(importRequest.getCreateCodeSystemVersion());
 		importConfiguration.setInternalRelease(importRequest.isInternalRelease());
+		importConfiguration.setCheckpoints(importRequest.isCheckpoints());
 		if (importRequest.getFilterModuleIds() != null && !importRequest.getFilterModuleIds().isEmpty()) {
 			importConfiguration.setModuleIds(Set.copyOf(importRequest.getFilterModuleIds()));
 		}
@@ -21,6 +21,10 @@ public class ImportCreationRequest {
 	@Schema(defaultValue = "[]")
 	List<String> filterModuleIds;
 
+	@Schema(defaultValue = "false", description = "Commit a DELTA or SNAPSHOT import in chunks. " +
+			"If the import is interrupted, importing the same archive file again resumes after the last committed chunk.")
+	private boolean checkpoints;
+
 	public RF2Type getType() {
 		return type;
 	}
@@ -60,4 +64,12 @@ public class ImportCreationRequest {
 	public void setFilterModuleIds(List<String> filterModuleIds) {
 		this.filterModuleIds = filterModuleIds;
 	}
+
+	public boolean isCheckpoints() {
+		return checkpoints;
+	}
+
+	public void setCheckpoints(boolean checkpoints) {
+		this.checkpoints = checkpoints;
+	}
 }
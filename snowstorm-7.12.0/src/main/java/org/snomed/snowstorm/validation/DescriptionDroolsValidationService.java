@@ -69,17 +69,19 @@ public class DescriptionDroolsValidationService implements org.ihtsdo.drools.ser
 	}
 
 	private Set<org.ihtsdo.drools.domain.Description> findDescriptionByExactTerm(String exactTerm, boolean active) {
-		NativeSearchQuery query = new NativeSearchQueryBuilder()
-				.withQuery(boolQuery()
-						.must(branchCriteria.getEntityBranchCriteria(Description.class))
-						.must(termQuery("active", active))
-						.must(termQuery("term", exactTerm))
-				)
-				.build();
-		List<Description> matches = elasticsearchTemplate.search(query, Description.class).get().map(SearchHit::getContent).collect(Collectors.toList());
-		return matches.stream()
-				.filter(description -> description.getTerm().equals(exactTerm))
-				.map(DroolsDescription::new).collect(Collectors.toSet());
+		List<Description> matches = queryService.getCached(active ? "active-descriptions-by-term" : "inactive-descriptions-by-term", exactTerm, () -> {
+			NativeSearchQuery query = new NativeSearchQueryBuilder()
+					.withQuery(boolQuery()
+							.must(branchCriteria.getEntityBranchCriteria(Description.class))
+							.must(termQuery("active", active))
+							.must(termQuery("term", exactTerm))
+					)
+					.build();
+			return elasticsearchTemplate.search(query, Description.class).get().map(SearchHit::getContent)
+					.filter(description -> description.getTerm().equals(exactTerm))
+					.collect(Collectors.toUnmodifiableList());
+		});
+		return matches.stream().map(DroolsDescription::new).collect(Collectors.toSet());
 	}
 
 	@Override
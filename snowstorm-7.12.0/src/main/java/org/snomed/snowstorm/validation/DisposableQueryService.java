@@ -6,27 +6,41 @@ import org.snomed.snowstorm.core.util.SearchAfterPage;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import static io.kaicode.elasticvc.api.ComponentService.LARGE_PAGE;
 
+/**
+ * Store lookups for the Snomed-Drools validation services of one validation request.
+ * Results are cached for the life of this service, or in the shared {@link ValidationQueryCache} for the branch version when one is given.
+ */
 public class DisposableQueryService {
 
+    private static final String SEARCH_LOOKUP = "search";
+    private static final String ANY_RESULTS_LOOKUP = "any-results";
+
     private final QueryService queryService;
     private final String branchPath;
 
-    private final Map<QueryService.ConceptQueryBuilder, Page<Long>> searchCache = Collections.synchronizedMap(new HashMap<>());
-    private final Map<QueryService.ConceptQueryBuilder, Boolean> anyResultsCache = Collections.synchronizedMap(new HashMap<>());
+    private final Map<List<Object>, CompletableFuture<Object>> localCache = new ConcurrentHashMap<>();
+    private final ValidationQueryCache.BranchVersion sharedCache;
     private final BranchCriteria branchCriteria;
 
     public DisposableQueryService(QueryService queryService, String branchPath, BranchCriteria branchCriteria) {
+        this(queryService, branchPath, branchCriteria, null);
+    }
+
+    public DisposableQueryService(QueryService queryService, String branchPath, BranchCriteria branchCriteria, ValidationQueryCache.BranchVersion sharedCache) {
         this.queryService = queryService;
         this.branchPath = branchPath;
         this.branchCriteria = branchCriteria;
+        this.sharedCache = sharedCache;
     }
 
     public QueryService.ConceptQueryBuilder createQueryBuilder(boolean stated) {
@@ -38,11 +52,7 @@ public class DisposableQueryService {
     }
 
     public Page<Long> searchForIds(QueryService.ConceptQueryBuilder queryBuilder) {
-        if (!searchCache.containsKey(queryBuilder)) {
-            SearchAfterPage<Long> ids = queryService.searchForIds(queryBuilder, branchCriteria, LARGE_PAGE);
-            searchCache.put(queryBuilder, ids);
-        }
-        return searchCache.get(queryBuilder);
+        return getCached(SEARCH_LOOKUP, queryBuilder, () -> queryService.searchForIds(queryBuilder, branchCriteria, LARGE_PAGE));
     }
 
     public Set<String> findAncestorIds(boolean stated, String conceptId) {
@@ -50,10 +60,30 @@ public class DisposableQueryService {
     }
 
     public boolean isAnyResults(QueryService.ConceptQueryBuilder queryBuilder) {
-        if (!anyResultsCache.containsKey(queryBuilder)) {
+        return getCached(ANY_RESULTS_LOOKUP, queryBuilder, () -> {
             SearchAfterPage<Long> page = queryService.searchForIds(queryBuilder, branchCriteria, PageRequest.of(0, 1));
-            anyResultsCache.put(queryBuilder, !page.isEmpty());
+            return !page.isEmpty();
+        });
+    }
+
+    /**
+     * Returns the cached result of a lookup against the branch version of this service or loads it.
+     * The loader must only depend on the committed content of the branch version, values must not be modified by callers.
+     * @param lookup name of the type of lookup.
+     * @param key parameters of the lookup, must implement equals and hashCode.
+     */
+    public <T> T getCached(String lookup, Object key, Supplier<T> loader) {
+        if (sharedCache != null) {
+            return sharedCache.get(lookup, key, loader);
+        }
+        List<Object> cacheKey = List.of(lookup, key);
+        CompletableFuture<Object> loading = new CompletableFuture<>();
+        CompletableFuture<Object> existing = localCache.putIfAbsent(cacheKey, loading);
+        try {
+            return ValidationQueryCache.loadOrJoin(existing != null ? existing : loading, loading, loader);
+        } catch (RuntimeException e) {
+            localCache.remove(cacheKey, loading);
+            throw e;
         }
-        return anyResultsCache.get(queryBuilder);
     }
 }
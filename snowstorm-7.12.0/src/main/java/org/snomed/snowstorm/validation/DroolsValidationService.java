@@ -5,6 +5,7 @@ import io.kaicode.elasticvc.api.BranchCriteria;
 import io.kaicode.elasticvc.api.BranchService;
 import io.kaicode.elasticvc.api.VersionControlHelper;
 import io.kaicode.elasticvc.domain.Branch;
+import io.micrometer.core.instrument.MeterRegistry;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import org.ihtsdo.drools.RuleExecutor;
 import org.ihtsdo.drools.RuleExecutorFactory;
@@ -15,26 +16,36 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.snomed.snowstorm.config.Config;
 import org.snomed.snowstorm.core.data.domain.*;
+import org.snomed.snowstorm.core.data.domain.jobs.BulkValidationJob;
+import org.snomed.snowstorm.core.data.domain.jobs.BulkValidationResult;
+import org.snomed.snowstorm.core.data.repositories.BulkValidationJobRepository;
+import org.snomed.snowstorm.core.data.repositories.BulkValidationResultRepository;
 import org.snomed.snowstorm.core.data.services.*;
-import org.snomed.snowstorm.core.util.SearchAfterPage;
+import org.snomed.snowstorm.ecl.ECLQueryService;
 import org.snomed.snowstorm.validation.domain.DroolsConcept;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.ResourceLoader;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
 import org.springframework.data.elasticsearch.core.SearchHitsIterator;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
+import org.springframework.data.elasticsearch.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 import org.springframework.util.Assert;
 
+import javax.annotation.PostConstruct;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.PrintWriter;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static io.kaicode.elasticvc.api.VersionControlHelper.LARGE_PAGE;
@@ -62,12 +73,38 @@ public class DroolsValidationService {
 	@Autowired
 	private ConceptService conceptService;
 
+	@Autowired
+	private ECLQueryService eclQueryService;
+
+	@Autowired
+	private BulkValidationJobRepository bulkValidationJobRepository;
+
+	@Autowired
+	private BulkValidationResultRepository bulkValidationResultRepository;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Value("${validation.drools.query-cache.enabled}")
+	private boolean queryCacheEnabled;
+
+	@Value("${validation.drools.query-cache.max-heap-mb}")
+	private long queryCacheMaxHeapMb;
+
+	@Value("${validation.bulk.expiry-days}")
+	private int bulkJobExpiryDays;
+
+	private ValidationQueryCache queryCache;
+
 	private final String droolsRulesPath;
 	private final ResourceManager testResourceManager;
 
 	private RuleExecutor ruleExecutor;
 	private TestResourceProvider testResourceProvider;
-	private final ExecutorService batchExecutorService;
+	// Runs one bulk validation job at a time, the batches of the job are validated on the worker threads
+	private final ThreadPoolTaskExecutor jobExecutor;
+	private final ThreadPoolTaskExecutor batchWorkerExecutor;
+	private final int batchSize;
 
 	private Set<String> semanticTags;
 
@@ -75,13 +112,26 @@ public class DroolsValidationService {
 
 	public DroolsValidationService(
 			@Value("${validation.drools.rules.path}") String droolsRulesPath,
+			@Value("${validation.bulk.batch-size}") int batchSize,
 			@Autowired TestResourcesResourceManagerConfiguration resourceManagerConfiguration,
-			@Autowired ResourceLoader cloudResourceLoader) {
+			@Autowired ResourceLoader cloudResourceLoader,
+			@Autowired @Qualifier("validationJobExecutor") ThreadPoolTaskExecutor jobExecutor,
+			@Autowired @Qualifier("validationBatchExecutor") ThreadPoolTaskExecutor batchWorkerExecutor) {
 
 		this.droolsRulesPath = droolsRulesPath;
 		testResourceManager = new ResourceManager(resourceManagerConfiguration, cloudResourceLoader);
 		newRuleExecutorAndResources();
-		batchExecutorService = Executors.newFixedThreadPool(1);
+		this.jobExecutor = jobExecutor;
+		this.batchWorkerExecutor = batchWorkerExecutor;
+		this.batchSize = Math.max(1, batchSize);
+	}
+
+	@PostConstruct
+	public void initQueryCache() {
+		if (queryCacheEnabled) {
+			queryCache = new ValidationQueryCache(queryCacheMaxHeapMb * 1024 * 1024);
+			queryCache.bindMetrics(meterRegistry);
+		}
 	}
 
 	public Set<String> getSemanticTags() {
@@ -95,12 +145,7 @@ public class DroolsValidationService {
 	public List<InvalidContent> validateConcepts(String branchPath, Set<Concept> concepts) throws ServiceException {
 		// Get drools assertion groups to run
 		Branch branchWithInheritedMetadata = branchService.findBranchOrThrow(branchPath, true);
-		String assertionGroupNamesMetaString = branchWithInheritedMetadata.getMetadata().getString(BranchMetadataKeys.ASSERTION_GROUP_NAMES);
-		if (assertionGroupNamesMetaString == null) {
-			throw new ServiceException("'" + BranchMetadataKeys.ASSERTION_GROUP_NAMES + "' not set on branch metadata for Snomed-Drools validation configuration.");
-		}
-		String[] names = assertionGroupNamesMetaString.split(",");
-		Set<String> ruleSetNames = new HashSet<>(Arrays.asList(names));
+		Set<String> ruleSetNames = getRuleSetNames(branchWithInheritedMetadata);
 		if (ruleSetNames.isEmpty()) {
 			logger.info("Branch metadata item '{}' set as empty for {}, skipping Snomed-Drools validation.", BranchMetadataKeys.ASSERTION_GROUP_NAMES, branchPath);
 			return Collections.emptyList();
@@ -110,56 +155,155 @@ public class DroolsValidationService {
 		concepts.forEach(ConceptValidationHelper::generateTemporaryUUIDsIfNotSet);
 
 		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(branchWithInheritedMetadata);
-		Set<DroolsConcept> droolsConcepts = concepts.stream().map(DroolsConcept::new).collect(Collectors.toSet());
 
 		// Look-up release hashes from the store to set/update the component effectiveTimes
 		setReleaseHashAndEffectiveTime(concepts, branchCriteria);
-		Set<String> inferredTopLevelHierarchies = getTopLevelHierarchies();
-		DisposableQueryService disposableQueryService = new DisposableQueryService(queryService, branchPath, branchCriteria);
-		ConceptDroolsValidationService droolsConceptService = new ConceptDroolsValidationService(branchCriteria, elasticsearchOperations, disposableQueryService, inferredTopLevelHierarchies);
-		DescriptionDroolsValidationService droolsDescriptionService = new DescriptionDroolsValidationService(branchPath, branchCriteria, elasticsearchOperations,
-				this.descriptionService, disposableQueryService, testResourceProvider, inferredTopLevelHierarchies);
-		RelationshipDroolsValidationService relationshipService = new RelationshipDroolsValidationService(disposableQueryService);
-		final List<InvalidContent> invalidContents = ruleExecutor.execute(ruleSetNames, droolsConcepts, droolsConceptService, droolsDescriptionService, relationshipService, false, false);
-
-		return invalidContents;
+		return new ValidationContext(branchPath, branchCriteria, ruleSetNames).validate(concepts);
 	}
 
-	public void validateBatch(String branch, String ecl, boolean afterClassification) {
-		batchExecutorService.submit(() -> {
-			try {
-				final PageRequest page = PageRequest.of(0, 2_000);
-				long startTime = new Date().getTime();
-				final SearchAfterPage<Long> conceptIds = queryService.searchForIds(queryService.createQueryBuilder(false).ecl(ecl), branch, page);
-				final int total = conceptIds.getNumberOfElements();
-				long doneCount = 0;
-				final String fileName = "validation-bulk-" + new Date().getTime() + ".tsv";
-				logger.info("Validating batch of {} concepts using ECL {} on branch {}, writing to {}", total, ecl, branch, fileName);
-
-				try (PrintWriter writer = new PrintWriter(fileName)) {
-					writer.println("conceptId\tfsn\terrorCount\tmessages\ttsv-duration\ttotal-duration");
-					writer.printf("-\t-\t-\tValidating batch of %s concepts using ECL %s on branch %s\t0\t0%n", total, ecl, branch);
-					for (List<Long> partition : Iterables.partition(conceptIds, 100)) {
-						final Page<Concept> concepts = conceptService.find(partition, Config.DEFAULT_LANGUAGE_DIALECTS, branch, page);
-						for (Concept concept : concepts) {
-							doneCount++;
-							if (doneCount % 10 == 0) {
-								logger.info("Validating concept {} of {}.", doneCount, total);
-							}
-						}
-					}
-					long end = new Date().getTime() - startTime;
-					writer.printf("-\t-\t-\tValidated batch of %s concepts using ECL %s on branch %s\t0\t%s%n", total, ecl, branch, end);
-				} catch (FileNotFoundException e) {
-					e.printStackTrace();
-				}
+	private Set<String> getRuleSetNames(Branch branchWithInheritedMetadata) throws ServiceException {
+		String assertionGroupNamesMetaString = branchWithInheritedMetadata.getMetadata().getString(BranchMetadataKeys.ASSERTION_GROUP_NAMES);
+		if (assertionGroupNamesMetaString == null) {
+			throw new ServiceException("'" + BranchMetadataKeys.ASSERTION_GROUP_NAMES + "' not set on branch metadata for Snomed-Drools validation configuration.");
+		}
+		String[] names = assertionGroupNamesMetaString.split(",");
+		return new HashSet<>(Arrays.asList(names));
+	}
+
+	/**
+	 * Validates every concept matching the ECL on the current version of the branch.
+	 * Concept ids are selected up front, then the concepts are loaded and validated in batches on the worker threads.
+	 * All batches share one set of Snomed-Drools services so their query caches are shared across the job.
+	 * Progress and the invalid content found are saved as the job runs.
+	 */
+	public BulkValidationJob validateBulkAsync(String branch, String ecl) throws ServiceException {
+		Branch branchWithInheritedMetadata = branchService.findBranchOrThrow(branch, true);
+		Set<String> ruleSetNames = getRuleSetNames(branchWithInheritedMetadata);
+		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(branchWithInheritedMetadata);
+		// Fail fast on invalid ECL
+		eclQueryService.selectConceptIds(ecl, branchCriteria, false, PageRequest.of(0, 1));
 
-				logger.info("Validated batch of {} concepts using ECL {} on branch {}, written to {}", total, ecl, branch, fileName);
+		BulkValidationJob job = new BulkValidationJob(branch, ecl);
+		bulkValidationJobRepository.save(job);
+		jobExecutor.submit(() -> {
+			try {
+				validateBulk(job, branchCriteria, ruleSetNames);
 			} catch (Exception e) {
 				logger.error("Failed to validate batch using ECL {} on branch {}", ecl, branch, e);
-				throw e;
+				job.setStatus(JobStatus.FAILED);
+				job.setMessage(e.getMessage());
+				job.setEndDate(new Date());
+				bulkValidationJobRepository.save(job);
 			}
 		});
+		return job;
+	}
+
+	private void validateBulk(BulkValidationJob job, BranchCriteria branchCriteria, Set<String> ruleSetNames) throws InterruptedException, ExecutionException {
+		String branch = job.getBranch();
+		job.setStatus(JobStatus.IN_PROGRESS);
+		job.setStartDate(new Date());
+		// Concept ids are selected a page at a time, each page is one batch
+		Page<Long> page = eclQueryService.selectConceptIds(job.getEcl(), branchCriteria, false, PageRequest.of(0, batchSize));
+		job.setTotalConcepts((int) page.getTotalElements());
+		bulkValidationJobRepository.save(job);
+		logger.info("Validating batch of {} concepts using ECL {} on branch {}, job {}", page.getTotalElements(), job.getEcl(), branch, job.getId());
+
+		ValidationContext validationContext = new ValidationContext(branch, branchCriteria, ruleSetNames);
+		// Limits the pages held in memory waiting for a worker
+		Semaphore batchesInFlight = new Semaphore(batchWorkerExecutor.getMaxPoolSize() * 2);
+		List<Future<?>> futures = new ArrayList<>();
+		int totalConcepts = 0;
+		try {
+			while (page.hasContent()) {
+				List<Long> batch = page.getContent();
+				totalConcepts += batch.size();
+				batchesInFlight.acquire();
+				futures.add(batchWorkerExecutor.submit(() -> {
+					try {
+						Set<Concept> concepts = new HashSet<>(conceptService.find(branchCriteria, branch, batch, Config.DEFAULT_LANGUAGE_DIALECTS));
+						List<BulkValidationResult> results = validationContext.validate(concepts).stream()
+								.map(invalidContent -> new BulkValidationResult(job.getId(), invalidContent.getConceptId(),
+										invalidContent.getComponent() != null ? invalidContent.getComponent().getId() : null,
+										invalidContent.getRuleId(), invalidContent.getSeverity().name(), invalidContent.getMessage()))
+								.collect(Collectors.toList());
+						if (!results.isEmpty()) {
+							bulkValidationResultRepository.saveAll(results);
+						}
+						batchValidated(job, batch.size(), results.size());
+						return null;
+					} finally {
+						batchesInFlight.release();
+					}
+				}));
+				if (!page.hasNext()) {
+					break;
+				}
+				page = eclQueryService.selectConceptIds(job.getEcl(), branchCriteria, false, PageRequest.of(page.getNumber() + 1, batchSize));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException | ExecutionException e) {
+			futures.forEach(future -> future.cancel(true));
+			throw e;
+		}
+		// The total of the first page can be an estimate
+		job.setTotalConcepts(totalConcepts);
+
+		job.setStatus(JobStatus.COMPLETED);
+		job.setEndDate(new Date());
+		bulkValidationJobRepository.save(job);
+		logger.info("Validated batch of {} concepts using ECL {} on branch {} at {} concepts per second, {} invalid content found, job {}",
+				job.getValidatedConcepts(), job.getEcl(), branch, job.getConceptsPerSecond(), job.getInvalidContentCount(), job.getId());
+	}
+
+	private synchronized void batchValidated(BulkValidationJob job, int conceptCount, int invalidContentCount) {
+		job.batchValidated(conceptCount, invalidContentCount);
+		bulkValidationJobRepository.save(job);
+	}
+
+	public BulkValidationJob getBulkValidationJobOrThrow(String branch, String jobId) {
+		return bulkValidationJobRepository.findById(jobId)
+				.filter(job -> job.getBranch().equals(branch))
+				.orElseThrow(() -> new NotFoundException("Bulk validation job not found on branch " + branch + "."));
+	}
+
+	public Page<BulkValidationResult> findBulkValidationResults(String branch, String jobId, PageRequest pageRequest) {
+		getBulkValidationJobOrThrow(branch, jobId);
+		return bulkValidationResultRepository.findByJobId(jobId, PageRequest.of(pageRequest.getPageNumber(), pageRequest.getPageSize(), Sort.by(BulkValidationResult.Fields.CONCEPT_ID)));
+	}
+
+	@Scheduled(fixedDelay = 3600_000, initialDelay = 600_000)
+	public void deleteExpiredBulkValidationJobs() {
+		deleteBulkValidationJobsBefore(new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(bulkJobExpiryDays)));
+	}
+
+	/**
+	 * Deletes bulk validation jobs, and their results, that ended before the given date.
+	 * Jobs that never ended, because the server stopped while they were running, are deleted if they started before the date.
+	 */
+	public void deleteBulkValidationJobsBefore(Date date) {
+		List<String> jobIds = new ArrayList<>();
+		try (SearchHitsIterator<BulkValidationJob> jobStream = elasticsearchOperations.searchForStream(new NativeSearchQueryBuilder()
+				.withQuery(boolQuery()
+						.should(rangeQuery(BulkValidationJob.Fields.END_DATE).lt(date.getTime()))
+						.should(boolQuery()
+								.mustNot(existsQuery(BulkValidationJob.Fields.END_DATE))
+								.must(rangeQuery(BulkValidationJob.Fields.START_DATE).lt(date.getTime()))))
+				.withPageable(LARGE_PAGE)
+				.build(), BulkValidationJob.class)) {
+			jobStream.forEachRemaining(hit -> jobIds.add(hit.getContent().getId()));
+		}
+		if (jobIds.isEmpty()) {
+			return;
+		}
+		for (List<String> jobIdBatch : Iterables.partition(jobIds, 1_000)) {
+			Query resultQuery = new NativeSearchQueryBuilder().withQuery(termsQuery(BulkValidationResult.Fields.JOB_ID, jobIdBatch)).build();
+			elasticsearchOperations.delete(resultQuery, BulkValidationResult.class, elasticsearchOperations.getIndexCoordinatesFor(BulkValidationResult.class));
+			bulkValidationJobRepository.deleteAllById(jobIdBatch);
+		}
+		logger.info("Deleted {} bulk validation jobs ended before {}.", jobIds.size(), date);
 	}
 
 	private void setReleaseHashAndEffectiveTime(Set<Concept> concepts, BranchCriteria branchCriteria) {
@@ -255,13 +399,49 @@ public class DroolsValidationService {
 
 	private Set<String> topLevelHierarchies;
 
+	private final Object topLevelHierarchiesLock = new Object();
+
 	private Set<String> getTopLevelHierarchies() {
 		Branch latestMainBranch = branchService.findLatest("MAIN");
-		if (topLevelHierarchiesLastFetched == null || latestMainBranch.getHeadTimestamp() > topLevelHierarchiesLastFetched) {
-			topLevelHierarchies = queryService.findChildrenIdsAsUnion(versionControlHelper.getBranchCriteria("MAIN"), false, Collections.singleton(Long.valueOf(Concepts.SNOMEDCT_ROOT)))
-					.stream().map(Object::toString).collect(Collectors.toSet());
-			topLevelHierarchiesLastFetched = latestMainBranch.getHeadTimestamp();
+		synchronized (topLevelHierarchiesLock) {
+			if (topLevelHierarchiesLastFetched == null || latestMainBranch.getHeadTimestamp() > topLevelHierarchiesLastFetched) {
+				topLevelHierarchies = queryService.findChildrenIdsAsUnion(versionControlHelper.getBranchCriteria(latestMainBranch), false, Collections.singleton(Long.valueOf(Concepts.SNOMEDCT_ROOT)))
+						.stream().map(Object::toString).collect(Collectors.toUnmodifiableSet());
+				topLevelHierarchiesLastFetched = latestMainBranch.getHeadTimestamp();
+			}
+			return topLevelHierarchies;
+		}
+	}
+
+	/**
+	 * The Snomed-Drools services used to validate content on one version of a branch.
+	 * The services cache the results of their queries and are safe to share between threads,
+	 * results that depend only on the branch version are shared with other requests through the {@link ValidationQueryCache}.
+	 */
+	private class ValidationContext {
+
+		private final Set<String> ruleSetNames;
+		private final RuleExecutor ruleExecutor;
+		private final ConceptDroolsValidationService droolsConceptService;
+		private final DescriptionDroolsValidationService droolsDescriptionService;
+		private final RelationshipDroolsValidationService relationshipService;
+
+		private ValidationContext(String branchPath, BranchCriteria branchCriteria, Set<String> ruleSetNames) {
+			this.ruleSetNames = ruleSetNames;
+			// Rules reloaded during a bulk job are not used until the next job
+			ruleExecutor = DroolsValidationService.this.ruleExecutor;
+			Set<String> inferredTopLevelHierarchies = getTopLevelHierarchies();
+			DisposableQueryService disposableQueryService = new DisposableQueryService(queryService, branchPath, branchCriteria,
+					queryCache != null ? queryCache.getBranchVersion(branchPath, branchCriteria.getTimepoint()) : null);
+			droolsConceptService = new ConceptDroolsValidationService(branchCriteria, elasticsearchOperations, disposableQueryService, inferredTopLevelHierarchies);
+			droolsDescriptionService = new DescriptionDroolsValidationService(branchPath, branchCriteria, elasticsearchOperations,
+					descriptionService, disposableQueryService, testResourceProvider, inferredTopLevelHierarchies);
+			relationshipService = new RelationshipDroolsValidationService(disposableQueryService);
+		}
+
+		private List<InvalidContent> validate(Set<Concept> concepts) {
+			Set<DroolsConcept> droolsConcepts = concepts.stream().map(DroolsConcept::new).collect(Collectors.toSet());
+			return ruleExecutor.execute(ruleSetNames, droolsConcepts, droolsConceptService, droolsDescriptionService, relationshipService, false, false);
 		}
-		return topLevelHierarchies;
 	}
 }
@@ -0,0 +1,166 @@
+package org.snomed.snowstorm.validation;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Page;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Results of the store lookups made by the Snomed-Drools validation services, shared by all validation requests.
+ * Entries are keyed by branch path and branch head so the results of one version of a branch are reused until the next commit,
+ * entries of older versions of a branch are removed when a newer version is first validated.
+ * The total heap used is bounded by an estimated weight for each entry, entries are evicted using Caffeine's W-TinyLFU policy.
+ * Lookups are loaded on the requesting thread outside of the cache's map computation, so a slow lookup only blocks requests for the same key.
+ */
+public class ValidationQueryCache {
+
+	public static final String METRICS_CACHE_NAME = "validation-queries";
+
+	private static final int BYTES_PER_ENTRY = 256;
+	private static final int BYTES_PER_ID = 16;
+	private static final int BYTES_PER_COMPONENT = 512;
+
+	private final AsyncCache<CacheKey, Object> cache;
+
+	private final Map<String, Date> branchHeads;
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	public ValidationQueryCache(long maxWeightBytes) {
+		cache = Caffeine.newBuilder()
+				.maximumWeight(maxWeightBytes)
+				.weigher(ValidationQueryCache::estimateWeight)
+				.recordStats()
+				.buildAsync();
+		branchHeads = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * @return view of the cache for one version of a branch.
+	 */
+	public BranchVersion getBranchVersion(String path, Date head) {
+		Date latestHead = branchHeads.merge(path, head, (existing, given) -> given.after(existing) ? given : existing);
+		if (latestHead == head && cache.asMap().keySet().removeIf(key -> key.path.equals(path) && key.head.before(head))) {
+			logger.debug("Validation query cache expired {} before {}", path, head.getTime());
+		}
+		return new BranchVersion(path, head);
+	}
+
+	static int estimateWeight(CacheKey key, Object value) {
+		long weight = BYTES_PER_ENTRY + key.getKeyLength() * 2L;
+		if (value instanceof Page) {
+			weight += ((Page<?>) value).getNumberOfElements() * (long) BYTES_PER_ID;
+		} else if (value instanceof Collection) {
+			weight += ((Collection<?>) value).size() * (long) BYTES_PER_COMPONENT;
+		}
+		return (int) Math.min(weight, Integer.MAX_VALUE);
+	}
+
+	public void bindMetrics(MeterRegistry meterRegistry) {
+		CaffeineCacheMetrics.monitor(meterRegistry, cache.synchronous(), METRICS_CACHE_NAME);
+		Gauge.builder("cache.validation.hit.ratio", cache, c -> c.synchronous().stats().hitRate())
+				.description("Ratio of Snomed-Drools validation lookups answered from the cache")
+				.register(meterRegistry);
+		Gauge.builder("cache.validation.weight", this, ValidationQueryCache::getWeightBytes)
+				.description("Estimated heap used by cached Snomed-Drools validation lookups")
+				.baseUnit("bytes")
+				.register(meterRegistry);
+	}
+
+	public long getWeightBytes() {
+		return cache.synchronous().policy().eviction().map(eviction -> eviction.weightedSize().orElse(0L)).orElse(0L);
+	}
+
+	long estimatedSize() {
+		return cache.synchronous().estimatedSize();
+	}
+
+	/**
+	 * Runs the loader if the loading future is the value held by the cache, otherwise waits for the value loaded by another request.
+	 * A failed load completes the future exceptionally, which removes it from the cache.
+	 */
+	@SuppressWarnings("unchecked")
+	static <T> T loadOrJoin(CompletableFuture<Object> value, CompletableFuture<Object> loading, Supplier<T> loader) {
+		if (value == loading) {
+			try {
+				loading.complete(loader.get());
+			} catch (RuntimeException | Error e) {
+				loading.completeExceptionally(e);
+				throw e;
+			}
+		}
+		try {
+			return (T) value.join();
+		} catch (CompletionException e) {
+			throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+		}
+	}
+
+	/**
+	 * View of the shared cache for a single branch version.
+	 */
+	public class BranchVersion {
+
+		private final String path;
+		private final Date head;
+
+		private BranchVersion(String path, Date head) {
+			this.path = path;
+			this.head = head;
+		}
+
+		/**
+		 * Returns the cached result of the lookup or loads it. Concurrent requests for the same lookup wait for a single load.
+		 * Values must not be modified by callers.
+		 * @param lookup name of the type of lookup.
+		 * @param key parameters of the lookup, must implement equals and hashCode.
+		 */
+		public <T> T get(String lookup, Object key, Supplier<T> loader) {
+			CompletableFuture<Object> loading = new CompletableFuture<>();
+			CompletableFuture<Object> value = cache.get(new CacheKey(path, head, lookup, key), (cacheKey, executor) -> loading);
+			return loadOrJoin(value, loading, loader);
+		}
+	}
+
+	static final class CacheKey {
+
+		private final String path;
+		private final Date head;
+		private final String lookup;
+		private final Object key;
+
+		CacheKey(String path, Date head, String lookup, Object key) {
+			this.path = path;
+			this.head = head;
+			this.lookup = lookup;
+			this.key = key;
+		}
+
+		int getKeyLength() {
+			return path.length() + lookup.length() + String.valueOf(key).length();
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (o == null || getClass() != o.getClass()) return false;
+			CacheKey cacheKey = (CacheKey) o;
+			return path.equals(cacheKey.path) && head.equals(cacheKey.head) && lookup.equals(cacheKey.lookup) && key.equals(cacheKey.key);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(path, head, lookup, key);
+		}
+	}
+}
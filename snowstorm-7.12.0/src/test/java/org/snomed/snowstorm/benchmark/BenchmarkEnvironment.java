@@ -0,0 +1,81 @@
+package org.snomed.snowstorm.benchmark;
+
+import com.google.common.collect.Sets;
+import io.kaicode.elasticvc.api.BranchService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.otf.snomedboot.testutil.ZipUtil;
+import org.snomed.snowstorm.TestConfig;
+import org.snomed.snowstorm.core.data.domain.CodeSystem;
+import org.snomed.snowstorm.core.data.services.CodeSystemService;
+import org.snomed.snowstorm.core.rf2.RF2Type;
+import org.snomed.snowstorm.core.rf2.rf2import.ImportService;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.web.authentication.preauth.PreAuthenticatedAuthenticationToken;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+
+/**
+ * Application context shared by all benchmarks in a forked JVM.
+ * Starts Snowstorm against the Elasticsearch test container and imports the bundled dummy SNOMED CT content into MAIN, once per fork.
+ */
+final class BenchmarkEnvironment {
+
+	static final String BRANCH = "MAIN";
+
+	private static final String RF2_RELEASE = "src/main/resources/dummy-snomed-content/RF2Release";
+
+	private static final Logger logger = LoggerFactory.getLogger(BenchmarkEnvironment.class);
+
+	private static ConfigurableApplicationContext applicationContext;
+
+	private BenchmarkEnvironment() {
+	}
+
+	static synchronized ConfigurableApplicationContext getApplicationContext() throws Exception {
+		if (applicationContext == null) {
+			applicationContext = new SpringApplicationBuilder(TestConfig.class)
+					.properties("server.port=0")
+					.run();
+			authenticate();
+			importContent(applicationContext);
+			Runtime.getRuntime().addShutdownHook(new Thread(applicationContext::close));
+		}
+		authenticate();
+		return applicationContext;
+	}
+
+	static <T> T getBean(Class<T> type) throws Exception {
+		return getApplicationContext().getBean(type);
+	}
+
+	private static void authenticate() {
+		PreAuthenticatedAuthenticationToken authentication = new PreAuthenticatedAuthenticationToken("benchmark", "1234", Sets.newHashSet(new SimpleGrantedAuthority("USER")));
+		SecurityContextHolder.setContext(new SecurityContextImpl(authentication));
+	}
+
+	private static void importContent(ConfigurableApplicationContext applicationContext) throws Exception {
+		BranchService branchService = applicationContext.getBean(BranchService.class);
+		if (branchService.exists(BRANCH)) {
+			// Local Elasticsearch already has content
+			return;
+		}
+		branchService.create(BRANCH);
+		applicationContext.getBean(CodeSystemService.class).createCodeSystem(new CodeSystem("SNOMEDCT", BRANCH));
+
+		logger.info("Importing benchmark content from {}", RF2_RELEASE);
+		File rf2Archive = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines(RF2_RELEASE);
+		ImportService importService = applicationContext.getBean(ImportService.class);
+		String importJobId = importService.createJob(RF2Type.SNAPSHOT, BRANCH, false, false);
+		try (InputStream inputStream = new FileInputStream(rf2Archive)) {
+			importService.importArchive(importJobId, inputStream);
+		}
+	}
+
+}
@@ -0,0 +1,46 @@
+package org.snomed.snowstorm.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.snomed.snowstorm.core.data.domain.Description;
+import org.snomed.snowstorm.core.data.services.DescriptionService;
+import org.snomed.snowstorm.core.data.services.TooCostlyException;
+import org.snomed.snowstorm.core.data.services.pojo.DescriptionCriteria;
+import org.snomed.snowstorm.core.data.services.pojo.PageWithBucketAggregations;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Description term search including the concept and bucket aggregations used by the browser search.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class DescriptionSearchBenchmark {
+
+	@Param({"find", "clinical finding", "disorder"})
+	private String term;
+
+	@Param({"true", "false"})
+	private boolean groupByConcept;
+
+	private DescriptionService descriptionService;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		descriptionService = BenchmarkEnvironment.getBean(DescriptionService.class);
+	}
+
+	@Benchmark
+	public PageWithBucketAggregations<Description> findDescriptions() throws TooCostlyException {
+		DescriptionCriteria criteria = new DescriptionCriteria()
+				.term(term)
+				.active(true)
+				.groupByConcept(groupByConcept);
+		return descriptionService.findDescriptionsWithAggregations(BenchmarkEnvironment.BRANCH, criteria, PageRequest.of(0, 50));
+	}
+
+}
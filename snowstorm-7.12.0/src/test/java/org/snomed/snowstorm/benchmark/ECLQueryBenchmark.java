@@ -0,0 +1,64 @@
+package org.snomed.snowstorm.benchmark;
+
+import io.kaicode.elasticvc.api.BranchCriteria;
+import io.kaicode.elasticvc.api.VersionControlHelper;
+import org.openjdk.jmh.annotations.*;
+import org.snomed.snowstorm.ecl.ECLQueryService;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ECL evaluation with the results cache disabled, so each invocation parses, plans and selects from Elasticsearch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ECLQueryBenchmark {
+
+	@Param({
+			"<< 138875005",
+			"<< 404684003",
+			">> 404684003",
+			"< 138875005 MINUS << 404684003",
+			"<< 138875005 : 116680003 = *"
+	})
+	private String ecl;
+
+	@Param({"true", "false"})
+	private boolean stated;
+
+	private static final PageRequest PAGE_OF_ONE = PageRequest.of(0, 1);
+	private static final PageRequest LARGE_PAGE = PageRequest.of(0, 10_000);
+
+	private ECLQueryService eclQueryService;
+
+	private BranchCriteria branchCriteria;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		eclQueryService = BenchmarkEnvironment.getBean(ECLQueryService.class);
+		eclQueryService.setEclCacheEnabled(false);
+		branchCriteria = BenchmarkEnvironment.getBean(VersionControlHelper.class).getBranchCriteria(BenchmarkEnvironment.BRANCH);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		eclQueryService.setEclCacheEnabled(true);
+	}
+
+	@Benchmark
+	public Page<Long> selectConceptIds() {
+		return eclQueryService.selectConceptIds(ecl, branchCriteria, stated, PAGE_OF_ONE);
+	}
+
+	@Benchmark
+	public Page<Long> selectAllConceptIds() {
+		return eclQueryService.selectConceptIds(ecl, branchCriteria, stated, LARGE_PAGE);
+	}
+
+}
@@ -0,0 +1,49 @@
+package org.snomed.snowstorm.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.snomed.snowstorm.core.rf2.RF2Type;
+import org.snomed.snowstorm.core.rf2.export.ExportException;
+import org.snomed.snowstorm.core.rf2.export.ExportService;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RF2 snapshot export of the benchmark branch, including writing the zip archive.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ExportBenchmark {
+
+	@Param({"false", "true"})
+	private boolean forClassification;
+
+	private ExportService exportService;
+
+	private File exportFile;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		exportService = BenchmarkEnvironment.getBean(ExportService.class);
+	}
+
+	@Benchmark
+	public long export() throws ExportException {
+		exportFile = exportService.exportRF2ArchiveFile(BenchmarkEnvironment.BRANCH, "20990131", RF2Type.SNAPSHOT, forClassification);
+		return exportFile.length();
+	}
+
+	@TearDown(Level.Invocation)
+	public void deleteExportFile() throws Exception {
+		if (exportFile != null) {
+			Files.deleteIfExists(exportFile.toPath());
+			exportFile = null;
+		}
+	}
+
+}
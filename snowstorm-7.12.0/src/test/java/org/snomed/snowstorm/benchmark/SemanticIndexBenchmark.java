@@ -0,0 +1,33 @@
+package org.snomed.snowstorm.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.snomed.snowstorm.core.data.services.SemanticIndexUpdateService;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full stated and inferred semantic index rebuild of the benchmark branch.
+ * Runs in dry run mode so the branch content is the same for every invocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SemanticIndexBenchmark {
+
+	private SemanticIndexUpdateService semanticIndexUpdateService;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		semanticIndexUpdateService = BenchmarkEnvironment.getBean(SemanticIndexUpdateService.class);
+	}
+
+	@Benchmark
+	public Map<String, Integer> rebuildSemanticIndex() throws Exception {
+		return semanticIndexUpdateService.rebuildStatedAndInferredSemanticIndex(BenchmarkEnvironment.BRANCH, true);
+	}
+
+}
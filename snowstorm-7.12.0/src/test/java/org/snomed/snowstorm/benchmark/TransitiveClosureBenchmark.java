@@ -0,0 +1,75 @@
+package org.snomed.snowstorm.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.snomed.snowstorm.core.data.services.transitiveclosure.GraphBuilder;
+import org.snomed.snowstorm.core.data.services.transitiveclosure.GraphBuilderException;
+import org.snomed.snowstorm.core.data.services.transitiveclosure.Node;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the is-a graph and calculating the transitive closure of every node, as done during a semantic index rebuild.
+ * Uses a generated polyhierarchy rather than Elasticsearch content so that larger graphs can be measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class TransitiveClosureBenchmark {
+
+	private static final String PATH = "MAIN";
+
+	@Param({"10000", "100000"})
+	private int conceptCount;
+
+	// Percentage of concepts with a second parent
+	@Param({"30"})
+	private int multipleParentPercentage;
+
+	private long[][] relationships;
+
+	private GraphBuilder graphBuilder;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		Random random = new Random(conceptCount);
+		relationships = new long[conceptCount * 2][];
+		int relationshipCount = 0;
+		for (int i = 1; i < conceptCount; i++) {
+			// Parents always have a lower id so the graph has no loops
+			relationships[relationshipCount++] = new long[]{i, random.nextInt(i)};
+			if (i > 1 && random.nextInt(100) < multipleParentPercentage) {
+				relationships[relationshipCount++] = new long[]{i, random.nextInt(i)};
+			}
+		}
+		long[][] trimmed = new long[relationshipCount][];
+		System.arraycopy(relationships, 0, trimmed, 0, relationshipCount);
+		relationships = trimmed;
+		graphBuilder = buildGraph();
+	}
+
+	@Benchmark
+	public GraphBuilder build() {
+		return buildGraph();
+	}
+
+	@Benchmark
+	public void transitiveClosure(Blackhole blackhole) throws GraphBuilderException {
+		for (Node node : graphBuilder.getNodes()) {
+			blackhole.consume(node.getTransitiveClosure(PATH, true));
+		}
+	}
+
+	private GraphBuilder buildGraph() {
+		GraphBuilder graphBuilder = new GraphBuilder();
+		for (long[] relationship : relationships) {
+			graphBuilder.addParent(relationship[0], relationship[1]);
+		}
+		return graphBuilder;
+	}
+
+}
@@ -1549,6 +1549,23 @@ class BranchMergeServiceTest extends AbstractTest {
 		assertEquals("Branch MAIN/A is already locked", failedJobs.get(0).getMessage());
 	}
 
+	@Test
+	void testMergeJobReportsStageDurations() throws InterruptedException {
+		conceptService.create(new Concept("10000100").addDescription(new Description("100001")), "MAIN/A");
+
+		String jobId = branchMergeService.mergeBranchAsync(new MergeRequest("MAIN/A", "MAIN/A/A1", "Rebase A1", null)).getId();
+		BranchMergeJob rebaseJob = branchMergeService.getBranchMergeJobOrThrow(jobId);
+		for (int i = 0; i < 20 && rebaseJob.getStatus() == JobStatus.IN_PROGRESS; i++) {
+			Thread.sleep(200);
+			rebaseJob = branchMergeService.getBranchMergeJobOrThrow(jobId);
+		}
+
+		assertEquals(JobStatus.COMPLETED, rebaseJob.getStatus());
+		assertEquals("Complete commit", rebaseJob.getProgress());
+		assertEquals(Set.of("Remove duplicate relationship versions", "Remove duplicate description versions", "Remove duplicate refset member versions",
+				"Remove diverged refset member versions", "Complete commit"), rebaseJob.getStageDurations().keySet());
+	}
+
 
 	@Test
 	void testReleasedFlagNotLostDuringRebase() throws ServiceException {
@@ -33,6 +33,7 @@ import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQuery;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.io.IOException;
 import java.util.*;
@@ -508,6 +509,42 @@ class ConceptServiceTest extends AbstractTest {
 		assertEquals(1, description.getAcceptabilityMapFromLangRefsetMembers().size());
 	}
 
+	@Test
+	void testConcurrentJoinsLoadSameConceptAsSequentialJoins() throws ServiceException {
+		conceptService.batchCreate(List.of(
+				new Concept("10000200").addFSN("Finding site (attribute)"),
+				new Concept("10000300").addFSN("Heart structure (body structure)")), "MAIN");
+		Description inactiveDescription = new Description("Haemorrhage").setTypeId(SYNONYM).setActive(false);
+		inactiveDescription.setInactivationIndicator(Concepts.inactivationIndicatorNames.get(Concepts.OUTDATED));
+		conceptService.create(new Concept("50960005")
+				.addFSN("Bleeding (finding)")
+				.addDescription(inactiveDescription)
+				.addAxiom(new Relationship(ISA, SNOMEDCT_ROOT), new Relationship("10000200", "10000300"))
+				.addRelationship(new Relationship("10000200", "10000300").setInferred(true)), "MAIN");
+
+		Concept concurrentlyJoined = conceptService.find("50960005", "MAIN");
+		ReflectionTestUtils.setField(conceptService, "concurrentJoins", false);
+		Concept sequentiallyJoined;
+		try {
+			sequentiallyJoined = conceptService.find("50960005", "MAIN");
+		} finally {
+			ReflectionTestUtils.setField(conceptService, "concurrentJoins", true);
+		}
+
+		for (Concept concept : List.of(concurrentlyJoined, sequentiallyJoined)) {
+			assertEquals(2, concept.getDescriptions().size());
+			assertEquals(Map.of(US_EN_LANG_REFSET, PREFERRED_CONSTANT), concept.getDescriptions().stream()
+					.filter(Description::isActive).findFirst().orElseThrow().getAcceptabilityMap());
+			assertEquals(Concepts.inactivationIndicatorNames.get(Concepts.OUTDATED), concept.getDescriptions().stream()
+					.filter(description -> !description.isActive()).findFirst().orElseThrow().getInactivationIndicator());
+			assertEquals(1, concept.getClassAxioms().size());
+			Relationship relationship = concept.getRelationships().iterator().next();
+			assertEquals("Finding site (attribute)", relationship.getType().getFsnTerm());
+			assertEquals("Heart structure (body structure)", relationship.getTarget().getFsnTerm());
+			assertEquals("PRIMITIVE", relationship.getTarget().getDefinitionStatus());
+		}
+	}
+
 	@Test
 	void testSaveConceptWithAxioms() throws ServiceException {
 		String path = "MAIN";
@@ -1,12 +1,15 @@
 package org.snomed.snowstorm.core.data.services;
 
 import com.google.common.collect.Lists;
+import io.kaicode.elasticvc.api.BranchCriteria;
+import io.kaicode.elasticvc.api.VersionControlHelper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.snomed.snowstorm.AbstractTest;
 import org.snomed.snowstorm.TestConfig;
 import org.snomed.snowstorm.core.data.domain.*;
+import org.snomed.snowstorm.core.util.SearchAfterPage;
 import org.snomed.snowstorm.rest.pojo.ItemsPage;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
@@ -15,10 +18,12 @@ import org.springframework.data.domain.Sort;
 import org.springframework.data.elasticsearch.core.SearchAfterPageRequest;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -39,6 +44,9 @@ class QueryServiceTest extends AbstractTest {
 	@Autowired
 	private CodeSystemService codeSystemService;
 
+	@Autowired
+	private VersionControlHelper versionControlHelper;
+
 	private static final PageRequest PAGE_REQUEST = PageRequest.of(0, 50);
 	public static final String PATH = "MAIN";
 	public static final int TEST_ET = 20210131;
@@ -111,6 +119,65 @@ class QueryServiceTest extends AbstractTest {
 		assertEquals("Really Cheesy Pizza", matches.get(1).getFsnTerm());
 	}
 
+	@Test
+	void testIncrementalLexicalEclSearch() {
+		Object chunkSize = ReflectionTestUtils.getField(service, "incrementalLexicalLogicalChunkSize");
+		// Walk one description at a time
+		ReflectionTestUtils.setField(service, "incrementalLexicalLogicalChunkSize", 1);
+		try {
+			QueryService.ConceptQueryBuilder queryBuilder = service.createQueryBuilder(false).ecl("<" + SNOMEDCT_ROOT).descriptionTerm("Piz")
+					.lowerBoundTotalAllowed(true);
+
+			Page<ConceptMini> page = service.search(queryBuilder, PATH, PageRequest.of(0, 2));
+			assertEquals(List.of("Pizza", "Cheese Pizza"), page.getContent().stream().map(ConceptMini::getFsnTerm).collect(Collectors.toList()));
+			// Lower bound, one match after the page
+			assertEquals(3, page.getTotalElements());
+
+			page = service.search(queryBuilder, PATH, PageRequest.of(1, 2));
+			assertEquals(List.of("So Cheesy Pizza", "Really Cheesy Pizza"), page.getContent().stream().map(ConceptMini::getFsnTerm).collect(Collectors.toList()));
+			// All matches walked
+			assertEquals(4, page.getTotalElements());
+
+			SearchAfterPage<Long> idPage = service.searchForIds(queryBuilder, PATH, PageRequest.of(0, 1));
+			assertEquals(List.of(parseLong(pizza_2.getConceptId())), idPage.getContent());
+			idPage = service.searchForIds(queryBuilder, PATH, SearchAfterPageRequest.of(idPage.getSearchAfter(), 2, Sort.unsorted()));
+			assertEquals(List.of(parseLong(cheesePizza_3.getConceptId()), parseLong(reallyCheesyPizza_5.getConceptId())), idPage.getContent());
+
+			// Same results as collecting all lexical matches first
+			List<ConceptMini> matches = service.search(queryBuilder.lowerBoundTotalAllowed(false), PATH, PAGE_REQUEST).getContent();
+			List<ConceptMini> incrementalMatches = service.search(queryBuilder.lowerBoundTotalAllowed(true), PATH, PAGE_REQUEST).getContent();
+			assertEquals(matches.stream().map(ConceptMini::getConceptId).collect(Collectors.toList()),
+					incrementalMatches.stream().map(ConceptMini::getConceptId).collect(Collectors.toList()));
+
+			// Wildcard checks each chunk against the semantic index
+			QueryService.ConceptQueryBuilder wildcardQueryBuilder = service.createQueryBuilder(false).ecl("*").descriptionTerm("Piz");
+			matches = service.search(wildcardQueryBuilder.lowerBoundTotalAllowed(false), PATH, PAGE_REQUEST).getContent();
+			incrementalMatches = service.search(wildcardQueryBuilder.lowerBoundTotalAllowed(true), PATH, PAGE_REQUEST).getContent();
+			assertEquals(4, incrementalMatches.size());
+			assertEquals(matches.stream().map(ConceptMini::getConceptId).collect(Collectors.toList()),
+					incrementalMatches.stream().map(ConceptMini::getConceptId).collect(Collectors.toList()));
+		} finally {
+			ReflectionTestUtils.setField(service, "incrementalLexicalLogicalChunkSize", chunkSize);
+		}
+	}
+
+	@Test
+	void testFindDescendantCounts() {
+		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(PATH);
+		Map<Long, Long> descendantCounts = service.findDescendantCounts(branchCriteria, false,
+				List.of(parseLong(SNOMEDCT_ROOT), parseLong(pizza_2.getId()), parseLong(reallyCheesyPizza_4.getId()), parseLong(reallyCheesyPizza_5.getId())));
+		assertEquals(4L, descendantCounts.get(parseLong(SNOMEDCT_ROOT)));
+		assertEquals(3L, descendantCounts.get(parseLong(pizza_2.getId())));
+		assertEquals(1L, descendantCounts.get(parseLong(reallyCheesyPizza_4.getId())));
+		assertEquals(0L, descendantCounts.get(parseLong(reallyCheesyPizza_5.getId())));
+
+		List<ConceptMini> minis = List.of(new ConceptMini(pizza_2, null), new ConceptMini(reallyCheesyPizza_5, null));
+		service.joinDescendantCountAndLeafFlag(minis, Relationship.CharacteristicType.inferred, branchCriteria);
+		assertEquals(3L, minis.get(0).getDescendantCount());
+		assertEquals(0L, minis.get(1).getDescendantCount());
+		assertTrue(minis.get(1).getIsLeafInferred());
+	}
+
 	@Test
 	void testFindInactiveConcept() {
 		Set<String> inactiveConceptId = Collections.singleton(inactivePizza_6.getId());
@@ -14,10 +14,11 @@ import org.snomed.snowstorm.config.Config;
 import org.snomed.snowstorm.core.data.domain.*;
 import org.snomed.snowstorm.core.data.repositories.QueryConceptRepository;
 import org.snomed.snowstorm.core.data.services.classification.BranchClassificationStatusService;
+import org.snomed.snowstorm.core.data.services.identifier.ExistingIdentifierFilter;
 import org.snomed.snowstorm.core.data.services.traceability.TraceabilityLogService;
 import org.snomed.snowstorm.core.data.services.transitiveclosure.GraphBuilderException;
+import org.snomed.snowstorm.core.util.CommitMetrics;
 import org.snomed.snowstorm.ecl.validation.ECLPreprocessingService;
-import org.snomed.snowstorm.mrcm.MRCMLoader;
 import org.snomed.snowstorm.mrcm.MRCMUpdateService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
@@ -82,16 +83,24 @@ class SemanticIndexUpdateServiceTest extends AbstractTest {
 	void testCommitListenerOrderingConfig() {
 		List<CommitListener> commitListeners = branchService.getCommitListeners();
 		assertEquals(13, commitListeners.size());
-		assertEquals(MRCMLoader.class, commitListeners.get(0).getClass());
-		assertEquals(ConceptDefinitionStatusUpdateService.class, commitListeners.get(1).getClass());
-		assertEquals(SemanticIndexUpdateService.class, commitListeners.get(2).getClass());
-		assertEquals(MRCMUpdateService.class, commitListeners.get(3).getClass());
-		assertEquals(BranchClassificationStatusService.class, commitListeners.get(4).getClass());
-		assertEquals(RefsetDescriptorUpdaterService.class, commitListeners.get(5).getClass());
-		assertEquals(TraceabilityLogService.class, commitListeners.get(6).getClass());
-		assertEquals(IntegrityService.class, commitListeners.get(7).getClass());
-		assertEquals(MultiSearchService.class, commitListeners.get(8).getClass());
-		assertEquals(ECLPreprocessingService.class, commitListeners.get(9).getClass());
+		assertEquals(ConceptDefinitionStatusUpdateService.class, getListenerClass(commitListeners.get(0)));
+		assertEquals(SemanticIndexUpdateService.class, getListenerClass(commitListeners.get(1)));
+		assertEquals(MRCMUpdateService.class, getListenerClass(commitListeners.get(2)));
+		assertEquals(BranchClassificationStatusService.class, getListenerClass(commitListeners.get(3)));
+		assertEquals(RefsetDescriptorUpdaterService.class, getListenerClass(commitListeners.get(4)));
+		assertEquals(TraceabilityLogService.class, getListenerClass(commitListeners.get(5)));
+		assertEquals(IntegrityService.class, getListenerClass(commitListeners.get(6)));
+		assertEquals(MultiSearchService.class, getListenerClass(commitListeners.get(7)));
+		assertEquals(ECLPreprocessingService.class, getListenerClass(commitListeners.get(8)));
+		assertEquals(ExistingIdentifierFilter.class, getListenerClass(commitListeners.get(9)));
+	}
+
+	private Class<?> getListenerClass(CommitListener commitListener) {
+		// Listeners are wrapped to publish timing metrics
+		if (commitListener instanceof CommitMetrics.TimedCommitListener) {
+			return ((CommitMetrics.TimedCommitListener) commitListener).getListener().getClass();
+		}
+		return commitListener.getClass();
 	}
 
 	@Test
@@ -1333,6 +1342,40 @@ class SemanticIndexUpdateServiceTest extends AbstractTest {
 		assertEquals(0, semanticChanges.getTotalHits());
 	}
 
+	@Test
+	void testStatedAndInferredFormsReplaceVersionsConcurrently() throws ServiceException {
+		// Both forms of every concept below 'a' change ancestors in one commit, so the two forms save replacement versions at the same time
+		Concept root = new Concept(SNOMEDCT_ROOT);
+		Concept a = new Concept("100001001")
+				.addRelationship(new Relationship(ISA, SNOMEDCT_ROOT).setInferred(false))
+				.addRelationship(new Relationship(ISA, SNOMEDCT_ROOT).setInferred(true));
+		Concept b = new Concept("100002001")
+				.addRelationship(new Relationship(ISA, SNOMEDCT_ROOT).setInferred(false))
+				.addRelationship(new Relationship(ISA, SNOMEDCT_ROOT).setInferred(true));
+		List<Concept> concepts = Lists.newArrayList(root, a, b);
+		int descendants = 3000;
+		for (int i = 0; i < descendants; i++) {
+			concepts.add(new Concept("3000" + i + "011")
+					.addRelationship(new Relationship(ISA, a.getId()).setInferred(false))
+					.addRelationship(new Relationship(ISA, a.getId()).setInferred(true)));
+		}
+		String branch = "MAIN";
+		conceptService.batchCreate(concepts, branch);
+
+		a.getRelationships().clear();
+		a.addRelationship(new Relationship(ISA, b.getId()).setInferred(false));
+		a.addRelationship(new Relationship(ISA, b.getId()).setInferred(true));
+		conceptService.update(a, branch);
+
+		for (boolean stated : new boolean[]{true, false}) {
+			// One version of each concept is visible in each form
+			assertEquals(descendants + 1, queryService.search(queryService.createQueryBuilder(stated).ecl("<" + b.getId()), branch, PAGE_REQUEST).getTotalElements());
+			assertEquals(descendants + 2, queryService.search(queryService.createQueryBuilder(stated).ecl("<" + SNOMEDCT_ROOT), branch, PAGE_REQUEST).getTotalElements());
+			assertEquals(Set.of(parseLong(a.getId()), parseLong(b.getId()), parseLong(SNOMEDCT_ROOT)),
+					queryService.findAncestorIds("3000" + (descendants - 1) + "011", branch, stated));
+		}
+	}
+
 	private void simulateRF2Import(String path, List<Concept> concepts) {
 		try (Commit commit = branchService.openCommit(path)) {
 			concepts.forEach(Concept::markChanged);
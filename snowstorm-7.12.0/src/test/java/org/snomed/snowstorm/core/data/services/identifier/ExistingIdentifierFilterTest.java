@@ -0,0 +1,34 @@
+package org.snomed.snowstorm.core.data.services.identifier;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExistingIdentifierFilterTest {
+
+	@Test
+	void testFilterKey() {
+		assertEquals("0-00", ExistingIdentifierFilter.getFilterKey("404684003"));
+		assertEquals("0-01", ExistingIdentifierFilter.getFilterKey("100018"));
+		assertEquals("1000101-10", ExistingIdentifierFilter.getFilterKey("1234561000101108"));
+		assertEquals("1000101-11", ExistingIdentifierFilter.getFilterKey("1234561000101117"));
+	}
+
+	@Test
+	void testMightExist() {
+		ExistingIdentifierFilter filter = new ExistingIdentifierFilter(null, null, 1_000, 100, 0.01);
+		filter.add("404684003");
+		filter.add("1234561000101108");
+
+		// Everything might exist until loaded
+		assertTrue(filter.mightExist(100005L));
+
+		filter.markLoaded();
+		assertTrue(filter.mightExist(404684003L));
+		assertTrue(filter.mightExist(1234561000101108L));
+		assertFalse(filter.mightExist(1234561000102105L), "No identifiers in this namespace");
+		assertEquals(2L, filter.getStats().get("approximateIds"));
+		assertEquals(2, filter.getStats().get("filters"));
+	}
+
+}
@@ -133,6 +133,23 @@ class IdentifierCacheManagerTest extends AbstractTest {
 		Assert.assertEquals(secondRunIdentifiersAvailableAfter, secondRunIdentifiersAvailableBefore - 1); //Cache has had identifier removed for this test
 	}
 
+	@Test
+	void releaseIds_ShouldReturnUnusedIdentifiersToCache() throws ServiceException {
+		//given
+		IdentifierReservedBlock identifierReservedBlock = new IdentifierReservedBlock(TEST_NAMESPACE);
+		cacheManager.populateIdBlock(identifierReservedBlock, TEST_DEMAND, TEST_NAMESPACE, TEST_PARTITION);
+		int availableBefore = testCache.identifiersAvailable();
+
+		//when
+		cacheManager.releaseIds(TEST_NAMESPACE, TEST_PARTITION, identifierReservedBlock.getIdsReserved(ComponentType.Concept));
+
+		//then
+		Assert.assertEquals(availableBefore + TEST_DEMAND, testCache.identifiersAvailable());
+		IdentifierReservedBlock nextBlock = new IdentifierReservedBlock(TEST_NAMESPACE);
+		cacheManager.populateIdBlock(nextBlock, 1, TEST_NAMESPACE, TEST_PARTITION);
+		Assert.assertTrue(identifierReservedBlock.getIdsReserved(ComponentType.Concept).contains(nextBlock.getNextId(ComponentType.Concept))); //Released identifiers are used first
+	}
+
 	@Test
 	public void populateIdBlock_ShouldThrowException_WhenRequestingIdentifierForUnsupportedPartition() {
 		//given
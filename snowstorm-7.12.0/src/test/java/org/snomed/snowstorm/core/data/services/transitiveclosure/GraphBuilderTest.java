@@ -0,0 +1,79 @@
+package org.snomed.snowstorm.core.data.services.transitiveclosure;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GraphBuilderTest {
+
+	private static final String PATH = "MAIN";
+
+	@Test
+	void testTransitiveClosure() throws GraphBuilderException {
+		GraphBuilder graphBuilder = new GraphBuilder();
+		graphBuilder.addParent(2L, 1L);
+		graphBuilder.addParent(3L, 1L);
+		graphBuilder.addParent(4L, 2L);
+		graphBuilder.addParent(4L, 3L);
+		graphBuilder.addParent(4L, 3L);
+		graphBuilder.addParent(5L, 4L);
+
+		assertEquals(5, graphBuilder.getNodeCount());
+		assertEquals(Set.of(), getNode(graphBuilder, 1L).getTransitiveClosure(PATH, true));
+		assertEquals(Set.of(1L), getNode(graphBuilder, 2L).getTransitiveClosure(PATH, true));
+		assertEquals(Set.of(1L, 2L, 3L), getNode(graphBuilder, 4L).getTransitiveClosure(PATH, true));
+		assertEquals(Set.of(1L, 2L, 3L, 4L), getNode(graphBuilder, 5L).getTransitiveClosure(PATH, true));
+		assertEquals(Set.of(2L, 3L), getNode(graphBuilder, 4L).getParentIds());
+		assertFalse(getNode(graphBuilder, 1L).hasParents());
+
+		// Changing the graph after calculation
+		graphBuilder.clearParentsAndMarkUpdated(4L);
+		graphBuilder.addParent(4L, 3L);
+		assertEquals(Set.of(1L, 3L, 4L), getNode(graphBuilder, 5L).getTransitiveClosure(PATH, true));
+	}
+
+	@Test
+	void testAncestorOrSelfUpdated() {
+		GraphBuilder graphBuilder = new GraphBuilder();
+		graphBuilder.addParent(2L, 1L);
+		graphBuilder.addParent(3L, 1L);
+		graphBuilder.addParent(4L, 2L);
+		graphBuilder.addParent(5L, 3L);
+		graphBuilder.clearParentsAndMarkUpdated(2L);
+		graphBuilder.addParent(2L, 1L);
+
+		assertFalse(getNode(graphBuilder, 1L).isAncestorOrSelfUpdated());
+		assertTrue(getNode(graphBuilder, 2L).isAncestorOrSelfUpdated());
+		assertFalse(getNode(graphBuilder, 3L).isAncestorOrSelfUpdated());
+		assertTrue(getNode(graphBuilder, 4L).isAncestorOrSelfUpdated());
+		assertFalse(getNode(graphBuilder, 5L).isAncestorOrSelfUpdated());
+	}
+
+	@Test
+	void testLoop() throws GraphBuilderException {
+		GraphBuilder graphBuilder = new GraphBuilder();
+		graphBuilder.addParent(2L, 1L);
+		graphBuilder.addParent(3L, 2L);
+		graphBuilder.addParent(4L, 3L);
+		graphBuilder.addParent(2L, 4L);
+		graphBuilder.addParent(5L, 4L);
+		getNode(graphBuilder, 5L).markUpdated();
+
+		GraphBuilderException exception = assertThrows(GraphBuilderException.class, () -> getNode(graphBuilder, 3L).getTransitiveClosure(PATH, true));
+		// Ancestors listed in the order the loop is walked
+		assertEquals("Loop found in transitive closure for concept 3 on branch " + PATH + ". The concept 3 is in its own set of ancestors: [2, 1, 4, 3]",
+				exception.getMessage());
+		assertEquals(Set.of(1L, 2L, 4L), getNode(graphBuilder, 3L).getTransitiveClosure(PATH, false));
+		// Below the loop
+		assertEquals(Set.of(1L, 2L, 3L, 4L), getNode(graphBuilder, 5L).getTransitiveClosure(PATH, true));
+		assertTrue(getNode(graphBuilder, 5L).isAncestorOrSelfUpdated());
+		assertFalse(getNode(graphBuilder, 2L).isAncestorOrSelfUpdated());
+	}
+
+	private Node getNode(GraphBuilder graphBuilder, long id) {
+		return graphBuilder.getNodes().stream().filter(node -> node.getId() == id).findFirst().orElseThrow();
+	}
+
+}
@@ -14,6 +14,7 @@ import org.snomed.snowstorm.core.util.StreamUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -615,6 +616,50 @@ class ExportServiceTest extends AbstractTest {
 
 	}
 
+	@Test
+	void exportSnapshotWithSlicedScrolls() throws Exception {
+		File exportFile = getTempFile("export", ".zip");
+		exportFile.deleteOnExit();
+
+		// Run export with every file fetched in slices
+		Object sliceThreshold = ReflectionTestUtils.getField(exportService, "exportSliceThreshold");
+		ReflectionTestUtils.setField(exportService, "exportSliceThreshold", 1L);
+		try (FileOutputStream outputStream = new FileOutputStream(exportFile)) {
+			ExportConfiguration exportConfiguration = new ExportConfiguration("MAIN", RF2Type.SNAPSHOT);
+
+			exportConfiguration.setConceptsAndRelationshipsOnly(false);
+			exportConfiguration.setFilenameEffectiveDate("20190904");
+			exportService.createJob(exportConfiguration);
+			exportService.exportRF2Archive(exportConfiguration, outputStream);
+		} finally {
+			ReflectionTestUtils.setField(exportService, "exportSliceThreshold", sliceThreshold);
+		}
+
+		// Test export, header once then the rows of all slices
+		try (ZipInputStream zipInputStream = new ZipInputStream(new FileInputStream(exportFile))) {
+			// Concepts
+			ZipEntry concepts = zipInputStream.getNextEntry();
+			assertNotNull(concepts);
+			assertEquals("SnomedCT_Export/Snapshot/Terminology/sct2_Concept_Snapshot_INT_20190904.txt", concepts.getName());
+			List<String> lines = getLines(zipInputStream);
+			printLines(lines);
+			assertEquals(9, lines.size());
+			assertEquals(RF2Constants.CONCEPT_HEADER, lines.get(0));
+			assertEquals(8, new HashSet<>(lines.subList(1, lines.size())).size());
+			assertTrue(lines.contains("123001\t\t1\t900000000000207008\t900000000000074008"));
+			assertTrue(lines.contains("733073007\t20190131\t1\t900000000000207008\t900000000000074008"));
+
+			// Descriptions
+			ZipEntry descriptions = zipInputStream.getNextEntry();
+			assertEquals("SnomedCT_Export/Snapshot/Terminology/sct2_Description_Snapshot_INT_20190904.txt", descriptions.getName());
+			lines = getLines(zipInputStream);
+			printLines(lines);
+			assertEquals(4, lines.size());
+			assertEquals(RF2Constants.DESCRIPTION_HEADER, lines.get(0));
+			assertTrue(lines.contains("124011\t\t1\t900000000000207008\t123001\ten\t900000000000003001\tBleeding (finding)\t900000000000448009"));
+		}
+	}
+
 	@Test
 	@SuppressWarnings("UnusedAssignment")
 	void exportSnapshotWithStartEffectiveTime() throws Exception {
@@ -0,0 +1,71 @@
+package org.snomed.snowstorm.core.rf2.export;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExportWriterTest {
+
+	@Test
+	void testRowsEncodedAsUTF8() throws IOException {
+		String[] terms = {
+				"Bleeding (finding)",
+				"Sjögren syndrome",
+				"β-lactam",
+				"日本語",
+				"😀 supplementary character",
+				// Longer than the writer buffer
+				"x".repeat(100_000) + "é"
+		};
+
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		StringBuilder expected = new StringBuilder("term\tlength\tgroup\teffectiveTime\tactive\r\n");
+		try (TermWriter writer = new TermWriter(outputStream)) {
+			writer.setTransientEffectiveTime("20260131");
+			writer.writeHeader();
+			for (String term : terms) {
+				writer.write(term);
+				expected.append(term).append('\t').append(term.length()).append("\t0\t20260131\t1\r\n");
+			}
+			assertEquals(terms.length, writer.getContentLinesWritten());
+		}
+
+		assertArrayEquals(expected.toString().getBytes(StandardCharsets.UTF_8), outputStream.toByteArray());
+	}
+
+	private static class TermWriter extends ExportWriter<String> {
+
+		private TermWriter(ByteArrayOutputStream outputStream) {
+			super(outputStream);
+		}
+
+		@Override
+		void writeHeader() throws IOException {
+			writeField("term\tlength\tgroup\teffectiveTime\tactive");
+			writeNewLine();
+		}
+
+		@Override
+		void writeRow(String term) {
+			try {
+				writeField(term);
+				writeTab();
+				writeInt(term.length());
+				writeTab();
+				writeInt(0);
+				writeTab();
+				writeEffectiveTime(null);
+				writeTab();
+				writeActive(true);
+				writeNewLine();
+			} catch (IOException e) {
+				throw new ExportException("Failed to write term.", e);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,50 @@
+package org.snomed.snowstorm.core.rf2.rf2import;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.junit.jupiter.api.Test;
+import org.snomed.snowstorm.core.rf2.RF2Type;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImportCheckpointTest {
+
+	@Test
+	void testResumeSkipsCommittedRows() throws JsonProcessingException {
+		ImportCheckpoint checkpoint = new ImportCheckpoint("abc", RF2Type.SNAPSHOT, 3);
+		assertFalse(checkpoint.nextRowCommitted("concept"));
+		assertFalse(checkpoint.nextRowCommitted("concept"));
+		assertFalse(checkpoint.isCheckpointDue());
+		assertFalse(checkpoint.nextRowCommitted("description-en"));
+		assertTrue(checkpoint.isCheckpointDue());
+		checkpoint.checkpointed();
+		assertFalse(checkpoint.isCheckpointDue());
+
+		ImportCheckpoint stored = ImportCheckpoint.deserialise(checkpoint.serialise());
+		assertTrue(stored.isFor("abc", RF2Type.SNAPSHOT));
+		assertFalse(stored.isFor("abc", RF2Type.DELTA));
+		assertFalse(stored.isFor("def", RF2Type.SNAPSHOT));
+		assertEquals(1, stored.getCheckpointCount());
+		assertEquals(Map.of("concept", 2L, "description-en", 1L), stored.getRows());
+
+		ImportCheckpoint resumed = stored.resume(10);
+		assertEquals(3, resumed.getCommittedRowCount());
+		assertTrue(resumed.nextRowCommitted("concept"));
+		assertTrue(resumed.nextRowCommitted("concept"));
+		assertFalse(resumed.nextRowCommitted("concept"));
+		assertTrue(resumed.nextRowCommitted("description-en"));
+		assertFalse(resumed.nextRowCommitted("member-123"));
+		assertEquals(Map.of("concept", 3L, "description-en", 1L, "member-123", 1L), resumed.getRows());
+	}
+
+	@Test
+	void testFileType() {
+		assertEquals("sct2_Description_Snapshot-en", ImportCheckpoint.getFileType("SnomedCT/Snapshot/Terminology/sct2_Description_Snapshot-en_INT_20180731.txt"));
+		assertEquals("sct2_Description_Snapshot-en", ImportCheckpoint.getFileType("sct2_Description_Snapshot-en_US1000124_20220301.txt"));
+		assertEquals("der2_cRefset_LanguageSnapshot-en", ImportCheckpoint.getFileType("Refset/Language/der2_cRefset_LanguageSnapshot-en_INT_20180731.txt"));
+		assertNull(ImportCheckpoint.getFileType("Readme_20180731.txt"));
+		assertNull(ImportCheckpoint.getFileType("__MACOSX/._sct2_Concept_Snapshot_INT_20180731.txt"));
+	}
+
+}
@@ -4,6 +4,8 @@ import com.google.common.collect.Lists;
 import io.kaicode.elasticvc.api.BranchService;
 import io.kaicode.elasticvc.domain.Branch;
 import org.ihtsdo.otf.snomedboot.ReleaseImportException;
+import org.ihtsdo.otf.snomedboot.ReleaseImporter;
+import org.ihtsdo.otf.snomedboot.factory.LoadingProfile;
 import org.junit.Assert;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
@@ -18,8 +20,10 @@ import org.snomed.snowstorm.core.data.services.pojo.IntegrityIssueReport;
 import org.snomed.snowstorm.core.data.services.pojo.MemberSearchRequest;
 import org.snomed.snowstorm.core.rf2.RF2Type;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
@@ -59,6 +63,23 @@ class ImportServiceTest extends AbstractTest {
 	@Autowired
 	private CodeSystemService codeSystemService;
 
+	@Autowired
+	private DescriptionService descriptionService;
+
+	@Autowired
+	private ConceptUpdateHelper conceptUpdateHelper;
+
+	@Autowired
+	private BranchMetadataHelper branchMetadataHelper;
+
+	@Autowired
+	@Qualifier("importLookupExecutor")
+	private ThreadPoolTaskExecutor importLookupExecutor;
+
+	@Autowired
+	@Qualifier("importIndexExecutor")
+	private ThreadPoolTaskExecutor importIndexExecutor;
+
 	private File rf2Archive;
 	private File completeOwlRf2Archive;
 
@@ -750,4 +771,66 @@ class ImportServiceTest extends AbstractTest {
 		actual = results.getContent().get(0).getAdditionalField("owlExpression");
 		assertEquals(expected, actual);
 	}
+
+	@Test
+	void testResumeSnapshotImportFromCheckpoint() throws Exception {
+		// Reference import of the whole archive in one commit
+		String referencePath = branchService.create("MAIN/REFERENCE").getPath();
+		importService.importArchive(importService.createJob(RF2Type.SNAPSHOT, referencePath, false, false), new FileInputStream(rf2Archive));
+
+		// First attempt commits a checkpoint every 50 rows then fails part way through the descriptions
+		String branchPath = branchService.create("MAIN/CHECKPOINT").getPath();
+		ImportJob failingJob = new ImportJob(new RF2ImportConfiguration(RF2Type.SNAPSHOT, branchPath).setCheckpoints(true));
+		ImportPipeline importPipeline = new ImportPipeline(importLookupExecutor, importIndexExecutor, 4);
+		AtomicInteger descriptionRows = new AtomicInteger();
+		ImportComponentFactoryImpl failingFactory = new ImportComponentFactoryImpl(conceptUpdateHelper, referenceSetMemberService, branchService, branchMetadataHelper,
+				importPipeline, failingJob, branchPath, null, true, false) {
+			@Override
+			public void newDescriptionState(String id, String effectiveTime, String active, String moduleId, String conceptId, String languageCode,
+					String typeId, String term, String caseSignificanceId) {
+				if (descriptionRows.incrementAndGet() > 200) {
+					throw new IllegalStateException("Simulated import failure.");
+				}
+				super.newDescriptionState(id, effectiveTime, active, moduleId, conceptId, languageCode, typeId, term, caseSignificanceId);
+			}
+		};
+		failingFactory.setCheckpoint(new ImportCheckpoint("archive-1", RF2Type.SNAPSHOT, 50));
+		Assertions.assertThrows(ReleaseImportException.class, () ->
+				new ReleaseImporter().loadSnapshotReleaseFiles(new FileInputStream(rf2Archive), LoadingProfile.complete, failingFactory));
+		failingFactory.awaitPersistence();
+		if (failingFactory.getCommit() != null) {
+			// Roll back rows saved since the last checkpoint
+			failingFactory.getCommit().close();
+		}
+		long conceptsBeforeResume = conceptService.findAll(branchPath, PageRequest.of(0, 1)).getTotalElements();
+		long conceptCount = conceptService.findAll(referencePath, PageRequest.of(0, 1)).getTotalElements();
+		assertTrue(conceptsBeforeResume > 0);
+		assertTrue(getComponentCounts(branchPath).get("descriptions") < getComponentCounts(referencePath).get("descriptions"));
+
+		// Reload the stored checkpoint and resume by importing the same archive again
+		String importId = importService.createJob(new RF2ImportConfiguration(RF2Type.SNAPSHOT, branchPath).setCheckpoints(true));
+		ImportJob resumedJob = importService.getImportJobOrThrow(importId);
+		resumedJob.setArchiveFingerprint("archive-1");
+		importService.importArchive(importId, new FileInputStream(rf2Archive));
+
+		assertEquals(ImportJob.ImportStatus.COMPLETED, resumedJob.getStatus());
+		assertNotNull(resumedJob.getResumedFromCheckpoint());
+		assertTrue(resumedJob.getResumedFromCheckpoint() > 0);
+		assertEquals(conceptCount, conceptService.findAll(branchPath, PageRequest.of(0, 1)).getTotalElements());
+		assertEquals(getComponentCounts(referencePath), getComponentCounts(branchPath));
+	}
+
+	@Test
+	void testFileTypesWithMultipleFiles() throws IOException {
+		assertEquals(Collections.emptySet(), ImportService.getFileTypesWithMultipleFiles(rf2Archive));
+	}
+
+	private Map<String, Long> getComponentCounts(String branchPath) {
+		Map<String, Long> counts = new HashMap<>();
+		counts.put("concepts", conceptService.findAll(branchPath, PageRequest.of(0, 1)).getTotalElements());
+		counts.put("descriptions", descriptionService.findDescriptions(branchPath, null, null, null, PageRequest.of(0, 1)).getTotalElements());
+		counts.put("relationships", relationshipService.findRelationships(branchPath, null, null, null, null, null, null, null, null, null, PageRequest.of(0, 1)).getTotalElements());
+		counts.put("members", referenceSetMemberService.findMembers(branchPath, new MemberSearchRequest(), PageRequest.of(0, 1)).getTotalElements());
+		return counts;
+	}
 }
@@ -0,0 +1,83 @@
+package org.snomed.snowstorm.core.util;
+
+import io.kaicode.elasticvc.domain.Branch;
+import io.kaicode.elasticvc.domain.Commit;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommitMetricsTest {
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	@AfterEach
+	void tearDown() {
+		TimerUtil.setMeterRegistry(null);
+	}
+
+	@Test
+	void testListenerAndTimerCheckpointsTagged() {
+		TimerUtil.setMeterRegistry(meterRegistry);
+		CommitMetrics commitMetrics = new CommitMetrics(meterRegistry);
+		Commit commit = new Commit(new Branch("MAIN/PROJECT/TASK-1"), Commit.CommitType.CONTENT, null, null);
+
+		commitMetrics.timed("test-listener", c -> {
+			TimerUtil timer = new TimerUtil("Check on " + c.getBranch().getPath()).publishMetrics("check", CommitMetrics.getTimerTags(c, "test-listener"));
+			timer.checkpoint("Fetch active concepts: 123");
+			timer.finish();
+		}).preCommitCompletion(commit);
+
+		Timer listenerTimer = meterRegistry.find(CommitMetrics.LISTENER_METRIC_NAME)
+				.tags("listener", "test-listener", "commit.type", "CONTENT", "branch.depth", "3", "outcome", "success").timer();
+		assertNotNull(listenerTimer);
+		assertEquals(1, listenerTimer.count());
+
+		Timer checkpointTimer = meterRegistry.find(TimerUtil.METRIC_NAME)
+				.tags("timer", "check", "checkpoint", "Fetch active concepts", "listener", "test-listener", "branch.depth", "3").timer();
+		assertNotNull(checkpointTimer);
+		assertEquals(1, checkpointTimer.count());
+		assertNotNull(meterRegistry.find(TimerUtil.METRIC_NAME).tags("timer", "check", "checkpoint", "total").timer());
+	}
+
+	@Test
+	void testTimerWithoutCommitHasSameTagKeys() {
+		TimerUtil.setMeterRegistry(meterRegistry);
+		TimerUtil timer = new TimerUtil("Check").publishMetrics("check");
+		timer.checkpoint("Fetch active concepts: 123");
+
+		Timer checkpointTimer = meterRegistry.find(TimerUtil.METRIC_NAME)
+				.tags("timer", "check", "checkpoint", "Fetch active concepts", "listener", "none", "commit.type", "none", "branch.depth", "none").timer();
+		assertNotNull(checkpointTimer);
+		assertEquals(CommitMetrics.getTimerTags(new Commit(new Branch("MAIN"), Commit.CommitType.CONTENT, null, null), "test-listener").stream()
+						.map(Tag::getKey).collect(Collectors.toSet()),
+				CommitMetrics.NO_COMMIT_TAGS.stream().map(Tag::getKey).collect(Collectors.toSet()));
+	}
+
+	@Test
+	void testFailedListenerTimed() {
+		CommitMetrics commitMetrics = new CommitMetrics(meterRegistry);
+		Commit commit = new Commit(new Branch("MAIN"), Commit.CommitType.REBASE, null, null);
+
+		assertThrows(IllegalStateException.class, () -> commitMetrics.timed("failing", c -> {
+			throw new IllegalStateException("Test");
+		}).preCommitCompletion(commit));
+
+		assertNotNull(meterRegistry.find(CommitMetrics.LISTENER_METRIC_NAME)
+				.tags("listener", "failing", "commit.type", "REBASE", "branch.depth", "1", "outcome", "failure").timer());
+	}
+
+	@Test
+	void testMetricCheckpointName() {
+		assertEquals("get descriptions", TimerUtil.getMetricCheckpointName("get descriptions 1,000"));
+		assertEquals("Build existing graph from nodes. alternative ancestors found.",
+				TimerUtil.getMetricCheckpointName("Build existing graph from nodes. 12 alternative ancestors found."));
+		assertEquals("Fetch active concepts", TimerUtil.getMetricCheckpointName("Fetch active concepts: 1234"));
+	}
+
+}
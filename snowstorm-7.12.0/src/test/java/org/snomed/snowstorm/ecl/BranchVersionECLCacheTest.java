@@ -1,6 +1,8 @@
 package org.snomed.snowstorm.ecl;
 
 import org.junit.jupiter.api.Test;
+import org.snomed.langauges.ecl.ECLQueryBuilder;
+import org.snomed.snowstorm.ecl.domain.expressionconstraint.SExpressionConstraint;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -21,4 +23,19 @@ class BranchVersionECLCacheTest {
 		assertEquals("<< 195967001 {{ d active = 1 }}", BranchVersionECLCache.normaliseEclString("<< 195967001 |Asthma| {{ D active = 1 }}"));
 	}
 
+	@Test
+	void testCanonicalEclString() {
+		ECLQueryBuilder eclQueryBuilder = new ECLQueryBuilder(new SECLObjectFactory());
+		assertEquals(canonical(eclQueryBuilder, "<< 404684003 |Clinical finding| AND << 39057004"),
+				canonical(eclQueryBuilder, "<< 39057004 AND << 404684003"));
+		assertEquals(canonical(eclQueryBuilder, "<< 404684003 OR << 39057004"),
+				canonical(eclQueryBuilder, "<< 39057004 OR << 404684003"));
+		assertNotEquals(canonical(eclQueryBuilder, "<< 404684003 MINUS << 39057004"),
+				canonical(eclQueryBuilder, "<< 39057004 MINUS << 404684003"));
+	}
+
+	private String canonical(ECLQueryBuilder eclQueryBuilder, String ecl) {
+		return BranchVersionECLCache.normaliseEclString(((SExpressionConstraint) eclQueryBuilder.createQuery(ecl)).toCanonicalEclString());
+	}
+
 }
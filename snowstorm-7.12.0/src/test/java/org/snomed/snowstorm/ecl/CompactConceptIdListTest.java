@@ -0,0 +1,78 @@
+package org.snomed.snowstorm.ecl;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.elasticsearch.core.SearchAfterPageRequest;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactConceptIdListTest {
+
+	@Test
+	void testRoundTrip() {
+		LongArrayList ids = new LongArrayList();
+		Random random = new Random(1);
+		for (int i = 0; i < 1000; i++) {
+			ids.add(100000000L + random.nextInt(Integer.MAX_VALUE) * 1000L + random.nextInt(1000));
+		}
+		CompactConceptIdList compact = CompactConceptIdList.of(ids);
+		assertEquals(ids.size(), compact.size());
+		assertEquals(ids, compact.toList());
+		for (int i = 0; i < ids.size(); i++) {
+			assertEquals(ids.getLong(i), compact.get(i));
+			assertEquals(ids.indexOf(ids.getLong(i)), compact.indexOf(ids.getLong(i)));
+		}
+		assertEquals(ids.subList(250, 390), compact.subList(250, 390));
+		assertEquals(-1, compact.indexOf(5L));
+	}
+
+	@Test
+	void testSortedSearch() {
+		LongArrayList ids = new LongArrayList();
+		for (long id = 10000L; id > 0; id -= 3) {
+			ids.add(id * 1000 + 101);
+		}
+		CompactConceptIdList compact = CompactConceptIdList.of(ids);
+		for (int i = 0; i < ids.size(); i++) {
+			assertEquals(i, compact.indexOf(ids.getLong(i)));
+		}
+		assertFalse(compact.contains(2000101L));
+		assertFalse(compact.contains(Long.MAX_VALUE));
+		assertFalse(compact.contains(0));
+		assertTrue(compact.getEstimatedBytes() < ids.size() * 4L);
+	}
+
+	@Test
+	void testEmpty() {
+		CompactConceptIdList compact = CompactConceptIdList.of(List.of());
+		assertTrue(compact.isEmpty());
+		assertEquals(-1, compact.indexOf(1));
+		assertTrue(compact.toList().isEmpty());
+	}
+
+	@Test
+	void testPaging() {
+		CompactConceptIdList compact = CompactConceptIdList.of(List.of(900L, 800L, 700L, 600L, 500L));
+
+		Page<Long> page = ConceptSelectorHelper.getPage(PageRequest.of(1, 2), compact, null);
+		assertEquals(List.of(700L, 600L), page.getContent());
+		assertEquals(5, page.getTotalElements());
+
+		page = ConceptSelectorHelper.getPage(SearchAfterPageRequest.of(new Object[]{800L}, 2, Sort.unsorted()), compact, null);
+		assertEquals(List.of(700L, 600L), page.getContent());
+
+		page = ConceptSelectorHelper.getPage(SearchAfterPageRequest.of(new Object[]{123L}, 2, Sort.unsorted()), compact, null);
+		assertTrue(page.getContent().isEmpty());
+
+		page = ConceptSelectorHelper.getPage(PageRequest.of(0, 2), compact, id -> id != 800L);
+		assertEquals(List.of(900L, 700L), page.getContent());
+		assertEquals(4, page.getTotalElements());
+	}
+
+}
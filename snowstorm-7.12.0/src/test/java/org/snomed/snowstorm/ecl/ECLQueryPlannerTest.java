@@ -0,0 +1,59 @@
+package org.snomed.snowstorm.ecl;
+
+import org.junit.jupiter.api.Test;
+import org.snomed.langauges.ecl.ECLQueryBuilder;
+import org.snomed.snowstorm.ecl.domain.expressionconstraint.SExpressionConstraint;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ECLQueryPlannerTest {
+
+	private final ECLQueryBuilder eclQueryBuilder = new ECLQueryBuilder(new SECLObjectFactory());
+
+	@Test
+	void testCollapseNestedHierarchyOperators() {
+		assertRewrite("<< (<< 404684003)", "<< 404684003");
+		assertRewrite("< (<< 404684003)", "< 404684003");
+		assertRewrite("<< (< 404684003)", "< 404684003");
+		assertRewrite(">> (> 404684003)", "> 404684003");
+		assertRewrite("<< (<< (<< 404684003))", "<< 404684003");
+
+		// Not the same results
+		assertNoRewrite("< (< 404684003)");
+		assertNoRewrite("<< (>> 404684003)");
+		assertNoRewrite("<< (<< 404684003 {{ D term = \"heart\" }})");
+	}
+
+	@Test
+	void testDistributeConjunctionOverDisjunction() {
+		assertRewrite("404684003 AND (<< 39057004 OR >> 39057004)", "(404684003 AND << 39057004) OR (404684003 AND >> 39057004)");
+
+		// Would repeat a large operand in each conjunction
+		assertNoRewrite("<< 404684003 AND (<< 39057004 OR >> 39057004)");
+		assertNoRewrite("404684003 AND 39057004");
+	}
+
+	private void assertRewrite(String ecl, String expectedEcl) {
+		List<String> rewrites = new ArrayList<>();
+		SExpressionConstraint expressionConstraint = parse(ecl);
+		ECLQueryPlanner.rewrite(expressionConstraint, rewrites);
+		assertFalse(rewrites.isEmpty());
+		assertEquals(parse(expectedEcl).toEclString(), expressionConstraint.toEclString());
+	}
+
+	private void assertNoRewrite(String ecl) {
+		List<String> rewrites = new ArrayList<>();
+		SExpressionConstraint expressionConstraint = parse(ecl);
+		ECLQueryPlanner.rewrite(expressionConstraint, rewrites);
+		assertEquals(List.of(), rewrites);
+		assertEquals(parse(ecl).toEclString(), expressionConstraint.toEclString());
+	}
+
+	private SExpressionConstraint parse(String ecl) {
+		return (SExpressionConstraint) eclQueryBuilder.createQuery(ecl);
+	}
+
+}
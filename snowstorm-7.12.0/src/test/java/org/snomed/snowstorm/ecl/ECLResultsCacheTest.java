@@ -0,0 +1,82 @@
+package org.snomed.snowstorm.ecl;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ECLResultsCacheTest {
+
+	@Test
+	void testBranchVersionExpiry() {
+		ECLResultsCache resultsCache = new ECLResultsCache(1024 * 1024);
+		Date head1 = new Date(1000);
+		Date head2 = new Date(2000);
+
+		BranchVersionECLCache mainCache = resultsCache.getOrCreateBranchVersionCache("MAIN", head1);
+		mainCache.put("<< 100", false, null, new PageImpl<>(List.of(100L, 200L)), null);
+		resultsCache.getOrCreateBranchVersionCache("MAIN/A", head1).put("<< 100", false, null, new PageImpl<>(List.of(100L)), null);
+
+		BranchVersionECLCache.CachedPage cachedPage = resultsCache.getOrCreateBranchVersionCache("MAIN", head1).get("<< 100", false, null);
+		assertNotNull(cachedPage);
+		assertEquals(List.of(100L, 200L), cachedPage.toPage().getContent());
+		assertNull(resultsCache.getOrCreateBranchVersionCache("MAIN", head1).get("<< 100", true, null));
+		assertEquals(2L, resultsCache.getStats().get("all-branches").get("size"));
+
+		// New head on MAIN removes old MAIN entries only
+		assertNull(resultsCache.getOrCreateBranchVersionCache("MAIN", head2).get("<< 100", false, null));
+		assertNull(resultsCache.getStats().get("MAIN"));
+		assertEquals(1L, resultsCache.getStats().get("MAIN/A").get("size"));
+		assertNotNull(resultsCache.getOrCreateBranchVersionCache("MAIN/A", head1).get("<< 100", false, null));
+	}
+
+	@Test
+	void testCarryForward() {
+		ECLResultsCache resultsCache = new ECLResultsCache(1024 * 1024);
+		Date head1 = new Date(1000);
+		Date head2 = new Date(2000);
+
+		BranchVersionECLCache mainCache = resultsCache.getOrCreateBranchVersionCache("MAIN", head1);
+		mainCache.put("<< 100", false, null, new PageImpl<>(List.of(100L, 200L)), Set.of(100L));
+		mainCache.put("<< 300", false, null, new PageImpl<>(List.of(300L)), Set.of(300L));
+		mainCache.put("<< 300", true, null, new PageImpl<>(List.of(300L)), Set.of(300L));
+		mainCache.put("^ 400", false, null, new PageImpl<>(List.of(500L)), null);
+
+		// Commit changes concept 300 and its ancestors in the inferred form only
+		resultsCache.carryForward("MAIN", head1, head2, Set.of(), Set.of(300L, 138875005L));
+
+		BranchVersionECLCache newCache = resultsCache.getOrCreateBranchVersionCache("MAIN", head2);
+		assertNotNull(newCache.get("<< 100", false, null));
+		assertEquals(List.of(100L, 200L), newCache.get("<< 100", false, null).toPage().getContent());
+		assertNull(newCache.get("<< 300", false, null));
+		assertNotNull(newCache.get("<< 300", true, null));
+		assertNull(newCache.get("^ 400", false, null));
+		assertEquals(2L, resultsCache.getStats().get("MAIN").get("size"));
+	}
+
+	@Test
+	void testGetSemanticIndexDependencies() {
+		assertEquals(Set.of(100L, 200L, 300L), ECLResultsCache.getSemanticIndexDependencies("<< 100 : 200 = << 300", Set.of("100", "200", "300")));
+		assertNull(ECLResultsCache.getSemanticIndexDependencies("* : 200 = 300", Set.of("200", "300")));
+		assertNull(ECLResultsCache.getSemanticIndexDependencies("^ 100", Set.of("100")));
+		assertNull(ECLResultsCache.getSemanticIndexDependencies("<< 100 {{ d term = \"heart\" }}", Set.of("100")));
+		assertNull(ECLResultsCache.getSemanticIndexDependencies("<< 100 : 200 >= #5", Set.of("100", "200")));
+	}
+
+	@Test
+	void testEstimateWeight() {
+		BranchVersionECLCache.ECLCacheEntry key = new BranchVersionECLCache.ECLCacheEntry("MAIN", new Date(), "<< 100", false, null);
+		int small = ECLResultsCache.estimateWeight(key, new BranchVersionECLCache.CachedPage(CompactConceptIdList.of(List.of(100L)), Pageable.unpaged(), 1, null));
+		int large = ECLResultsCache.estimateWeight(key, new BranchVersionECLCache.CachedPage(CompactConceptIdList.of(LongStream.range(0, 1000).boxed().collect(Collectors.toList())),
+				Pageable.unpaged(), 1000, null));
+		assertTrue(large > small);
+	}
+
+}
@@ -0,0 +1,79 @@
+package org.snomed.snowstorm.ecl.hierarchy;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HierarchyGraphTest {
+
+	private HierarchyGraph graph;
+
+	@BeforeEach
+	void setup() {
+		//      100
+		//     /   \
+		//   200   300
+		//     \   /  \
+		//      400   500
+		graph = new HierarchyGraph.Builder()
+				.addConcept(400L, Set.of(200L, 300L))
+				.addConcept(100L, Collections.emptySet())
+				.addConcept(200L, Set.of(100L))
+				.addConcept(500L, Set.of(300L))
+				.addConcept(300L, Set.of(100L))
+				.build("MAIN", new Date(), false);
+	}
+
+	@Test
+	void testDescendants() {
+		assertEquals(List.of(500L, 400L, 300L, 200L), graph.getDescendants(Set.of(100L), true, false));
+		assertEquals(List.of(500L, 400L, 300L, 200L, 100L), graph.getDescendants(Set.of(100L), true, true));
+		assertEquals(List.of(500L, 400L), graph.getDescendants(Set.of(300L), false, false));
+		assertEquals(List.of(500L, 400L, 300L), graph.getDescendants(Set.of(300L), false, true));
+		assertEquals(List.of(), graph.getDescendants(Set.of(999L), true, true));
+		assertEquals(4, graph.countDescendants(100L));
+	}
+
+	@Test
+	void testAncestors() {
+		assertEquals(List.of(300L, 200L, 100L), graph.getAncestors(Set.of(400L), true, false));
+		assertEquals(List.of(400L, 300L, 200L, 100L), graph.getAncestors(Set.of(400L), true, true));
+		assertEquals(List.of(300L), graph.getAncestors(Set.of(500L), false, false));
+		assertEquals(List.of(300L, 200L, 100L), graph.getAncestors(Set.of(400L, 500L), true, false));
+	}
+
+	@Test
+	void testSnapshot(@TempDir Path tempDir) throws IOException {
+		Path file = tempDir.resolve("MAIN_inferred.graph");
+		graph.writeSnapshot(file);
+
+		HierarchyGraph mappedGraph = HierarchyGraph.readSnapshot(file, "MAIN", false, graph.getTimepoint());
+		assertEquals(graph.getTimepoint(), mappedGraph.getTimepoint());
+		assertFalse(mappedGraph.isStated());
+		assertEquals(5, mappedGraph.size());
+		assertEquals(List.of(500L, 400L, 300L, 200L), mappedGraph.getDescendants(Set.of(100L), true, false));
+		assertEquals(List.of(300L, 200L, 100L), mappedGraph.getAncestors(Set.of(400L), true, false));
+
+		// Header must match the expected form and version
+		assertThrows(IOException.class, () -> HierarchyGraph.readSnapshot(file, "MAIN", true, graph.getTimepoint()));
+		assertThrows(IOException.class, () -> HierarchyGraph.readSnapshot(file, "MAIN", false, new Date(graph.getTimepoint().getTime() + 1)));
+	}
+
+	@Test
+	void testIsLeaf() {
+		assertTrue(graph.isLeaf(400L));
+		assertFalse(graph.isLeaf(300L));
+		assertNull(graph.isLeaf(999L));
+		assertEquals(5, graph.size());
+	}
+
+}
@@ -0,0 +1,123 @@
+package org.snomed.snowstorm.mrcm;
+
+import io.kaicode.elasticvc.api.BranchService;
+import io.kaicode.elasticvc.api.VersionControlHelper;
+import io.kaicode.elasticvc.domain.Commit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.snomed.snowstorm.AbstractTest;
+import org.snomed.snowstorm.core.data.domain.Concepts;
+import org.snomed.snowstorm.core.data.domain.ReferenceSetMember;
+import org.snomed.snowstorm.core.data.services.ConceptService;
+import org.snomed.snowstorm.core.data.services.ReferenceSetMemberService;
+import org.snomed.snowstorm.core.data.services.ServiceTestUtil;
+import org.snomed.snowstorm.mrcm.model.AttributeDomain;
+import org.snomed.snowstorm.mrcm.model.Domain;
+import org.snomed.snowstorm.mrcm.model.MRCM;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(SpringExtension.class)
+class MRCMLoaderTest extends AbstractTest {
+
+	@Autowired
+	private BranchService branchService;
+
+	@Autowired
+	private ReferenceSetMemberService memberService;
+
+	@Autowired
+	private ConceptService conceptService;
+
+	@Autowired
+	private MRCMLoader mrcmLoader;
+
+	@Autowired
+	private VersionControlHelper versionControlHelper;
+
+	@Test
+	void testCachedUntilMRCMMembersChange() throws Exception {
+		String branchPath = branchService.create("MAIN/MRCM").getPath();
+		ServiceTestUtil testUtil = new ServiceTestUtil(conceptService);
+		testUtil.createConceptWithPathIdAndTerm(branchPath, "255234002", "After");
+		testUtil.createConceptWithPathIdAndTerm(branchPath, "272379006", "Event (event)");
+
+		ReferenceSetMember eventDomain = new ReferenceSetMember(null, null, true,
+				Concepts.CORE_MODULE, Concepts.REFSET_MRCM_DOMAIN_INTERNATIONAL, "272379006")
+				.setAdditionalField("domainConstraint", "<< 272379006 |Event (event)|")
+				.setAdditionalField("proximalPrimitiveConstraint", "<< 272379006 |Event (event)|");
+		ReferenceSetMember after = new ReferenceSetMember(null, null, true,
+				Concepts.CORE_MODULE, Concepts.REFSET_MRCM_ATTRIBUTE_DOMAIN_INTERNATIONAL, "255234002")
+				.setAdditionalField("domainId", "272379006")
+				.setAdditionalField("grouped", "1")
+				.setAdditionalField("attributeCardinality", "0..*")
+				.setAdditionalField("attributeInGroupCardinality", "0..1")
+				.setAdditionalField("ruleStrengthId", "723597001")
+				.setAdditionalField("contentTypeId", "723596005");
+		memberService.createMembers(branchPath, Set.of(eventDomain, after));
+
+		MRCM mrcm = mrcmLoader.loadActiveMRCMFromCache(branchPath);
+		assertSame(mrcm, mrcmLoader.loadActiveMRCMFromCache(branchPath));
+		List<AttributeDomain> attributeDomains = mrcm.getAttributeDomainsOfDomain("272379006");
+		assertEquals(1, attributeDomains.size());
+		assertEquals(Set.of("272379006"), mrcm.getMatchingDomains(Set.of(272379006L), Set.of(272379006L, 138875005L), false).stream()
+				.map(Domain::getReferencedComponentId).collect(Collectors.toSet()));
+		assertTrue(mrcm.getMatchingDomains(Set.of(100L), Set.of(100L, 138875005L), false).isEmpty());
+
+		// Other content changes do not reload the MRCM
+		testUtil.createConceptWithPathIdAndTerm(branchPath, "404684003", "Clinical finding (finding)");
+		assertSame(mrcm, mrcmLoader.loadActiveMRCMFromCache(branchPath));
+
+		// MRCM member change does
+		after = memberService.findMember(branchPath, after.getMemberId());
+		after.setAdditionalField("attributeCardinality", "0..1");
+		memberService.updateMember(branchPath, after);
+		MRCM updatedMrcm = mrcmLoader.loadActiveMRCMFromCache(branchPath);
+		assertNotSame(mrcm, updatedMrcm);
+		assertEquals("0..1", updatedMrcm.getAttributeDomainsOfDomain("272379006").get(0).getAttributeCardinality().getValue());
+	}
+
+	@Test
+	void testOpenCommitNotCachedForHead() throws Exception {
+		String branchPath = branchService.create("MAIN/MRCM-COMMIT").getPath();
+		ServiceTestUtil testUtil = new ServiceTestUtil(conceptService);
+		testUtil.createConceptWithPathIdAndTerm(branchPath, "255234002", "After");
+		testUtil.createConceptWithPathIdAndTerm(branchPath, "272379006", "Event (event)");
+
+		ReferenceSetMember eventDomain = new ReferenceSetMember(UUID.randomUUID().toString(), null, true,
+				Concepts.CORE_MODULE, Concepts.REFSET_MRCM_DOMAIN_INTERNATIONAL, "272379006")
+				.setAdditionalField("domainConstraint", "<< 272379006 |Event (event)|")
+				.setAdditionalField("proximalPrimitiveConstraint", "<< 272379006 |Event (event)|");
+		ReferenceSetMember after = new ReferenceSetMember(UUID.randomUUID().toString(), null, true,
+				Concepts.CORE_MODULE, Concepts.REFSET_MRCM_ATTRIBUTE_DOMAIN_INTERNATIONAL, "255234002")
+				.setAdditionalField("domainId", "272379006")
+				.setAdditionalField("grouped", "1")
+				.setAdditionalField("attributeCardinality", "0..*")
+				.setAdditionalField("attributeInGroupCardinality", "0..1")
+				.setAdditionalField("ruleStrengthId", "723597001")
+				.setAdditionalField("contentTypeId", "723596005");
+		eventDomain.markChanged();
+		after.markChanged();
+
+		try (Commit commit = branchService.openCommit(branchPath)) {
+			memberService.doSaveBatchMembers(List.of(eventDomain, after), commit);
+			// Read part way through the commit, as the semantic index update does
+			MRCM openCommitMrcm = mrcmLoader.loadActiveMRCMFromCache(branchPath, versionControlHelper.getBranchCriteriaIncludingOpenCommit(commit));
+			assertNull(openCommitMrcm.getDomains().get(0).getDomainTemplateForPrecoordination());
+			commit.markSuccessful();
+		}
+
+		// The MRCM update listener generated the domain template in place during the commit
+		MRCM headMrcm = mrcmLoader.loadActiveMRCMFromCache(branchPath);
+		assertNotNull(headMrcm.getDomains().get(0).getDomainTemplateForPrecoordination());
+		assertSame(headMrcm, mrcmLoader.loadActiveMRCMFromCache(branchPath, versionControlHelper.getBranchCriteria(branchPath)));
+	}
+
+}
@@ -10,18 +10,25 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.snomed.snowstorm.AbstractTest;
 import org.snomed.snowstorm.TestConfig;
 import org.snomed.snowstorm.core.data.domain.*;
+import org.snomed.snowstorm.core.data.domain.jobs.BulkValidationJob;
+import org.snomed.snowstorm.core.data.domain.jobs.BulkValidationResult;
+import org.snomed.snowstorm.core.data.repositories.BulkValidationResultRepository;
 import org.snomed.snowstorm.core.data.services.BranchMetadataKeys;
 import org.snomed.snowstorm.core.data.services.ConceptService;
+import org.snomed.snowstorm.core.data.services.NotFoundException;
 import org.snomed.snowstorm.core.data.services.ReferenceSetMemberService;
 import org.snomed.snowstorm.core.data.services.ServiceException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
 import java.util.Collections;
+import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.snomed.snowstorm.core.data.domain.Concepts.*;
@@ -43,6 +50,9 @@ class DroolsValidationServiceTest extends AbstractTest {
     @Autowired
     private ReferenceSetMemberService referenceSetMemberService;
 
+    @Autowired
+    private BulkValidationResultRepository bulkValidationResultRepository;
+
     @BeforeEach
     void setup() throws ServiceException {
         branchService.updateMetadata(DEFAULT_BRANCH, new Metadata().putString(BranchMetadataKeys.ASSERTION_GROUP_NAMES, "common-authoring"));
@@ -153,6 +163,46 @@ class DroolsValidationServiceTest extends AbstractTest {
         assertEquals("Active FSN should end with a valid semantic tag.", invalidContents.get(index).getMessage());
     }
 
+    @Test
+    void testBulkValidation() throws ServiceException, InterruptedException {
+        BulkValidationJob job = droolValidationService.validateBulkAsync(DEFAULT_BRANCH, "<< " + SNOMEDCT_ROOT + " OR 100001");
+        int maxWait = 30;
+        while (!(job.getStatus() == JobStatus.COMPLETED || job.getStatus() == JobStatus.FAILED) && maxWait-- > 0) {
+            Thread.sleep(1_000);
+            job = droolValidationService.getBulkValidationJobOrThrow(DEFAULT_BRANCH, job.getId());
+        }
+        assertEquals(JobStatus.COMPLETED, job.getStatus(), job.getMessage());
+        assertEquals(job.getTotalConcepts(), job.getValidatedConcepts());
+        assertTrue(job.getTotalConcepts() > 0);
+
+        List<BulkValidationResult> results = droolValidationService.findBulkValidationResults(DEFAULT_BRANCH, job.getId(), PageRequest.of(0, 100)).getContent();
+        assertEquals(job.getInvalidContentCount(), results.size());
+        Set<String> conceptMessages = results.stream().filter(result -> "100001".equals(result.getConceptId()))
+                .map(BulkValidationResult::getMessage).collect(Collectors.toSet());
+        assertTrue(conceptMessages.contains("Active concepts must have at least one IS A relationship."), conceptMessages.toString());
+    }
+
+    @Test
+    void testExpiredBulkValidationJobDeleted() throws ServiceException, InterruptedException {
+        BulkValidationJob job = droolValidationService.validateBulkAsync(DEFAULT_BRANCH, "100001");
+        int maxWait = 30;
+        while (!(job.getStatus() == JobStatus.COMPLETED || job.getStatus() == JobStatus.FAILED) && maxWait-- > 0) {
+            Thread.sleep(1_000);
+            job = droolValidationService.getBulkValidationJobOrThrow(DEFAULT_BRANCH, job.getId());
+        }
+        assertEquals(JobStatus.COMPLETED, job.getStatus(), job.getMessage());
+        String jobId = job.getId();
+        assertFalse(droolValidationService.findBulkValidationResults(DEFAULT_BRANCH, jobId, PageRequest.of(0, 10)).isEmpty());
+
+        // Not expired yet
+        droolValidationService.deleteBulkValidationJobsBefore(job.getStartDate());
+        assertNotNull(droolValidationService.getBulkValidationJobOrThrow(DEFAULT_BRANCH, jobId));
+
+        droolValidationService.deleteBulkValidationJobsBefore(new Date(job.getEndDate().getTime() + 1));
+        assertThrows(NotFoundException.class, () -> droolValidationService.getBulkValidationJobOrThrow(DEFAULT_BRANCH, jobId));
+        assertTrue(bulkValidationResultRepository.findByJobId(jobId, PageRequest.of(0, 10)).isEmpty());
+    }
+
     private ReferenceSetMember constructMrcmRange(String referencedComponentId, String rangeConstraint) {
         ReferenceSetMember rangeMember = new ReferenceSetMember("900000000000207008", REFSET_MRCM_ATTRIBUTE_RANGE_INTERNATIONAL, referencedComponentId);
         rangeMember.setAdditionalField("rangeConstraint", rangeConstraint);
@@ -0,0 +1,65 @@
+package org.snomed.snowstorm.validation;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageImpl;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ValidationQueryCacheTest {
+
+	@Test
+	void testSharedByBranchVersion() {
+		ValidationQueryCache queryCache = new ValidationQueryCache(1024 * 1024);
+		Date head1 = new Date(1000);
+		Date head2 = new Date(2000);
+		AtomicInteger loads = new AtomicInteger();
+
+		assertEquals(List.of(100L), queryCache.getBranchVersion("MAIN", head1).get("search", "> 200", () -> load(loads, 100L)).getContent());
+		// Another request on the same branch version
+		assertEquals(List.of(100L), queryCache.getBranchVersion("MAIN", new Date(1000)).get("search", "> 200", () -> load(loads, 300L)).getContent());
+		assertEquals(1, loads.get());
+
+		// Other lookups, branches and versions are loaded separately
+		queryCache.getBranchVersion("MAIN", head1).get("any-results", "> 200", () -> load(loads, 100L));
+		queryCache.getBranchVersion("MAIN/A", head1).get("search", "> 200", () -> load(loads, 100L));
+		assertEquals(3, loads.get());
+		assertEquals(3L, queryCache.estimatedSize());
+
+		// New head on MAIN removes old MAIN entries only
+		assertEquals(List.of(400L), queryCache.getBranchVersion("MAIN", head2).get("search", "> 200", () -> load(loads, 400L)).getContent());
+		assertEquals(4, loads.get());
+		assertEquals(2L, queryCache.estimatedSize());
+	}
+
+	@Test
+	void testFailedLoadNotCached() {
+		ValidationQueryCache queryCache = new ValidationQueryCache(1024 * 1024);
+		ValidationQueryCache.BranchVersion branchVersion = queryCache.getBranchVersion("MAIN", new Date(1000));
+		AtomicInteger loads = new AtomicInteger();
+
+		assertThrows(IllegalStateException.class, () -> branchVersion.get("search", "> 200", () -> {
+			throw new IllegalStateException("Simulated lookup failure.");
+		}));
+		assertEquals(List.of(100L), branchVersion.get("search", "> 200", () -> load(loads, 100L)).getContent());
+		assertEquals(1, loads.get());
+	}
+
+	@Test
+	void testEstimateWeight() {
+		ValidationQueryCache.CacheKey key = new ValidationQueryCache.CacheKey("MAIN", new Date(), "search", "> 100");
+		int small = ValidationQueryCache.estimateWeight(key, new PageImpl<>(List.of(100L)));
+		int large = ValidationQueryCache.estimateWeight(key, new PageImpl<>(List.of(100L, 200L, 300L)));
+		assertTrue(large > small);
+		assertTrue(ValidationQueryCache.estimateWeight(key, List.of("description")) > ValidationQueryCache.estimateWeight(key, true));
+	}
+
+	private PageImpl<Long> load(AtomicInteger loads, Long id) {
+		loads.incrementAndGet();
+		return new PageImpl<>(List.of(id));
+	}
+
+}